@@ -61,6 +61,10 @@ public class CDXQuery {
     String resumeKey = EMPTY_STRING;
     boolean showResumeKey = false;
 
+    // Set by CDXServer when a negative limit is served by reading the
+    // index in reverse; not a request parameter.
+    boolean reverseLastN = false;
+
     public CDXQuery() {
 
     }
@@ -13,7 +13,9 @@ import org.apache.commons.httpclient.URIException;
 import org.archive.cdxserver.CDXQuery.SortType;
 import org.archive.cdxserver.auth.AuthToken;
 import org.archive.cdxserver.filter.CDXAccessFilter;
+import org.archive.cdxserver.filter.CDXFilter;
 import org.archive.cdxserver.filter.CollapseFieldFilter;
+import org.archive.cdxserver.filter.CompiledCDXFilter;
 import org.archive.cdxserver.filter.FieldRegexFilter;
 import org.archive.cdxserver.processor.BaseProcessor;
 import org.archive.cdxserver.processor.ClosestTimestampSorted;
@@ -23,12 +25,15 @@ import org.archive.cdxserver.processor.DupeTimestampLastBestStatusFilter;
 import org.archive.cdxserver.processor.ForwardRevisitResolver;
 import org.archive.cdxserver.processor.GroupCountProcessor;
 import org.archive.cdxserver.processor.LastNLineProcessor;
+import org.archive.cdxserver.processor.ReverseLastNLineProcessor;
 import org.archive.cdxserver.processor.ReverseRevisitResolver;
 import org.archive.cdxserver.writer.CDXListWriter;
 import org.archive.cdxserver.writer.CDXWriter;
 import org.archive.cdxserver.writer.JsonWriter;
 import org.archive.cdxserver.writer.MementoLinkWriter;
 import org.archive.cdxserver.writer.PlainTextWriter;
+import org.archive.cdxserver.writer.RawCDXLine;
+import org.archive.cdxserver.writer.RawCDXLineWriter;
 import org.archive.format.cdx.CDXFieldConstants;
 import org.archive.format.cdx.CDXInputSource;
 import org.archive.format.cdx.CDXLine;
@@ -84,6 +89,10 @@ public class CDXServer extends BaseCDXServer {
 	protected String[] noCollapsePrefix = null;
 	protected boolean collapseToLast = false;
 
+	protected boolean rawOutput = false;
+
+	protected int closestWindow = 0;
+
 	protected ZipNumParams defaultParams;
 
 	public ZipNumCluster getZipnumSource() {
@@ -126,6 +135,54 @@ public class CDXServer extends BaseCDXServer {
 		this.queryMaxLimit = queryMaxLimit;
 	}
 
+	public boolean isRawOutput() {
+		return rawOutput;
+	}
+
+	/**
+	 * If set to {@code true}, queries with no output processor (no closest
+	 * sort, negative limit, revisit resolution, dupe or group count, or
+	 * {@code collapseTime}) and no per-capture access check are written
+	 * straight from the raw index lines by writers which support it,
+	 * without creating a {@code CDXLine} per line. {@code from}/{@code to},
+	 * {@code filter} and {@code collapse} are applied to the raw lines by
+	 * {@link CompiledCDXFilter}, and field selection ({@code fl=}) is
+	 * honored, provided all fields they name are in the parse format.
+	 * <p>Only enable this when the index lines are stored in the server's
+	 * parse format (i.e. {@code cdxFormat} needs no field conversion).</p>
+	 * @param rawOutput {@code true} to enable the raw output path
+	 */
+	public void setRawOutput(boolean rawOutput) {
+		this.rawOutput = rawOutput;
+	}
+
+	public int getClosestWindow() {
+		return closestWindow;
+	}
+
+	/**
+	 * If set to positive number, non-paged queries for a single URL with
+	 * {@code closest} timestamp seek directly to the target timestamp and
+	 * read only {@code closestWindow} captures closest to it, expanding
+	 * forward and backward from the target. The captures are passed down
+	 * the pipeline in ascending order as usual, so this works with both
+	 * regular and closest sort, but captures outside the window are never
+	 * read. Captures the response would drop (alexa/dat, excluded by the
+	 * access filter or by {@code filter}) are skipped while reading, so
+	 * they do not count toward the window.
+	 * <p>Not applied to queries with {@code from}, {@code to},
+	 * {@code resumeKey}, {@code collapse}, {@code collapseTime}, reverse
+	 * sort, or directional closest ({@code -} or {@code ^} prefix); nor
+	 * to queries combining {@code filter} with options that add fields to
+	 * the lines filtered.</p>
+	 * <p>Initial value is {@code 0} (disabled).</p>
+	 * @param closestWindow number of captures to read around target
+	 * @see ClosestWindowIterator
+	 */
+	public void setClosestWindow(int closestWindow) {
+		this.closestWindow = closestWindow;
+	}
+
 	public String[] getNoCollapsePrefix() {
 		return noCollapsePrefix;
 	}
@@ -262,6 +319,9 @@ public class CDXServer extends BaseCDXServer {
 			if (query.last || query.limit == -1) {
 				query.limit = 1;
 				query.setSort(SortType.reverse);
+			} else if (isReverseLastNQuery(query)) {
+				query.setSort(SortType.reverse);
+				query.reverseLastN = true;
 			}
 
 			int maxLimit;
@@ -289,6 +349,16 @@ public class CDXServer extends BaseCDXServer {
 				// Page size determines the max limit here
 				maxLimit = Integer.MAX_VALUE;
 
+			} else if (isClosestWindowQuery(query)) {
+				iter = createClosestWindowIterator(startEndUrl, query,
+						accessChecker);
+
+				// already applied while reading the window
+				query.filter = null;
+				accessChecker = null;
+
+				maxLimit = this.queryMaxLimit;
+
 			} else {
 				// Non-Paged Merged query
 				iter = createBoundedCdxIterator(startEndUrl, query, null, null);
@@ -413,6 +483,118 @@ public class CDXServer extends BaseCDXServer {
         }
     }
 
+	/**
+	 * Return {@code true} if negative {@code limit} of {@code query} can be
+	 * served by reading the index in reverse and stopping after
+	 * {@code -limit} lines, instead of reading all matching lines to keep
+	 * the last ones. This requires that nothing in the pipeline depends on
+	 * the order lines are read in: no collapsing, dupe/group counting,
+	 * revisit resolution, closest sort, {@code from}/{@code to},
+	 * {@code offset} or resume key, and no paging.
+	 * @param query query
+	 * @return {@code true} if query can be reverse-scanned
+	 * @see ReverseLastNLineProcessor
+	 */
+	protected boolean isReverseLastNQuery(CDXQuery query) {
+		if ((query.limit >= 0) ||
+				((query.sort != null) && (query.sort != SortType.regular))) {
+			return false;
+		}
+		if ((query.page >= 0) || query.showNumPages ||
+				Boolean.TRUE.equals(query.fastLatest)) {
+			return false;
+		}
+		if ((query.collapse != null && query.collapse.length > 0) ||
+				(query.collapseTime > 0) || query.showDupeCount ||
+				query.resolveRevisits || query.showGroupCount ||
+				query.showUniqCount) {
+			return false;
+		}
+		return query.closest.isEmpty() && query.from.isEmpty() &&
+				query.to.isEmpty() && query.resumeKey.isEmpty() &&
+				(query.offset == 0) && !query.showResumeKey;
+	}
+
+	protected boolean isClosestWindowQuery(CDXQuery query) {
+		if ((closestWindow <= 0) || query.closest.isEmpty() ||
+				(query.matchType != MatchType.exact) || query.isReverse()) {
+			return false;
+		}
+		if (query.closest.startsWith("-") || query.closest.startsWith("^")) {
+			return false;
+		}
+		// collapsing drops lines after the window is taken
+		if ((query.collapse != null && query.collapse.length > 0) ||
+				(query.collapseTime > 0)) {
+			return false;
+		}
+		// filter may refer to fields not in the lines read
+		if ((query.filter != null && query.filter.length > 0) &&
+				(query.resolveRevisits || query.showDupeCount ||
+						query.showGroupCount || query.showUniqCount)) {
+			return false;
+		}
+		return query.from.isEmpty() && query.to.isEmpty() &&
+				query.resumeKey.isEmpty();
+	}
+
+	/**
+	 * Create {@link ClosestWindowIterator} for {@code query}. Lines
+	 * {@link #writeCdxResponse} would drop (alexa/dat, excluded by
+	 * {@code accessChecker} or by query {@code filter}) are skipped while
+	 * reading, so that the window holds only captures that can be returned.
+	 * @param startEndUrl SURT range of the URL
+	 * @param query query with {@code closest} timestamp
+	 * @param accessChecker per-capture access filter, or {@code null}
+	 */
+	protected CloseableIterator<String> createClosestWindowIterator(
+			String[] startEndUrl, CDXQuery query,
+			final CDXAccessFilter accessChecker) throws IOException {
+		String targetKey = startEndUrl[0] + " " + query.closest;
+
+		ZipNumParams forwardParams = new ZipNumParams(defaultParams);
+		forwardParams.setMaxAggregateBlocks(1);
+		CloseableIterator<String> forward = cdxSource.getCDXIterator(
+				targetKey, startEndUrl[0], startEndUrl[1], forwardParams);
+
+		ZipNumParams backwardParams = new ZipNumParams(defaultParams);
+		backwardParams.setMaxAggregateBlocks(1);
+		backwardParams.setReverse(true);
+		CloseableIterator<String> backward;
+		try {
+			backward = cdxSource.getCDXIterator(startEndUrl[0],
+					startEndUrl[0], targetKey, backwardParams);
+		} catch (IOException e) {
+			forward.close();
+			throw e;
+		}
+
+		FieldSplitFormat parseFormat = cdxLineFactory.getParseFormat();
+		final FieldRegexFilter filterMatcher;
+		if (query.filter != null && (query.filter.length > 0)) {
+			filterMatcher = new FieldRegexFilter(query.filter, parseFormat);
+		} else {
+			filterMatcher = null;
+		}
+
+		CDXFilter filter = new CDXFilter() {
+			@Override
+			public boolean include(CDXLine line) {
+				if (line.getMimeType().equals("alexa/dat")) {
+					return false;
+				}
+				if ((accessChecker != null) &&
+						!accessChecker.includeCapture(line)) {
+					return false;
+				}
+				return (filterMatcher == null) || filterMatcher.include(line);
+			}
+		};
+
+		return new ClosestWindowIterator(forward, backward, query.closest,
+				closestWindow, cdxLineFactory, parseFormat, filter);
+	}
+
 	// TODO: Support idx/summary in json?
     protected void writeIdxResponse(CDXWriter responseWriter,
             CloseableIterator<String> iter) {
@@ -434,8 +616,14 @@ public class CDXServer extends BaseCDXServer {
 
 		if (query.limit < 0) {
 			query.limit = Math.min(-query.limit, readLimit);
-			outputProcessor = new LastNLineProcessor(outputProcessor,
-					query.limit);
+			if (query.reverseLastN) {
+				// lines are read in reverse, and reading stops at limit
+				outputProcessor = new ReverseLastNLineProcessor(
+						outputProcessor, query.limit);
+			} else {
+				outputProcessor = new LastNLineProcessor(outputProcessor,
+						query.limit);
+			}
 		} else if (query.limit == 0) {
 			query.limit = readLimit;
 		} else {
@@ -515,6 +703,23 @@ public class CDXServer extends BaseCDXServer {
 			outputFields = parseFormat.createSubset(outputFields);
 		}
 
+		if (rawOutput && (outputProcessor == responseWriter) &&
+				(responseWriter instanceof RawCDXLineWriter) &&
+				(accessChecker == null)) {
+			int[] fieldIndexes = null;
+			if (outputFields != null) {
+				fieldIndexes = getFieldIndexes(parseFormat, outputFields);
+			}
+			CompiledCDXFilter lineFilter = CompiledCDXFilter.compile(query,
+					parseFormat);
+			if (((outputFields == null) || (fieldIndexes != null)) &&
+					(lineFilter != null)) {
+				writeRawCdxResponse(responseWriter, cdx, readLimit, query,
+						parseFormat, fieldIndexes, lineFilter);
+				return;
+			}
+		}
+
 		outputProcessor.begin();
 
 		int writeCount = 0;
@@ -624,6 +829,94 @@ public class CDXServer extends BaseCDXServer {
 		outputProcessor.end();
 	}
 
+	/**
+	 * @return the index in {@code parseFormat} of each field of
+	 * {@code outputFields}, or {@code null} if any is missing
+	 */
+	private static int[] getFieldIndexes(FieldSplitFormat parseFormat,
+			FieldSplitFormat outputFields) {
+		int[] indexes = new int[outputFields.getLength()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = parseFormat.getFieldIndex(outputFields.getName(i));
+			if (indexes[i] < 0) {
+				return null;
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Fast path of {@link #writeCdxResponse} for when the writer is the only
+	 * processor: raw lines are examined in place through a single reused
+	 * {@link RawCDXLine}, tested with the query's {@link CompiledCDXFilter},
+	 * and selected fields are written directly to the output.
+	 */
+	protected void writeRawCdxResponse(CDXWriter responseWriter,
+			CloseableIterator<String> cdx, int readLimit, CDXQuery query,
+			FieldSplitFormat parseFormat, int[] fieldIndexes,
+			CompiledCDXFilter lineFilter) {
+		final int urlkeyIndex = parseFormat.getFieldIndex(CDXFieldConstants.urlkey);
+		final int timestampIndex = parseFormat.getFieldIndex(CDXFieldConstants.timestamp);
+
+		RawCDXLineWriter rawWriter = (RawCDXLineWriter) responseWriter;
+		RawCDXLine line = new RawCDXLine();
+		String lastLine = null;
+
+		responseWriter.begin();
+
+		int writeCount = 0;
+		long allCount = 0;
+
+		int writeLimit = query.limit;
+
+		while (cdx.hasNext() &&
+				((writeLimit == 0) || (writeCount < writeLimit)) &&
+				(allCount < readLimit) && !responseWriter.isAborted()) {
+
+			String rawLine = cdx.next();
+			allCount++;
+
+			if (query.offset > 0) {
+				--query.offset;
+				continue;
+			}
+
+			line.reset(rawLine);
+			lastLine = rawLine;
+
+			CompiledCDXFilter.Decision decision = lineFilter.apply(line);
+			if (decision == CompiledCDXFilter.Decision.STOP) {
+				break;
+			} else if (decision == CompiledCDXFilter.Decision.SKIP) {
+				continue;
+			}
+
+			writeCount += rawWriter.writeRawLine(line, fieldIndexes);
+
+			if (Thread.interrupted()) {
+				break;
+			}
+		}
+
+		if (query.showResumeKey && (lastLine != null) && (writeLimit > 0) &&
+				(writeCount >= writeLimit)) {
+			line.reset(lastLine);
+			StringBuilder sb = new StringBuilder();
+			sb.append(line.getField(urlkeyIndex));
+			sb.append(' ');
+			sb.append(UrlSurtRangeComputer.incLastChar(
+					line.getField(timestampIndex)));
+			try {
+				responseWriter.writeResumeKey(URLEncoder.encode(
+						sb.toString(), "UTF-8"));
+			} catch (UnsupportedEncodingException e) {
+
+			}
+		}
+
+		responseWriter.end();
+	}
+
 	/**
 	 * Look up the latest (non-revisit) capture of {@code url} in the
 	 * CDX database.
@@ -0,0 +1,192 @@
+package org.archive.cdxserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.NoSuchElementException;
+
+import org.archive.cdxserver.filter.CDXFilter;
+import org.archive.format.cdx.CDXLineFactory;
+import org.archive.format.cdx.FieldSplitFormat;
+import org.archive.util.ArchiveUtils;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Iterator over up to {@code window} CDX lines closest to a target timestamp,
+ * in ascending order.
+ * <p>
+ * Takes two iterators over the same URL key, both starting at
+ * {@code urlkey + " " + target}: {@code forward} reads captures at or after
+ * the target in ascending order, {@code backward} reads captures before the
+ * target in descending order. Lines are taken from whichever side is closer
+ * to the target until {@code window} lines are collected, so the cost is
+ * independent of the number of captures of the URL.
+ * </p>
+ * <p>If a {@code filter} is given, lines it excludes are skipped and do not
+ * count toward the window.</p>
+ * <p>Both iterators are closed once the window is collected.</p>
+ */
+public class ClosestWindowIterator implements CloseableIterator<String> {
+
+	private final CloseableIterator<String> forward;
+	private final CloseableIterator<String> backward;
+	private final String target;
+	private final long targetTime;
+	private final int window;
+
+	private final CDXLineFactory lineFactory;
+	private final FieldSplitFormat parseFormat;
+	private final CDXFilter filter;
+
+	private ArrayList<String> lines = null;
+	private int next = 0;
+
+	private String nextForward = null;
+	private String nextBackward = null;
+
+	/**
+	 * @param forward iterator reading ascending from target
+	 * @param backward iterator reading descending from target
+	 * @param target target timestamp (may be shorter than 14 digits)
+	 * @param window maximum number of lines
+	 */
+	public ClosestWindowIterator(CloseableIterator<String> forward,
+			CloseableIterator<String> backward, String target, int window) {
+		this(forward, backward, target, window, null, null, null);
+	}
+
+	/**
+	 * @param forward iterator reading ascending from target
+	 * @param backward iterator reading descending from target
+	 * @param target target timestamp (may be shorter than 14 digits)
+	 * @param window maximum number of lines
+	 * @param lineFactory parses lines for {@code filter}
+	 * @param parseFormat format to parse lines with
+	 * @param filter lines to include, or {@code null} for all
+	 */
+	public ClosestWindowIterator(CloseableIterator<String> forward,
+			CloseableIterator<String> backward, String target, int window,
+			CDXLineFactory lineFactory, FieldSplitFormat parseFormat,
+			CDXFilter filter) {
+		this.forward = forward;
+		this.backward = backward;
+		this.target = target;
+		this.targetTime = toTime(target);
+		this.window = window;
+		this.lineFactory = lineFactory;
+		this.parseFormat = parseFormat;
+		this.filter = filter;
+	}
+
+	protected static long toTime(String timestamp) {
+		return ArchiveUtils.getDate(timestamp, new Date()).getTime();
+	}
+
+	protected static String timestampOf(String line) {
+		int start = line.indexOf(' ') + 1;
+		int end = line.indexOf(' ', start);
+		return (end < 0) ? line.substring(start) : line.substring(start, end);
+	}
+
+	protected boolean include(String line) {
+		return (filter == null) ||
+				filter.include(lineFactory.createStandardCDXLine(line,
+					parseFormat));
+	}
+
+	private String peekForward() {
+		while ((nextForward == null) && forward.hasNext()) {
+			String line = forward.next();
+			if (include(line)) {
+				nextForward = line;
+			}
+		}
+		return nextForward;
+	}
+
+	private String peekBackward() {
+		while ((nextBackward == null) && backward.hasNext()) {
+			String line = backward.next();
+			// lines at or after target are read by forward
+			if ((timestampOf(line).compareTo(target) < 0) && include(line)) {
+				nextBackward = line;
+			}
+		}
+		return nextBackward;
+	}
+
+	protected void collect() {
+		ArrayList<String> before = new ArrayList<String>();
+		ArrayList<String> after = new ArrayList<String>();
+
+		while (before.size() + after.size() < window) {
+			String fwd = peekForward();
+			String bwd = peekBackward();
+			if (fwd == null && bwd == null) {
+				break;
+			}
+			boolean takeForward;
+			if (bwd == null) {
+				takeForward = true;
+			} else if (fwd == null) {
+				takeForward = false;
+			} else {
+				long fwdDiff = toTime(timestampOf(fwd)) - targetTime;
+				long bwdDiff = targetTime - toTime(timestampOf(bwd));
+				takeForward = (fwdDiff <= bwdDiff);
+			}
+			if (takeForward) {
+				after.add(fwd);
+				nextForward = null;
+			} else {
+				before.add(bwd);
+				nextBackward = null;
+			}
+		}
+		closeSources();
+
+		lines = new ArrayList<String>(before.size() + after.size());
+		for (int i = before.size() - 1; i >= 0; i--) {
+			lines.add(before.get(i));
+		}
+		lines.addAll(after);
+	}
+
+	public boolean hasNext() {
+		if (lines == null) {
+			collect();
+		}
+		return next < lines.size();
+	}
+
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return lines.get(next++);
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void closeSources() {
+		try {
+			forward.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		try {
+			backward.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	public void close() throws IOException {
+		if (lines == null) {
+			lines = new ArrayList<String>();
+			closeSources();
+		}
+	}
+}
@@ -30,6 +30,8 @@ public class HowManyController extends BaseCDXServer {
 
     protected Map<String, ArrayList<ZipNumCluster>> allClusters;
 
+    protected List<ZipNumBlockSummary> blockSummaries;
+
     final static String PART_PREFIX = "part-a-";
     
     @Override
@@ -130,6 +132,67 @@ public class HowManyController extends BaseCDXServer {
         return numLines;
     }
 
+    protected ZipNumBlockSummary getBlockSummary(ZipNumCluster cluster) {
+        if (blockSummaries != null) {
+            for (ZipNumBlockSummary summary : blockSummaries) {
+                if (summary.getCluster() == cluster) {
+                    return summary;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Estimate number of lines from the {@link ZipNumBlockSummary} of
+     * {@code cluster}, without reading any CDX block. Falls back to
+     * {@link #countLines} if there is no block summary for the cluster.
+     * @param cluster cluster to count
+     * @param start start key
+     * @param end end key
+     * @param dates if non-{@code null}, range is for a single URL, and
+     *        date range is widened to include its captures
+     * @param error {@code error[0]} is incremented by the error bound
+     * @param approximateDates {@code approximateDates[0]} is set if
+     *        {@code dates} are only bounds of the URL's capture dates
+     * @return estimated number of lines
+     * @throws IOException if the block summary cannot be read
+     */
+    protected long estimateLines(ZipNumCluster cluster, String start,
+            String end, String[] dates, long[] error,
+            boolean[] approximateDates) throws IOException {
+        if (cluster.isDisabled()) {
+            return 0;
+        }
+
+        ZipNumBlockSummary summary = getBlockSummary(cluster);
+
+        if (summary == null) {
+            return countLines(cluster, start, end, dates);
+        }
+
+        ZipNumBlockSummary.Estimate estimate = summary.estimate(start, end,
+                dates != null, dates != null);
+
+        error[0] += estimate.getError();
+
+        if ((dates != null) && (estimate.getCount() > 0)) {
+            String first = estimate.getFirstTimestamp();
+            String last = estimate.getLastTimestamp();
+            if ((dates[0] == null) || (first.compareTo(dates[0]) < 0)) {
+                dates[0] = first;
+            }
+            if ((dates[1] == null) || (last.compareTo(dates[1]) > 0)) {
+                dates[1] = last;
+            }
+            if (estimate.isDatesApproximate()) {
+                approximateDates[0] = true;
+            }
+        }
+
+        return estimate.getCount();
+    }
+
     public static class FormCommand {
         private MatchType matchType = MatchType.domain;
 
@@ -159,10 +222,11 @@ public class HowManyController extends BaseCDXServer {
             @RequestParam(value = "to", defaultValue = "") String to,
             @RequestParam(value = "matchType", defaultValue = "domain") MatchType matchType,
             @RequestParam(value = "format", defaultValue = "") String format,
+            @RequestParam(value = "approx", defaultValue = "false") boolean approx,
             @PathVariable String clusterId,
             ModelMap model)
             throws URISyntaxException, IOException {
-        return getHowMany(request, response, url, from, to, matchType, clusterId, format, model);
+        return getHowMany(request, response, url, from, to, matchType, clusterId, format, approx, model);
     }
 
     @RequestMapping(value = { "/howmany" })
@@ -175,6 +239,7 @@ public class HowManyController extends BaseCDXServer {
             @RequestParam(value = "matchType", defaultValue = "domain") MatchType matchType,
             @RequestParam(value = "clusterId", defaultValue = "all") String clusterId,
             @RequestParam(value = "format", defaultValue = "") String format,
+            @RequestParam(value = "approx", defaultValue = "false") boolean approx,
             ModelMap model) throws URISyntaxException, IOException {
         String start, end;
         String host;
@@ -212,11 +277,22 @@ public class HowManyController extends BaseCDXServer {
             firstLastDate = new String[2];
         }
         
+        long[] error = new long[1];
+        boolean[] approximateDates = new boolean[1];
+
         if (!restricted) {
-            numLines = countAllClusters(clusterId, start, end, firstLastDate);
+            if (approx) {
+                numLines = estimateAllClusters(clusterId, start, end,
+                        firstLastDate, error, approximateDates);
+            } else {
+                numLines = countAllClusters(clusterId, start, end,
+                        firstLastDate);
+            }
         }
         
         model.addAttribute("count", Long.valueOf(numLines));
+        model.addAttribute("approximate", Boolean.valueOf(approx));
+        model.addAttribute("countError", Long.valueOf(error[0]));
         
         if (format.equals("count")) {            
             return "count";
@@ -237,6 +313,8 @@ public class HowManyController extends BaseCDXServer {
                     ArchiveUtils.getDate(firstLastDate[0], new Date()));
             model.addAttribute("last",
                     ArchiveUtils.getDate(firstLastDate[1], new Date()));
+            model.addAttribute("approximateDates",
+                    Boolean.valueOf(approximateDates[0]));
         }
 
         model.addAttribute("host", host);
@@ -270,6 +348,34 @@ public class HowManyController extends BaseCDXServer {
         return numLines;
     }
 
+    /**
+     * Like {@link #countAllClusters}, but estimated from block summaries.
+     * @see #estimateLines
+     */
+    protected long estimateAllClusters(String clusterId, String start,
+            String end, String[] firstLastDate, long[] error,
+            boolean[] approximateDates) throws IOException {
+        List<ZipNumCluster> clusters = null;
+
+        if (!clusterId.isEmpty() && (allClusters != null)) {
+            clusters = allClusters.get(clusterId);
+        }
+
+        if (clusters == null) {
+            return this.estimateLines(mainCluster, start, end, firstLastDate,
+                    error, approximateDates);
+        }
+
+        long numLines = 0;
+
+        for (ZipNumCluster cluster : clusters) {
+            numLines += this.estimateLines(cluster, start, end,
+                    firstLastDate, error, approximateDates);
+        }
+
+        return numLines;
+    }
+
     public ZipNumCluster getMainCluster() {
         return mainCluster;
     }
@@ -285,4 +391,19 @@ public class HowManyController extends BaseCDXServer {
     public void setAllClusters(Map<String, ArrayList<ZipNumCluster>> allClusters) {
         this.allClusters = allClusters;
     }
+
+    public List<ZipNumBlockSummary> getBlockSummaries() {
+        return blockSummaries;
+    }
+
+    /**
+     * Block summaries used for {@code approx=true} requests, which are
+     * answered from the summaries alone, with {@code countError} giving
+     * the error bound. Clusters without a block summary are counted as
+     * usual.
+     * @param blockSummaries block summaries, one per cluster
+     */
+    public void setBlockSummaries(List<ZipNumBlockSummary> blockSummaries) {
+        this.blockSummaries = blockSummaries;
+    }
 }
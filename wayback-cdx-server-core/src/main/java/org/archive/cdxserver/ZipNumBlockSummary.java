@@ -0,0 +1,441 @@
+package org.archive.cdxserver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+
+/**
+ * Precomputed per-block statistics of a {@link ZipNumCluster}, for
+ * estimating the number of captures and their date range in a key range
+ * without reading any CDX block.
+ * <p>
+ * The block summary file is stored next to the ZipNum summary (by
+ * convention, as {@code ALL.summary.blocks}), and has one tab-separated
+ * line per block, in the same order as the ZipNum summary:
+ * </p>
+ * <pre>first-key	last-key	lines	min-timestamp	max-timestamp	distinct-urlkeys</pre>
+ * <p>
+ * {@code first-key} is the first field of the ZipNum summary line (urlkey
+ * and timestamp of the first line of the block), and {@code last-key} the
+ * same for the last line of the block. It is generated from the ZipNum
+ * summary, loc and part files with {@link #main(String[])}.
+ * </p>
+ * <p>
+ * Blocks entirely within the range are counted exactly. Blocks at either
+ * edge of the range are only partially in it, so a part of their lines is
+ * estimated, and the error bound is how far off that estimate can be.
+ * For a single URL, first and last capture dates are exact where the edge
+ * block starts (or ends) with a line in range; otherwise they are the
+ * min/max timestamps of the blocks, which include other URLs' captures.
+ * The file is reloaded when its modification time changes.
+ * </p>
+ * @see HowManyController#setBlockSummaries(List)
+ */
+public class ZipNumBlockSummary {
+	private static final Logger LOGGER = Logger
+			.getLogger(ZipNumBlockSummary.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private ZipNumCluster cluster;
+	private File file;
+
+	private long lastModified = 0;
+	private Blocks blocks;
+
+	/**
+	 * Estimated count and date range.
+	 */
+	public static class Estimate {
+		long count;
+		long error;
+		long minTimestamp = Long.MAX_VALUE;
+		long maxTimestamp = Long.MIN_VALUE;
+		boolean datesApproximate = false;
+
+		/**
+		 * @return estimated number of lines in range
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return maximum difference between estimated and actual number of
+		 * lines
+		 */
+		public long getError() {
+			return error;
+		}
+
+		/**
+		 * @return timestamp no later than the first capture in range, or
+		 * {@code null} if not computed or none
+		 */
+		public String getFirstTimestamp() {
+			return minTimestamp == Long.MAX_VALUE ? null : String
+				.valueOf(minTimestamp);
+		}
+
+		/**
+		 * @return timestamp no earlier than the last capture in range, or
+		 * {@code null} if not computed or none
+		 */
+		public String getLastTimestamp() {
+			return maxTimestamp == Long.MIN_VALUE ? null : String
+				.valueOf(maxTimestamp);
+		}
+
+		/**
+		 * @return {@code true} if first or last timestamp is only a bound,
+		 * not the date of a capture in range
+		 */
+		public boolean isDatesApproximate() {
+			return datesApproximate;
+		}
+	}
+
+	/**
+	 * Immutable block statistics, replaced as a whole on reload.
+	 */
+	static class Blocks {
+		final String[] firstKeys;
+		final String[] lastKeys;
+		final int[] lines;
+		final long[] minTimestamps;
+		final long[] maxTimestamps;
+		final int[] distinctUrlkeys;
+		/** {@code totalLines[i]} is the number of lines in blocks before i */
+		final long[] totalLines;
+
+		Blocks(List<String> records) {
+			int n = records.size();
+			firstKeys = new String[n];
+			lastKeys = new String[n];
+			lines = new int[n];
+			minTimestamps = new long[n];
+			maxTimestamps = new long[n];
+			distinctUrlkeys = new int[n];
+			totalLines = new long[n + 1];
+			for (int i = 0; i < n; i++) {
+				String[] fields = records.get(i).split("\t");
+				firstKeys[i] = fields[0];
+				lastKeys[i] = fields[1];
+				lines[i] = Integer.parseInt(fields[2]);
+				minTimestamps[i] = Long.parseLong(fields[3]);
+				maxTimestamps[i] = Long.parseLong(fields[4]);
+				distinctUrlkeys[i] = Math.max(1, Integer.parseInt(fields[5]));
+				totalLines[i + 1] = totalLines[i] + lines[i];
+			}
+		}
+
+		/**
+		 * @return number of blocks whose {@code keys} entry is less than
+		 * {@code key}
+		 */
+		static int countLess(String[] keys, String key) {
+			int low = 0;
+			int high = keys.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid].compareTo(key) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return low;
+		}
+
+		boolean isContained(int i, String start, String end) {
+			return (firstKeys[i].compareTo(start) >= 0) &&
+					(end.isEmpty() || (lastKeys[i].compareTo(end) < 0));
+		}
+
+		Estimate estimate(String start, String end, boolean exact,
+				boolean dates) {
+			Estimate estimate = new Estimate();
+			int n = firstKeys.length;
+			// first block ending at or after start, last starting before end
+			int lo = countLess(lastKeys, start);
+			int hi = end.isEmpty() ? n - 1 : countLess(firstKeys, end) - 1;
+			if (hi < lo) {
+				return estimate;
+			}
+			estimate.count = totalLines[hi + 1] - totalLines[lo];
+			estimatePartial(estimate, lo, start, end, exact);
+			if (hi != lo) {
+				estimatePartial(estimate, hi, start, end, exact);
+			}
+			if (dates) {
+				for (int i = lo; i <= hi; i++) {
+					estimate.minTimestamp = Math.min(estimate.minTimestamp,
+						minTimestamps[i]);
+					estimate.maxTimestamp = Math.max(estimate.maxTimestamp,
+						maxTimestamps[i]);
+				}
+				// for a single URL, the first line in range is its first
+				// capture, and the last line in range its last
+				long first = exact ? timestampInRange(firstKeys[lo], start,
+					end) : -1;
+				long last = exact ? timestampInRange(lastKeys[hi], start,
+					end) : -1;
+				if (first >= 0) {
+					estimate.minTimestamp = first;
+				}
+				if (last >= 0) {
+					estimate.maxTimestamp = last;
+				}
+				estimate.datesApproximate = (first < 0) || (last < 0);
+			}
+			return estimate;
+		}
+
+		/**
+		 * @return timestamp of {@code key} if it is in range
+		 * {@code [start, end)}, or {@code -1}
+		 */
+		static long timestampInRange(String key, String start, String end) {
+			if ((key.compareTo(start) < 0) ||
+					(!end.isEmpty() && (key.compareTo(end) >= 0))) {
+				return -1;
+			}
+			int sp = key.indexOf(' ');
+			if (sp < 0) {
+				return -1;
+			}
+			try {
+				return Long.parseLong(key.substring(sp + 1));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * Replace count of block {@code i} with an estimate of its lines
+		 * in range, if it is only partially in range. For a single URL, the
+		 * average number of lines per urlkey is assumed; otherwise half.
+		 */
+		private void estimatePartial(Estimate estimate, int i, String start,
+				String end, boolean exact) {
+			if (isContained(i, start, end)) {
+				return;
+			}
+			int blockLines = lines[i];
+			int partial;
+			if (exact) {
+				partial = (blockLines + distinctUrlkeys[i] - 1) /
+						distinctUrlkeys[i];
+			} else {
+				partial = blockLines / 2;
+			}
+			estimate.count -= blockLines - partial;
+			estimate.error += Math.max(partial, blockLines - partial);
+		}
+	}
+
+	/**
+	 * Estimate number of lines in key range {@code [start, end)}.
+	 * @param start start key, empty for beginning of cluster
+	 * @param end end key (exclusive), empty for end of cluster
+	 * @param exact {@code true} if range is for a single URL
+	 * @param dates {@code true} to compute date range
+	 * @return the estimate
+	 * @throws IOException if block summary file cannot be read
+	 */
+	public Estimate estimate(String start, String end, boolean exact,
+			boolean dates) throws IOException {
+		return getBlocks().estimate(start, end, exact, dates);
+	}
+
+	protected Blocks getBlocks() throws IOException {
+		synchronized (this) {
+			long modified = file.lastModified();
+			if ((blocks == null) || (modified != lastModified)) {
+				blocks = load(file);
+				lastModified = modified;
+				LOGGER.info("Loaded " + blocks.firstKeys.length +
+						" block summaries from " + file.getAbsolutePath());
+			}
+			return blocks;
+		}
+	}
+
+	static Blocks load(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+			new FileInputStream(file), UTF8));
+		try {
+			List<String> records = new ArrayList<String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty()) {
+					records.add(line);
+				}
+			}
+			return new Blocks(records);
+		} catch (RuntimeException e) {
+			throw new IOException("Bad block summary file " +
+					file.getAbsolutePath(), e);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Compute block summary of a ZipNum cluster from its local files.
+	 * @param summaryFile ZipNum summary file
+	 * @param locFile ZipNum loc file, mapping part names to local paths
+	 * @param out output block summary file
+	 * @throws IOException on read/write errors
+	 */
+	public static void writeBlockSummary(File summaryFile, File locFile,
+			File out) throws IOException {
+		Map<String, String> locations = new HashMap<String, String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+			new FileInputStream(locFile), UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if ((fields.length > 1) && !locations.containsKey(fields[0])) {
+					locations.put(fields[0], fields[1]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		Map<String, RandomAccessFile> parts = new HashMap<String, RandomAccessFile>();
+		reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+			summaryFile), UTF8));
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+			new FileOutputStream(out), UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// first-key, part, offset, length
+				String[] fields = line.split("\t");
+				RandomAccessFile part = parts.get(fields[1]);
+				if (part == null) {
+					String path = locations.get(fields[1]);
+					if (path == null) {
+						throw new IOException("No location for " + fields[1]);
+					}
+					part = new RandomAccessFile(path, "r");
+					parts.put(fields[1], part);
+				}
+				byte[] block = new byte[Integer.parseInt(fields[3])];
+				part.seek(Long.parseLong(fields[2]));
+				part.readFully(block);
+				writer.print(fields[0]);
+				writer.print('\t');
+				writer.println(summarizeBlock(block));
+			}
+		} finally {
+			reader.close();
+			writer.close();
+			for (RandomAccessFile part : parts.values()) {
+				part.close();
+			}
+		}
+		if (writer.checkError()) {
+			throw new IOException("Failed writing " + out.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @param block gzip compressed CDX block
+	 * @return last key, lines, min/max timestamp and distinct urlkeys,
+	 * tab-separated
+	 */
+	static String summarizeBlock(byte[] block) throws IOException {
+		BufferedReader lines = new BufferedReader(new InputStreamReader(
+			new GZIPInputStream(new ByteArrayInputStream(block)), UTF8));
+		int count = 0;
+		int distinct = 0;
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		String prevUrlkey = null;
+		String lastKey = "";
+		String line;
+		while ((line = lines.readLine()) != null) {
+			int sp1 = line.indexOf(' ');
+			if (sp1 < 0) {
+				continue;
+			}
+			int sp2 = line.indexOf(' ', sp1 + 1);
+			String urlkey = line.substring(0, sp1);
+			if (!urlkey.equals(prevUrlkey)) {
+				distinct++;
+				prevUrlkey = urlkey;
+			}
+			count++;
+			lastKey = sp2 < 0 ? line : line.substring(0, sp2);
+			try {
+				long timestamp = Long.parseLong(line.substring(sp1 + 1,
+					sp2 < 0 ? line.length() : sp2));
+				min = Math.min(min, timestamp);
+				max = Math.max(max, timestamp);
+			} catch (NumberFormatException e) {
+				// no usable timestamp
+			}
+		}
+		if (count == 0 || min > max) {
+			min = max = 0;
+		}
+		return lastKey + "\t" + count + "\t" + min + "\t" + max + "\t" +
+				distinct;
+	}
+
+	/**
+	 * Write block summary file for a ZipNum cluster.
+	 * @param args summary file, loc file, output file
+	 * @throws IOException on read/write errors
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: ZipNumBlockSummary SUMMARY LOC OUTPUT");
+			System.exit(1);
+		}
+		writeBlockSummary(new File(args[0]), new File(args[1]),
+			new File(args[2]));
+	}
+
+	public ZipNumCluster getCluster() {
+		return cluster;
+	}
+
+	/**
+	 * @param cluster cluster this block summary is for
+	 */
+	public void setCluster(ZipNumCluster cluster) {
+		this.cluster = cluster;
+	}
+
+	public String getFile() {
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * @param path block summary file
+	 */
+	public void setFile(String path) {
+		this.file = new File(path);
+	}
+}
@@ -0,0 +1,406 @@
+package org.archive.cdxserver.filter;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.archive.cdxserver.CDXQuery;
+import org.archive.cdxserver.writer.RawCDXLine;
+import org.archive.format.cdx.CDXFieldConstants;
+import org.archive.format.cdx.FieldSplitFormat;
+import org.archive.url.UrlSurtRangeComputer.MatchType;
+
+/**
+ * The per-line conditions of a {@link CDXQuery} - the alexa/dat skip,
+ * {@code from}/{@code to}, {@code filter} and {@code collapse} - compiled
+ * once per query into a single check on a {@link RawCDXLine}.
+ * <p>
+ * Equivalent to applying {@link FieldRegexFilter} and
+ * {@link CollapseFieldFilter} in order, but works on field offsets within
+ * the raw line so no field Strings are created:
+ * <ul>
+ * <li>filter patterns which are a literal, or a literal with a leading
+ * and/or trailing {@code .*}, are tested as equals/prefix/suffix/contains
+ * instead of with a regex</li>
+ * <li>other patterns reuse one {@link Matcher} per pattern</li>
+ * <li>filters are tested cheapest first; collapse fields, which are
+ * stateful, are always tested last and in the order given</li>
+ * </ul>
+ * <p>
+ * Holds collapse state, so an instance must only be used for a single
+ * query, by a single thread.
+ * </p>
+ */
+public class CompiledCDXFilter {
+
+	/**
+	 * Outcome of {@link CompiledCDXFilter#apply(RawCDXLine)}.
+	 */
+	public enum Decision {
+		/** line passes all conditions */
+		INCLUDE,
+		/** line fails a condition */
+		SKIP,
+		/** line fails, and no later line can pass */
+		STOP
+	}
+
+	final static String INVERT_CHAR = "!";
+	final static String CONTAINS_CHAR = "~";
+	final static String FIELD_SEP_CHAR = ":";
+
+	final static String REGEX_META = "\\[](){}.*+?^$|";
+	final static String ANY = ".*";
+
+	final static int EQUALS = 0;
+	final static int PREFIX = 1;
+	final static int SUFFIX = 2;
+	final static int CONTAINS = 3;
+	final static int REGEX = 4;
+
+	static boolean isLiteral(String pattern) {
+		for (int i = 0; i < pattern.length(); i++) {
+			if (REGEX_META.indexOf(pattern.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reusable view of one field of a line, for regex matching.
+	 */
+	static class FieldSequence implements CharSequence {
+		String line;
+		int start;
+		int end;
+
+		void set(String line, int start, int end) {
+			this.line = line;
+			this.start = start;
+			this.end = end;
+		}
+
+		public int length() {
+			return end - start;
+		}
+
+		public char charAt(int index) {
+			return line.charAt(start + index);
+		}
+
+		public CharSequence subSequence(int from, int to) {
+			return line.subSequence(start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return line.substring(start, end);
+		}
+	}
+
+	static class FieldMatch {
+		final int fieldIndex;
+		final boolean inverted;
+		final int kind;
+		final String literal;
+		final Matcher matcher;
+		final FieldSequence view;
+
+		FieldMatch(String str, FieldSplitFormat names) {
+			boolean contains = false;
+
+			if (str.startsWith(CONTAINS_CHAR)) {
+				str = str.substring(1);
+				contains = true;
+			}
+
+			if (str.startsWith(INVERT_CHAR)) {
+				str = str.substring(1);
+				inverted = true;
+			} else {
+				inverted = false;
+			}
+
+			int sepIndex = str.indexOf(FIELD_SEP_CHAR);
+			String pattern;
+
+			if (sepIndex < 0) {
+				// Match entire line
+				fieldIndex = -1;
+				pattern = str;
+			} else {
+				String field = str.substring(0, sepIndex);
+				pattern = str.substring(sepIndex + 1);
+				int index = -1;
+				try {
+					index = Integer.parseInt(field);
+				} catch (NumberFormatException n) {
+
+				}
+				if ((index < 0) && (names != null)) {
+					index = names.getFieldIndex(field);
+				}
+				fieldIndex = index;
+			}
+
+			if (contains) {
+				kind = CONTAINS;
+				literal = pattern;
+			} else if (isLiteral(pattern)) {
+				kind = EQUALS;
+				literal = pattern;
+			} else if (pattern.startsWith(ANY) && pattern.endsWith(ANY) &&
+					(pattern.length() >= 4) &&
+					isLiteral(pattern.substring(2, pattern.length() - 2))) {
+				kind = CONTAINS;
+				literal = pattern.substring(2, pattern.length() - 2);
+			} else if (pattern.endsWith(ANY) &&
+					isLiteral(pattern.substring(0, pattern.length() - 2))) {
+				kind = PREFIX;
+				literal = pattern.substring(0, pattern.length() - 2);
+			} else if (pattern.startsWith(ANY) &&
+					isLiteral(pattern.substring(2))) {
+				kind = SUFFIX;
+				literal = pattern.substring(2);
+			} else {
+				kind = REGEX;
+				literal = null;
+			}
+
+			if (kind == REGEX) {
+				matcher = Pattern.compile(pattern).matcher("");
+				view = new FieldSequence();
+			} else {
+				matcher = null;
+				view = null;
+			}
+		}
+
+		/**
+		 * @return relative cost of testing this match, for ordering
+		 */
+		int cost() {
+			// whole-line matches scan more characters than field matches
+			return (kind * 2) + ((fieldIndex < 0) ? 1 : 0);
+		}
+
+		boolean matches(RawCDXLine line) {
+			String s = line.getLine();
+			int start;
+			int end;
+			if (fieldIndex < 0) {
+				start = 0;
+				end = s.length();
+			} else if (line.hasField(fieldIndex)) {
+				start = line.getFieldStart(fieldIndex);
+				end = line.getFieldEnd(fieldIndex);
+			} else {
+				s = "";
+				start = 0;
+				end = 0;
+			}
+			return test(s, start, end) != inverted;
+		}
+
+		boolean test(String s, int start, int end) {
+			int len = end - start;
+			switch (kind) {
+			case EQUALS:
+				return (len == literal.length()) &&
+						s.regionMatches(start, literal, 0, len);
+			case PREFIX:
+				return (len >= literal.length()) &&
+						s.regionMatches(start, literal, 0, literal.length());
+			case SUFFIX:
+				return (len >= literal.length()) &&
+						s.regionMatches(end - literal.length(), literal, 0,
+								literal.length());
+			case CONTAINS:
+				// the first occurrence at or after start is the one which
+				// ends soonest, so if it runs past end, none fits
+				int found = s.indexOf(literal, start);
+				return (found >= 0) && (found + literal.length() <= end);
+			default:
+				view.set(s, start, end);
+				return matcher.reset(view).matches();
+			}
+		}
+	}
+
+	static class DupeMatch {
+		final int fieldIndex;
+		final int substrLength;
+
+		char[] prevValue = new char[64];
+		int prevLength = -1;
+
+		DupeMatch(String str, FieldSplitFormat names) {
+			try {
+				str = URLDecoder.decode(str, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+
+			}
+
+			int sepIndex = str.indexOf(FIELD_SEP_CHAR);
+
+			String field;
+
+			if (sepIndex < 0) {
+				field = str;
+				substrLength = -1;
+			} else {
+				field = str.substring(0, sepIndex);
+				substrLength = NumberUtils.toInt(str.substring(sepIndex + 1));
+			}
+
+			int index = NumberUtils.toInt(field, -1);
+
+			if ((index < 0) && (names != null)) {
+				index = names.getFieldIndex(field);
+			}
+
+			fieldIndex = index;
+		}
+
+		boolean isUnique(RawCDXLine line) {
+			String s = line.getLine();
+			int start = 0;
+			int len = 0;
+			if (line.hasField(fieldIndex)) {
+				start = line.getFieldStart(fieldIndex);
+				len = line.getFieldEnd(fieldIndex) - start;
+			}
+			if ((substrLength > 0) && (substrLength <= len)) {
+				len = substrLength;
+			}
+			if (len == prevLength) {
+				int i = 0;
+				while ((i < len) && (s.charAt(start + i) == prevValue[i])) {
+					i++;
+				}
+				if (i == len) {
+					return false;
+				}
+			}
+			if (len > prevValue.length) {
+				prevValue = new char[Math.max(len, prevValue.length * 2)];
+			}
+			s.getChars(start, start + len, prevValue, 0);
+			prevLength = len;
+			return true;
+		}
+	}
+
+	private final int mimetypeIndex;
+	private final int timestampIndex;
+	private final String from;
+	private final String to;
+	private final boolean stopAfterTo;
+	private final FieldMatch[] filters;
+	private final DupeMatch[] collapsers;
+
+	private CompiledCDXFilter(CDXQuery query, FieldSplitFormat parseFormat,
+			List<FieldMatch> filters, List<DupeMatch> collapsers) {
+		this.mimetypeIndex = parseFormat.getFieldIndex(CDXFieldConstants.mimetype);
+		this.timestampIndex = parseFormat.getFieldIndex(CDXFieldConstants.timestamp);
+		this.from = query.getFrom();
+		this.to = query.getTo();
+		this.stopAfterTo = (query.getMatchType() == MatchType.exact);
+		this.filters = filters.toArray(new FieldMatch[filters.size()]);
+		this.collapsers = collapsers.toArray(new DupeMatch[collapsers.size()]);
+	}
+
+	/**
+	 * Compile the per-line conditions of query.
+	 * @param query the query
+	 * @param parseFormat fields of the lines the query will be applied to
+	 * @return compiled conditions, or {@code null} if any {@code filter} or
+	 *         {@code collapse} names a field which is not in parseFormat
+	 *         (other than a whole-line filter), in which case the query must
+	 *         be run with {@link FieldRegexFilter} and
+	 *         {@link CollapseFieldFilter}
+	 */
+	public static CompiledCDXFilter compile(CDXQuery query,
+			FieldSplitFormat parseFormat) {
+		List<FieldMatch> filters = new ArrayList<FieldMatch>();
+		if (query.getFilter() != null) {
+			for (String str : query.getFilter()) {
+				if (str.isEmpty()) {
+					continue;
+				}
+				FieldMatch match = new FieldMatch(str, parseFormat);
+				if (match.fieldIndex >= parseFormat.getLength()) {
+					return null;
+				}
+				filters.add(match);
+			}
+		}
+		// stable sort: equal-cost filters keep the order given
+		Collections.sort(filters, new Comparator<FieldMatch>() {
+			public int compare(FieldMatch o1, FieldMatch o2) {
+				return o1.cost() - o2.cost();
+			}
+		});
+
+		List<DupeMatch> collapsers = new ArrayList<DupeMatch>();
+		if (query.getCollapse() != null) {
+			for (String str : query.getCollapse()) {
+				if (str.isEmpty()) {
+					continue;
+				}
+				DupeMatch match = new DupeMatch(str, parseFormat);
+				if ((match.fieldIndex < 0) ||
+						(match.fieldIndex >= parseFormat.getLength())) {
+					return null;
+				}
+				collapsers.add(match);
+			}
+		}
+		return new CompiledCDXFilter(query, parseFormat, filters, collapsers);
+	}
+
+	/**
+	 * Apply all conditions to line, in the same order as
+	 * {@code CDXServer.writeCdxResponse}: alexa/dat skip, {@code from},
+	 * {@code to}, filters, then collapse.
+	 * @param line the line to test
+	 * @return the decision for line
+	 */
+	public Decision apply(RawCDXLine line) {
+		// alexa/dat lines are never returned
+		if (line.fieldEquals(mimetypeIndex, "alexa/dat")) {
+			return Decision.SKIP;
+		}
+
+		// Timestamp Range Filtering
+		if (!from.isEmpty() && (line.compareField(timestampIndex, from) < 0)) {
+			return Decision.SKIP;
+		}
+
+		if (!to.isEmpty() && (line.compareField(timestampIndex, to) > 0) &&
+				!line.fieldStartsWith(timestampIndex, to)) {
+			return stopAfterTo ? Decision.STOP : Decision.SKIP;
+		}
+
+		for (FieldMatch filter : filters) {
+			if (!filter.matches(line)) {
+				return Decision.SKIP;
+			}
+		}
+
+		for (DupeMatch collapser : collapsers) {
+			if (!collapser.isUnique(line)) {
+				return Decision.SKIP;
+			}
+		}
+
+		return Decision.INCLUDE;
+	}
+}
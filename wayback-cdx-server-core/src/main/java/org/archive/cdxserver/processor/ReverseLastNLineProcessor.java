@@ -0,0 +1,55 @@
+package org.archive.cdxserver.processor;
+
+import org.archive.format.cdx.CDXLine;
+
+/**
+ * Counterpart of {@link LastNLineProcessor} for input read in reverse
+ * order: keeps the first {@code limit} lines written, and passes them
+ * down in the opposite (i.e. ascending) order at the end.
+ * <p>Unlike {@link LastNLineProcessor}, {@link #writeLine(CDXLine)} counts
+ * each line kept as written, so reading stops as soon as {@code limit}
+ * lines are collected.</p>
+ */
+public class ReverseLastNLineProcessor extends WrappedProcessor {
+
+    protected CDXLine[] lines;
+    protected int count = 0;
+
+    public ReverseLastNLineProcessor(BaseProcessor output, int limit)
+    {
+        super(output);
+        this.lines = new CDXLine[Math.max(1, Math.min(limit, 1024))];
+    }
+
+    @Override
+    public int writeLine(CDXLine line) {
+        if (count == lines.length) {
+            CDXLine[] newLines = new CDXLine[lines.length * 2];
+            System.arraycopy(lines, 0, newLines, 0, count);
+            lines = newLines;
+        }
+        lines[count++] = line;
+        return 1;
+    }
+
+    protected void flush()
+    {
+        for (int i = count - 1; i >= 0; i--) {
+            inner.writeLine(lines[i]);
+            lines[i] = null;
+        }
+        count = 0;
+    }
+
+    @Override
+    public void writeResumeKey(String resumeKey) {
+        flush();
+        inner.writeResumeKey(resumeKey);
+    }
+
+    @Override
+    public void end() {
+        flush();
+        inner.end();
+    }
+}
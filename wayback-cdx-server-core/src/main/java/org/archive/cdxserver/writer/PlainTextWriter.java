@@ -6,7 +6,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.archive.format.cdx.CDXLine;
 
-public class PlainTextWriter extends HttpCDXWriter {
+public class PlainTextWriter extends HttpCDXWriter implements RawCDXLineWriter {
 	
 	public PlainTextWriter(HttpServletResponse response, boolean gzip) throws IOException
 	{
@@ -25,6 +25,22 @@ public class PlainTextWriter extends HttpCDXWriter {
 		return 1;
 	}
 
+	@Override
+	public int writeRawLine(RawCDXLine line, int[] fieldIndexes) {
+		if (fieldIndexes == null) {
+			writer.println(line.getLine());
+			return 1;
+		}
+		for (int i = 0; i < fieldIndexes.length; i++) {
+			if (i > 0) {
+				writer.write(' ');
+			}
+			line.writeField(fieldIndexes[i], writer);
+		}
+		writer.println();
+		return 1;
+	}
+
 	@Override
 	public void end() {
 
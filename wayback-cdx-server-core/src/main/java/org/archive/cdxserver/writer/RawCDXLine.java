@@ -0,0 +1,162 @@
+package org.archive.cdxserver.writer;
+
+import java.io.PrintWriter;
+
+/**
+ * Reusable, allocation-free view of the fields of an unparsed CDX line.
+ * <p>
+ * Field boundaries are only located when a field is first accessed, and
+ * only as far as that field. A single instance is {@link #reset(String)} for
+ * each line, so iterating a large result set does not create a
+ * {@code CDXLine} (and its field {@code List}) per line.
+ * </p>
+ * <p>Only valid where the raw index lines have exactly the fields of the
+ * server's parse format, in the same order.</p>
+ */
+public class RawCDXLine {
+
+	private static final char DELIM = ' ';
+
+	private String line;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int found = 0;
+	private int scanPos = 0;
+
+	/**
+	 * Point this view at a new line.
+	 * @param line raw CDX line
+	 */
+	public void reset(String line) {
+		this.line = line;
+		this.found = 0;
+		this.scanPos = 0;
+	}
+
+	/**
+	 * @return the current raw line
+	 */
+	public String getLine() {
+		return line;
+	}
+
+	private boolean locate(int index) {
+		while (found <= index) {
+			if (scanPos > line.length()) {
+				return false;
+			}
+			int end = line.indexOf(DELIM, scanPos);
+			if (end == -1) {
+				end = line.length();
+			}
+			if (found == starts.length) {
+				int[] newStarts = new int[found * 2];
+				int[] newEnds = new int[found * 2];
+				System.arraycopy(starts, 0, newStarts, 0, found);
+				System.arraycopy(ends, 0, newEnds, 0, found);
+				starts = newStarts;
+				ends = newEnds;
+			}
+			starts[found] = scanPos;
+			ends[found] = end;
+			found++;
+			scanPos = end + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * @param index zero-based field index
+	 * @return true if the line has a field at index
+	 */
+	public boolean hasField(int index) {
+		return (index >= 0) && locate(index);
+	}
+
+	/**
+	 * @param index zero-based field index
+	 * @return field value, as a new String, or "" if there is no such field
+	 */
+	public String getField(int index) {
+		if (!hasField(index)) {
+			return "";
+		}
+		return line.substring(starts[index], ends[index]);
+	}
+
+	/**
+	 * @param index zero-based field index
+	 * @return offset in {@link #getLine()} of the first character of the
+	 *         field, or -1 if there is no such field
+	 */
+	public int getFieldStart(int index) {
+		return hasField(index) ? starts[index] : -1;
+	}
+
+	/**
+	 * @param index zero-based field index
+	 * @return offset in {@link #getLine()} just past the last character of
+	 *         the field, or -1 if there is no such field
+	 */
+	public int getFieldEnd(int index) {
+		return hasField(index) ? ends[index] : -1;
+	}
+
+	/**
+	 * Compare a field with value, without copying the field.
+	 * @param index zero-based field index
+	 * @param value to compare with
+	 * @return negative, zero or positive as the field sorts before, equal to
+	 *         or after value. A missing field sorts as an empty one.
+	 */
+	public int compareField(int index, String value) {
+		int start = 0;
+		int len = 0;
+		if (hasField(index)) {
+			start = starts[index];
+			len = ends[index] - start;
+		}
+		int n = Math.min(len, value.length());
+		for (int i = 0; i < n; i++) {
+			char c1 = line.charAt(start + i);
+			char c2 = value.charAt(i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return len - value.length();
+	}
+
+	/**
+	 * @param index zero-based field index
+	 * @param prefix to check for
+	 * @return true if the field starts with prefix
+	 */
+	public boolean fieldStartsWith(int index, String prefix) {
+		if (!hasField(index)) {
+			return prefix.isEmpty();
+		}
+		return ((ends[index] - starts[index]) >= prefix.length())
+				&& line.startsWith(prefix, starts[index]);
+	}
+
+	/**
+	 * @param index zero-based field index
+	 * @param value to check for
+	 * @return true if the field equals value
+	 */
+	public boolean fieldEquals(int index, String value) {
+		return compareField(index, value) == 0;
+	}
+
+	/**
+	 * Write a field straight from the raw line.
+	 * @param index zero-based field index
+	 * @param writer destination
+	 */
+	public void writeField(int index, PrintWriter writer) {
+		if (hasField(index)) {
+			writer.write(line, starts[index], ends[index] - starts[index]);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package org.archive.cdxserver.writer;
+
+/**
+ * Implemented by {@link CDXWriter}s which can output unparsed lines.
+ * {@code CDXServer} only uses {@link #writeRawLine(RawCDXLine, int[])} when
+ * no intermediary processor is installed.
+ */
+public interface RawCDXLineWriter {
+
+	/**
+	 * Write selected fields of an unparsed line.
+	 * @param line current line
+	 * @param fieldIndexes indexes of fields to write, in order, or
+	 * {@code null} to write the line as-is
+	 * @return 1 if {@code line} is sent to output, 0 otherwise.
+	 */
+	public int writeRawLine(RawCDXLine line, int[] fieldIndexes);
+}
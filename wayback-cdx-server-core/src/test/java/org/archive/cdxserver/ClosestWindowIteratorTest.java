@@ -0,0 +1,141 @@
+package org.archive.cdxserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.filter.FieldRegexFilter;
+import org.archive.format.cdx.CDXLineFactory;
+import org.archive.format.cdx.StandardCDXLineFactory;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Test for {@link ClosestWindowIterator}.
+ */
+public class ClosestWindowIteratorTest extends TestCase {
+
+	private static class ListIterator implements CloseableIterator<String> {
+		final Iterator<String> itr;
+		int read = 0;
+		boolean closed = false;
+		ListIterator(List<String> lines) {
+			itr = lines.iterator();
+		}
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+		public String next() {
+			read++;
+			return itr.next();
+		}
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	private static String line(int day) {
+		return line(day, 200);
+	}
+
+	private static String line(int day, int status) {
+		return String.format("com,example)/ 201011%02d000000 http://example.com/" +
+				" text/html %d XXXX - - 2000 0 a.warc.gz", day, status);
+	}
+
+	private static List<String> days(int from, int to) {
+		List<String> lines = new ArrayList<String>();
+		for (int day = from; day <= to; day++) {
+			lines.add(line(day));
+		}
+		return lines;
+	}
+
+	private static List<String> drain(Iterator<String> itr) {
+		List<String> lines = new ArrayList<String>();
+		while (itr.hasNext()) {
+			lines.add(itr.next());
+		}
+		return lines;
+	}
+
+	public void testWindowAroundTarget() throws IOException {
+		List<String> before = days(1, 9);
+		Collections.reverse(before);
+		ListIterator forward = new ListIterator(days(10, 28));
+		ListIterator backward = new ListIterator(before);
+
+		ClosestWindowIterator itr = new ClosestWindowIterator(forward,
+				backward, "20101110120000", 4);
+		// days 9, 10, 11 and 12 are closest to noon of day 10
+		assertEquals(days(9, 12), drain(itr));
+		assertTrue(forward.closed);
+		assertTrue(backward.closed);
+		// read only as far as needed on each side
+		assertTrue(forward.read <= 4);
+		assertTrue(backward.read <= 2);
+		itr.close();
+	}
+
+	public void testOneSideExhausted() throws IOException {
+		List<String> before = days(1, 2);
+		Collections.reverse(before);
+		ClosestWindowIterator itr = new ClosestWindowIterator(
+				new ListIterator(days(3, 20)), new ListIterator(before),
+				"20101103", 5);
+		assertEquals(days(1, 5), drain(itr));
+	}
+
+	public void testBackwardLinesAtTargetSkipped() throws IOException {
+		// reverse iterator may include lines at the target itself
+		List<String> before = days(1, 5);
+		Collections.reverse(before);
+		ClosestWindowIterator itr = new ClosestWindowIterator(
+				new ListIterator(days(5, 6)), new ListIterator(before),
+				"20101105", 10);
+		assertEquals(days(1, 6), drain(itr));
+	}
+
+	public void testFilteredLinesNotCounted() throws IOException {
+		// captures nearest to the target are all 404
+		List<String> before = new ArrayList<String>();
+		List<String> after = new ArrayList<String>();
+		for (int day = 1; day <= 20; day++) {
+			String line = line(day, (day >= 9 && day <= 12) ? 404 : 200);
+			if (day < 10) {
+				before.add(0, line);
+			} else {
+				after.add(line);
+			}
+		}
+		CDXLineFactory lineFactory = new StandardCDXLineFactory("cdx11");
+		FieldRegexFilter filter = new FieldRegexFilter(
+				new String[] { "statuscode:[23].." },
+				lineFactory.getParseFormat());
+		ClosestWindowIterator itr = new ClosestWindowIterator(
+				new ListIterator(after), new ListIterator(before),
+				"20101110120000", 4, lineFactory, lineFactory.getParseFormat(),
+				filter);
+		List<String> expected = new ArrayList<String>();
+		expected.addAll(days(7, 8));
+		expected.addAll(days(13, 14));
+		assertEquals(expected, drain(itr));
+	}
+
+	public void testCloseBeforeRead() throws IOException {
+		ListIterator forward = new ListIterator(days(1, 2));
+		ListIterator backward = new ListIterator(new ArrayList<String>());
+		ClosestWindowIterator itr = new ClosestWindowIterator(forward,
+				backward, "20101101", 5);
+		itr.close();
+		assertTrue(forward.closed);
+		assertTrue(backward.closed);
+		assertFalse(itr.hasNext());
+	}
+}
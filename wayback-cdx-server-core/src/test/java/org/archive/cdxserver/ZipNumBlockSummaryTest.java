@@ -0,0 +1,166 @@
+package org.archive.cdxserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link ZipNumBlockSummary}.
+ */
+public class ZipNumBlockSummaryTest extends TestCase {
+
+	static final String[][] PART0 = {
+		{
+			"com,a)/ 20100101000000 http://a.com/",
+			"com,a)/ 20110101000000 http://a.com/",
+			"com,b)/ 20120101000000 http://b.com/",
+		},
+		{
+			"com,b)/ 20130101000000 http://b.com/",
+			"com,c)/ 20130101000000 http://c.com/",
+			"com,d)/ 20140101000000 http://d.com/",
+		},
+	};
+	static final String[][] PART1 = {
+		{
+			"com,e)/ 20150101000000 http://e.com/",
+			"com,f)/ 20160101000000 http://f.com/",
+		},
+	};
+
+	File dir;
+	ZipNumBlockSummary cut;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("zipnum", "");
+		dir.delete();
+		dir.mkdir();
+
+		StringBuilder summary = new StringBuilder();
+		writePart("part-a-00000", PART0, summary);
+		writePart("part-a-00001", PART1, summary);
+		write(new File(dir, "ALL.summary"), summary.toString().getBytes("UTF-8"));
+		String loc = "part-a-00000\t" + new File(dir, "part-a-00000.gz") + "\n" +
+				"part-a-00001\t" + new File(dir, "part-a-00001.gz") + "\n";
+		write(new File(dir, "ALL.loc"), loc.getBytes("UTF-8"));
+
+		File blocks = new File(dir, "ALL.summary.blocks");
+		ZipNumBlockSummary.writeBlockSummary(new File(dir, "ALL.summary"),
+			new File(dir, "ALL.loc"), blocks);
+
+		cut = new ZipNumBlockSummary();
+		cut.setFile(blocks.getAbsolutePath());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	private void writePart(String name, String[][] blocks,
+			StringBuilder summary) throws IOException {
+		ByteArrayOutputStream part = new ByteArrayOutputStream();
+		for (String[] block : blocks) {
+			int offset = part.size();
+			GZIPOutputStream gz = new GZIPOutputStream(part);
+			for (String line : block) {
+				gz.write((line + "\n").getBytes("UTF-8"));
+			}
+			gz.finish();
+			String firstLine = block[0];
+			summary.append(firstLine.substring(0, firstLine.lastIndexOf(' ')))
+				.append('\t').append(name).append('\t').append(offset)
+				.append('\t').append(part.size() - offset).append('\n');
+		}
+		write(new File(dir, name + ".gz"), part.toByteArray());
+	}
+
+	private static void write(File file, byte[] bytes) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(bytes);
+		} finally {
+			os.close();
+		}
+	}
+
+	public void testFullRange() throws IOException {
+		ZipNumBlockSummary.Estimate estimate = cut.estimate("", "", false, true);
+		assertEquals(8, estimate.getCount());
+		assertEquals(0, estimate.getError());
+		assertEquals("20100101000000", estimate.getFirstTimestamp());
+		assertEquals("20160101000000", estimate.getLastTimestamp());
+	}
+
+	public void testContainedBlocks() throws IOException {
+		// covers blocks 1 and 2 exactly
+		ZipNumBlockSummary.Estimate estimate = cut.estimate("com,b)/ 2013",
+			"com,g", false, false);
+		assertEquals(5, estimate.getCount());
+		assertEquals(0, estimate.getError());
+		assertNull(estimate.getFirstTimestamp());
+	}
+
+	public void testPartialBlocks() throws IOException {
+		// com,b)/ to com,d)/: partial blocks 0 and 1, actual count 3
+		ZipNumBlockSummary.Estimate estimate = cut.estimate("com,b)/",
+			"com,d)/", false, false);
+		assertEquals(1 + 1, estimate.getCount());
+		assertEquals(2 + 2, estimate.getError());
+		assertTrue(Math.abs(estimate.getCount() - 3) <= estimate.getError());
+	}
+
+	public void testExact() throws IOException {
+		// single URL in one block, 3 lines with 3 urlkeys
+		ZipNumBlockSummary.Estimate estimate = cut.estimate("com,c)/ ",
+			"com,c)/!", true, true);
+		assertEquals(1, estimate.getCount());
+		assertEquals(2, estimate.getError());
+		// neither edge key is com,c)/: block min/max
+		assertEquals("20130101000000", estimate.getFirstTimestamp());
+		assertEquals("20140101000000", estimate.getLastTimestamp());
+		assertTrue(estimate.isDatesApproximate());
+
+		// not in any block
+		estimate = cut.estimate("com,z)/ ", "com,z)/!", true, true);
+		assertEquals(0, estimate.getCount());
+		assertEquals(0, estimate.getError());
+		assertNull(estimate.getFirstTimestamp());
+	}
+
+	public void testExactEdgeKeys() throws IOException {
+		// block 0 starts with com,a)/, but ends with com,b)/
+		ZipNumBlockSummary.Estimate estimate = cut.estimate("com,a)/ ",
+			"com,a)/!", true, true);
+		assertEquals("20100101000000", estimate.getFirstTimestamp());
+		assertEquals("20120101000000", estimate.getLastTimestamp());
+		assertTrue(estimate.isDatesApproximate());
+
+		// block 2 ends with com,f)/, but starts with com,e)/
+		estimate = cut.estimate("com,f)/ ", "com,f)/!", true, true);
+		assertEquals("20150101000000", estimate.getFirstTimestamp());
+		assertEquals("20160101000000", estimate.getLastTimestamp());
+		assertTrue(estimate.isDatesApproximate());
+
+		// both edge keys in range
+		estimate = cut.estimate("com,e)/ ", "com,f)/!", true, true);
+		assertEquals("20150101000000", estimate.getFirstTimestamp());
+		assertEquals("20160101000000", estimate.getLastTimestamp());
+		assertFalse(estimate.isDatesApproximate());
+
+		// only exact matches use edge keys
+		estimate = cut.estimate("com,e)/ ", "com,f)/!", false, true);
+		assertTrue(estimate.isDatesApproximate());
+	}
+}
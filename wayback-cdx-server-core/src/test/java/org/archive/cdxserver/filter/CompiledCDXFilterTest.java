@@ -0,0 +1,118 @@
+package org.archive.cdxserver.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.CDXQuery;
+import org.archive.cdxserver.filter.CompiledCDXFilter.Decision;
+import org.archive.cdxserver.writer.RawCDXLine;
+import org.archive.format.cdx.FieldSplitFormat;
+import org.archive.url.UrlSurtRangeComputer.MatchType;
+
+/**
+ * Test for {@link CompiledCDXFilter}.
+ */
+public class CompiledCDXFilterTest extends TestCase {
+
+	static final FieldSplitFormat format = new FieldSplitFormat(
+		"urlkey,timestamp,original,mimetype,statuscode,digest,length");
+
+	static final String[] LINES = {
+		"com,example)/ 20100101000000 http://example.com/ text/html 200 AAAA 100",
+		"com,example)/ 20110101000000 http://example.com/ text/html 404 AAAA 110",
+		"com,example)/ 20120101000000 http://example.com/ alexa/dat 200 BBBB 120",
+		"com,example)/ 20130101000000 http://example.com/ image/png 200 BBBB 130",
+		"com,example)/ 20140101000000 http://example.com/ text/html 302 CCCC 140",
+		"com,example)/ 20150101000000 http://example.com/ text/plain 200 CCCC 150",
+	};
+
+	/**
+	 * @return timestamps (field 1) of lines included, in order
+	 */
+	protected List<String> run(CDXQuery query) {
+		CompiledCDXFilter filter = CompiledCDXFilter.compile(query, format);
+		assertNotNull(filter);
+		RawCDXLine line = new RawCDXLine();
+		List<String> included = new ArrayList<String>();
+		for (String rawLine : LINES) {
+			line.reset(rawLine);
+			Decision decision = filter.apply(line);
+			if (decision == Decision.STOP) {
+				break;
+			}
+			if (decision == Decision.INCLUDE) {
+				included.add(line.getField(1).substring(0, 4));
+			}
+		}
+		return included;
+	}
+
+	protected CDXQuery query(String... filters) {
+		CDXQuery query = new CDXQuery("http://example.com/");
+		query.setFilter(filters);
+		return query;
+	}
+
+	public void testNoConditions() {
+		// alexa/dat is always skipped
+		assertEquals("[2010, 2011, 2013, 2014, 2015]", run(query()).toString());
+	}
+
+	public void testLiteralAndPrefix() {
+		assertEquals("[2010, 2013, 2015]",
+			run(query("statuscode:200")).toString());
+		assertEquals("[2010, 2011, 2014, 2015]",
+			run(query("mimetype:text/.*")).toString());
+		assertEquals("[2010, 2011, 2014]",
+			run(query("mimetype:text/.*", "!mimetype:.*plain")).toString());
+		assertEquals("[2013]", run(query("~mimetype:image")).toString());
+		assertEquals("[2011, 2014]",
+			run(query("statuscode:[34]..")).toString());
+	}
+
+	public void testContainsNotMatchedPastField() {
+		// "AAAA" occurs in the digest field, but not in original
+		assertEquals("[]", run(query("original:.*AAAA.*")).toString());
+		assertEquals("[2010, 2011]", run(query(".*AAAA.*")).toString());
+		assertEquals("[2010, 2011]", run(query("~AAAA")).toString());
+	}
+
+	public void testUnknownFieldMatchesWholeLine() {
+		assertEquals("[2013]", run(query("nosuchfield:.*png.*")).toString());
+	}
+
+	public void testFromTo() {
+		CDXQuery query = query();
+		query.setFrom("2011");
+		query.setTo("2014");
+		assertEquals("[2011, 2013, 2014]", run(query).toString());
+
+		query = query("!statuscode:200");
+		query.setTo("2011");
+		query.setMatchType(MatchType.exact);
+		assertEquals("[2011]", run(query).toString());
+	}
+
+	public void testCollapse() {
+		CDXQuery query = query();
+		query.setCollapse(new String[] { "digest" });
+		assertEquals("[2010, 2013, 2014]", run(query).toString());
+
+		// collapse only sees lines which pass the filters
+		query = query("!statuscode:200");
+		query.setCollapse(new String[] { "digest" });
+		assertEquals("[2011, 2014]", run(query).toString());
+
+		query = query();
+		query.setCollapse(new String[] { "timestamp:3" });
+		assertEquals("[2010]", run(query).toString());
+	}
+
+	public void testUnknownCollapseFieldNotCompiled() {
+		CDXQuery query = query();
+		query.setCollapse(new String[] { "nosuchfield" });
+		assertNull(CompiledCDXFilter.compile(query, format));
+	}
+}
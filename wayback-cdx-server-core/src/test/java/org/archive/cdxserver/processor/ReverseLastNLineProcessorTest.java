@@ -0,0 +1,91 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.cdxserver.processor;
+
+import junit.framework.TestCase;
+
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.FieldSplitFormat;
+import org.easymock.EasyMock;
+
+/**
+ * Test for {@link ReverseLastNLineProcessor}.
+ */
+public class ReverseLastNLineProcessorTest extends TestCase {
+
+	static final FieldSplitFormat format = new FieldSplitFormat("urlkey,timestamp");
+
+	static CDXLine[] lines(int n) {
+		CDXLine[] lines = new CDXLine[n];
+		for (int i = 0; i < n; i++) {
+			lines[i] = new CDXLine("com,example)/ 2014010100000" + i, format);
+		}
+		return lines;
+	}
+
+	/**
+	 * lines written in reverse order come out in ascending order,
+	 * and each counts as written.
+	 */
+	public void testReverse() {
+		CDXLine[] cdxlines = lines(3);
+		BaseProcessor output = EasyMock.createStrictMock(BaseProcessor.class);
+		output.begin();
+		for (CDXLine line : cdxlines) {
+			EasyMock.expect(output.writeLine(line)).andReturn(1);
+		}
+		output.end();
+		EasyMock.replay(output);
+
+		ReverseLastNLineProcessor cut = new ReverseLastNLineProcessor(output, 3);
+		cut.begin();
+		for (int i = cdxlines.length - 1; i >= 0; i--) {
+			assertEquals(1, cut.writeLine(cdxlines[i]));
+		}
+		cut.end();
+
+		EasyMock.verify(output);
+	}
+
+	/**
+	 * buffer grows beyond initial size.
+	 */
+	public void testGrow() {
+		CDXLine[] cdxlines = lines(5);
+		BaseProcessor output = EasyMock.createStrictMock(BaseProcessor.class);
+		output.begin();
+		for (CDXLine line : cdxlines) {
+			EasyMock.expect(output.writeLine(line)).andReturn(1);
+		}
+		output.writeResumeKey("key");
+		output.end();
+		EasyMock.replay(output);
+
+		ReverseLastNLineProcessor cut = new ReverseLastNLineProcessor(output, 2);
+		cut.begin();
+		for (int i = cdxlines.length - 1; i >= 0; i--) {
+			cut.writeLine(cdxlines[i]);
+		}
+		cut.writeResumeKey("key");
+		cut.end();
+
+		EasyMock.verify(output);
+	}
+}
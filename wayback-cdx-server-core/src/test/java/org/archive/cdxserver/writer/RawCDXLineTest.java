@@ -0,0 +1,71 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.cdxserver.writer;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link RawCDXLine}.
+ */
+public class RawCDXLineTest extends TestCase {
+
+	static final String LINE = "com,example)/ 20100101000000 http://example.com/ text/html 200 ABCDEFG - - 1234 5678 a.warc.gz";
+
+	public void testFields() {
+		RawCDXLine line = new RawCDXLine();
+		line.reset(LINE);
+		assertEquals("com,example)/", line.getField(0));
+		assertEquals("a.warc.gz", line.getField(10));
+		assertEquals("text/html", line.getField(3));
+		assertFalse(line.hasField(11));
+		assertEquals("", line.getField(11));
+
+		line.reset("a b");
+		assertEquals("b", line.getField(1));
+		assertFalse(line.hasField(2));
+	}
+
+	public void testCompare() {
+		RawCDXLine line = new RawCDXLine();
+		line.reset(LINE);
+		assertEquals(0, line.compareField(1, "20100101000000"));
+		assertTrue(line.compareField(1, "2010") > 0);
+		assertTrue(line.compareField(1, "2011") < 0);
+		assertTrue(line.fieldStartsWith(1, "2010"));
+		assertFalse(line.fieldStartsWith(1, "2011"));
+		assertTrue(line.fieldEquals(3, "text/html"));
+		assertFalse(line.fieldEquals(3, "text/htm"));
+	}
+
+	public void testWriteFields() {
+		RawCDXLine line = new RawCDXLine();
+		line.reset(LINE);
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		line.writeField(2, pw);
+		pw.write(' ');
+		line.writeField(1, pw);
+		pw.flush();
+		assertEquals("http://example.com/ 20100101000000", sw.toString());
+	}
+}
@@ -60,16 +60,18 @@
       <input id="doQuery" type="submit" value="Search" />
       
       <!-- The Count -->
-      <h1 id="count"><fmt:formatNumber type="number" value="${count}" /></h1>
+      <h1 id="count"><fmt:formatNumber type="number" value="${count}" /><c:if test="${approximate}"> &plusmn; <fmt:formatNumber type="number" value="${countError}" /></c:if></h1>
+      <c:if test="${approximate}"><input type="hidden" name="approx" value="true" /></c:if>
       
       <span class="dateInfo">
           <c:choose>
-          <c:when test="${matchType == 'exact' and not empty url and count == '1'}">
+          <c:when test="${matchType == 'exact' and not empty url and count == '1' and not approximateDates}">
                On <b><fmt:formatDate type="both" pattern="MMMM dd, yyyy HH:mm:ss" timeZone="GMT" value="${first}"/></b>
           </c:when>            
           <c:when test="${matchType == 'exact' and not empty url and count != '0'}">
           Between <b><fmt:formatDate type="both" pattern="MMMM dd, yyyy HH:mm:ss" timeZone="GMT" value="${first}"/></b>
               and <b><fmt:formatDate type="both" pattern="MMMM dd, yyyy HH:mm:ss" timeZone="GMT" value="${last}"/></b>
+              <c:if test="${approximateDates}">(approximately: dates may include captures of neighbouring URLs)</c:if>
           </c:when>  
           </c:choose>          
       </span><br/>
@@ -1,12 +1,10 @@
 package org.archive.wayback.accesscontrol.oracleclient;
 
-import java.util.Date;
 import java.util.logging.Logger;
 
 import org.archive.accesscontrol.AccessControlClient;
 import org.archive.accesscontrol.RobotsUnavailableException;
 import org.archive.accesscontrol.RuleOracleUnavailableException;
-import org.archive.util.ArchiveUtils;
 import org.archive.wayback.accesspoint.AccessPointAdapter;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.util.ObjectFilter;
@@ -106,12 +104,7 @@ public class CustomPolicyOracleFilter extends OracleExclusionFilter {
 	}
 
 	protected String getRawPolicy(CaptureSearchResult capture) throws RobotsUnavailableException, RuleOracleUnavailableException {
-		String url = capture.getOriginalUrl();
-		Date captureDate = capture.getCaptureDate();
-		Date retrievalDate = new Date();
-
-		return client.getPolicy(ArchiveUtils.addImpliedHttpIfNecessary(url),
-			captureDate, retrievalDate, accessGroup);
+		return resolvePolicy(capture.getOriginalUrl(), capture.getCaptureDate());
 	}
 
 	@Override
@@ -7,7 +7,9 @@ public class CustomPolicyOracleFilterFactory extends
 
 	@Override
 	public ExclusionFilter get() {
-		return new CustomPolicyOracleFilter(this.getOracleUrl(),
-			this.getAccessGroup(), this.getProxyHostPort());
+		CustomPolicyOracleFilter filter = new CustomPolicyOracleFilter(
+			this.getOracleUrl(), this.getAccessGroup(), this.getProxyHostPort());
+		filter.setPolicyCache(getPolicyCache());
+		return filter;
 	}
 }
@@ -18,12 +18,15 @@
  */
 package org.archive.wayback.accesscontrol.oracleclient;
 
+import java.util.Collection;
 import java.util.Date;
 
 import org.archive.accesscontrol.AccessControlClient;
 import org.archive.accesscontrol.RobotsUnavailableException;
 import org.archive.accesscontrol.RuleOracleUnavailableException;
+import org.archive.accesscontrol.model.Rule;
 import org.archive.util.ArchiveUtils;
+import org.archive.wayback.accesscontrol.oracleclient.OraclePolicyCache.PolicyRange;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 
@@ -33,6 +36,17 @@ import com.sleepycat.je.tree.SearchResult;
  * {@link ExclusionFilter} implementation that queries remote "Exclusion Oracle"
  * with {@link AccessControlClient} to determine which {@link SearchResult}s can
  * be exposed.
+ * <p>
+ * If both a {@link OraclePolicyCache} and an {@link OracleRuleLister} are
+ * set, the policy of a capture is cached for the capture date range in
+ * which the same rules for the URL apply, and other captures of the URL in
+ * the range (typically, the rest of its timeline) are decided from the
+ * cache. Rules often nest, so the range ends where any rule for the URL
+ * starts or ends. Ranges are not cached if a rule applying to the capture
+ * has an embargo ({@code secondsSinceCapture}). On a cache miss, the rules
+ * are listed in addition to the policy lookup; {@link RuleTreeLister}
+ * keeps them for other captures of the URL.
+ * </p>
  * @author brad
  * @see OracleExclusionFilterFactory
  * @see AccessControlClient
@@ -41,6 +55,8 @@ public class OracleExclusionFilter extends ExclusionFilter {
 
 	protected AccessControlClient client = null;
 	protected String accessGroup = null;
+	protected OraclePolicyCache policyCache = null;
+	protected OracleRuleLister ruleLister = null;
 
 	private final static String POLICY_ALLOW = "allow";
 	private final static String POLICY_BLOCK = "block";
@@ -133,16 +149,88 @@ public class OracleExclusionFilter extends ExclusionFilter {
 		return FILTER_INCLUDE;
 	}
 
-	public int filterObject(CaptureSearchResult o) {
-		String url = o.getOriginalUrl();
-		Date captureDate = o.getCaptureDate();
+	/**
+	 * Get Oracle policy for capture of {@code url} at {@code captureDate},
+	 * from policy cache if possible.
+	 * @param url original URL of the capture
+	 * @param captureDate capture date
+	 * @return policy, or {@code null} if Oracle has none
+	 * @throws RobotsUnavailableException
+	 * @throws RuleOracleUnavailableException
+	 */
+	protected String resolvePolicy(String url, Date captureDate)
+			throws RobotsUnavailableException, RuleOracleUnavailableException {
+		url = ArchiveUtils.addImpliedHttpIfNecessary(url);
 		Date retrievalDate = new Date();
+		if (policyCache == null || ruleLister == null || captureDate == null) {
+			return client.getPolicy(url, captureDate, retrievalDate,
+				accessGroup);
+		}
+		PolicyRange range = policyCache.get(url, accessGroup,
+			captureDate.getTime());
+		if (range != null) {
+			return range.getPolicy();
+		}
+		String policy = client.getPolicy(url, captureDate, retrievalDate,
+			accessGroup);
+		if (policy == null) {
+			return null;
+		}
+		Collection<Rule> rules = ruleLister.getRules(url, accessGroup);
+		if (rules != null) {
+			long[] clipped = clipRange(rules, captureDate.getTime());
+			if (clipped != null) {
+				policyCache.put(url, accessGroup, clipped[0], clipped[1],
+					policy);
+			}
+		}
+		return policy;
+	}
+
+	private static long startOf(Rule rule) {
+		Date start = rule.getCaptureStart();
+		return start != null ? start.getTime() : Long.MIN_VALUE;
+	}
+
+	private static long endOf(Rule rule) {
+		Date end = rule.getCaptureEnd();
+		return end != null ? end.getTime() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Capture date range around {@code captureDate} in which the same
+	 * {@code rules} apply as at {@code captureDate}, and thus the same rule
+	 * decides captures.
+	 * @param rules all rules for the URL
+	 * @param captureDate capture date in milliseconds since epoch
+	 * @return range {@code [start, end]}, or {@code null} if it cannot be
+	 * cached
+	 */
+	static long[] clipRange(Collection<Rule> rules, long captureDate) {
+		long start = Long.MIN_VALUE;
+		long end = Long.MAX_VALUE;
+		for (Rule rule : rules) {
+			long ruleStart = startOf(rule);
+			long ruleEnd = endOf(rule);
+			if (ruleEnd < captureDate) {
+				start = Math.max(start, ruleEnd + 1);
+			} else if (ruleStart > captureDate) {
+				end = Math.min(end, ruleStart - 1);
+			} else if (rule.getSecondsSinceCapture() != null) {
+				// applies to some captures in its range only
+				return null;
+			} else {
+				start = Math.max(start, ruleStart);
+				end = Math.min(end, ruleEnd);
+			}
+		}
+		return new long[] { start, end };
+	}
 
+	public int filterObject(CaptureSearchResult o) {
 		String policy;
 		try {
-			policy = client.getPolicy(
-				ArchiveUtils.addImpliedHttpIfNecessary(url), captureDate,
-				retrievalDate, accessGroup);
+			policy = resolvePolicy(o.getOriginalUrl(), o.getCaptureDate());
 			if (policy != null) {
 				if (policy.equals(POLICY_ALLOW)) {
 					return handleAllow();
@@ -159,4 +247,31 @@ public class OracleExclusionFilter extends ExclusionFilter {
 		}
 		return FILTER_EXCLUDE;
 	}
+
+	public OraclePolicyCache getPolicyCache() {
+		return policyCache;
+	}
+
+	/**
+	 * @param policyCache cache of policies by capture date range,
+	 * {@code null} to ask the Oracle for every capture (default).
+	 * Only used if {@code ruleLister} is set.
+	 */
+	public void setPolicyCache(OraclePolicyCache policyCache) {
+		this.policyCache = policyCache;
+	}
+
+	public OracleRuleLister getRuleLister() {
+		return ruleLister;
+	}
+
+	/**
+	 * @param ruleLister source of all rules for a URL, for clipping
+	 * cached policy ranges. {@code null} disables the policy cache
+	 * (default).
+	 * @see RuleTreeLister
+	 */
+	public void setRuleLister(OracleRuleLister ruleLister) {
+		this.ruleLister = ruleLister;
+	}
 }
@@ -32,17 +32,83 @@ public class OracleExclusionFilterFactory implements ExclusionFilterFactory {
 	private String oracleUrl = null;
 	private String accessGroup = null;
 	private String proxyHostPort = null;
+	private int policyCacheSize = 0;
+	private long policyCacheTTL = 5 * 60 * 1000;
+	private OraclePolicyCache policyCache = null;
+	private OracleRuleLister ruleLister = null;
 
 	public ExclusionFilter get() {
 		OracleExclusionFilter filter = new OracleExclusionFilter(oracleUrl,
 			accessGroup, proxyHostPort);
+		OraclePolicyCache cache = getPolicyCache();
+		if (cache != null) {
+			filter.setPolicyCache(cache);
+			filter.setRuleLister(getRuleLister());
+		}
 		return filter;
 	}
 
+	/**
+	 * @return policy cache shared by filters, {@code null} if disabled
+	 */
+	protected synchronized OraclePolicyCache getPolicyCache() {
+		if (policyCache == null && policyCacheSize > 0) {
+			policyCache = new OraclePolicyCache();
+			policyCache.setMaxUrls(policyCacheSize);
+			policyCache.setTtlMS(policyCacheTTL);
+		}
+		return policyCache;
+	}
+
 	public void shutdown() {
 		// no-op... yet..
 	}
 
+	public int getPolicyCacheSize() {
+		return policyCacheSize;
+	}
+
+	/**
+	 * @param policyCacheSize number of URLs to cache policy ranges for,
+	 * across requests. {@code 0} disables caching (default).
+	 * @see OraclePolicyCache
+	 */
+	public void setPolicyCacheSize(int policyCacheSize) {
+		this.policyCacheSize = policyCacheSize;
+	}
+
+	/**
+	 * @return source of rules shared by filters, a {@link RuleTreeLister}
+	 * for {@code oracleUrl} unless set
+	 */
+	public synchronized OracleRuleLister getRuleLister() {
+		if (ruleLister == null) {
+			ruleLister = new RuleTreeLister(oracleUrl);
+		}
+		return ruleLister;
+	}
+
+	/**
+	 * @param ruleLister source of all rules for a URL, for clipping cached
+	 * policy ranges (default: {@link RuleTreeLister} for {@code oracleUrl})
+	 * @see OracleExclusionFilter#setRuleLister(OracleRuleLister)
+	 */
+	public synchronized void setRuleLister(OracleRuleLister ruleLister) {
+		this.ruleLister = ruleLister;
+	}
+
+	public long getPolicyCacheTTL() {
+		return policyCacheTTL;
+	}
+
+	/**
+	 * @param policyCacheTTL milliseconds cached policy ranges are used
+	 * for (default 5 minutes)
+	 */
+	public void setPolicyCacheTTL(long policyCacheTTL) {
+		this.policyCacheTTL = policyCacheTTL;
+	}
+
 	/**
 	 * @return String URL where Oracle HTTP server is located
 	 */
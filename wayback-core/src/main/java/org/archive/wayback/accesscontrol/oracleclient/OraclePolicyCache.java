@@ -0,0 +1,207 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.oracleclient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of Oracle policies by capture date range, per URL and access group.
+ * <p>
+ * Oracle rules apply to a range of capture dates. Once the policy for one
+ * capture of a URL has been resolved, the capture date range of the rule
+ * that decided it, clipped against other rules for the URL, is stored
+ * here, so that other captures of the same URL within the range are
+ * decided without asking the Oracle again.
+ * </p>
+ * <p>
+ * Entries expire {@code ttlMS} after the first range for the URL was added,
+ * and at most {@code maxUrls} URLs are kept, least recently used ones
+ * being dropped first. An instance is meant to be shared by all
+ * {@link OracleExclusionFilter}s of an {@link OracleExclusionFilterFactory}.
+ * </p>
+ * @see OracleExclusionFilter#setPolicyCache(OraclePolicyCache)
+ */
+public class OraclePolicyCache {
+
+	private int maxUrls = 10000;
+	private long ttlMS = 5 * 60 * 1000;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Capture date range {@code [start, end]}, in milliseconds since epoch,
+	 * with its policy.
+	 */
+	public static class PolicyRange {
+		final long start;
+		final long end;
+		final String policy;
+
+		PolicyRange(long start, long end, String policy) {
+			this.start = start;
+			this.end = end;
+			this.policy = policy;
+		}
+
+		boolean contains(long date) {
+			return start <= date && date <= end;
+		}
+
+		public String getPolicy() {
+			return policy;
+		}
+	}
+
+	private static class Entry {
+		final long expires;
+		final List<PolicyRange> ranges = new ArrayList<PolicyRange>(2);
+
+		Entry(long expires) {
+			this.expires = expires;
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> entries =
+		new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, OraclePolicyCache.Entry> eldest) {
+				return size() > maxUrls;
+			}
+		};
+
+	private static String makeKey(String url, String accessGroup) {
+		return accessGroup == null ? url : url + " " + accessGroup;
+	}
+
+	/**
+	 * @param url URL, as sent to the Oracle
+	 * @param accessGroup access group, may be {@code null}
+	 * @param captureDate capture date in milliseconds since epoch
+	 * @return cached range containing {@code captureDate}, or {@code null}
+	 */
+	public synchronized PolicyRange get(String url, String accessGroup,
+			long captureDate) {
+		String key = makeKey(url, accessGroup);
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			if (entry.expires < System.currentTimeMillis()) {
+				entries.remove(key);
+			} else {
+				for (PolicyRange range : entry.ranges) {
+					if (range.contains(captureDate)) {
+						hits++;
+						return range;
+					}
+				}
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Store {@code policy} for captures of {@code url} in range
+	 * {@code [start, end]}. If the range overlaps a cached range with a
+	 * different policy, all ranges for the URL are dropped, as rules are
+	 * evidently not as simple as assumed.
+	 * @param url URL, as sent to the Oracle
+	 * @param accessGroup access group, may be {@code null}
+	 * @param start first capture date of the range, {@link Long#MIN_VALUE}
+	 * if unbounded
+	 * @param end last capture date of the range, {@link Long#MAX_VALUE}
+	 * if unbounded
+	 * @param policy policy for captures in the range
+	 */
+	public synchronized void put(String url, String accessGroup, long start,
+			long end, String policy) {
+		if (maxUrls <= 0 || start > end) {
+			return;
+		}
+		String key = makeKey(url, accessGroup);
+		Entry entry = entries.get(key);
+		if (entry == null || entry.expires < System.currentTimeMillis()) {
+			entry = new Entry(System.currentTimeMillis() + ttlMS);
+			entries.put(key, entry);
+		}
+		for (PolicyRange range : entry.ranges) {
+			if (range.start <= end && start <= range.end) {
+				if (!equal(range.policy, policy)) {
+					entries.remove(key);
+				}
+				return;
+			}
+		}
+		entry.ranges.add(new PolicyRange(start, end, policy));
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return number of URLs cached
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public int getMaxUrls() {
+		return maxUrls;
+	}
+
+	/**
+	 * @param maxUrls maximum number of URLs to keep ranges for
+	 * (default 10000)
+	 */
+	public void setMaxUrls(int maxUrls) {
+		this.maxUrls = maxUrls;
+	}
+
+	public long getTtlMS() {
+		return ttlMS;
+	}
+
+	/**
+	 * @param ttlMS milliseconds cached ranges are used for
+	 * (default 5 minutes)
+	 */
+	public void setTtlMS(long ttlMS) {
+		this.ttlMS = ttlMS;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.oracleclient;
+
+import java.util.Collection;
+
+import org.archive.accesscontrol.RuleOracleUnavailableException;
+import org.archive.accesscontrol.model.Rule;
+
+/**
+ * Source of all Oracle rules that may apply to a URL, used by
+ * {@link OracleExclusionFilter} to clip cached policy ranges so that they
+ * do not span rules nested within the deciding rule.
+ * @see OracleExclusionFilter#setRuleLister(OracleRuleLister)
+ */
+public interface OracleRuleLister {
+	/**
+	 * @param url URL, as sent to the Oracle
+	 * @param accessGroup access group, may be {@code null}
+	 * @return rules for the URL's SURT and all its prefixes, or {@code null}
+	 * if unknown
+	 * @throws RuleOracleUnavailableException if rules cannot be retrieved
+	 */
+	public Collection<Rule> getRules(String url, String accessGroup)
+			throws RuleOracleUnavailableException;
+}
@@ -0,0 +1,79 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.oracleclient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.archive.accesscontrol.CachingRuleDao;
+import org.archive.accesscontrol.RuleDao;
+import org.archive.accesscontrol.RuleOracleUnavailableException;
+import org.archive.accesscontrol.model.Rule;
+import org.archive.accesscontrol.model.RuleSet;
+import org.archive.util.ArchiveUtils;
+import org.archive.util.SURT;
+
+/**
+ * {@link OracleRuleLister} reading the Oracle's rule tree for the SURT of
+ * the URL, i.e. the rules for the SURT and all its prefixes.
+ * <p>
+ * With the default {@link CachingRuleDao}, trees are kept for a while, so
+ * that listing rules for other captures of the URL does not ask the Oracle
+ * again.
+ * </p>
+ * @see OracleExclusionFilter#setRuleLister(OracleRuleLister)
+ */
+public class RuleTreeLister implements OracleRuleLister {
+
+	protected RuleDao ruleDao;
+
+	/**
+	 * @param oracleUrl String URL prefix for the Oracle HTTP server
+	 */
+	public RuleTreeLister(String oracleUrl) {
+		this(new CachingRuleDao(oracleUrl));
+	}
+
+	/**
+	 * @param ruleDao source of rule trees
+	 */
+	public RuleTreeLister(RuleDao ruleDao) {
+		this.ruleDao = ruleDao;
+	}
+
+	public Collection<Rule> getRules(String url, String accessGroup)
+			throws RuleOracleUnavailableException {
+		String surt = SURT.fromURI(ArchiveUtils.addImpliedHttpIfNecessary(url));
+		RuleSet tree = ruleDao.getRuleTree(surt);
+		if (tree == null) {
+			return null;
+		}
+		List<Rule> rules = new ArrayList<Rule>();
+		for (Rule rule : tree) {
+			// rules without a group apply to all groups
+			String who = rule.getWho();
+			if (who == null || who.isEmpty() || who.equals(accessGroup)) {
+				rules.add(rule);
+			}
+		}
+		return rules;
+	}
+}
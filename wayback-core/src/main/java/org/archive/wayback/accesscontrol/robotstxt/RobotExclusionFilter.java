@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -69,6 +70,7 @@ public class RobotExclusionFilter extends ExclusionFilter {
 	protected final static Pattern WWWN_PATTERN = Pattern.compile(WWWN_REGEX);
 	private LiveWebCache webCache = null;
 	private HashMap<String,RobotRules> rulesCache = null;
+	private RobotRulesCache sharedRulesCache = null;
 	private long maxCacheMS = 0;
 	private String userAgent = null;
 	protected StringBuilder sb = null;
@@ -105,6 +107,22 @@ public class RobotExclusionFilter extends ExclusionFilter {
 		sb = new StringBuilder(100);
 	}
 
+	/**
+	 * Construct a new RobotExclusionFilter that also looks up parsed rules
+	 * in {@code sharedRulesCache}, shared with filters of other requests.
+	 *
+	 * @param webCache LiveWebCache from which documents can be retrieved
+	 * @param userAgent String user agent to use for requests to the live web.
+	 * @param maxCacheMS long number of milliseconds to cache documents in the
+	 *                   LiveWebCache
+	 * @param sharedRulesCache cache of parsed rules, or {@code null}
+	 */
+	public RobotExclusionFilter(LiveWebCache webCache, String userAgent,
+			long maxCacheMS, RobotRulesCache sharedRulesCache) {
+		this(webCache, userAgent, maxCacheMS);
+		this.sharedRulesCache = sharedRulesCache;
+	}
+
 	protected String hostToRobotUrlString(String host, String scheme) {
 		sb.setLength(0);
 		sb.append(scheme);
@@ -186,8 +204,6 @@ public class RobotExclusionFilter extends ExclusionFilter {
 //	}
 	
 	private RobotRules getRules(CaptureSearchResult result) {
-		RobotRules rules = null;
-		RobotRules tmpRules = null;
 		String host;
 		try {
 			host = result.getOriginalHost();
@@ -196,27 +212,77 @@ public class RobotExclusionFilter extends ExclusionFilter {
 			return null;
 		}
 		String scheme = UrlOperations.urlToScheme(result.getOriginalUrl());
-		List<String> urlStrings = searchResultToRobotUrlStrings(host, scheme);
+		final List<String> urlStrings = searchResultToRobotUrlStrings(host, scheme);
+		String firstUrlString = urlStrings.get(0);
+
+		RobotRules rules = rulesCache.get(firstUrlString);
+		if (rules != null) {
+			LOGGER.fine("ROBOT: Cached("+firstUrlString+")");
+			return rules;
+		}
+		try {
+			if (sharedRulesCache != null) {
+				rules = sharedRulesCache.get(firstUrlString,
+					new Callable<RobotRules>() {
+						public RobotRules call() throws Exception {
+							return loadRules(urlStrings);
+						}
+					});
+			} else {
+				rules = loadRules(urlStrings);
+			}
+		} catch (MalformedURLException e) {
+			LOGGER.warning("ROBOT: MalformedURLException("+firstUrlString+")");
+			return null;
+		} catch (IOException e) {
+			LOGGER.warning("ROBOT: IOException("+firstUrlString+"):"+e.getLocalizedMessage());
+			return null;
+		} catch (LiveWebCacheUnavailableException e) {
+			LOGGER.severe("ROBOT: LiveWebCacheUnavailableException("+firstUrlString+")");
+			if (filterGroup != null) {
+				filterGroup.setLiveWebGone();
+			}
+			return null;
+		} catch (LiveWebTimeoutException e) {
+			LOGGER.severe("ROBOT: LiveDocumentTimedOutException("+firstUrlString+")");
+			if (filterGroup != null) {
+				filterGroup.setRobotTimedOut();
+			}
+			return null;
+		} catch (Exception e) {
+			LOGGER.warning("ROBOT: Exception("+firstUrlString+"):"+e);
+			return null;
+		}
+		rulesCache.put(firstUrlString, rules);
+		return rules;
+	}
+
+	/**
+	 * Fetch and parse robots.txt, trying each of {@code urlStrings} in turn.
+	 * @param urlStrings robots.txt URLs to try
+	 * @return rules of the first robots.txt available, or empty rules
+	 * if none is available.
+	 * @throws MalformedURLException
+	 * @throws IOException
+	 * @throws LiveWebCacheUnavailableException
+	 * @throws LiveWebTimeoutException
+	 */
+	protected RobotRules loadRules(List<String> urlStrings)
+			throws IOException, LiveWebCacheUnavailableException,
+			LiveWebTimeoutException {
+		RobotRules rules = null;
+		RobotRules tmpRules = null;
 		Iterator<String> itr = urlStrings.iterator();
-		String firstUrlString = null;
 
-		// loop through them all. As soon as we get a response, store that
-		// in the cache for the FIRST url we tried and return it..
-		// If we get no responses for any of the robot URLs, use "empty" rules,
-		// and record that in the cache, too.
-		
+		// loop through them all. As soon as we get a response, return it;
+		// caller stores it in the cache for the FIRST url we tried.
+		// If we get no responses for any of the robot URLs, use "empty" rules.
+
 		while(rules == null && itr.hasNext()) {
 			String urlString = (String) itr.next();
-			if(firstUrlString == null) {
-				firstUrlString = urlString;
-			}
 			if(rulesCache.containsKey(urlString)) {
 				LOGGER.fine("ROBOT: Cached("+urlString+")");
 				rules = rulesCache.get(urlString);
-				if(!urlString.equals(firstUrlString)) {
-					LOGGER.fine("Adding extra url("+firstUrlString+") for prev cached rules("+urlString+")");
-					rulesCache.put(firstUrlString, rules);
-				}
 			} else {
 				//long start = System.currentTimeMillis();;
 				Resource resource = null;
@@ -238,7 +304,6 @@ public class RobotExclusionFilter extends ExclusionFilter {
 						throw new LiveDocumentNotAvailableException(urlString);
 					}
 					tmpRules.parse(resource);					
-					rulesCache.put(firstUrlString,tmpRules);
 					rules = tmpRules;
 					
 					if (LOGGER.isLoggable(Level.FINE)) {
@@ -248,25 +313,6 @@ public class RobotExclusionFilter extends ExclusionFilter {
 				} catch (LiveDocumentNotAvailableException e) {
 					LOGGER.info("ROBOT: LiveDocumentNotAvailableException("+urlString+")");
 
-				} catch (MalformedURLException e) {
-//					e.printStackTrace();
-					LOGGER.warning("ROBOT: MalformedURLException("+urlString+")");
-					return null;
-				} catch (IOException e) {
-					LOGGER.warning("ROBOT: IOException("+urlString+"):"+e.getLocalizedMessage());
-					return null;
-				} catch (LiveWebCacheUnavailableException e) {
-					LOGGER.severe("ROBOT: LiveWebCacheUnavailableException("+urlString+")");
-					if (filterGroup != null) {
-						filterGroup.setLiveWebGone();
-					}
-					return null;
-				} catch (LiveWebTimeoutException e) {
-					LOGGER.severe("ROBOT: LiveDocumentTimedOutException("+urlString+")");
-					if (filterGroup != null) {
-						filterGroup.setRobotTimedOut();
-					}
-					return null;
 				} finally {
 					if (resource != null) {
 						try {
@@ -284,9 +330,8 @@ public class RobotExclusionFilter extends ExclusionFilter {
 		}
 		if(rules == null) {
 			// special-case, allow empty rules if no longer available.
-			rulesCache.put(firstUrlString,emptyRules);
 			rules = emptyRules;
-			LOGGER.fine("No rules available, using emptyRules for:" + firstUrlString);
+			LOGGER.fine("No rules available, using emptyRules for:" + urlStrings.get(0));
 		}
 		return rules;
 	}
@@ -34,12 +34,13 @@ public class RobotExclusionFilterFactory implements ExclusionFilterFactory {
 	private LiveWebCache webCache = null;
 	private String userAgent = null;
 	private long maxCacheMS = 0;
+	private RobotRulesCache rulesCache = null;
 
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.resourceindex.ExclusionFilterFactory#get()
 	 */
 	public ExclusionFilter get() {
-		return new RobotExclusionFilter(webCache,userAgent,maxCacheMS);
+		return new RobotExclusionFilter(webCache,userAgent,maxCacheMS,rulesCache);
 	}
 
 	/**
@@ -84,6 +85,27 @@ public class RobotExclusionFilterFactory implements ExclusionFilterFactory {
 		this.maxCacheMS = maxCacheMS;
 	}
 
+	/**
+	 * @return the rulesCache
+	 */
+	public RobotRulesCache getRulesCache() {
+		return rulesCache;
+	}
+
+	/**
+	 * Cache of parsed robots.txt rules, used in addition to each filter's
+	 * own cache. Rules are cached by robots.txt URL only, so a cache should
+	 * not be shared by factories with different {@code webCache} or
+	 * {@code userAgent}, and its {@code maxAgeMS} should not exceed
+	 * {@code maxCacheMS}.
+	 * <p>Initial value is {@code null}: robots.txt is parsed for each
+	 * request.</p>
+	 * @param rulesCache the rulesCache to set
+	 */
+	public void setRulesCache(RobotRulesCache rulesCache) {
+		this.rulesCache = rulesCache;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.accesscontrol.ExclusionFilterFactory#shutdown()
 	 */
@@ -24,9 +24,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,6 +64,14 @@ public class RobotRules {
 
 	private LinkedList<String> userAgents = new LinkedList<String>();
 
+	/**
+	 * {@code rules} compiled into {@link PathTrie}, by user-agent.
+	 * Built at the end of {@link #parse(InputStream)}; user-agents sharing
+	 * one rules-list share one trie.
+	 */
+	private HashMap<String, PathTrie> compiledRules =
+		new HashMap<String, PathTrie>();
+
 	/**
 	 * @return true if the robots.txt file looked suspicious, currently meaning
 	 * we found a Disallow rule that was not preceded by a "User-agent:" line
@@ -149,20 +160,22 @@ public class RobotRules {
                 //       we encounter any unknown lines?
             }
         }
+        compile();
     }
-	
-	private boolean blocksPath(String path, String curUA, List<String> uaRules) {
-		for (String disallowedPath : uaRules) {
-			if (disallowedPath.isEmpty()) {
-				// This is for extra caution. Empty path shouldn't be added
-				// to uaRules in the first place.
-				continue;
-			}
-			if (disallowedPath.equals("/") || path.startsWith(disallowedPath)) {
-					return true;
+
+	private void compile() {
+		HashMap<String, PathTrie> compiled = new HashMap<String, PathTrie>();
+		IdentityHashMap<List<String>, PathTrie> tries =
+			new IdentityHashMap<List<String>, PathTrie>();
+		for (Map.Entry<String, ArrayList<String>> entry : rules.entrySet()) {
+			PathTrie trie = tries.get(entry.getValue());
+			if (trie == null) {
+				trie = new PathTrie(entry.getValue());
+				tries.put(entry.getValue(), trie);
 			}
+			compiled.put(entry.getKey(), trie);
 		}
-		return false;
+		compiledRules = compiled;
 	}
 	
 	/**
@@ -175,13 +188,96 @@ public class RobotRules {
 	 */
 	public boolean blocksPathForUA(String path, String ua) {
 		final String lcua = ua.toLowerCase();
-		if (rules.containsKey(lcua)) {
-			return blocksPath(path, ua, rules.get(lcua));
+		PathTrie trie = compiledRules.get(lcua);
+		if (trie == null) {
+			trie = compiledRules.get(GLOBAL_USER_AGENT);
 		}
-		if (rules.containsKey(GLOBAL_USER_AGENT)) {
-			return blocksPath(path, GLOBAL_USER_AGENT,
-					rules.get(GLOBAL_USER_AGENT));			
+		return (trie != null) && trie.blocks(path);
+	}
+
+	/**
+	 * Disallow rules of one user-agent as a character trie, so that
+	 * checking a path costs at most one step per character of the path,
+	 * regardless of the number of rules.
+	 * <p>A path is blocked if any rule is a prefix of it, and rule
+	 * {@code "/"} blocks everything.</p>
+	 */
+	static class PathTrie {
+		private static final char[] NO_LABELS = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private static class Node {
+			// sorted
+			char[] labels = NO_LABELS;
+			Node[] children = NO_CHILDREN;
+			boolean terminal = false;
+
+			Node child(char c) {
+				int i = Arrays.binarySearch(labels, c);
+				return (i < 0) ? null : children[i];
+			}
+
+			Node addChild(char c) {
+				int i = Arrays.binarySearch(labels, c);
+				if (i >= 0) {
+					return children[i];
+				}
+				i = -(i + 1);
+				char[] newLabels = new char[labels.length + 1];
+				Node[] newChildren = new Node[children.length + 1];
+				System.arraycopy(labels, 0, newLabels, 0, i);
+				System.arraycopy(children, 0, newChildren, 0, i);
+				newLabels[i] = c;
+				newChildren[i] = new Node();
+				System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+				System.arraycopy(children, i, newChildren, i + 1,
+					children.length - i);
+				labels = newLabels;
+				children = newChildren;
+				return newChildren[i];
+			}
+		}
+
+		private final Node root = new Node();
+		private boolean blocksAll = false;
+
+		PathTrie(List<String> disallowedPaths) {
+			for (String disallowedPath : disallowedPaths) {
+				if (disallowedPath.isEmpty()) {
+					continue;
+				}
+				if (disallowedPath.equals("/")) {
+					blocksAll = true;
+					continue;
+				}
+				Node node = root;
+				for (int i = 0; i < disallowedPath.length() && !node.terminal; i++) {
+					node = node.addChild(disallowedPath.charAt(i));
+				}
+				if (!node.terminal) {
+					node.terminal = true;
+					// longer rules under this one are redundant
+					node.labels = NO_LABELS;
+					node.children = NO_CHILDREN;
+				}
+			}
+		}
+
+		boolean blocks(String path) {
+			if (blocksAll) {
+				return true;
+			}
+			Node node = root;
+			for (int i = 0; i < path.length(); i++) {
+				node = node.child(path.charAt(i));
+				if (node == null) {
+					return false;
+				}
+				if (node.terminal) {
+					return true;
+				}
+			}
+			return false;
 		}
-		return false;
 	}
 }
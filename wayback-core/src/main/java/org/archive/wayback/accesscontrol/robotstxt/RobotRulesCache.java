@@ -0,0 +1,226 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.robotstxt;
+
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.wayback.webapp.PerfStats;
+
+/**
+ * Thread-safe cache of parsed {@link RobotRules}, bounded in size and age,
+ * for sharing among {@link RobotExclusionFilter}s of all requests.
+ * <p>
+ * Concurrent misses for the same key are coalesced: the first caller loads
+ * the rules in its own thread, and the others wait for its result (or its
+ * exception). Failed loads are not cached.
+ * </p>
+ * <p>
+ * Per-request numbers are recorded in {@link PerfStats} as
+ * {@code RobotsCacheHit}, {@code RobotsCacheMiss} (counts) and
+ * {@code RobotsCacheWait} (time spent waiting for another request's load).
+ * </p>
+ */
+public class RobotRulesCache {
+	private final static int DEFAULT_MAX_SIZE = 10000;
+	private final static long DEFAULT_MAX_AGE_MS = 10 * 60 * 1000L;
+
+	enum PerfStat {
+		RobotsCacheHit,
+		RobotsCacheMiss,
+		RobotsCacheWait;
+	}
+
+	private final ConcurrentHashMap<String, Entry> entries =
+			new ConcurrentHashMap<String, Entry>();
+
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+	private volatile long maxAgeMS = DEFAULT_MAX_AGE_MS;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private static class Entry {
+		final FutureTask<RobotRules> task;
+		// not expiring until loaded
+		volatile long expires = Long.MAX_VALUE;
+
+		Entry(Callable<RobotRules> loader) {
+			task = new FutureTask<RobotRules>(loader);
+		}
+	}
+
+	/**
+	 * Return cached rules for {@code key}, calling {@code loader} to load
+	 * them if not cached, or expired.
+	 * @param key cache key, typically robots.txt URL
+	 * @param loader called in current thread to load rules
+	 * @return rules, as returned by {@code loader}
+	 * @throws Exception exception thrown by {@code loader} (or by the
+	 * concurrent call whose load this call waited for)
+	 */
+	public RobotRules get(String key, Callable<RobotRules> loader)
+			throws Exception {
+		Entry entry = entries.get(key);
+		if ((entry != null) &&
+				(entry.expires < System.currentTimeMillis())) {
+			entries.remove(key, entry);
+			entry = null;
+		}
+		if (entry == null) {
+			Entry created = new Entry(loader);
+			entry = entries.putIfAbsent(key, created);
+			if (entry == null) {
+				misses.incrementAndGet();
+				PerfStats.increment(PerfStat.RobotsCacheMiss);
+				return load(key, created);
+			}
+		}
+		if (entry.task.isDone()) {
+			hits.incrementAndGet();
+			PerfStats.increment(PerfStat.RobotsCacheHit);
+			return await(entry);
+		}
+		waits.incrementAndGet();
+		PerfStats.timeStart(PerfStat.RobotsCacheWait);
+		try {
+			return await(entry);
+		} finally {
+			PerfStats.timeEnd(PerfStat.RobotsCacheWait, false);
+		}
+	}
+
+	private RobotRules load(String key, Entry entry) throws Exception {
+		entry.task.run();
+		try {
+			RobotRules rules = await(entry);
+			entry.expires = System.currentTimeMillis() + maxAgeMS;
+			if (entries.size() > maxSize) {
+				evict();
+			}
+			return rules;
+		} catch (Exception e) {
+			entries.remove(key, entry);
+			throw e;
+		}
+	}
+
+	private RobotRules await(Entry entry) throws Exception {
+		try {
+			return entry.task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for robots.txt");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Drop expired entries, then arbitrary loaded entries until the
+	 * cache is down to 90% of {@code maxSize}.
+	 */
+	private synchronized void evict() {
+		long now = System.currentTimeMillis();
+		int target = maxSize - maxSize / 10;
+		Iterator<Map.Entry<String, Entry>> itr = entries.entrySet().iterator();
+		while (itr.hasNext()) {
+			if (itr.next().getValue().expires < now) {
+				itr.remove();
+				evictions.incrementAndGet();
+			}
+		}
+		itr = entries.entrySet().iterator();
+		while ((entries.size() > target) && itr.hasNext()) {
+			if (itr.next().getValue().task.isDone()) {
+				itr.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxSize maximum number of robots.txt rules held
+	 * (default 10000)
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public long getMaxAgeMS() {
+		return maxAgeMS;
+	}
+
+	/**
+	 * @param maxAgeMS milliseconds rules are reused after loading
+	 * (default 10 minutes)
+	 */
+	public void setMaxAgeMS(long maxAgeMS) {
+		this.maxAgeMS = maxAgeMS;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of lookups which waited for a concurrent load
+	 */
+	public long getWaitCount() {
+		return waits.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+}
@@ -19,7 +19,13 @@
  */
 package org.archive.wayback.accesscontrol.robotstxt.redis;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.archive.wayback.accesscontrol.robotstxt.RobotExclusionFilter;
+import org.archive.wayback.accesscontrol.robotstxt.RobotRules;
+import org.archive.wayback.exception.LiveWebCacheUnavailableException;
+import org.archive.wayback.exception.LiveWebTimeoutException;
 import org.archive.wayback.liveweb.LiveWebCache;
 
 /**
@@ -32,4 +38,18 @@ public class RedisRobotExclusionFilter extends RobotExclusionFilter {
 	public RedisRobotExclusionFilter(LiveWebCache redisCache, String userAgent, boolean cacheFails) {
 		super(redisCache, userAgent, cacheFails ? 1 : 0);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Look up all robots.txt URL variants in one Redis round trip before
+	 * trying them in turn.
+	 */
+	@Override
+	protected RobotRules loadRules(List<String> urlStrings) throws IOException,
+			LiveWebCacheUnavailableException, LiveWebTimeoutException {
+		if ((urlStrings.size() > 1) &&
+				(getWebCache() instanceof SimpleRedisRobotsCache)) {
+			((SimpleRedisRobotsCache)getWebCache()).prefetch(urlStrings);
+		}
+		return super.loadRules(urlStrings);
+	}
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
@@ -18,6 +19,8 @@ import org.archive.util.zip.OpenJDK7GZIPInputStream;
 import org.archive.wayback.exception.LiveWebCacheUnavailableException;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 public class RedisRobotsLogic {
@@ -116,25 +119,7 @@ public class RedisRobotsLogic {
 						return null;
 					}
 					
-					String stringValue = null;
-					
-					try {
-						if (isGzipStream(binValue)) {
-							InputStream stream = new OpenJDK7GZIPInputStream(new ByteArrayInputStream(binValue));
-							stringValue = IOUtils.toString(stream, UTF8);
-						}
-					} catch (IOException e) {
-
-					}
-					
-					if (stringValue == null) {					
-						try {
-							stringValue = new String(binValue, UTF8);
-						} catch (UnsupportedEncodingException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-					}
+					String stringValue = decodeValue(binValue);
 					
 					long ttl = jedis.ttl(key);
 					return new RedisValue(stringValue, ttl);
@@ -147,6 +132,13 @@ public class RedisRobotsLogic {
 		}
 	}
 	
+	/**
+	 * Get values and TTLs of all {@code keys} in one pipelined round trip.
+	 * @param keys keys to look up
+	 * @return values in the same order as {@code keys}, with {@code null}
+	 * for missing keys
+	 * @throws LiveWebCacheUnavailableException
+	 */
 	public List<RedisValue> getValue(final String[] keys) throws LiveWebCacheUnavailableException
 	{
 		long startTime = System.currentTimeMillis();
@@ -158,17 +150,28 @@ public class RedisRobotsLogic {
 			{
 				public List<RedisValue> run(Jedis jedis)
 				{
-					List<String> values = jedis.mget(keys);
+					Pipeline pipeline = jedis.pipelined();
+					List<Response<byte[]>> binValues = new ArrayList<Response<byte[]>>(keys.length);
+					List<Response<Long>> ttls = new ArrayList<Response<Long>>(keys.length);
+					for (String key : keys) {
+						try {
+							binValues.add(pipeline.get(key.getBytes(UTF8)));
+						} catch (UnsupportedEncodingException e) {
+							throw new RuntimeException(e);
+						}
+						ttls.add(pipeline.ttl(key));
+					}
+					pipeline.sync();
+
 					List<RedisValue> redisValues = new LinkedList<RedisValue>();
-					int index = 0;
-					for (String value : values) {
-						if (value == null) {
+					for (int index = 0; index < keys.length; index++) {
+						byte[] binValue = binValues.get(index).get();
+						if (binValue == null) {
 							redisValues.add(null);
 						} else {
-							long ttl = jedis.ttl(keys[index]);
-							redisValues.add(new RedisValue(value, ttl));
+							long ttl = ttls.get(index).get();
+							redisValues.add(new RedisValue(decodeValue(binValue), ttl));
 						}
-						index++;
 					}
 					return redisValues;
 				}
@@ -242,6 +245,30 @@ public class RedisRobotsLogic {
 		});
 	}
 	
+	/**
+	 * Append {@code keys} to {@code list} in one pipelined round trip,
+	 * unless {@code list} already has {@code maxSize} or more entries.
+	 * @param list list key
+	 * @param keys keys to append
+	 * @param maxSize maximum list length
+	 */
+	public void pushKeys(final String list, final List<String> keys, final int maxSize)
+	{
+		this.runJedisCmd(new JedisRunnerVoid()
+		{
+			public void run(Jedis jedis)
+			{
+				if (jedis.llen(list) < maxSize) {
+					Pipeline pipeline = jedis.pipelined();
+					for (String key : keys) {
+						pipeline.rpush(list, key);
+					}
+					pipeline.sync();
+				}
+			}
+		});
+	}
+	
 	public KeyRedisValue popKeyAndGet(final String list) throws LiveWebCacheUnavailableException
 	{
 		return this.runJedisCmd(new JedisRunner<KeyRedisValue>()
@@ -282,6 +309,33 @@ public class RedisRobotsLogic {
 		redisConn.appendLogInfo(info);		
 	}
 	
+	/**
+	 * Decode stored value, which may be gzip compressed.
+	 * @param binValue stored bytes
+	 * @return value as String
+	 */
+	static String decodeValue(byte[] binValue) {
+		String stringValue = null;
+		
+		try {
+			if (isGzipStream(binValue)) {
+				InputStream stream = new OpenJDK7GZIPInputStream(new ByteArrayInputStream(binValue));
+				stringValue = IOUtils.toString(stream, UTF8);
+			}
+		} catch (IOException e) {
+
+		}
+		
+		if (stringValue == null) {					
+			try {
+				stringValue = new String(binValue, UTF8);
+			} catch (UnsupportedEncodingException e) {
+				LOGGER.log(Level.SEVERE, "UTF-8 decoding unsupported", e);
+			}
+		}
+		return stringValue;
+	}
+	
 	public static boolean isGzipStream(byte[] bytes) {
 		if (bytes.length < 2) {
 			return false;
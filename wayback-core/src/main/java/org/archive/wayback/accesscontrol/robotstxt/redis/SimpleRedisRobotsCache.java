@@ -3,6 +3,10 @@ package org.archive.wayback.accesscontrol.robotstxt.redis;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,6 +61,40 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 	final static String UPDATE_QUEUE_KEY = "robots_update_queue";
 	final static int MAX_UPDATE_QUEUE_SIZE = 50000;
 
+	/* NEAR CACHE */
+	private long nearCacheMS = 0;
+	private int nearCacheSize = 10000;
+
+	/**
+	 * Redis values recently read, by URL. {@code value} is {@code null}
+	 * if the URL was found missing in Redis.
+	 */
+	static class NearEntry
+	{
+		final RedisValue value;
+		final long expires;
+		volatile boolean refreshQueued = false;
+		
+		NearEntry(RedisValue value, long expires)
+		{
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+	
+	/**
+	 * Least-recently-used map of {@link NearEntry}, capped at
+	 * {@code nearCacheSize}. Guarded by its own monitor.
+	 */
+	@SuppressWarnings("serial")
+	private final LinkedHashMap<String, NearEntry> nearCache =
+			new LinkedHashMap<String, NearEntry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, NearEntry> eldest) {
+			return size() > nearCacheSize;
+		}
+	};
+
 	
 	@Override
 	public Resource getCachedResource(URL urlURL, long maxCacheMS,
@@ -67,17 +105,26 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 		String url = urlURL.toExternalForm();
 		
 		RedisValue value = null;
+		NearEntry near = getNear(url);
 		
-		try {
-			PerfStats.timeStart(PerfStat.RobotsRedis);
+		if (near != null) {
+			value = near.value;
+		} else {
+			try {
+				PerfStats.timeStart(PerfStat.RobotsRedis);
+				
+				if (redisCmds != null) {
+					value = redisCmds.getValue(url);
+				}
+			} catch (LiveWebCacheUnavailableException lw) {
+				value = null;
+			} finally {
+				PerfStats.timeEnd(PerfStat.RobotsRedis);
+			}
 			
-			if (redisCmds != null) {
-				value = redisCmds.getValue(url);
+			if (value != null) {
+				near = putNear(url, value);
 			}
-		} catch (LiveWebCacheUnavailableException lw) {
-			value = null;
-		} finally {
-			PerfStats.timeEnd(PerfStat.RobotsRedis);
 		}
 		
 		// Use the old liveweb cache, if provided
@@ -96,10 +143,13 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 			
 		} else {
 			
-			if (isExpired(value, url, 0)) {
+			if (((near == null) || !near.refreshQueued) && isExpired(value, url, 0)) {
 				PerfStats.timeStart(PerfStat.RobotsRedis);				
 				redisCmds.pushKey(UPDATE_QUEUE_KEY, url, MAX_UPDATE_QUEUE_SIZE);
 				PerfStats.timeEnd(PerfStat.RobotsRedis);
+				if (near != null) {
+					near.refreshQueued = true;
+				}
 			}
 			
 			String currentRobots = value.value;
@@ -114,6 +164,85 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 		}
 	}
 
+	/**
+	 * Look up all {@code urls} in Redis in one pipelined round trip, and
+	 * queue expired ones for refresh in one more, so that following
+	 * {@link #getCachedResource(URL, long, boolean)} calls for them are
+	 * answered from the near-cache.
+	 * <p>Does nothing if the near-cache is disabled.</p>
+	 * @param urls robots.txt URLs
+	 */
+	public void prefetch(List<String> urls) {
+		if ((redisCmds == null) || (nearCacheMS <= 0)) {
+			return;
+		}
+		
+		List<String> missing = new ArrayList<String>(urls.size());
+		for (String url : urls) {
+			if ((getNear(url) == null) && !missing.contains(url)) {
+				missing.add(url);
+			}
+		}
+		if (missing.isEmpty()) {
+			return;
+		}
+		
+		List<RedisValue> values = null;
+		
+		try {
+			PerfStats.timeStart(PerfStat.RobotsRedis);
+			values = redisCmds.getValue(missing.toArray(new String[missing.size()]));
+		} catch (LiveWebCacheUnavailableException lw) {
+			return;
+		} finally {
+			PerfStats.timeEnd(PerfStat.RobotsRedis);
+		}
+		
+		List<String> expired = new ArrayList<String>();
+		
+		for (int i = 0; i < missing.size(); i++) {
+			String url = missing.get(i);
+			RedisValue value = values.get(i);
+			NearEntry near = putNear(url, value);
+			if ((value != null) && isExpired(value, url, 0)) {
+				near.refreshQueued = true;
+				expired.add(url);
+			}
+		}
+		
+		if (!expired.isEmpty()) {
+			PerfStats.timeStart(PerfStat.RobotsRedis);
+			redisCmds.pushKeys(UPDATE_QUEUE_KEY, expired, MAX_UPDATE_QUEUE_SIZE);
+			PerfStats.timeEnd(PerfStat.RobotsRedis);
+		}
+	}
+	
+	protected NearEntry getNear(String url) {
+		if (nearCacheMS <= 0) {
+			return null;
+		}
+		synchronized (nearCache) {
+			NearEntry near = nearCache.get(url);
+			if ((near != null) && (near.expires < System.currentTimeMillis())) {
+				nearCache.remove(url);
+				near = null;
+			}
+			return near;
+		}
+	}
+	
+	protected NearEntry putNear(String url, RedisValue value) {
+		long now = System.currentTimeMillis();
+		NearEntry near = new NearEntry(value, now + nearCacheMS);
+		if (nearCacheMS <= 0) {
+			return near;
+		}
+		synchronized (nearCache) {
+			nearCache.put(url, near);
+		}
+		return near;
+	}
+
 	@Override
 	public void shutdown() {
 		if (redisCmds != null) {
@@ -291,6 +420,9 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 		final RedisValue value = new RedisValue((ttlOnly ? null : newRedisValue), newTTL);
 		
 		redisCmds.updateValue(url, value, gzipRobots);
+		synchronized (nearCache) {
+			nearCache.remove(url);
+		}
 	}
 	
 	protected boolean isValidRobots(String value) {
@@ -357,6 +489,33 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 		this.liveweb = liveweb;
 	}
 
+	public long getNearCacheMS() {
+		return nearCacheMS;
+	}
+
+	/**
+	 * Milliseconds values read from Redis are reused without another
+	 * Redis lookup. Set to {@code 0} to disable the near-cache (and
+	 * {@link #prefetch(List)}). Default is {@code 0} (disabled).
+	 * @param nearCacheMS
+	 */
+	public void setNearCacheMS(long nearCacheMS) {
+		this.nearCacheMS = nearCacheMS;
+	}
+
+	public int getNearCacheSize() {
+		return nearCacheSize;
+	}
+
+	/**
+	 * Maximum number of URLs held in the near-cache; the least recently
+	 * used URL is evicted beyond this. Default is 10000.
+	 * @param nearCacheSize
+	 */
+	public void setNearCacheSize(int nearCacheSize) {
+		this.nearCacheSize = nearCacheSize;
+	}
+
 	public boolean isGzipRobots() {
 		return gzipRobots;
 	}
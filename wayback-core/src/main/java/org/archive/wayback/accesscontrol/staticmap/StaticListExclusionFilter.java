@@ -7,6 +7,7 @@ import org.apache.commons.httpclient.URIException;
 import org.archive.util.SURT;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.surt.SURTPrefixSet;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.util.ObjectFilter;
 import org.archive.wayback.util.url.AggressiveUrlCanonicalizer;
@@ -19,7 +20,7 @@ public class StaticListExclusionFilter extends ExclusionFilter {
 	private boolean lastCheckedExcluded = false;
 	private boolean notifiedSeen = false;
 	private boolean notifiedPassed = false;
-	TreeSet<String> exclusions = null;
+	SURTPrefixSet exclusions = null;
 	UrlCanonicalizer canonicalizer = new AggressiveUrlCanonicalizer();
         
 	/**
@@ -27,13 +28,20 @@ public class StaticListExclusionFilter extends ExclusionFilter {
          * @param canonicalizer
 	 */
 	public StaticListExclusionFilter(TreeSet<String> exclusions, UrlCanonicalizer canonicalizer) {
+		this(SURTPrefixSet.build(exclusions), canonicalizer);
+	}
+
+	/**
+	 * @param exclusions SURT prefixes that are blocked
+	 * @param canonicalizer
+	 */
+	public StaticListExclusionFilter(SURTPrefixSet exclusions, UrlCanonicalizer canonicalizer) {
 		this.exclusions = exclusions;
 		this.canonicalizer = canonicalizer;
 	}
 	
 	protected boolean isExcluded(String surt) {
-	    String possiblePrefix = exclusions.floor(surt);
-	    return (possiblePrefix != null && surt.startsWith(possiblePrefix));
+		return exclusions.longestPrefixOf(surt) >= 0;
 	}
 
 	/* (non-Javadoc)
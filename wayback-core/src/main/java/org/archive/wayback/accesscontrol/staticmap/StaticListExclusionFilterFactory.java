@@ -2,6 +2,9 @@ package org.archive.wayback.accesscontrol.staticmap;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.logging.Logger;
 
@@ -10,6 +13,7 @@ import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.accesscontrol.ExclusionFilterFactory;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
+import org.archive.wayback.surt.SURTPrefixSet;
 import org.archive.wayback.util.flatfile.FlatFile;
 import org.archive.wayback.util.url.AggressiveUrlCanonicalizer;
 
@@ -18,7 +22,10 @@ public class StaticListExclusionFilterFactory implements ExclusionFilterFactory
         Logger.getLogger(StaticMapExclusionFilterFactory.class.getName());
 
 	private int checkInterval = 0;
-	private TreeSet<String> excludes = null;
+	/**
+	 * replaced as a whole when the file is reloaded, never modified.
+	 */
+	private volatile SURTPrefixSet excludes = null;
 	private File file = null;
 	long lastUpdated = 0;
 	UrlCanonicalizer canonicalizer = new AggressiveUrlCanonicalizer();
@@ -50,7 +57,7 @@ public class StaticListExclusionFilterFactory implements ExclusionFilterFactory
 		}
 		LOGGER.info("Reloading exclusion file " + file.getAbsolutePath());
 		try {
-			excludes = loadFile(file.getAbsolutePath());
+			excludes = loadPrefixSet(file.getAbsolutePath());
 			lastUpdated = currentMod;
 			LOGGER.info("Reload " + file.getAbsolutePath() + " OK");
 		} catch(IOException e) {
@@ -63,6 +70,26 @@ public class StaticListExclusionFilterFactory implements ExclusionFilterFactory
 	}
 	protected TreeSet<String> loadFile(String path) throws IOException {
 		TreeSet<String> excludes = new TreeSet<String>();
+		readKeys(path, excludes);
+		return excludes;
+	}
+
+	/**
+	 * Load exclusion file into a {@link SURTPrefixSet}.
+	 * @param path exclusion file
+	 * @return new SURTPrefixSet
+	 * @throws IOException if the exclusion file could not be read.
+	 */
+	protected SURTPrefixSet loadPrefixSet(String path) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		readKeys(path, keys);
+		SURTPrefixSet set = SURTPrefixSet.build(keys);
+		LOGGER.info("EXCLUSION-MAP: loaded " + set.size() + " SURTs");
+		return set;
+	}
+
+	private void readKeys(String path, Collection<String> excludes)
+			throws IOException {
 		FlatFile ff = new FlatFile(path);
 		CloseableIterator<String> itr = ff.getSequentialIterator();
 		while(itr.hasNext()) {
@@ -78,7 +105,6 @@ public class StaticListExclusionFilterFactory implements ExclusionFilterFactory
 			excludes.add(surt);
 		}
 		itr.close();
-		return excludes;
 	}
 	
 	/**
@@ -86,10 +112,11 @@ public class StaticListExclusionFilterFactory implements ExclusionFilterFactory
 	 * 						exclusion file. 
 	 */
 	public ExclusionFilter get() {
-		if(excludes == null) {
+		SURTPrefixSet set = excludes;
+		if(set == null) {
 			return null;
 		}
-		return new StaticListExclusionFilter(excludes, canonicalizer); 
+		return new StaticListExclusionFilter(set, canonicalizer); 
 	}
 	
 	private synchronized void startUpdateThread() {
@@ -20,6 +20,7 @@
 package org.archive.wayback.accesscontrol.staticmap;
 
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.httpclient.URIException;
@@ -27,6 +28,7 @@ import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.resourceindex.filterfactory.ExclusionCaptureFilterGroup;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
+import org.archive.wayback.surt.SURTPrefixSet;
 import org.archive.wayback.surt.SURTTokenizer;
 import org.archive.wayback.util.ObjectFilter;
 
@@ -44,13 +46,21 @@ public class StaticMapExclusionFilter extends ExclusionFilter {
 	private boolean lastCheckedExcluded = false;
 	private boolean notifiedSeen = false;
 	private boolean notifiedPassed = false;
-	Map<String,Object> exclusionMap = null;
+	SURTPrefixSet exclusions = null;
 	UrlCanonicalizer canonicalizer = null;
 	/**
 	 * @param map where each String key is a SURT that is blocked.
 	 */
 	public StaticMapExclusionFilter(Map<String,Object> map, UrlCanonicalizer canonicalizer) {
-		exclusionMap = map;
+		this(SURTPrefixSet.build(map.keySet()), canonicalizer);
+	}
+
+	/**
+	 * @param exclusions SURTs that are blocked
+	 * @param canonicalizer
+	 */
+	public StaticMapExclusionFilter(SURTPrefixSet exclusions, UrlCanonicalizer canonicalizer) {
+		this.exclusions = exclusions;
 		this.canonicalizer = canonicalizer;
 	}
 	
@@ -64,24 +74,41 @@ public class StaticMapExclusionFilter extends ExclusionFilter {
 		}
 	}
 	
+	/**
+	 * Blocks {@code url} if any of the search strings {@link SURTTokenizer}
+	 * would produce for it is in the exclusion set. Instead of probing
+	 * each search string, walks the exclusion keys that are prefixes of the
+	 * SURT, and checks if each is one of the search strings.
+	 * @param url URL key of the capture
+	 * @return {@code true} if excluded
+	 */
 	protected boolean isExcluded(String url) {
+		String surt;
 		try {
-			SURTTokenizer st = new SURTTokenizer(url, canonicalizer.isSurtForm());
-			while(true) {
-				String nextSearch = st.nextSearch();
-				if(nextSearch == null) {
-					break;
-				}
-				LOGGER.fine("EXCLUSION-MAP:Checking " + nextSearch);
-				if(exclusionMap.containsKey(nextSearch)) {
-					LOGGER.info("EXCLUSION-MAP: EXCLUDED: \"" + nextSearch + "\" (" + url +")");
-					return true;
-				}
+			if (url.startsWith("(") || canonicalizer.isSurtForm()) {
+				surt = url;
+			} else {
+				surt = SURTTokenizer.exactKey(url);
 			}
 		} catch (URIException e) {
 			LOGGER.warning(e.toString());
 			return true;
 		}
+		if (exclusions.contains(surt, '\t')) {
+			LOGGER.info("EXCLUSION-MAP: EXCLUDED: \"" + surt + "\t\" (" + url +")");
+			return true;
+		}
+		int length = exclusions.nextPrefixOf(surt, 0);
+		while (length >= 0) {
+			if (SURTTokenizer.isSearchPrefix(surt, length)) {
+				if (LOGGER.isLoggable(Level.INFO)) {
+					LOGGER.info("EXCLUSION-MAP: EXCLUDED: \"" +
+							surt.substring(0, length) + "\" (" + url +")");
+				}
+				return true;
+			}
+			length = exclusions.nextPrefixOf(surt, length + 1);
+		}
 		return false;
 	}
 	/* (non-Javadoc)
@@ -21,7 +21,10 @@ package org.archive.wayback.accesscontrol.staticmap;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -30,6 +33,7 @@ import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.accesscontrol.ExclusionFilterFactory;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
+import org.archive.wayback.surt.SURTPrefixSet;
 import org.archive.wayback.surt.SURTTokenizer;
 import org.archive.wayback.util.flatfile.FlatFile;
 import org.archive.wayback.util.url.AggressiveUrlCanonicalizer;
@@ -45,7 +49,10 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
         Logger.getLogger(StaticMapExclusionFilterFactory.class.getName());
 
 	private int checkInterval = 0;
-	private Map<String,Object> currentMap = null;
+	/**
+	 * replaced as a whole when the file is reloaded, never modified.
+	 */
+	private volatile SURTPrefixSet currentSet = null;
 	private File file = null;
 	
 	long lastUpdated = 0;
@@ -87,19 +94,44 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
 		}
 		LOGGER.info("Reloading exclusion file " + file.getAbsolutePath());
 		try {
-			currentMap = loadFile(file.getAbsolutePath());
+			currentSet = loadPrefixSet(file.getAbsolutePath());
 			lastUpdated = currentMod;
 			LOGGER.info("Reload " + file.getAbsolutePath() + " OK");
 		} catch(IOException e) {
 			lastUpdated = -1;
-			currentMap = null;
+			currentSet = null;
 			e.printStackTrace();
 			LOGGER.severe("Reload " + file.getAbsolutePath() + " FAILED:" + 
 					e.getLocalizedMessage());
 		}
 	}
 	protected Map<String,Object> loadFile(String path) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		readKeys(path, keys);
 		Map<String, Object> newMap = new HashMap<String, Object>();
+		for (String key : keys) {
+			newMap.put(key, null);
+		}
+		return newMap;
+	}
+
+	/**
+	 * Load exclusion file into a {@link SURTPrefixSet}. Only the set is kept,
+	 * so memory used by the keys read can be reclaimed right away.
+	 * @param path exclusion file
+	 * @return new SURTPrefixSet
+	 * @throws IOException if the exclusion file could not be read.
+	 */
+	protected SURTPrefixSet loadPrefixSet(String path) throws IOException {
+		List<String> keys = new ArrayList<String>();
+		readKeys(path, keys);
+		SURTPrefixSet set = SURTPrefixSet.build(keys);
+		LOGGER.info("EXCLUSION-MAP: loaded " + set.size() + " SURTs");
+		return set;
+	}
+
+	private void readKeys(String path, Collection<String> keys)
+			throws IOException {
 		FlatFile ff = new FlatFile(path);
 		CloseableIterator<String> itr = ff.getSequentialIterator();
 		while(itr.hasNext()) {
@@ -126,10 +158,9 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
 			}
 
 			LOGGER.fine("EXCLUSION-MAP: adding " + surt);
-			newMap.put(surt, null);
+			keys.add(surt);
 		}
 		itr.close();
-		return newMap;
 	}
 	
 	/**
@@ -137,10 +168,11 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
 	 * 						exclusion file. 
 	 */
 	public ExclusionFilter get() {
-		if(currentMap == null) {
+		SURTPrefixSet set = currentSet;
+		if(set == null) {
 			return null;
 		}
-		return new StaticMapExclusionFilter(currentMap, canonicalizer); 
+		return new StaticMapExclusionFilter(set, canonicalizer); 
 	}
 	
 	private synchronized void startUpdateThread() {
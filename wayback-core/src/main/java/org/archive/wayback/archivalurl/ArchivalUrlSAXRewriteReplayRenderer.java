@@ -35,9 +35,11 @@ import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.WaybackException;
+import org.archive.wayback.replay.BoundedReplayOutputStream;
 import org.archive.wayback.replay.HttpHeaderOperation;
 import org.archive.wayback.replay.HttpHeaderProcessor;
 import org.archive.wayback.replay.JSPExecutor;
+import org.archive.wayback.replay.RewrittenPageCache;
 import org.archive.wayback.replay.TagMagix;
 import org.archive.wayback.replay.TextReplayRenderer;
 import org.archive.wayback.replay.charset.CharsetDetector;
@@ -67,6 +69,9 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 	private CharsetDetector charsetDetector = new StandardCharsetDetector();
 	private ContextResultURIConverterFactory converterFactory = null;
 	private boolean rewriteHttpsOnly;
+	private int streamingBufferSize = 0;
+	private boolean spillToDisk = false;
+	private RewrittenPageCache pageCache = null;
 	
 	private final static String OUTPUT_CHARSET = "utf-8";
 	private static int FRAMESET_SCAN_BUFFER_SIZE = 16 * 1024;
@@ -79,6 +84,26 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 		ArchivalUrlSAXRewriteReplayRenderer.frameWrappingRenderer = frameWrappingRenderer;
 	}
 
+	/**
+	 * JSPExecutor remembering if any JSP was run, as pages with JSP output
+	 * are specific to the request, and must not be cached.
+	 */
+	private static class TrackingJSPExecutor extends JSPExecutor {
+		private boolean executed = false;
+
+		TrackingJSPExecutor(HttpServletRequest httpRequest,
+				HttpServletResponse httpResponse, UIResults uiResults) {
+			super(httpRequest, httpResponse, uiResults);
+		}
+
+		@Override
+		public String jspToString(String jspPath) throws ServletException,
+				IOException {
+			executed = true;
+			return super.jspToString(jspPath);
+		}
+	}
+
 	/**
 	 * @param httpHeaderProcessor which should process HTTP headers
 	 */
@@ -104,6 +129,21 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 			CaptureSearchResults results) throws ServletException, IOException,
 			WaybackException {
 
+		String cacheKey = null;
+		if (pageCache != null) {
+			cacheKey = RewrittenPageCache.makeKey(result, uriConverter,
+				wbRequest, getClass().getName() + "@" +
+						System.identityHashCode(this) + " " + rewriteHttpsOnly);
+			RewrittenPageCache.Page cached = (cacheKey != null ? pageCache
+				.get(cacheKey) : null);
+			if (cached != null) {
+				HttpHeaderOperation.copyHTTPMessageHeader(httpHeadersResource,
+					httpResponse);
+				cached.send(httpResponse);
+				return;
+			}
+		}
+
 		Resource decodedResource = TextReplayRenderer.decodeResource(httpHeadersResource, payloadResource);
 
 		// The URL of the page, for resolving in-page relative URLs: 
@@ -178,7 +218,26 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 //		JSPExecutor jspExec = new JSPExecutor(uriConverter, httpRequest,
 //				httpResponse, wbRequest, results, result, decodedResource);
 		UIResults uiResults = new UIResults(wbRequest, uriConverter, results, result, decodedResource);
-		JSPExecutor jspExec = new JSPExecutor(httpRequest, httpResponse, uiResults);
+		TrackingJSPExecutor jspExec = new TrackingJSPExecutor(httpRequest,
+			httpResponse, uiResults);
+
+		headers.put(TextReplayRenderer.GUESSED_CHARSET_HEADER, charSet);
+
+		if (streamingBufferSize > 0) {
+			BoundedReplayOutputStream out = new BoundedReplayOutputStream(
+				headers, httpResponse, OUTPUT_CHARSET, streamingBufferSize,
+				spillToDisk);
+			try {
+				context.setOutputCharset(OUTPUT_CHARSET);
+				context.setOutputStream(out);
+				context.setJspExec(jspExec);
+				parse(context, decodedResource, charSet);
+				out.finish();
+			} finally {
+				out.close();
+			}
+			return;
+		}
 
 		// To make sure we get the length, we have to buffer it all up...
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -187,8 +246,33 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 		context.setOutputStream(baos);
 		context.setJspExec(jspExec);
 
+		parse(context, decodedResource, charSet);
+
+		// At this point, baos contains the utf-8 encoded bytes of our result:
+		byte[] utf8Bytes = baos.toByteArray();
+		// set the corrected length:
+		headers.put(HttpHeaderOperation.HTTP_LENGTH_HEADER, 
+				String.valueOf(utf8Bytes.length));
+
+		if ((cacheKey != null) && !jspExec.executed) {
+			pageCache.put(cacheKey, new RewrittenPageCache.Page(headers,
+				utf8Bytes, OUTPUT_CHARSET));
+		}
+
+		// send back the headers:
+		HttpHeaderOperation.sendHeaders(headers, httpResponse);
+		// Tomcat will always send a charset... It's trying to be smarter than
+		// we are. If the original page didn't include a "charset" as part of
+		// the "Content-Type" HTTP header, then Tomcat will use the default..
+		// who knows what that is, or what that will do to the page..
+		// let's try explicitly setting it to what we used:
+		httpResponse.setCharacterEncoding(OUTPUT_CHARSET);
+		httpResponse.getOutputStream().write(utf8Bytes);
+	}
 
-		// and finally, parse, using the special lexer that knows how to
+	private void parse(ReplayParseContext context, Resource decodedResource,
+			String charSet) throws IOException {
+		// parse, using the special lexer that knows how to
 		// handle javascript blocks containing unescaped HTML entities:
 		Page lexPage = new Page(decodedResource,charSet);
 		Lexer lexer = new Lexer(lexPage);
@@ -205,23 +289,6 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 			e.printStackTrace();
 			throw new IOException(e.getMessage());
 		}
-
-		// At this point, baos contains the utf-8 encoded bytes of our result:
-		byte[] utf8Bytes = baos.toByteArray();
-		// set the corrected length:
-		headers.put(HttpHeaderOperation.HTTP_LENGTH_HEADER, 
-				String.valueOf(utf8Bytes.length));
-		headers.put(TextReplayRenderer.GUESSED_CHARSET_HEADER, charSet);
-
-		// send back the headers:
-		HttpHeaderOperation.sendHeaders(headers, httpResponse);
-		// Tomcat will always send a charset... It's trying to be smarter than
-		// we are. If the original page didn't include a "charset" as part of
-		// the "Content-Type" HTTP header, then Tomcat will use the default..
-		// who knows what that is, or what that will do to the page..
-		// let's try explicitly setting it to what we used:
-		httpResponse.setCharacterEncoding(OUTPUT_CHARSET);
-		httpResponse.getOutputStream().write(utf8Bytes);
 	}
 	
 	protected ContextResultURIConverterFactory createConverterFactory(ResultURIConverter uriConverter, HttpServletRequest httpRequest, WaybackRequest wbRequest)
@@ -285,4 +352,52 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 	public void setRewriteHttpsOnly(boolean rewriteHttpsOnly) {
 		this.rewriteHttpsOnly = rewriteHttpsOnly;
 	}
+
+	public int getStreamingBufferSize() {
+		return streamingBufferSize;
+	}
+
+	/**
+	 * If positive, rewritten content is written through a buffer of
+	 * this many bytes, instead of being held in memory in full.
+	 * Pages larger than the buffer are sent without
+	 * {@code Content-Length} (chunked), or spilled to a temporary file
+	 * if {@code spillToDisk} is set.
+	 * Default is {@code 0}, which buffers whole page.
+	 * @param streamingBufferSize buffer size in bytes
+	 * @see BoundedReplayOutputStream
+	 */
+	public void setStreamingBufferSize(int streamingBufferSize) {
+		this.streamingBufferSize = streamingBufferSize;
+	}
+
+	public boolean isSpillToDisk() {
+		return spillToDisk;
+	}
+
+	/**
+	 * Only effective with {@code streamingBufferSize}.
+	 * If set to {@code true}, pages larger than the buffer are written
+	 * to a temporary file so that {@code Content-Length} can still be sent.
+	 * @param spillToDisk {@code true} to spill large pages to disk
+	 */
+	public void setSpillToDisk(boolean spillToDisk) {
+		this.spillToDisk = spillToDisk;
+	}
+
+	public RewrittenPageCache getPageCache() {
+		return pageCache;
+	}
+
+	/**
+	 * Cache for rewritten pages. Pages are only added to the cache when
+	 * {@code streamingBufferSize} is {@code 0}, and no JSP insert (such as
+	 * the delegator's {@code jspInsertPath} or {@code headInsertJsp}) was
+	 * run for them.
+	 * Default is {@code null} (no caching).
+	 * @param pageCache cache, may be shared with other renderers
+	 */
+	public void setPageCache(RewrittenPageCache pageCache) {
+		this.pageCache = pageCache;
+	}
 }
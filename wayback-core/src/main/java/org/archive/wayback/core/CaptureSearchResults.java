@@ -49,6 +49,12 @@ public class CaptureSearchResults extends SearchResults implements
 	 */
 	private String lastResultTimestamp;
 
+	/**
+	 * {@code true} while captures are in ascending timestamp order, so
+	 * first and last timestamps are those of the first and last capture
+	 */
+	private boolean inOrder = true;
+
 	/**
 	 * @return Returns the 14-digit String Timestamp of the first Capture in
 	 *         this set of SearchResult objects
@@ -105,6 +111,15 @@ public class CaptureSearchResults extends SearchResults implements
 				(lastResultTimestamp.compareTo(resultDate) < 0)) {
 			lastResultTimestamp = resultDate;
 		}
+		if (inOrder && !results.isEmpty()) {
+			if (append) {
+				inOrder = results.getLast().getCaptureTimestamp()
+					.compareTo(resultDate) <= 0;
+			} else {
+				inOrder = results.getFirst().getCaptureTimestamp()
+					.compareTo(resultDate) >= 0;
+			}
+		}
 
 		if (append) {
 
@@ -140,6 +155,63 @@ public class CaptureSearchResults extends SearchResults implements
 		return results.size();
 	}
 
+	/**
+	 * @return first capture, or {@code null} if empty
+	 */
+	public CaptureSearchResult getFirstResult() {
+		return results.peekFirst();
+	}
+
+	/**
+	 * @return last capture, or {@code null} if empty
+	 */
+	public CaptureSearchResult getLastResult() {
+		return results.peekLast();
+	}
+
+	/**
+	 * Remove the first capture, unlinking it from its neighbour.
+	 * First and last timestamps are updated to those of the remaining
+	 * captures; without rescanning them if captures were added in
+	 * timestamp order.
+	 * @return removed capture, or {@code null} if empty
+	 */
+	public CaptureSearchResult removeFirstResult() {
+		CaptureSearchResult removed = results.pollFirst();
+		if (removed == null) {
+			return null;
+		}
+		removed.removeFromList();
+		if (results.isEmpty()) {
+			firstResultTimestamp = null;
+			lastResultTimestamp = null;
+			inOrder = true;
+			return removed;
+		}
+		if (inOrder) {
+			firstResultTimestamp = results.getFirst().getCaptureTimestamp();
+			return removed;
+		}
+		String removedDate = removed.getCaptureTimestamp();
+		if (removedDate.equals(firstResultTimestamp) ||
+				removedDate.equals(lastResultTimestamp)) {
+			firstResultTimestamp = null;
+			lastResultTimestamp = null;
+			for (CaptureSearchResult result : results) {
+				String resultDate = result.getCaptureTimestamp();
+				if ((firstResultTimestamp == null) ||
+						(firstResultTimestamp.compareTo(resultDate) > 0)) {
+					firstResultTimestamp = resultDate;
+				}
+				if ((lastResultTimestamp == null) ||
+						(lastResultTimestamp.compareTo(resultDate) < 0)) {
+					lastResultTimestamp = resultDate;
+				}
+			}
+		}
+		return removed;
+	}
+
 	/**
 	 * @param closest the closest to set
 	 */
@@ -0,0 +1,441 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.core;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.archive.wayback.util.url.UrlOperations;
+
+/**
+ * View of one capture held in a {@link ColumnarCaptureSearchResults}.
+ * <p>
+ * Has no state of its own: getters read the columns, and setters write
+ * them. Fields without a column (custom properties, HTTP-duplicate
+ * annotations) are held in a per-capture map, created on first use.
+ * Previous/next links can only point to captures in the same results.
+ * </p>
+ */
+public class ColumnarCaptureSearchResult extends CaptureSearchResult {
+
+	private final ColumnarCaptureSearchResults results;
+	private int slot;
+
+	ColumnarCaptureSearchResult(ColumnarCaptureSearchResults results, int slot) {
+		super(false);
+		this.results = results;
+		this.slot = slot;
+	}
+
+	void moveTo(int slot) {
+		this.slot = slot;
+	}
+
+	int getSlot() {
+		return slot;
+	}
+
+	boolean isViewOf(ColumnarCaptureSearchResults results) {
+		return this.results == results;
+	}
+
+	@Override
+	protected void ensureMap() {
+		// map-based fields live in the results' extras
+	}
+
+	@Override
+	protected String get(String key) {
+		Map<String, String> map = results.extrasFor(slot, false);
+		return (map == null) ? null : map.get(key);
+	}
+
+	@Override
+	protected void put(String key, String value) {
+		results.extrasFor(slot, true).put(key, value);
+	}
+
+	@Override
+	protected void putBoolean(String key, boolean value) {
+		if (value) {
+			put(key, RESULT_TRUE_VALUE);
+		} else {
+			Map<String, String> map = results.extrasFor(slot, false);
+			if (map != null) {
+				map.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @return a new map of this capture's column values and other fields,
+	 * in the same form as a map-based {@link CaptureSearchResult}. Changes
+	 * to the map are not reflected in this capture.
+	 */
+	@Override
+	public Map<String, String> toCanonicalStringMap() {
+		HashMap<String, String> map = new HashMap<String, String>();
+		Map<String, String> extras = results.extrasFor(slot, false);
+		if (extras != null) {
+			map.putAll(extras);
+		}
+		putIfSet(map, CAPTURE_URL_KEY, getUrlKey());
+		putIfSet(map, CAPTURE_CAPTURE_TIMESTAMP, getCaptureTimestamp());
+		putIfSet(map, CAPTURE_ORIGINAL_URL, getOriginalUrl());
+		putIfSet(map, CAPTURE_MIME_TYPE, getMimeType());
+		putIfSet(map, CAPTURE_HTTP_CODE, getHttpCode());
+		putIfSet(map, CAPTURE_DIGEST, getDigest());
+		putIfSet(map, CAPTURE_REDIRECT_URL, getRedirectUrl());
+		putIfSet(map, CAPTURE_FILE, getFile());
+		putIfSet(map, CAPTURE_ROBOT_FLAGS, getRobotFlags());
+		putIfSet(map, CAPTURE_ORACLE_POLICY, getOraclePolicy());
+		if (getOffset() >= 0) {
+			map.put(CAPTURE_OFFSET, String.valueOf(getOffset()));
+		}
+		if (getCompressedLength() >= 0) {
+			map.put(CAPTURE_COMPRESSED_LENGTH,
+				String.valueOf(getCompressedLength()));
+		}
+		if (isClosest()) {
+			map.put(CAPTURE_CLOSEST_INDICATOR, CAPTURE_CLOSEST_VALUE);
+		}
+		if (isRevisitDigest()) {
+			map.put(CAPTURE_DUPLICATE_ANNOTATION, CAPTURE_DUPLICATE_DIGEST);
+			CaptureSearchResult payload = getDuplicatePayload();
+			if (payload != null) {
+				putIfSet(map, CAPTURE_DUPLICATE_STORED_TS,
+					payload.getCaptureTimestamp());
+				putIfSet(map, CAPTURE_DUPLICATE_PAYLOAD_FILE, payload.getFile());
+				map.put(CAPTURE_DUPLICATE_PAYLOAD_OFFSET,
+					String.valueOf(payload.getOffset()));
+				if (payload.getCompressedLength() > 0) {
+					map.put(CAPTURE_DUPLICATE_PAYLOAD_COMPRESSED_LENGTH,
+						String.valueOf(payload.getCompressedLength()));
+				}
+			}
+		}
+		return map;
+	}
+
+	private static void putIfSet(Map<String, String> map, String key,
+			String value) {
+		if (value != null) {
+			map.put(key, value);
+		}
+	}
+
+	@Override
+	public void fromCanonicalStringMap(Map<String, String> canonical) {
+		CaptureSearchResult parsed = new CaptureSearchResult();
+		parsed.fromCanonicalStringMap(canonical);
+		results.copyFields(slot, parsed);
+	}
+
+	@Override
+	public String getUrlKey() {
+		return results.getString(results.urlKeys(), slot);
+	}
+
+	@Override
+	public void setUrlKey(String urlKey) {
+		results.setString(results.urlKeys(), slot, urlKey);
+	}
+
+	@Override
+	public String getCaptureTimestamp() {
+		return results.getTimestamp(slot);
+	}
+
+	@Override
+	public void setCaptureTimestamp(String timestamp) {
+		results.setTimestamp(slot, timestamp);
+	}
+
+	@Override
+	public Date getCaptureDate() {
+		return tsToDate(getCaptureTimestamp());
+	}
+
+	@Override
+	public void setCaptureDate(Date date) {
+		setCaptureTimestamp(dateToTS(date));
+	}
+
+	@Override
+	public String getOriginalUrl() {
+		return results.getString(results.originalUrls(), slot);
+	}
+
+	@Override
+	public void setOriginalUrl(String originalUrl) {
+		results.setString(results.originalUrls(), slot, originalUrl);
+	}
+
+	@Override
+	public String getOriginalHost() {
+		return UrlOperations.urlToHost(getOriginalUrl());
+	}
+
+	@Override
+	public void setOriginalHost(String originalHost) {
+
+	}
+
+	@Override
+	public String getMimeType() {
+		return results.getString(results.mimeTypes(), slot);
+	}
+
+	@Override
+	public void setMimeType(String mimeType) {
+		results.setString(results.mimeTypes(), slot, mimeType);
+	}
+
+	@Override
+	public String getHttpCode() {
+		return results.getHttpCode(slot);
+	}
+
+	@Override
+	public void setHttpCode(String httpCode) {
+		results.setHttpCode(slot, httpCode);
+	}
+
+	@Override
+	public String getDigest() {
+		return results.getString(results.digests(), slot);
+	}
+
+	@Override
+	public void setDigest(String digest) {
+		results.setString(results.digests(), slot, digest);
+	}
+
+	@Override
+	public String getRedirectUrl() {
+		return results.getString(results.redirectUrls(), slot);
+	}
+
+	@Override
+	public void setRedirectUrl(String url) {
+		results.setString(results.redirectUrls(), slot, url);
+	}
+
+	@Override
+	public String getFile() {
+		return results.getString(results.files(), slot);
+	}
+
+	@Override
+	public void setFile(String file) {
+		results.setString(results.files(), slot, file);
+	}
+
+	@Override
+	public String getRobotFlags() {
+		return results.getString(results.robotFlags(), slot);
+	}
+
+	@Override
+	public void setRobotFlags(String robotFlags) {
+		results.setString(results.robotFlags(), slot, robotFlags);
+	}
+
+	@Override
+	public String getOraclePolicy() {
+		return results.getString(results.oraclePolicies(), slot);
+	}
+
+	@Override
+	public void setOraclePolicy(String policy) {
+		results.setString(results.oraclePolicies(), slot, policy);
+	}
+
+	@Override
+	public long getOffset() {
+		return results.getOffset(slot);
+	}
+
+	@Override
+	public void setOffset(long offset) {
+		results.setOffset(slot, offset);
+	}
+
+	@Override
+	public long getCompressedLength() {
+		return results.getLength(slot);
+	}
+
+	@Override
+	public void setCompressedLength(long length) {
+		results.setLength(slot, length);
+	}
+
+	@Override
+	public boolean isClosest() {
+		return results.getFlag(slot, ColumnarCaptureSearchResults.FLAG_CLOSEST);
+	}
+
+	@Override
+	public void setClosest(boolean value) {
+		results.setFlag(slot, ColumnarCaptureSearchResults.FLAG_CLOSEST, value);
+	}
+
+	@Override
+	public void flagDuplicateDigest() {
+		results.setFlag(slot, ColumnarCaptureSearchResults.FLAG_REVISIT, true);
+	}
+
+	@Override
+	public void flagDuplicateDigest(CaptureSearchResult payload) {
+		flagDuplicateDigest();
+		results.setPayload(slot, payload);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public void flagDuplicateDigest(Date storedDate) {
+		flagDuplicateDigest();
+		super.flagDuplicateDigest(storedDate);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public void flagDuplicateDigest(String storedTS) {
+		flagDuplicateDigest();
+		super.flagDuplicateDigest(storedTS);
+	}
+
+	@Override
+	public boolean isRevisitDigest() {
+		return results.getFlag(slot, ColumnarCaptureSearchResults.FLAG_REVISIT);
+	}
+
+	@Override
+	public CaptureSearchResult getDuplicatePayload() {
+		return results.getPayload(slot);
+	}
+
+	@Override
+	public String getDuplicatePayloadFile() {
+		CaptureSearchResult payload = getDuplicatePayload();
+		return (payload != null) ? payload.getFile() : super.getDuplicatePayloadFile();
+	}
+
+	@Override
+	public Long getDuplicatePayloadOffset() {
+		CaptureSearchResult payload = getDuplicatePayload();
+		return (payload != null) ? payload.getOffset() : super.getDuplicatePayloadOffset();
+	}
+
+	@Override
+	public long getDuplicatePayloadCompressedLength() {
+		CaptureSearchResult payload = getDuplicatePayload();
+		return (payload != null) ? payload.getCompressedLength()
+				: super.getDuplicatePayloadCompressedLength();
+	}
+
+	@Override
+	public Date getDuplicateDigestStoredDate() {
+		CaptureSearchResult payload = getDuplicatePayload();
+		return (payload != null) ? payload.getCaptureDate()
+				: super.getDuplicateDigestStoredDate();
+	}
+
+	@Override
+	public String getDuplicateDigestStoredTimestamp() {
+		CaptureSearchResult payload = getDuplicatePayload();
+		return (payload != null) ? payload.getCaptureTimestamp()
+				: super.getDuplicateDigestStoredTimestamp();
+	}
+
+	@Override
+	public void flagDuplicateHTTP(Date storedDate) {
+		results.setFlag(slot, ColumnarCaptureSearchResults.FLAG_REVISIT, false);
+		super.flagDuplicateHTTP(storedDate);
+	}
+
+	@Override
+	public void flagDuplicateHTTP(String storedTS) {
+		results.setFlag(slot, ColumnarCaptureSearchResults.FLAG_REVISIT, false);
+		super.flagDuplicateHTTP(storedTS);
+	}
+
+	@Override
+	public void setPrevResult(CaptureSearchResult result) {
+		results.setPrev(slot, slotOf(result));
+	}
+
+	@Override
+	public CaptureSearchResult getPrevResult() {
+		return results.view(results.getPrev(slot));
+	}
+
+	@Override
+	public void setNextResult(CaptureSearchResult result) {
+		results.setNext(slot, slotOf(result));
+	}
+
+	@Override
+	public CaptureSearchResult getNextResult() {
+		return results.view(results.getNext(slot));
+	}
+
+	@Override
+	public void removeFromList() {
+		int prev = results.getPrev(slot);
+		int next = results.getNext(slot);
+		if (next != ColumnarCaptureSearchResults.NONE) {
+			results.setPrev(next, prev);
+		}
+		if (prev != ColumnarCaptureSearchResults.NONE) {
+			results.setNext(prev, next);
+		}
+		results.setPrev(slot, ColumnarCaptureSearchResults.NONE);
+		results.setNext(slot, ColumnarCaptureSearchResults.NONE);
+	}
+
+	private int slotOf(CaptureSearchResult result) {
+		if (result == null) {
+			return ColumnarCaptureSearchResults.NONE;
+		}
+		if ((result instanceof ColumnarCaptureSearchResult) &&
+				((ColumnarCaptureSearchResult) result).isViewOf(results)) {
+			return ((ColumnarCaptureSearchResult) result).getSlot();
+		}
+		throw new IllegalArgumentException(
+				"Can only link to captures in the same results");
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ColumnarCaptureSearchResult)) {
+			return false;
+		}
+		ColumnarCaptureSearchResult other = (ColumnarCaptureSearchResult) obj;
+		return (results == other.results) && (slot == other.slot);
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(results) * 31 + slot;
+	}
+}
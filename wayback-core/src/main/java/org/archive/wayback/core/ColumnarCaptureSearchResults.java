@@ -0,0 +1,852 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.core;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.archive.wayback.util.Timestamp;
+
+/**
+ * {@link CaptureSearchResults} which stores captures column-wise in
+ * primitive arrays, instead of as one {@link CaptureSearchResult} object
+ * (with its own String fields) per capture.
+ * <p>
+ * Timestamps are packed into {@code long}s, status codes into
+ * {@code short}s, and the String fields are dictionary-encoded per
+ * instance, so repeated values (mimetype, filename, original URL...) are
+ * held once. Captures are exposed as lightweight
+ * {@link ColumnarCaptureSearchResult} views, which read and write the
+ * columns. A view is created the first time a capture is accessed through
+ * {@link #iterator()}, {@link #getResults()} and the like, and the same
+ * view is returned after that; so rendering a timeline, which iterates and
+ * keeps captures, still creates one (small) view per capture.
+ * {@link #flyweightIterator()} and the indexed accessors visit captures
+ * without creating any views, for callers which do not keep them.
+ * </p>
+ * <p>
+ * Captures added here are copied: changes to the added object afterwards
+ * are not seen. Use the view returned by
+ * {@link #addCapture(CaptureSearchResult, boolean)} instead.
+ * </p>
+ * <p>
+ * Not thread safe.
+ * </p>
+ */
+public class ColumnarCaptureSearchResults extends CaptureSearchResults {
+
+	/** no capture, in slot link columns */
+	static final int NONE = Integer.MIN_VALUE;
+
+	static final byte FLAG_CLOSEST = 1;
+	static final byte FLAG_REVISIT = 2;
+
+	static final short STATUS_NULL = -1;
+	static final short STATUS_EMPTY = -2;
+	static final short STATUS_OTHER = -3;
+
+	static final byte TS_NULL = -1;
+	static final byte TS_OTHER = -2;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Keys of {@link CaptureSearchResult#toCanonicalStringMap()} which are
+	 * held in (or, for the original host, derived from) a column, and so are
+	 * not copied to the per-capture map.
+	 */
+	static final Set<String> COLUMN_KEYS = new HashSet<String>(Arrays.asList(
+			CaptureSearchResult.CAPTURE_URL_KEY,
+			CaptureSearchResult.CAPTURE_CAPTURE_TIMESTAMP,
+			CaptureSearchResult.CAPTURE_ORIGINAL_URL,
+			CaptureSearchResult.CAPTURE_ORIGINAL_HOST,
+			CaptureSearchResult.CAPTURE_MIME_TYPE,
+			CaptureSearchResult.CAPTURE_HTTP_CODE,
+			CaptureSearchResult.CAPTURE_DIGEST,
+			CaptureSearchResult.CAPTURE_REDIRECT_URL,
+			CaptureSearchResult.CAPTURE_FILE,
+			CaptureSearchResult.CAPTURE_ROBOT_FLAGS,
+			CaptureSearchResult.CAPTURE_ORACLE_POLICY,
+			CaptureSearchResult.CAPTURE_OFFSET,
+			CaptureSearchResult.CAPTURE_COMPRESSED_LENGTH,
+			CaptureSearchResult.CAPTURE_CLOSEST_INDICATOR));
+
+	/**
+	 * Per-instance String dictionary.
+	 */
+	static class Dictionary {
+		private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+		private final ArrayList<String> values = new ArrayList<String>();
+
+		int encode(String value) {
+			if (value == null) {
+				return -1;
+			}
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = values.size();
+				values.add(value);
+				codes.put(value, code);
+			}
+			return code;
+		}
+
+		String decode(int code) {
+			return (code < 0) ? null : values.get(code);
+		}
+
+		int size() {
+			return values.size();
+		}
+	}
+
+	private final Dictionary dictionary = new Dictionary();
+
+	// Captures are stored by slot: the first capture added is slot 0, later
+	// appends take increasing slots and prepends decreasing ones, so a slot
+	// never moves relative to the others. Slot s is held at array position
+	// (s - origin).
+	private int origin = 0;
+	private int firstSlot = 0;
+	private int endSlot = 0;
+	private int capacity = 0;
+
+	private long[] timestamps;
+	private byte[] timestampLengths;
+	private int[] urlKeys;
+	private int[] originalUrls;
+	private int[] mimeTypes;
+	private short[] httpCodes;
+	private int[] digests;
+	private int[] redirectUrls;
+	private int[] files;
+	private int[] robotFlags;
+	private int[] oraclePolicies;
+	private long[] offsets;
+	private long[] lengths;
+	private byte[] flags;
+	private int[] payloads;
+	private int[] prevs;
+	private int[] nexts;
+	private ColumnarCaptureSearchResult[] views;
+
+	// rarely used values, by slot:
+	private HashMap<Integer, String> otherTimestamps = null;
+	private HashMap<Integer, String> otherHttpCodes = null;
+	private HashMap<Integer, CaptureSearchResult> externalPayloads = null;
+	private HashMap<Integer, HashMap<String, String>> extras = null;
+
+	private String firstResultTimestamp = null;
+	private String lastResultTimestamp = null;
+	private boolean inOrder = true;
+	// slots below this were removed, and may still be linked to
+	private int removedEnd = NONE;
+
+	private LinkedList<CaptureSearchResult> resultList = null;
+
+	private int pos(int slot) {
+		return slot - origin;
+	}
+
+	private Object grow(Object src, int newCapacity, int shift) {
+		Object dst = Array.newInstance(src.getClass().getComponentType(),
+				newCapacity);
+		System.arraycopy(src, pos(firstSlot), dst, pos(firstSlot) + shift,
+				endSlot - firstSlot);
+		return dst;
+	}
+
+	private void allocate() {
+		capacity = INITIAL_CAPACITY;
+		// leave room to prepend as well as append:
+		origin = -(capacity / 2);
+		timestamps = new long[capacity];
+		timestampLengths = new byte[capacity];
+		urlKeys = new int[capacity];
+		originalUrls = new int[capacity];
+		mimeTypes = new int[capacity];
+		httpCodes = new short[capacity];
+		digests = new int[capacity];
+		redirectUrls = new int[capacity];
+		files = new int[capacity];
+		robotFlags = new int[capacity];
+		oraclePolicies = new int[capacity];
+		offsets = new long[capacity];
+		lengths = new long[capacity];
+		flags = new byte[capacity];
+		payloads = new int[capacity];
+		prevs = new int[capacity];
+		nexts = new int[capacity];
+	}
+
+	private void ensureRoom(boolean append) {
+		if (capacity == 0) {
+			allocate();
+			return;
+		}
+		boolean full = append ? (pos(endSlot) == capacity)
+				: (pos(firstSlot) == 0);
+		if (!full) {
+			return;
+		}
+		if (append && (pos(firstSlot) >= capacity / 2)) {
+			// removed captures left room at the start: move captures
+			// there instead of growing
+			for (int s = firstSlot; s < endSlot; s++) {
+				int payload = payloads[pos(s)];
+				if ((payload != NONE) && (payload < firstSlot)) {
+					unlinkRemoved(payload, s);
+				}
+			}
+			dropRemoved(otherTimestamps);
+			dropRemoved(otherHttpCodes);
+			dropRemoved(externalPayloads);
+			dropRemoved(extras);
+			removedEnd = NONE;
+			relocate(capacity, -pos(firstSlot));
+			return;
+		}
+		int newCapacity = capacity * 2;
+		// add the new room where it is needed
+		relocate(newCapacity, append ? 0 : (newCapacity - capacity));
+	}
+
+	private void dropRemoved(Map<Integer, ?> bySlot) {
+		if (bySlot != null) {
+			Iterator<Integer> slots = bySlot.keySet().iterator();
+			while (slots.hasNext()) {
+				if (slots.next() < firstSlot) {
+					slots.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Move captures to new arrays of {@code newCapacity}, {@code shift}
+	 * positions later.
+	 */
+	private void relocate(int newCapacity, int shift) {
+		timestamps = (long[]) grow(timestamps, newCapacity, shift);
+		timestampLengths = (byte[]) grow(timestampLengths, newCapacity, shift);
+		urlKeys = (int[]) grow(urlKeys, newCapacity, shift);
+		originalUrls = (int[]) grow(originalUrls, newCapacity, shift);
+		mimeTypes = (int[]) grow(mimeTypes, newCapacity, shift);
+		httpCodes = (short[]) grow(httpCodes, newCapacity, shift);
+		digests = (int[]) grow(digests, newCapacity, shift);
+		redirectUrls = (int[]) grow(redirectUrls, newCapacity, shift);
+		files = (int[]) grow(files, newCapacity, shift);
+		robotFlags = (int[]) grow(robotFlags, newCapacity, shift);
+		oraclePolicies = (int[]) grow(oraclePolicies, newCapacity, shift);
+		offsets = (long[]) grow(offsets, newCapacity, shift);
+		lengths = (long[]) grow(lengths, newCapacity, shift);
+		flags = (byte[]) grow(flags, newCapacity, shift);
+		payloads = (int[]) grow(payloads, newCapacity, shift);
+		prevs = (int[]) grow(prevs, newCapacity, shift);
+		nexts = (int[]) grow(nexts, newCapacity, shift);
+		if (views != null) {
+			views = (ColumnarCaptureSearchResult[]) grow(views, newCapacity,
+					shift);
+		}
+		origin -= shift;
+		capacity = newCapacity;
+	}
+
+	/**
+	 * Copy a capture into this results, at either the beginning or the end.
+	 * @param result capture to copy
+	 * @param append {@code true} to add at the end
+	 * @return view of the copy
+	 */
+	public CaptureSearchResult addCapture(CaptureSearchResult result,
+			boolean append) {
+		ensureRoom(append);
+		int slot;
+		if (isEmpty()) {
+			slot = firstSlot;
+			endSlot = firstSlot + 1;
+		} else if (append) {
+			slot = endSlot++;
+		} else {
+			slot = --firstSlot;
+			if (slot < removedEnd) {
+				unlinkRemoved(slot, firstSlot + 1);
+			}
+		}
+		int p = pos(slot);
+
+		copyFields(slot, result);
+
+		if (size() == 1) {
+			prevs[p] = NONE;
+			nexts[p] = NONE;
+		} else if (append) {
+			int last = slot - 1;
+			prevs[p] = last;
+			nexts[p] = NONE;
+			nexts[pos(last)] = slot;
+		} else {
+			int first = slot + 1;
+			prevs[p] = NONE;
+			nexts[p] = first;
+			prevs[pos(first)] = slot;
+		}
+		if (views != null) {
+			views[p] = null;
+		}
+		resultList = null;
+
+		String timestamp = getTimestamp(slot);
+		if (inOrder && (size() > 1)) {
+			String neighbour = getTimestamp(append ? slot - 1 : slot + 1);
+			inOrder = (timestamp != null) && (neighbour != null) &&
+					(append ? neighbour.compareTo(timestamp) <= 0
+							: neighbour.compareTo(timestamp) >= 0);
+		}
+		if (timestamp != null) {
+			if ((firstResultTimestamp == null) ||
+					(firstResultTimestamp.compareTo(timestamp) > 0)) {
+				firstResultTimestamp = timestamp;
+			}
+			if ((lastResultTimestamp == null) ||
+					(lastResultTimestamp.compareTo(timestamp) < 0)) {
+				lastResultTimestamp = timestamp;
+			}
+		}
+		return view(slot);
+	}
+
+	/**
+	 * Set all fields of the capture at {@code slot} from {@code result}.
+	 * Fields with a column are only stored in the column.
+	 */
+	void copyFields(int slot, CaptureSearchResult result) {
+		int p = pos(slot);
+		if (extras != null) {
+			extras.remove(slot);
+		}
+		Map<String, String> map = result.toCanonicalStringMap();
+		if (map != null) {
+			for (Map.Entry<String, String> e : map.entrySet()) {
+				if (!COLUMN_KEYS.contains(e.getKey())) {
+					extrasFor(slot, true).put(e.getKey(), e.getValue());
+				}
+			}
+		}
+
+		setTimestamp(slot, result.getCaptureTimestamp());
+		urlKeys[p] = dictionary.encode(result.getUrlKey());
+		originalUrls[p] = dictionary.encode(result.getOriginalUrl());
+		mimeTypes[p] = dictionary.encode(result.getMimeType());
+		setHttpCode(slot, result.getHttpCode());
+		digests[p] = dictionary.encode(result.getDigest());
+		redirectUrls[p] = dictionary.encode(result.getRedirectUrl());
+		files[p] = dictionary.encode(result.getFile());
+		robotFlags[p] = dictionary.encode(result.getRobotFlags());
+		oraclePolicies[p] = dictionary.encode(result.getOraclePolicy());
+		offsets[p] = safeLong(result, true);
+		lengths[p] = safeLong(result, false);
+		flags[p] = 0;
+		setPayload(slot, null);
+		setFlag(slot, FLAG_CLOSEST, result.isClosest());
+		if (result.isRevisitDigest()) {
+			setFlag(slot, FLAG_REVISIT, true);
+			setPayload(slot, result.getDuplicatePayload());
+		}
+	}
+
+	private static long safeLong(CaptureSearchResult result, boolean offset) {
+		try {
+			return offset ? result.getOffset() : result.getCompressedLength();
+		} catch (NumberFormatException e) {
+			// map-based result without the field
+			return -1;
+		}
+	}
+
+	@Override
+	public void addSearchResult(CaptureSearchResult result) {
+		addCapture(result, true);
+	}
+
+	@Override
+	public void addSearchResult(CaptureSearchResult result, boolean append) {
+		addCapture(result, append);
+	}
+
+	@Override
+	public String getFirstResultTimestamp() {
+		return firstResultTimestamp;
+	}
+
+	@Override
+	public Date getFirstResultDate() {
+		return new Timestamp(firstResultTimestamp).getDate();
+	}
+
+	@Override
+	public String getLastResultTimestamp() {
+		return lastResultTimestamp;
+	}
+
+	@Override
+	public Date getLastResultDate() {
+		return new Timestamp(lastResultTimestamp).getDate();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return endSlot == firstSlot;
+	}
+
+	@Override
+	public int size() {
+		return endSlot - firstSlot;
+	}
+
+	@Override
+	public CaptureSearchResult getFirstResult() {
+		return isEmpty() ? null : view(firstSlot);
+	}
+
+	@Override
+	public CaptureSearchResult getLastResult() {
+		return isEmpty() ? null : view(endSlot - 1);
+	}
+
+	/**
+	 * Remove the first capture by advancing past its slot. The returned
+	 * view reads the columns, and is only valid until more captures are
+	 * added.
+	 */
+	@Override
+	public CaptureSearchResult removeFirstResult() {
+		if (isEmpty()) {
+			return null;
+		}
+		ColumnarCaptureSearchResult removed = view(firstSlot);
+		removed.removeFromList();
+		String removedDate = getTimestamp(firstSlot);
+		firstSlot++;
+		removedEnd = Math.max(removedEnd, firstSlot);
+		resultList = null;
+		if (isEmpty()) {
+			firstResultTimestamp = null;
+			lastResultTimestamp = null;
+			inOrder = true;
+		} else if (inOrder) {
+			firstResultTimestamp = getTimestamp(firstSlot);
+		} else if ((removedDate == null) ||
+				removedDate.equals(firstResultTimestamp) ||
+				removedDate.equals(lastResultTimestamp)) {
+			firstResultTimestamp = null;
+			lastResultTimestamp = null;
+			for (int slot = firstSlot; slot < endSlot; slot++) {
+				String date = getTimestamp(slot);
+				if (date == null) {
+					continue;
+				}
+				if ((firstResultTimestamp == null) ||
+						(firstResultTimestamp.compareTo(date) > 0)) {
+					firstResultTimestamp = date;
+				}
+				if ((lastResultTimestamp == null) ||
+						(lastResultTimestamp.compareTo(date) < 0)) {
+					lastResultTimestamp = date;
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Before a removed {@code slot} is reused or dropped, make captures from
+	 * {@code from} on which have it as duplicate payload hold a copy of it
+	 * instead.
+	 */
+	private void unlinkRemoved(int slot, int from) {
+		CaptureSearchResult copy = null;
+		for (int s = from; s < endSlot; s++) {
+			if (payloads[pos(s)] == slot) {
+				if (copy == null) {
+					copy = new ColumnarCaptureSearchResults().addCapture(
+						view(slot), true);
+				}
+				setPayload(s, copy);
+			}
+		}
+	}
+
+	/**
+	 * @param index position of the capture, from 0
+	 * @return view of the capture
+	 */
+	public CaptureSearchResult get(int index) {
+		return view(slotAt(index));
+	}
+
+	/**
+	 * Unlike the base class, the list is a snapshot of views: adding to it or
+	 * removing from it does not change this results.
+	 * @return list of views of all captures, in order
+	 */
+	@Override
+	public LinkedList<CaptureSearchResult> getResults() {
+		if (resultList == null) {
+			resultList = new LinkedList<CaptureSearchResult>();
+			for (int slot = firstSlot; slot < endSlot; slot++) {
+				resultList.add(view(slot));
+			}
+		}
+		return resultList;
+	}
+
+	@Override
+	public Iterator<CaptureSearchResult> iterator() {
+		return new SlotIterator(false);
+	}
+
+	/**
+	 * Iterate without creating an object per capture: every call to
+	 * {@code next()} returns the same view, moved to the next capture. The
+	 * view must not be kept after the following call to {@code next()}.
+	 * @return iterator over all captures, in order
+	 */
+	public Iterator<CaptureSearchResult> flyweightIterator() {
+		return new SlotIterator(true);
+	}
+
+	private class SlotIterator implements Iterator<CaptureSearchResult> {
+		private int slot = firstSlot;
+		private final ColumnarCaptureSearchResult flyweight;
+
+		SlotIterator(boolean reuse) {
+			flyweight = reuse ? new ColumnarCaptureSearchResult(
+					ColumnarCaptureSearchResults.this, firstSlot) : null;
+		}
+
+		public boolean hasNext() {
+			return slot < endSlot;
+		}
+
+		public CaptureSearchResult next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (flyweight == null) {
+				return view(slot++);
+			}
+			flyweight.moveTo(slot++);
+			return flyweight;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// Indexed accessors, for scanning without views.
+
+	/**
+	 * @param index position of the capture, from 0
+	 * @return 14-digit timestamp of the capture as a number, or -1 if it is
+	 *         missing or not numeric
+	 */
+	public long getTimestampValue(int index) {
+		int p = pos(slotAt(index));
+		return (timestampLengths[p] < 0) ? -1 : timestamps[p];
+	}
+
+	/**
+	 * @param index position of the capture, from 0
+	 * @return HTTP status code of the capture, or a negative number if it
+	 *         is missing or not numeric
+	 */
+	public int getHttpCodeValue(int index) {
+		return httpCodes[pos(slotAt(index))];
+	}
+
+	/**
+	 * @return number of distinct String values held
+	 */
+	public int getDictionarySize() {
+		return dictionary.size();
+	}
+
+	// Column access for ColumnarCaptureSearchResult, by slot.
+
+	int slotAt(int index) {
+		if ((index < 0) || (index >= size())) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return firstSlot + index;
+	}
+
+	boolean contains(int slot) {
+		return (slot >= firstSlot) && (slot < endSlot);
+	}
+
+	ColumnarCaptureSearchResult view(int slot) {
+		if (slot == NONE) {
+			return null;
+		}
+		if (views == null) {
+			views = new ColumnarCaptureSearchResult[capacity];
+		}
+		int p = pos(slot);
+		if (views[p] == null) {
+			views[p] = new ColumnarCaptureSearchResult(this, slot);
+		}
+		return views[p];
+	}
+
+	String getString(int[] column, int slot) {
+		return dictionary.decode(column[pos(slot)]);
+	}
+
+	void setString(int[] column, int slot, String value) {
+		column[pos(slot)] = dictionary.encode(value);
+	}
+
+	int[] urlKeys() {
+		return urlKeys;
+	}
+
+	int[] originalUrls() {
+		return originalUrls;
+	}
+
+	int[] mimeTypes() {
+		return mimeTypes;
+	}
+
+	int[] digests() {
+		return digests;
+	}
+
+	int[] redirectUrls() {
+		return redirectUrls;
+	}
+
+	int[] files() {
+		return files;
+	}
+
+	int[] robotFlags() {
+		return robotFlags;
+	}
+
+	int[] oraclePolicies() {
+		return oraclePolicies;
+	}
+
+	String getTimestamp(int slot) {
+		int p = pos(slot);
+		int len = timestampLengths[p];
+		if (len == TS_NULL) {
+			return null;
+		} else if (len == TS_OTHER) {
+			return otherTimestamps.get(slot);
+		}
+		String digits = Long.toString(timestamps[p]);
+		if (digits.length() == len) {
+			return digits;
+		}
+		StringBuilder sb = new StringBuilder(len);
+		for (int i = digits.length(); i < len; i++) {
+			sb.append('0');
+		}
+		return sb.append(digits).toString();
+	}
+
+	void setTimestamp(int slot, String timestamp) {
+		int p = pos(slot);
+		if (otherTimestamps != null) {
+			otherTimestamps.remove(slot);
+		}
+		if (timestamp == null) {
+			timestampLengths[p] = TS_NULL;
+			return;
+		}
+		int len = timestamp.length();
+		boolean numeric = (len > 0) && (len <= 18);
+		for (int i = 0; numeric && (i < len); i++) {
+			char c = timestamp.charAt(i);
+			numeric = (c >= '0') && (c <= '9');
+		}
+		if (numeric) {
+			timestamps[p] = Long.parseLong(timestamp);
+			timestampLengths[p] = (byte) len;
+		} else {
+			if (otherTimestamps == null) {
+				otherTimestamps = new HashMap<Integer, String>();
+			}
+			otherTimestamps.put(slot, timestamp);
+			timestampLengths[p] = TS_OTHER;
+		}
+	}
+
+	String getHttpCode(int slot) {
+		short code = httpCodes[pos(slot)];
+		if (code >= 0) {
+			return String.valueOf(code);
+		} else if (code == STATUS_EMPTY) {
+			return FastCaptureSearchResult.EMPTY_VALUE;
+		} else if (code == STATUS_OTHER) {
+			return otherHttpCodes.get(slot);
+		}
+		return null;
+	}
+
+	void setHttpCode(int slot, String httpCode) {
+		int p = pos(slot);
+		if (otherHttpCodes != null) {
+			otherHttpCodes.remove(slot);
+		}
+		if (httpCode == null) {
+			httpCodes[p] = STATUS_NULL;
+		} else if (httpCode.equals(FastCaptureSearchResult.EMPTY_VALUE)) {
+			httpCodes[p] = STATUS_EMPTY;
+		} else if (isShortNumber(httpCode)) {
+			httpCodes[p] = Short.parseShort(httpCode);
+		} else {
+			if (otherHttpCodes == null) {
+				otherHttpCodes = new HashMap<Integer, String>();
+			}
+			otherHttpCodes.put(slot, httpCode);
+			httpCodes[p] = STATUS_OTHER;
+		}
+	}
+
+	/**
+	 * @return true if value is a decimal number which survives a round trip
+	 * through short
+	 */
+	private static boolean isShortNumber(String value) {
+		int len = value.length();
+		if ((len == 0) || (len > 4) || ((len > 1) && (value.charAt(0) == '0'))) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if ((c < '0') || (c > '9')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	long getOffset(int slot) {
+		return offsets[pos(slot)];
+	}
+
+	void setOffset(int slot, long offset) {
+		offsets[pos(slot)] = offset;
+	}
+
+	long getLength(int slot) {
+		return lengths[pos(slot)];
+	}
+
+	void setLength(int slot, long length) {
+		lengths[pos(slot)] = length;
+	}
+
+	boolean getFlag(int slot, byte flag) {
+		return (flags[pos(slot)] & flag) != 0;
+	}
+
+	void setFlag(int slot, byte flag, boolean value) {
+		int p = pos(slot);
+		if (value) {
+			flags[p] |= flag;
+		} else {
+			flags[p] &= ~flag;
+		}
+	}
+
+	CaptureSearchResult getPayload(int slot) {
+		int payload = payloads[pos(slot)];
+		if (payload != NONE) {
+			return view(payload);
+		}
+		return (externalPayloads == null) ? null : externalPayloads.get(slot);
+	}
+
+	void setPayload(int slot, CaptureSearchResult payload) {
+		int p = pos(slot);
+		payloads[p] = NONE;
+		if (externalPayloads != null) {
+			externalPayloads.remove(slot);
+		}
+		if (payload == null) {
+			return;
+		}
+		if ((payload instanceof ColumnarCaptureSearchResult) &&
+				(((ColumnarCaptureSearchResult) payload).isViewOf(this))) {
+			payloads[p] = ((ColumnarCaptureSearchResult) payload).getSlot();
+		} else {
+			if (externalPayloads == null) {
+				externalPayloads = new HashMap<Integer, CaptureSearchResult>();
+			}
+			externalPayloads.put(slot, payload);
+		}
+	}
+
+	int getPrev(int slot) {
+		return prevs[pos(slot)];
+	}
+
+	void setPrev(int slot, int prev) {
+		prevs[pos(slot)] = prev;
+	}
+
+	int getNext(int slot) {
+		return nexts[pos(slot)];
+	}
+
+	void setNext(int slot, int next) {
+		nexts[pos(slot)] = next;
+	}
+
+	HashMap<String, String> extrasFor(int slot, boolean create) {
+		if (extras == null) {
+			if (!create) {
+				return null;
+			}
+			extras = new HashMap<Integer, HashMap<String, String>>();
+		}
+		HashMap<String, String> map = extras.get(slot);
+		if ((map == null) && create) {
+			map = new HashMap<String, String>();
+			extras.put(slot, map);
+		}
+		return map;
+	}
+}
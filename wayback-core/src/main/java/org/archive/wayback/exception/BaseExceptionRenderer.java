@@ -31,6 +31,8 @@ import org.archive.wayback.ExceptionRenderer;
 import org.archive.wayback.ResultURIConverter;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.query.SearchResultLineFormat;
+import org.archive.wayback.util.StringFormatter;
 
 /**
  * Default implementation responsible for outputting error responses to users
@@ -117,7 +119,15 @@ public class BaseExceptionRenderer implements ExceptionRenderer {
 		if((wbRequest != null) && !wbRequest.isReplayRequest()) {
 
 			if(wbRequest.isXMLMode()) {
-				uiResults.forward(httpRequest, httpResponse, xmlErrorJsp);
+				if (SearchResultLineFormat.isRequested(wbRequest)) {
+					StringFormatter fmt = wbRequest.getFormatter();
+					SearchResultLineFormat.writeError(httpRequest,
+						httpResponse, exception,
+						fmt.format(exception.getTitleKey()),
+						fmt.format(exception.getMessageKey()));
+				} else {
+					uiResults.forward(httpRequest, httpResponse, xmlErrorJsp);
+				}
 				handled = true;
 			}
 
@@ -110,9 +110,9 @@ public class BubbleCalendarData {
 		searchUrlForHTML = StringEscapeUtils.escapeHtml(searchUrl);
 		searchUrlForJS = StringEscapeUtils.escapeJavaScript(searchUrl);
 		firstResultDate = cResults.getFirstResultDate();
-		firstResultReplayUrl = StringEscapeUtils.escapeHtml(results.resultToReplayUrl(cResults.getResults().getFirst()));
+		firstResultReplayUrl = StringEscapeUtils.escapeHtml(results.resultToReplayUrl(cResults.getFirstResult()));
 		lastResultDate = cResults.getLastResultDate();
-		lastResultReplayUrl = StringEscapeUtils.escapeHtml(results.resultToReplayUrl(cResults.getResults().getLast()));
+		lastResultReplayUrl = StringEscapeUtils.escapeHtml(results.resultToReplayUrl(cResults.getLastResult()));
 		Date searchStartDate = wbRequest.getStartDate();
 		Date searchEndDate = wbRequest.getEndDate();
 		months = capturePartitioner.getRange(monthSize, searchStartDate, searchEndDate);
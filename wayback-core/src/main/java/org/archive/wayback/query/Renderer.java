@@ -28,6 +28,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.archive.wayback.QueryRenderer;
 import org.archive.wayback.ResultURIConverter;
 import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.SearchResults;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.UrlSearchResults;
 import org.archive.wayback.core.WaybackRequest;
@@ -35,7 +36,8 @@ import org.archive.wayback.core.WaybackRequest;
 /**
  * Brain-dead simple QueryRenderer implementation, which shunts all the work off
  * to a .jsp file as defined by administrators. Also has basic logic to switch
- * to a different .jsp to format request asking for XML data.
+ * to a different .jsp to format request asking for XML data, or to write
+ * {@link SearchResultLineFormat} if requested.
  *
  * @author brad
  */
@@ -53,6 +55,12 @@ public class Renderer implements QueryRenderer {
 			CaptureSearchResults results, ResultURIConverter uriConverter)
 			throws ServletException, IOException {
 
+		if (wbRequest.isXMLMode() &&
+				SearchResultLineFormat.isRequested(wbRequest)) {
+			SearchResultLineFormat.writeResults(httpRequest, httpResponse,
+				results, SearchResults.RESULTS_TYPE_CAPTURE, results.iterator());
+			return;
+		}
 		UIResults uiResults = new UIResults(wbRequest,
 			(queryUriConverter != null ? queryUriConverter : uriConverter),
 			results);
@@ -78,6 +86,12 @@ public class Renderer implements QueryRenderer {
 			UrlSearchResults results, ResultURIConverter uriConverter)
 			throws ServletException, IOException {
 
+		if (wbRequest.isXMLMode() &&
+				SearchResultLineFormat.isRequested(wbRequest)) {
+			SearchResultLineFormat.writeResults(httpRequest, httpResponse,
+				results, SearchResults.RESULTS_TYPE_URL, results.iterator());
+			return;
+		}
 		UIResults uiResults = new UIResults(wbRequest,
 			(queryUriConverter != null ? queryUriConverter : uriConverter),
 			results);
@@ -0,0 +1,236 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.query;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.archive.wayback.core.SearchResult;
+import org.archive.wayback.core.SearchResults;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.exception.AccessControlException;
+import org.archive.wayback.exception.BadQueryException;
+import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+import org.archive.wayback.exception.ResourceNotInArchiveException;
+import org.archive.wayback.exception.WaybackException;
+
+/**
+ * Line-oriented alternative to the XML query output, for
+ * {@code RemoteResourceIndex}. Requested by adding
+ * {@code resultformat:lines} to an {@code xmlquery} request.
+ * <p>
+ * Output is UTF-8 text, gzip-compressed if the client accepts it:
+ * <pre>
+ * #wayback-lines 1
+ * Q key=value&amp;key=value...    (request filters, including resultstype)
+ * R key=value&amp;key=value...    (one line per result)
+ * </pre>
+ * or, for errors:
+ * <pre>
+ * #wayback-lines 1
+ * E errortype=...&amp;title=...&amp;message=...
+ * </pre>
+ * Keys and values are URL-encoded, as in form data. Results carry the same
+ * fields as in XML output ({@link SearchResult#toCanonicalStringMap()}),
+ * so each line can be parsed and filtered as soon as it is read.
+ * </p>
+ */
+public class SearchResultLineFormat {
+	/**
+	 * request key for selecting output format
+	 */
+	public static final String FORMAT_KEY = "resultformat";
+	public static final String FORMAT_LINES = "lines";
+
+	public static final String HEADER = "#wayback-lines 1";
+	public static final String CONTENT_TYPE = "text/plain;charset=utf-8";
+
+	public static final char REQUEST_LINE = 'Q';
+	public static final char RESULT_LINE = 'R';
+	public static final char ERROR_LINE = 'E';
+
+	public static final String ERROR_TYPE = "errortype";
+	public static final String ERROR_TITLE = "title";
+	public static final String ERROR_MESSAGE = "message";
+
+	public static final String ERROR_NOT_IN_ARCHIVE = "notInArchive";
+	public static final String ERROR_BAD_QUERY = "badQuery";
+	public static final String ERROR_ACCESS_CONTROL = "accessControl";
+	public static final String ERROR_INDEX_NOT_AVAILABLE = "indexNotAvailable";
+	public static final String ERROR_OTHER = "other";
+
+	private static final String UTF8 = "UTF-8";
+
+	/**
+	 * @param wbRequest request
+	 * @return {@code true} if {@code wbRequest} asks for line format
+	 */
+	public static boolean isRequested(WaybackRequest wbRequest) {
+		return wbRequest != null &&
+				FORMAT_LINES.equals(wbRequest.get(FORMAT_KEY));
+	}
+
+	/**
+	 * Write {@code results} to {@code httpResponse}.
+	 * @param httpRequest request, checked for {@code Accept-Encoding}
+	 * @param httpResponse response
+	 * @param results results to write
+	 * @param resultsType {@link SearchResults#RESULTS_TYPE_CAPTURE} or
+	 * {@link SearchResults#RESULTS_TYPE_URL}
+	 * @param itr iterator over {@code results}
+	 * @throws IOException
+	 */
+	public static void writeResults(HttpServletRequest httpRequest,
+			HttpServletResponse httpResponse, SearchResults results,
+			String resultsType, Iterator<? extends SearchResult> itr)
+			throws IOException {
+		Writer w = openWriter(httpRequest, httpResponse);
+		StringBuilder sb = new StringBuilder(256);
+		Map<String, String> filters = new LinkedHashMap<String, String>(
+			results.getFilters());
+		filters.put(SearchResults.RESULTS_TYPE, resultsType);
+		sb.append(REQUEST_LINE).append(' ');
+		encode(filters, sb);
+		sb.append('\n');
+		w.write(sb.toString());
+		while (itr.hasNext()) {
+			sb.setLength(0);
+			sb.append(RESULT_LINE).append(' ');
+			encode(itr.next().toCanonicalStringMap(), sb);
+			sb.append('\n');
+			w.write(sb.toString());
+		}
+		w.close();
+	}
+
+	/**
+	 * Write {@code e} to {@code httpResponse}.
+	 * @param httpRequest request, checked for {@code Accept-Encoding}
+	 * @param httpResponse response
+	 * @param e exception
+	 * @param title localized title
+	 * @param message localized message
+	 * @throws IOException
+	 */
+	public static void writeError(HttpServletRequest httpRequest,
+			HttpServletResponse httpResponse, WaybackException e,
+			String title, String message) throws IOException {
+		String type = ERROR_OTHER;
+		if (e instanceof ResourceNotInArchiveException) {
+			type = ERROR_NOT_IN_ARCHIVE;
+		} else if (e instanceof BadQueryException) {
+			type = ERROR_BAD_QUERY;
+		} else if (e instanceof AccessControlException) {
+			type = ERROR_ACCESS_CONTROL;
+		} else if (e instanceof ResourceIndexNotAvailableException) {
+			type = ERROR_INDEX_NOT_AVAILABLE;
+		}
+		Map<String, String> fields = new LinkedHashMap<String, String>();
+		fields.put(ERROR_TYPE, type);
+		fields.put(ERROR_TITLE, title);
+		fields.put(ERROR_MESSAGE, message);
+		StringBuilder sb = new StringBuilder();
+		sb.append(ERROR_LINE).append(' ');
+		encode(fields, sb);
+		sb.append('\n');
+		Writer w = openWriter(httpRequest, httpResponse);
+		w.write(sb.toString());
+		w.close();
+	}
+
+	private static Writer openWriter(HttpServletRequest httpRequest,
+			HttpServletResponse httpResponse) throws IOException {
+		httpResponse.setContentType(CONTENT_TYPE);
+		OutputStream os = httpResponse.getOutputStream();
+		String accept = httpRequest.getHeader("Accept-Encoding");
+		if (accept != null && accept.contains("gzip")) {
+			httpResponse.setHeader("Content-Encoding", "gzip");
+			os = new GZIPOutputStream(os, 8192);
+		}
+		Writer w = new BufferedWriter(new OutputStreamWriter(os, UTF8), 8192);
+		w.write(HEADER);
+		w.write('\n');
+		return w;
+	}
+
+	/**
+	 * Append {@code fields} to {@code sb} as URL-encoded
+	 * {@code key=value} pairs separated by {@code &}.
+	 * {@code null} values are skipped.
+	 * @param fields fields to encode
+	 * @param sb output
+	 */
+	public static void encode(Map<String, String> fields, StringBuilder sb) {
+		try {
+			boolean first = true;
+			for (Map.Entry<String, String> e : fields.entrySet()) {
+				if (e.getValue() == null) continue;
+				if (!first) {
+					sb.append('&');
+				}
+				first = false;
+				sb.append(URLEncoder.encode(e.getKey(), UTF8)).append('=');
+				sb.append(URLEncoder.encode(e.getValue(), UTF8));
+			}
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Parse fields of a line written by {@link #encode}.
+	 * @param line line
+	 * @param start offset of first field in {@code line}
+	 * @return fields, in order
+	 */
+	public static Map<String, String> decode(String line, int start) {
+		Map<String, String> fields = new LinkedHashMap<String, String>();
+		try {
+			while (start < line.length()) {
+				int end = line.indexOf('&', start);
+				if (end < 0) {
+					end = line.length();
+				}
+				int eq = line.indexOf('=', start);
+				if (eq > start && eq < end) {
+					fields.put(URLDecoder.decode(line.substring(start, eq), UTF8),
+						URLDecoder.decode(line.substring(eq + 1, end), UTF8));
+				}
+				start = end + 1;
+			}
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+		return fields;
+	}
+}
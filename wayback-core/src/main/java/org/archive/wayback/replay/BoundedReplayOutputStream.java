@@ -0,0 +1,202 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * OutputStream for rewritten replay content that holds at most
+ * {@code bufferSize} bytes in memory.
+ * <p>
+ * Response headers are sent on first write to the response, with
+ * {@code Content-Length} if the whole body is known by then.
+ * If the body fits in the buffer, it is sent with {@code Content-Length}
+ * on {@link #finish()}, just like fully buffered output. Otherwise:
+ * <ul>
+ * <li>if {@code spillToDisk} is {@code false}, headers are sent without
+ * {@code Content-Length} as soon as the buffer fills up, and the rest of the
+ * body is streamed to the client (chunked transfer encoding),</li>
+ * <li>if {@code spillToDisk} is {@code true}, the body is written to a
+ * temporary file, and sent with {@code Content-Length} on
+ * {@link #finish()}.</li>
+ * </ul>
+ * </p>
+ * <p>{@link #close()} must always be called, to remove the temporary file.
+ * It does not close the response output stream.</p>
+ */
+public class BoundedReplayOutputStream extends OutputStream {
+	private final Map<String, String> headers;
+	private final HttpServletResponse response;
+	private final String outputCharset;
+	private final boolean spillToDisk;
+
+	private final byte[] buffer;
+	private int buffered = 0;
+	private long length = 0;
+
+	private OutputStream out = null;
+	private File spillFile = null;
+	private boolean committed = false;
+
+	/**
+	 * @param headers response headers, sent by this stream
+	 * @param response response to write to
+	 * @param outputCharset charset of the content, set on the response
+	 * @param bufferSize maximum number of bytes held in memory
+	 * @param spillToDisk {@code true} to write content overflowing the
+	 * buffer to a temporary file, instead of sending it without length
+	 */
+	public BoundedReplayOutputStream(Map<String, String> headers,
+			HttpServletResponse response, String outputCharset,
+			int bufferSize, boolean spillToDisk) {
+		this.headers = headers;
+		this.response = response;
+		this.outputCharset = outputCharset;
+		this.spillToDisk = spillToDisk;
+		this.buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if ((out == null) && (buffered == buffer.length)) {
+			overflow();
+		}
+		if (out == null) {
+			buffer[buffered++] = (byte)b;
+		} else {
+			out.write(b);
+		}
+		length++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if ((out == null) && (buffered + len > buffer.length)) {
+			overflow();
+		}
+		if (out == null) {
+			System.arraycopy(b, off, buffer, buffered, len);
+			buffered += len;
+		} else {
+			out.write(b, off, len);
+		}
+		length += len;
+	}
+
+	private void overflow() throws IOException {
+		if (spillToDisk) {
+			spillFile = File.createTempFile("wayback-replay", ".tmp");
+			out = new BufferedOutputStream(new FileOutputStream(spillFile));
+		} else {
+			while (HttpHeaderOperation.removeHeader(headers,
+					HttpHeaderOperation.HTTP_LENGTH_HEADER)) {
+			}
+			sendHeaders();
+			out = response.getOutputStream();
+		}
+		out.write(buffer, 0, buffered);
+		buffered = 0;
+	}
+
+	private void sendHeaders() {
+		HttpHeaderOperation.sendHeaders(headers, response);
+		// see ArchivalUrlSAXRewriteReplayRenderer for why this is needed
+		response.setCharacterEncoding(outputCharset);
+		committed = true;
+	}
+
+	/**
+	 * @return {@code true} if headers have been sent
+	 */
+	public boolean isCommitted() {
+		return committed;
+	}
+
+	/**
+	 * @return number of bytes written so far
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Send what has not been sent yet: headers with {@code Content-Length},
+	 * if not sent already, and the buffered or spilled content.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (committed) {
+			out.flush();
+			return;
+		}
+		headers.put(HttpHeaderOperation.HTTP_LENGTH_HEADER,
+			String.valueOf(length));
+		sendHeaders();
+		OutputStream os = response.getOutputStream();
+		if (spillFile == null) {
+			os.write(buffer, 0, buffered);
+		} else {
+			out.close();
+			out = null;
+			InputStream is = new FileInputStream(spillFile);
+			try {
+				byte[] copy = new byte[8192];
+				int n;
+				while ((n = is.read(copy)) > 0) {
+					os.write(copy, 0, n);
+				}
+			} finally {
+				is.close();
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (committed) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (spillFile != null) {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				out = null;
+			}
+			spillFile.delete();
+			spillFile = null;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.archive.wayback.ResultURIConverter;
+import org.archive.wayback.archivalurl.ArchivalUrlResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.WaybackRequest;
+
+/**
+ * Byte-bounded, in-memory LRU cache of rewritten replay responses
+ * (processed HTTP headers and rewritten body), for text renderers.
+ * <p>
+ * Keys are built by {@link #makeKey} from the capture location (file and
+ * offset), and everything in the request that affects rewriting: replay
+ * URI prefix, requested timestamp, context flags and rewrite policy.
+ * Renderers add their own rewrite options as {@code variant}.
+ * Output of JSP inserts (toolbar, banner etc.) depends on the capture
+ * timeline and the request, so renderers do not cache pages with JSP
+ * output.
+ * </p>
+ * <p>
+ * A hit saves decoding, charset detection and rewriting, but not
+ * loading the capture, which happens before the renderer is called.
+ * </p>
+ * <p>
+ * Cache has no notion of rewrite rule versions. A new instance is created
+ * when the Spring configuration is reloaded; call {@link #clear()} if
+ * rewrite rules change otherwise.
+ * </p>
+ */
+public class RewrittenPageCache {
+	private final static long DEFAULT_MAX_BYTES = 64 * 1024 * 1024L;
+	private final static int DEFAULT_MAX_PAGE_BYTES = 1024 * 1024;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private int maxPageBytes = DEFAULT_MAX_PAGE_BYTES;
+
+	private final LinkedHashMap<String, Page> pages =
+			new LinkedHashMap<String, Page>(16, 0.75f, true);
+	private long bytes = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Rewritten response: headers to send, body and its charset.
+	 */
+	public static class Page {
+		private final Map<String, String> headers;
+		private final byte[] body;
+		private final String charset;
+
+		/**
+		 * @param headers HTTP headers, including {@code Content-Length}
+		 * (copied)
+		 * @param body rewritten body bytes
+		 * @param charset charset of {@code body}
+		 */
+		public Page(Map<String, String> headers, byte[] body, String charset) {
+			this.headers = new LinkedHashMap<String, String>(headers);
+			this.body = body;
+			this.charset = charset;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public String getCharset() {
+			return charset;
+		}
+
+		/**
+		 * Send headers and body.
+		 * @param response response to write to
+		 * @throws IOException
+		 */
+		public void send(HttpServletResponse response) throws IOException {
+			HttpHeaderOperation.sendHeaders(headers, response);
+			response.setCharacterEncoding(charset);
+			response.getOutputStream().write(body);
+		}
+
+		long size() {
+			long size = body.length;
+			for (Map.Entry<String, String> e : headers.entrySet()) {
+				size += 2 * (e.getKey().length() +
+						(e.getValue() != null ? e.getValue().length() : 0));
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Build cache key for rendering {@code result} for {@code wbRequest}.
+	 * @param result capture being replayed
+	 * @param uriConverter URI converter used for rewriting
+	 * @param wbRequest replay request
+	 * @param variant renderer-specific rewrite options
+	 * @return key, or {@code null} if {@code result} has no location
+	 */
+	public static String makeKey(CaptureSearchResult result,
+			ResultURIConverter uriConverter, WaybackRequest wbRequest,
+			String variant) {
+		if (result.getFile() == null) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(result.getFile()).append(' ').append(result.getOffset());
+		sb.append(' ');
+		if (uriConverter instanceof ArchivalUrlResultURIConverter) {
+			sb.append(((ArchivalUrlResultURIConverter)uriConverter)
+				.getReplayURIPrefix());
+		} else if (uriConverter != null) {
+			sb.append(uriConverter.getClass().getName()).append('@')
+				.append(System.identityHashCode(uriConverter));
+		}
+		sb.append(' ').append(result.getOraclePolicy());
+		if (wbRequest != null) {
+			sb.append(' ').append(wbRequest.getReplayTimestamp());
+			sb.append(' ');
+			sb.append(wbRequest.isJSContext() ? 'j' : '-');
+			sb.append(wbRequest.isCSSContext() ? 'c' : '-');
+			sb.append(wbRequest.isIMGContext() ? 'i' : '-');
+			sb.append(wbRequest.isObjectEmbedContext() ? 'o' : '-');
+			sb.append(wbRequest.isIdentityContext() ? 'd' : '-');
+			sb.append(wbRequest.isFrameWrapperContext() ? 'f' : '-');
+			sb.append(wbRequest.isIFrameWrapperContext() ? 'F' : '-');
+			sb.append(wbRequest.isAjaxRequest() ? 'a' : '-');
+		}
+		sb.append(' ').append(variant);
+		return sb.toString();
+	}
+
+	/**
+	 * @param key cache key
+	 * @return cached page, or {@code null}
+	 */
+	public synchronized Page get(String key) {
+		Page page = pages.get(key);
+		if (page == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return page;
+	}
+
+	/**
+	 * Cache {@code page}, evicting least recently used pages to stay
+	 * within {@code maxBytes}. Pages larger than {@code maxPageBytes} are
+	 * not cached.
+	 * @param key cache key
+	 * @param page page to cache
+	 */
+	public synchronized void put(String key, Page page) {
+		if (page.getBody().length > maxPageBytes) {
+			return;
+		}
+		Page old = pages.put(key, page);
+		if (old != null) {
+			bytes -= old.size();
+		}
+		bytes += page.size();
+		Iterator<Page> itr = pages.values().iterator();
+		while (bytes > maxBytes && itr.hasNext()) {
+			bytes -= itr.next().size();
+			itr.remove();
+		}
+	}
+
+	/**
+	 * Remove all pages, e.g. after rewrite rules have changed.
+	 */
+	public synchronized void clear() {
+		pages.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return pages.size();
+	}
+
+	/**
+	 * @return estimated total size of cached pages, in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes maximum total size of cached pages
+	 * (default 64MB)
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public int getMaxPageBytes() {
+		return maxPageBytes;
+	}
+
+	/**
+	 * @param maxPageBytes pages with larger body are not cached
+	 * (default 1MB)
+	 */
+	public synchronized void setMaxPageBytes(int maxPageBytes) {
+		this.maxPageBytes = maxPageBytes;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+}
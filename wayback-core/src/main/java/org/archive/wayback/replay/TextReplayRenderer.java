@@ -61,6 +61,9 @@ import org.archive.wayback.replay.html.ContextResultURIConverterFactory;
  * just for {@code TextDocument} and {#updatePage} by setting this property 
  * to non-{@code null} {@code ContextResultURIConverterFactory}. It does not
  * affect URI conversion for HTTP headers.</li>
+ * <li>{@code pageCache}: {@link RewrittenPageCache} for reusing rewritten
+ * content of the same capture. Not used if {@code jspInserts} is
+ * configured. Default is {@code null} (no caching).</li>
  * </ul>
  * </p>
  * @author brad
@@ -78,6 +81,8 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 
 	private ContextResultURIConverterFactory pageConverterFactory = null;
 
+	private RewrittenPageCache pageCache = null;
+
 	public TextReplayRenderer(HttpHeaderProcessor httpHeaderProcessor) {
 		this.httpHeaderProcessor = httpHeaderProcessor;
 	}
@@ -106,6 +111,22 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 			CaptureSearchResults results) throws ServletException,
 			IOException, BadContentException {
 
+		String cacheKey = null;
+		// output of jspInserts is specific to the request
+		if ((pageCache != null) && (jspInserts == null || jspInserts.isEmpty())) {
+			cacheKey = RewrittenPageCache.makeKey(result, uriConverter,
+				wbRequest, getClass().getName() + "@" +
+						System.identityHashCode(this));
+			RewrittenPageCache.Page cached = (cacheKey != null ? pageCache
+				.get(cacheKey) : null);
+			if (cached != null) {
+				HttpHeaderOperation.copyHTTPMessageHeader(httpHeadersResource,
+					httpResponse);
+				cached.send(httpResponse);
+				return;
+			}
+		}
+
 		// Decode resource (such as if gzip encoded)
 		Resource decodedResource = decodeResource(httpHeadersResource, payloadResource);
 		
@@ -142,6 +163,11 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 			headers.put(guessedCharsetHeader, page.getCharSet());
 		}
 
+		if (cacheKey != null) {
+			pageCache.put(cacheKey, new RewrittenPageCache.Page(headers,
+				page.getBytes(), page.getCharSet()));
+		}
+
 		// send back the headers:
 		HttpHeaderOperation.sendHeaders(headers, httpResponse);
 
@@ -169,6 +195,19 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 		this.jspInserts = jspInserts;
 	}
 
+	public RewrittenPageCache getPageCache() {
+		return pageCache;
+	}
+
+	/**
+	 * Cache for rewritten pages. Not used if {@code jspInserts} is
+	 * configured. Default is {@code null} (no caching).
+	 * @param pageCache cache, may be shared with other renderers
+	 */
+	public void setPageCache(RewrittenPageCache pageCache) {
+		this.pageCache = pageCache;
+	}
+
 	/**
 	 * @return the charsetDetector
 	 */
@@ -23,23 +23,50 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.resourceindex.cdx.CDXIndex;
 import org.archive.wayback.util.CompositeSortedIterator;
+import org.archive.wayback.util.ParallelCompositeSortedIterator;
 
 /**
  * SearchResultSource that aggregates results from multiple SearchResultSources.
+ * <p>
+ * If {@code parallelThreads} is set, each query opens all sources'
+ * iterators concurrently, and reads them ahead in batches of
+ * {@code batchSize} on a shared pool of that many threads, instead of
+ * reading them one at a time on the calling thread. Results are returned in
+ * the same order either way. When all threads are busy, opens and batch
+ * reads are done on the calling thread.
+ * </p>
  * 
  * @author brad
  * @version $Date$, $Revision$
  */
 public class CompositeSearchResultSource implements SearchResultSource {
+	private static final Logger LOGGER =
+		Logger.getLogger(CompositeSearchResultSource.class.getName());
 
 	protected List<SearchResultSource> sources;
 
+	private int parallelThreads = 0;
+	private int batchSize = 100;
+	private ExecutorService executor = null;
+
 	/**
 	 * Constructor
 	 */
@@ -66,6 +93,9 @@ public class CompositeSearchResultSource implements SearchResultSource {
 			throws ResourceIndexNotAvailableException {
 
 		Comparator<CaptureSearchResult> comparator = new SearchResultComparator();
+		if (parallelThreads > 0) {
+			return openParallel(prefix, comparator, false);
+		}
 		CompositeSortedIterator<CaptureSearchResult> itr = new CompositeSortedIterator<CaptureSearchResult>(comparator);
 		
 		int added = 0;
@@ -78,10 +108,8 @@ public class CompositeSearchResultSource implements SearchResultSource {
 				itr.addComponent(source.getPrefixIterator(prefix));
 				added++;
 			} catch (ResourceIndexNotAvailableException e) {
-				if (source instanceof ZipNumClusterSearchResultSource) {
-					if (((ZipNumClusterSearchResultSource)source).getCluster().isRequired()) {
-						throw e;
-					}
+				if (isRequired(source)) {
+					throw e;
 				}
 				
 				lastExc = e;
@@ -109,6 +137,9 @@ public class CompositeSearchResultSource implements SearchResultSource {
 			String prefix) throws ResourceIndexNotAvailableException {
 
 		Comparator<CaptureSearchResult> comparator = new SearchResultComparator(true);
+		if (parallelThreads > 0) {
+			return openParallel(prefix, comparator, true);
+		}
 		CompositeSortedIterator<CaptureSearchResult> itr = 
 			new CompositeSortedIterator<CaptureSearchResult>(comparator);
 		for (int i = 0; i < sources.size(); i++) {
@@ -117,6 +148,175 @@ public class CompositeSearchResultSource implements SearchResultSource {
 		return itr;
 	}
 
+	private static boolean isRequired(SearchResultSource source) {
+		if (source instanceof ZipNumClusterSearchResultSource) {
+			return ((ZipNumClusterSearchResultSource)source).getCluster().isRequired();
+		}
+		return false;
+	}
+
+	/**
+	 * Open all sources' iterators concurrently, and merge them with a
+	 * {@link ParallelCompositeSortedIterator}. Failures are handled as in
+	 * the serial case: a forward query skips unavailable sources unless they
+	 * are required or all are unavailable; a reverse query fails if any
+	 * source fails.
+	 */
+	private CloseableIterator<CaptureSearchResult> openParallel(
+			final String prefix, Comparator<CaptureSearchResult> comparator,
+			final boolean reverse) throws ResourceIndexNotAvailableException {
+
+		ExecutorService pool = getExecutor();
+		List<SourceOpen> tasks = new ArrayList<SourceOpen>();
+		List<Future<CloseableIterator<CaptureSearchResult>>> opens =
+			new ArrayList<Future<CloseableIterator<CaptureSearchResult>>>();
+		for (SearchResultSource source : sources) {
+			SourceOpen task = new SourceOpen(source, prefix, reverse);
+			tasks.add(task);
+			try {
+				opens.add(pool.submit(task));
+			} catch (RejectedExecutionException e) {
+				// pool saturated or shut down: open on this thread
+				FutureTask<CloseableIterator<CaptureSearchResult>> inline =
+					new FutureTask<CloseableIterator<CaptureSearchResult>>(task);
+				inline.run();
+				opens.add(inline);
+			}
+		}
+
+		ParallelCompositeSortedIterator<CaptureSearchResult> itr =
+			new ParallelCompositeSortedIterator<CaptureSearchResult>(
+					comparator, pool, batchSize);
+
+		int added = 0;
+		ResourceIndexNotAvailableException lastExc = null;
+		ResourceIndexNotAvailableException fatal = null;
+
+		// wait for every open, even after a failure, so that every
+		// iterator which was opened gets closed
+		for (int i = 0; i < opens.size(); i++) {
+			try {
+				itr.addComponent(opens.get(i).get());
+				added++;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				ResourceIndexNotAvailableException rinae;
+				if (cause instanceof ResourceIndexNotAvailableException) {
+					rinae = (ResourceIndexNotAvailableException) cause;
+				} else {
+					LOGGER.warning("Failed opening source for " + prefix
+							+ ": " + cause);
+					rinae = new ResourceIndexNotAvailableException(
+							String.valueOf(cause));
+				}
+				if ((fatal == null) && (reverse || isRequired(sources.get(i)))) {
+					fatal = rinae;
+				}
+				lastExc = rinae;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (int j = i; j < opens.size(); j++) {
+					opens.get(j).cancel(true);
+					tasks.get(j).abandon();
+				}
+				fatal = new ResourceIndexNotAvailableException("Interrupted");
+				break;
+			}
+		}
+
+		if ((fatal == null) && (lastExc != null) && (added == 0)) {
+			fatal = lastExc;
+		}
+		if (fatal != null) {
+			try {
+				itr.close();
+			} catch (IOException io) {
+
+			}
+			throw fatal;
+		}
+		return itr;
+	}
+
+	/**
+	 * Opens one source's iterator. If the open is abandoned, the iterator
+	 * is closed, whether it was already opened or is opened later.
+	 */
+	private static class SourceOpen
+			implements Callable<CloseableIterator<CaptureSearchResult>> {
+		private final SearchResultSource source;
+		private final String prefix;
+		private final boolean reverse;
+		private CloseableIterator<CaptureSearchResult> opened = null;
+		private boolean abandoned = false;
+
+		SourceOpen(SearchResultSource source, String prefix, boolean reverse) {
+			this.source = source;
+			this.prefix = prefix;
+			this.reverse = reverse;
+		}
+
+		public CloseableIterator<CaptureSearchResult> call()
+				throws ResourceIndexNotAvailableException {
+			CloseableIterator<CaptureSearchResult> itr;
+			if (reverse) {
+				itr = source.getPrefixReverseIterator(prefix);
+			} else {
+				itr = source.getPrefixIterator(prefix);
+			}
+			synchronized (this) {
+				if (!abandoned) {
+					opened = itr;
+					return itr;
+				}
+			}
+			closeQuietly(itr);
+			return null;
+		}
+
+		void abandon() {
+			CloseableIterator<CaptureSearchResult> itr;
+			synchronized (this) {
+				abandoned = true;
+				itr = opened;
+				opened = null;
+			}
+			if (itr != null) {
+				closeQuietly(itr);
+			}
+		}
+	}
+
+	private static void closeQuietly(
+			CloseableIterator<CaptureSearchResult> itr) {
+		try {
+			itr.close();
+		} catch (IOException e) {
+
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			// no queue: when all threads are busy, tasks are rejected and
+			// run by the calling thread
+			executor = new ThreadPoolExecutor(0, parallelThreads, 60,
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					new ParallelThreadFactory());
+		}
+		return executor;
+	}
+
+	private static class ParallelThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "composite-source-"
+					+ count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.resourceindex.SearchResultSource#cleanup(org.archive.wayback.util.CleanableIterator)
 	 */
@@ -159,7 +359,46 @@ public class CompositeSearchResultSource implements SearchResultSource {
 		return sources;
 	}
 
+	/**
+	 * @return size of the thread pool used to read sources concurrently, or
+	 * 0 if sources are read on the calling thread
+	 */
+	public int getParallelThreads() {
+		return parallelThreads;
+	}
+
+	/**
+	 * @param parallelThreads if positive, size of the thread pool shared by
+	 * all queries for opening and reading sources concurrently. 0 (the
+	 * default) reads them one at a time on the calling thread.
+	 */
+	public void setParallelThreads(int parallelThreads) {
+		this.parallelThreads = parallelThreads;
+	}
+
+	/**
+	 * @return maximum number of results read from a source at a time, when
+	 * reading sources concurrently
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize maximum number of results read from a source by each
+	 * background read, when reading sources concurrently
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
 	public void shutdown() throws IOException {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
 		for(SearchResultSource source : sources) {
 			source.shutdown();
 		}
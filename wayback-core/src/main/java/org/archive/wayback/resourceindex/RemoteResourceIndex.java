@@ -19,11 +19,18 @@
  */
 package org.archive.wayback.resourceindex;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -43,6 +50,7 @@ import org.archive.wayback.exception.BadQueryException;
 import org.archive.wayback.exception.ConfigurationException;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.exception.ResourceNotInArchiveException;
+import org.archive.wayback.query.SearchResultLineFormat;
 import org.archive.wayback.resourceindex.filterfactory.ClosestTrackingCaptureFilterGroup;
 import org.archive.wayback.resourceindex.filters.ConditionalGetAnnotationFilter;
 import org.archive.wayback.resourceindex.filters.SelfRedirectFilter;
@@ -62,6 +70,12 @@ import org.xml.sax.SAXException;
  * remote server, and the query is sent over as-is, formulated as an OpenSearch
  * query. Results are also returned as-is -- this class attempts to be as
  * transparent as possible.
+ * <p>
+ * With {@code lineFormat} enabled, results are requested in
+ * {@link SearchResultLineFormat} (gzip-compressed), and parsed line by line
+ * as they arrive, instead of being loaded into a DOM first. Remote servers
+ * not supporting it respond with XML, which is still accepted.
+ * </p>
  * 
  * @author brad
  * @version $Date$, $Revision$
@@ -73,6 +87,7 @@ public class RemoteResourceIndex implements ResourceIndex {
 	private String searchUrlBase;
 	private int connectTimeout = 10000;
 	private int readTimeout = 10000;
+	private boolean lineFormat = false;
 	
 	
 	private DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
@@ -140,6 +155,22 @@ public class RemoteResourceIndex implements ResourceIndex {
 			ResourceNotInArchiveException, BadQueryException,
 			AccessControlException {
 
+		if (lineFormat) {
+			try {
+				LOGGER.info("Getting index lines from ("+requestUrl+")");
+				return getHttpSearchResults(requestUrl, filter);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed reading index lines from " +
+						requestUrl, e);
+				throw new ResourceIndexNotAvailableException(e.getMessage());
+			} catch (SAXException e) {
+				LOGGER.log(Level.WARNING, "Failed parsing index XML from " +
+						requestUrl, e);
+				throw new ResourceIndexNotAvailableException("Unexpected SAX: "
+						+ e.getMessage());
+			}
+		}
+
 		Document document = null;
 		try {
 			// HTTP Request + parse
@@ -172,20 +203,41 @@ public class RemoteResourceIndex implements ResourceIndex {
 					WB_XML_ERROR_MESSAGE);
 			
 			// TODO: Localization Problems.. Think of something clever.
+			String errType = SearchResultLineFormat.ERROR_OTHER;
 			if(errTitle == null) {
-				throw new ResourceIndexNotAvailableException("Unknown error!");
+				// unknown
 			} else if(errTitle.equals("Resource Not In Archive")) {
-				throw new ResourceNotInArchiveException(errMessage);
+				errType = SearchResultLineFormat.ERROR_NOT_IN_ARCHIVE;
 			} else if(errTitle.equals("Bad Query Exception")) {
-				throw new BadQueryException(errMessage);
+				errType = SearchResultLineFormat.ERROR_BAD_QUERY;
 			} else if(errTitle.equals("Resource Index Not Available Exception")) {
-				throw new ResourceIndexNotAvailableException(errMessage);
+				errType = SearchResultLineFormat.ERROR_INDEX_NOT_AVAILABLE;
 			} else if(errTitle.equals("Access Control Exception")) {
-				throw new AccessControlException(errMessage);
-			} else {
-				throw new ResourceIndexNotAvailableException("Unknown error!");				
+				errType = SearchResultLineFormat.ERROR_ACCESS_CONTROL;
 			}
+			throwRemoteError(errType, errMessage);
+		}
+	}
+
+	/**
+	 * Throw exception for error reported by the remote index.
+	 * @param errType one of {@code SearchResultLineFormat.ERROR_*} types
+	 * @param errMessage error message
+	 */
+	private void throwRemoteError(String errType, String errMessage)
+			throws ResourceIndexNotAvailableException,
+			ResourceNotInArchiveException, BadQueryException,
+			AccessControlException {
+		if (SearchResultLineFormat.ERROR_NOT_IN_ARCHIVE.equals(errType)) {
+			throw new ResourceNotInArchiveException(errMessage);
+		} else if (SearchResultLineFormat.ERROR_BAD_QUERY.equals(errType)) {
+			throw new BadQueryException(errMessage);
+		} else if (SearchResultLineFormat.ERROR_ACCESS_CONTROL.equals(errType)) {
+			throw new AccessControlException(errMessage);
+		} else if (SearchResultLineFormat.ERROR_INDEX_NOT_AVAILABLE.equals(errType)) {
+			throw new ResourceIndexNotAvailableException(errMessage);
 		}
+		throw new ResourceIndexNotAvailableException("Unknown error!");
 	}
 	private String getResultsType(Document document) {
 		NodeList list = document.getElementsByTagName(
@@ -336,6 +388,10 @@ public class RemoteResourceIndex implements ResourceIndex {
 		if(tmp.isReplayRequest()) {
 			tmp.setCaptureQueryRequest();
 		}
+		if (lineFormat) {
+			tmp.put(SearchResultLineFormat.FORMAT_KEY,
+				SearchResultLineFormat.FORMAT_LINES);
+		}
 		return this.searchUrlBase + "?" + tmp.getQueryArguments();
 	}
 
@@ -358,6 +414,133 @@ public class RemoteResourceIndex implements ResourceIndex {
 		conn.setReadTimeout(readTimeout);
 		return (getDocumentBuilder()).parse(conn.getInputStream(),url);
 	}
+
+	/**
+	 * Do an HTTP request asking for {@link SearchResultLineFormat}, and
+	 * parse the response as it is read. Falls back to XML parsing if the
+	 * response is not in line format.
+	 */
+	protected SearchResults getHttpSearchResults(String url,
+			ObjectFilter<CaptureSearchResult> filter) throws IOException,
+			SAXException, ResourceIndexNotAvailableException,
+			ResourceNotInArchiveException, BadQueryException,
+			AccessControlException {
+		URL u = new URL(url);
+		URLConnection conn = u.openConnection();
+		conn.setConnectTimeout(connectTimeout);
+		conn.setReadTimeout(readTimeout);
+		conn.setRequestProperty("Accept-Encoding", "gzip");
+		// the stream is read to the end and closed, so that the connection
+		// goes back to HttpURLConnection's keep-alive cache for reuse.
+		InputStream is = conn.getInputStream();
+		try {
+			if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+				is = new GZIPInputStream(is, 8192);
+			}
+			BufferedInputStream bis = new BufferedInputStream(is, 8192);
+			byte[] header = SearchResultLineFormat.HEADER.getBytes("UTF-8");
+			bis.mark(header.length);
+			boolean isLineFormat = true;
+			for (int i = 0; i < header.length; i++) {
+				if (bis.read() != header[i]) {
+					isLineFormat = false;
+					break;
+				}
+			}
+			if (!isLineFormat) {
+				bis.reset();
+				Document document = getDocumentBuilder().parse(bis, url);
+				checkDocumentForExceptions(document);
+				return documentToSearchResults(document, filter);
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+				bis, "UTF-8"), 8192);
+			// rest of the header line
+			reader.readLine();
+			return linesToSearchResults(reader, filter);
+		} finally {
+			is.close();
+		}
+	}
+
+	protected SearchResults linesToSearchResults(BufferedReader reader,
+			ObjectFilter<CaptureSearchResult> filter) throws IOException,
+			ResourceIndexNotAvailableException, ResourceNotInArchiveException,
+			BadQueryException, AccessControlException {
+		SearchResults results = null;
+		CaptureSearchResults captureResults = null;
+		UrlSearchResults urlResults = null;
+		int numAdded = 0;
+		boolean aborted = false;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.length() < 2) {
+				continue;
+			}
+			char type = line.charAt(0);
+			if (type == SearchResultLineFormat.ERROR_LINE) {
+				Map<String, String> error = SearchResultLineFormat.decode(
+					line, 2);
+				throwRemoteError(error.get(SearchResultLineFormat.ERROR_TYPE),
+					error.get(SearchResultLineFormat.ERROR_MESSAGE));
+			} else if (type == SearchResultLineFormat.REQUEST_LINE) {
+				Map<String, String> filters = SearchResultLineFormat.decode(
+					line, 2);
+				if (SearchResults.RESULTS_TYPE_URL.equals(filters
+					.get(SearchResults.RESULTS_TYPE))) {
+					results = urlResults = new UrlSearchResults();
+				} else {
+					results = captureResults = new CaptureSearchResults();
+				}
+				for (Map.Entry<String, String> e : filters.entrySet()) {
+					results.putFilter(e.getKey(), e.getValue());
+				}
+			} else if (type == SearchResultLineFormat.RESULT_LINE) {
+				if (results == null) {
+					throw new ResourceIndexNotAvailableException(
+						"Result before request in remote response");
+				}
+				if (aborted) {
+					// keep reading, so that the connection can be reused
+					continue;
+				}
+				Map<String, String> fields = SearchResultLineFormat.decode(
+					line, 2);
+				if (urlResults != null) {
+					UrlSearchResult result = new UrlSearchResult();
+					for (Map.Entry<String, String> e : fields.entrySet()) {
+						result.putCustom(e.getKey(), e.getValue());
+					}
+					urlResults.addSearchResult(result, true);
+					continue;
+				}
+				CaptureSearchResult result = new CaptureSearchResult();
+				for (Map.Entry<String, String> e : fields.entrySet()) {
+					result.putCustom(e.getKey(), e.getValue());
+				}
+				int ruling = ObjectFilter.FILTER_INCLUDE;
+				if (filter != null) {
+					ruling = filter.filterObject(result);
+				}
+				if (ruling == ObjectFilter.FILTER_ABORT) {
+					aborted = true;
+				} else if (ruling == ObjectFilter.FILTER_INCLUDE) {
+					numAdded++;
+					captureResults.addSearchResult(result, true);
+				}
+			}
+		}
+		if (results == null) {
+			throw new ResourceIndexNotAvailableException(
+				"Empty remote response");
+		}
+		if (captureResults != null && numAdded == 0) {
+			throw new ResourceNotInArchiveException("No documents matching" +
+					" filter");
+		}
+		return results;
+	}
+
 	protected Document getFileDocument(File f)
 			throws IOException, SAXException {
 		return (getDocumentBuilder()).parse(f);
@@ -403,4 +586,16 @@ public class RemoteResourceIndex implements ResourceIndex {
 	public void setReadTimeout(int readTimeout) {
 		this.readTimeout = readTimeout;
 	}
+
+	public boolean isLineFormat() {
+		return lineFormat;
+	}
+
+	/**
+	 * @param lineFormat if {@code true}, request results in
+	 * {@link SearchResultLineFormat} instead of XML (default {@code false})
+	 */
+	public void setLineFormat(boolean lineFormat) {
+		this.lineFormat = lineFormat;
+	}
 }
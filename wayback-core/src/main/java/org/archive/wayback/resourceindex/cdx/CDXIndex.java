@@ -71,7 +71,7 @@ public class CDXIndex extends FlatFile implements SearchResultSource {
 	public CloseableIterator<CaptureSearchResult> getPrefixReverseIterator(String prefix)
 		throws ResourceIndexNotAvailableException {
 		try {
-			return adaptIterator(getReverseRecordIterator(prefix));
+			return adaptIterator(getReverseIterator(prefix));
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new ResourceIndexNotAvailableException(e.getMessage()); 
@@ -97,7 +97,7 @@ public class CDXIndex extends FlatFile implements SearchResultSource {
 			final Date wantDate) throws IOException {
 		
 		Iterator<CaptureSearchResult> forwardItr = adaptIterator(getRecordIterator(prefix));
-		Iterator<CaptureSearchResult> reverseItr = adaptIterator(getReverseRecordIterator(prefix));
+		Iterator<CaptureSearchResult> reverseItr = adaptIterator(getReverseIterator(prefix));
 		Comparator<CaptureSearchResult> comparator = new CaptureSRComparator(wantDate);
 		SortedCompositeIterator<CaptureSearchResult> itr = 
 			new SortedCompositeIterator<CaptureSearchResult>(comparator);
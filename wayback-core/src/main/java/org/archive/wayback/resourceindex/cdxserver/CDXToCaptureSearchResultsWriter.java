@@ -1,7 +1,9 @@
 package org.archive.wayback.resourceindex.cdxserver;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.archive.cdxserver.CDXQuery;
@@ -10,6 +12,7 @@ import org.archive.cdxserver.auth.AuthChecker;
 import org.archive.format.cdx.CDXLine;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.ColumnarCaptureSearchResults;
 import org.archive.wayback.core.FastCaptureSearchResult;
 import org.archive.wayback.resourceindex.LocalResourceIndex;
 import org.archive.wayback.resourceindex.filterfactory.ExclusionCaptureFilterGroup;
@@ -52,6 +55,12 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 	// tentative
 	protected boolean includeBlockedCaptures = false;
 
+	protected boolean columnar = false;
+
+	protected int replayWindow = 0;
+	protected int maxTrackedDigests = 1000;
+	protected int capturesAfterClosest = 0;
+
 	/**
 	 * Initialize with CDXQuery and other options.
 	 * <p>
@@ -99,11 +108,14 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 
 	@Override
 	public void begin() {
-		results = new CaptureSearchResults();
+		results = (columnar && !isStreaming()) ? new ColumnarCaptureSearchResults()
+				: new CaptureSearchResults();
 
 		if (resolveRevisits) {
 			if (isReverse) {
 				digestToRevisits = new HashMap<String, LinkedList<CaptureSearchResult>>();
+			} else if (isStreaming()) {
+				digestToOriginal = new RecentDigestMap(maxTrackedDigests);
 			} else {
 				digestToOriginal = new HashMap<String, CaptureSearchResult>();
 			}
@@ -175,6 +187,7 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 		result.setCompressedLength(NumberUtils.toLong(line.getLength(), -1));
 
 		boolean isRevisit = false;
+		LinkedList<CaptureSearchResult> resolvedRevisits = null;
 
 		if (resolveRevisits) {
 			isRevisit = result.getFile().equals(CDXLine.EMPTY_VALUE) ||
@@ -210,6 +223,7 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 							revisit.flagDuplicateDigest(result);
 						}
 					}
+					resolvedRevisits = revisits;
 				}
 			}
 		}
@@ -236,10 +250,37 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 			closest = determineClosest(result);
 		}
 
-		results.addSearchResult(result, !isReverse);
-		prevResult = result;
+		CaptureSearchResult added = result;
+		if (results instanceof ColumnarCaptureSearchResults) {
+			// results holds a copy: point everything kept at the copy
+			added = ((ColumnarCaptureSearchResults)results).addCapture(result,
+					!isReverse);
+			if (closest == result) {
+				closest = added;
+			}
+			if (resolveRevisits) {
+				if (!isRevisit && !isReverse) {
+					digestToOriginal.put(result.getDigest(), added);
+				} else if (isRevisit && isReverse) {
+					LinkedList<CaptureSearchResult> revisits = digestToRevisits
+							.get(result.getDigest());
+					revisits.set(revisits.size() - 1, added);
+				} else if (!isRevisit && (resolvedRevisits != null)) {
+					for (CaptureSearchResult revisit : resolvedRevisits) {
+						revisit.flagDuplicateDigest(added);
+					}
+				}
+			}
+		} else {
+			results.addSearchResult(result, !isReverse);
+		}
+		prevResult = added;
 		prevLine = line;
 
+		if (isStreaming()) {
+			slideWindow(added);
+		}
+
 		// Short circuit the load if seeking single capture
 		if (seekSingleCapture && resolveRevisits) {
 			if (closest != null) {
@@ -261,6 +302,59 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 		return done;
 	}
 
+	protected boolean isStreaming() {
+		return (replayWindow > 0) && !isReverse;
+	}
+
+	/**
+	 * Keep captures within {@code replayWindow} of the closest.
+	 * Until closest is known, drops the oldest capture once there are more
+	 * than {@code replayWindow + 1}, as closest may turn out to be the capture
+	 * before the next one. Once closest is known, drops captures more than
+	 * {@code replayWindow} before it, and stops the load when
+	 * {@code replayWindow} captures have been added after it.
+	 * @param added capture just added
+	 */
+	protected void slideWindow(CaptureSearchResult added) {
+		if (closest == null) {
+			while (results.size() > replayWindow + 1) {
+				results.removeFirstResult();
+			}
+		} else {
+			if (closest != added) {
+				capturesAfterClosest++;
+			}
+			while (results.size() - 1 - capturesAfterClosest > replayWindow) {
+				results.removeFirstResult();
+			}
+			if (capturesAfterClosest >= replayWindow) {
+				done = true;
+			}
+		}
+	}
+
+	/**
+	 * Digest to original map holding the most recently seen digests only.
+	 * Revisits of an evicted digest are left unresolved, for
+	 * {@link AccessPoint} to look up the original.
+	 */
+	protected static class RecentDigestMap extends
+			LinkedHashMap<String, CaptureSearchResult> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		public RecentDigestMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CaptureSearchResult> eldest) {
+			return size() > maxSize;
+		}
+	}
+
 	protected CaptureSearchResult determineClosest(
 			CaptureSearchResult nextResult) {
 		int compare = targetTimestamp.compareTo(nextResult
@@ -295,9 +389,15 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 	}
 
 	public void end() {
+		if (isStreaming() && (closest == null)) {
+			// closest will be the last capture
+			while (results.size() > replayWindow + 1) {
+				results.removeFirstResult();
+			}
+		}
 		results.setClosest(this.getClosest());
-		results.setReturnedCount(results.getResults().size());
-		results.setMatchingCount(results.getResults().size());
+		results.setReturnedCount(results.size());
+		results.setMatchingCount(results.size());
 	}
 
 	public CaptureSearchResult getClosest() {
@@ -311,7 +411,7 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 			if (targetTimestamp != null) {
 				return getLastAdded();
 			} else {
-				return results.getResults().getLast();
+				return results.getLastResult();
 			}
 		}
 
@@ -320,9 +420,9 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 
 	protected CaptureSearchResult getLastAdded() {
 		if (!isReverse) {
-			return results.getResults().getLast();
+			return results.getLastResult();
 		} else {
-			return results.getResults().getFirst();
+			return results.getFirstResult();
 		}
 	}
 
@@ -385,4 +485,54 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 		this.includeBlockedCaptures = includeBlockedCaptures;
 	}
 
+	public boolean isColumnar() {
+		return columnar;
+	}
+
+	/**
+	 * set to {@code true} to collect captures into a
+	 * {@link ColumnarCaptureSearchResults}, which uses much less memory
+	 * for large timelines.
+	 * @param columnar
+	 */
+	public void setColumnar(boolean columnar) {
+		this.columnar = columnar;
+	}
+
+	public int getReplayWindow() {
+		return replayWindow;
+	}
+
+	/**
+	 * set to positive number to keep only the closest capture and
+	 * up to {@code replayWindow} captures on each side of it, and stop
+	 * reading CDX lines once they are collected. This bounds memory per
+	 * replay request regardless of the number of captures.
+	 * <p>
+	 * Captures before the window are dropped as lines are read, so first/last
+	 * timestamps and counts of the results reflect the window only. Not
+	 * effective for reverse queries. {@link #setColumnar(boolean)} is ignored
+	 * in this mode.
+	 * </p>
+	 * @param replayWindow number of neighbours on each side, {@code 0}
+	 * (default) to collect all captures
+	 */
+	public void setReplayWindow(int replayWindow) {
+		this.replayWindow = replayWindow;
+	}
+
+	public int getMaxTrackedDigests() {
+		return maxTrackedDigests;
+	}
+
+	/**
+	 * maximum number of distinct digests remembered for resolving revisits
+	 * when {@code replayWindow} is set. Revisits of a digest not seen
+	 * recently are left for {@link AccessPoint} to resolve.
+	 * @param maxTrackedDigests
+	 */
+	public void setMaxTrackedDigests(int maxTrackedDigests) {
+		this.maxTrackedDigests = maxTrackedDigests;
+	}
+
 }
@@ -33,6 +33,7 @@ import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.ColumnarCaptureSearchResults;
 import org.archive.wayback.core.SearchResults;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.AccessControlException;
@@ -82,6 +83,10 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 
 	protected boolean tryFuzzyMatch = false;
 
+	protected boolean columnarResults = false;
+
+	protected int replayWindow = 0;
+
 	protected List<String> ignoreRobotPaths;
 
 	protected String baseStatusRegexp;
@@ -485,9 +490,12 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 		captureWriter.setTargetTimestamp(wbRequest.getReplayTimestamp());
 
 		captureWriter.setSelfRedirFilter(selfRedirFilter);
+		captureWriter.setColumnar(columnarResults);
 
 		if ("true".equals(wbRequest.get(REQUEST_REVISIT_LOOKUP))) {
 			captureWriter.setIncludeBlockedCaptures(true);
+		} else if (resolveRevisits) {
+			captureWriter.setReplayWindow(replayWindow);
 		}
 
 		return captureWriter;
@@ -737,6 +745,37 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 		this.tryFuzzyMatch = tryFuzzyMatch;
 	}
 
+	public boolean isColumnarResults() {
+		return columnarResults;
+	}
+
+	/**
+	 * Set to {@code true} to return capture search results in a
+	 * {@link ColumnarCaptureSearchResults}, which holds large timelines in
+	 * much less memory than one object per capture.
+	 * @param columnarResults
+	 */
+	public void setColumnarResults(boolean columnarResults) {
+		this.columnarResults = columnarResults;
+	}
+
+	public int getReplayWindow() {
+		return replayWindow;
+	}
+
+	/**
+	 * Set to positive number to stream replay queries: only the closest
+	 * capture and up to {@code replayWindow} captures on each side of it
+	 * are kept, and reading the index stops as soon as they are collected.
+	 * Neighbours are used for falling back to other captures and resolving
+	 * self-redirects. Default {@code 0} collects the whole timeline.
+	 * @param replayWindow number of neighbours on each side of closest
+	 * @see CDXToCaptureSearchResultsWriter#setReplayWindow(int)
+	 */
+	public void setReplayWindow(int replayWindow) {
+		this.replayWindow = replayWindow;
+	}
+
 	public String getBaseStatusRegexp() {
 		return baseStatusRegexp;
 	}
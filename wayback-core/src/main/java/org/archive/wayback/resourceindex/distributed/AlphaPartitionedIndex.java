@@ -21,17 +21,33 @@ package org.archive.wayback.resourceindex.distributed;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.apache.commons.httpclient.URIException;
 import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.UrlCanonicalizer;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.SearchResults;
+import org.archive.wayback.core.UrlSearchResult;
+import org.archive.wayback.core.UrlSearchResults;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.AccessControlException;
 import org.archive.wayback.exception.BadQueryException;
@@ -58,6 +74,15 @@ import org.archive.wayback.util.url.AggressiveUrlCanonicalizer;
  * part_c banana.com/ cups.com/ http://part_c1.foo.com http://part_c2.foo.com
  * part_d cups.com/ zorro.com/ http://part_d1.foo.com http://part_d2.foo.com
  * </pre>
+ * <p>
+ * With {@code hedgeDelayMS} set, a query not answered by a partition
+ * instance within that time is also sent to another instance of the
+ * partition (see {@link RangeGroup}). With {@code fanOutPrefixQueries} set,
+ * URL prefix queries whose prefix spans several partitions are sent to all
+ * of them in parallel, and their results concatenated in partition order,
+ * which is also key order. Paging parameters are passed to each partition
+ * as-is, so paging through fanned-out results is only approximate.
+ * </p>
  * 
  * @author brad
  * @see org.archive.wayback.resourceindex.RemoteResourceIndex
@@ -82,11 +107,15 @@ public class AlphaPartitionedIndex implements ResourceIndex {
 	private long lastLoadStat = 0;
 	private long nextCheck = 0;
 	private long checkInterval = DEFAULT_CHECK_INTERVAL;
-	private RangeGroup groups[] = null;
+	private volatile RangeGroup groups[] = null;
 	private String mapPath;
 	private static Comparator<RangeGroup> comparator = 
 		RangeGroup.getComparator();
 	private UrlCanonicalizer canonicalizer = null;
+	private long hedgeDelayMS = 0;
+	private boolean fanOutPrefixQueries = false;
+	private int maxThreads = 32;
+	private ThreadPoolExecutor executor = null;
 
 	public AlphaPartitionedIndex() {
 		canonicalizer = new AggressiveUrlCanonicalizer();
@@ -135,6 +164,8 @@ public class AlphaPartitionedIndex implements ResourceIndex {
 				group = new RangeGroup(name,start,end);
 			}
 			group.setMembers(members);
+			group.setHedgeDelayMS(hedgeDelayMS);
+			group.setExecutor(hedgeDelayMS > 0 ? getExecutor() : null);
 			newGroupsMap.put(name,group);
 		}
 		Collection<RangeGroup> c = newGroupsMap.values();
@@ -166,7 +197,36 @@ public class AlphaPartitionedIndex implements ResourceIndex {
 	protected RangeGroup getRangeGroupForRequest(WaybackRequest wbRequest)
 		throws BadQueryException, ResourceIndexNotAvailableException {
 		
-		String keyUrl;
+		RangeGroup[] curGroups = getGroups();
+		String keyUrl = getKeyUrl(wbRequest);
+		int loc = findGroup(curGroups, keyUrl);
+		LOGGER.info("Using group(" + curGroups[loc].getName() + ") for url (" +
+				keyUrl + ")");
+		return curGroups[loc];
+	}
+
+	/**
+	 * @return groups whose range overlaps URL prefix of {@code wbRequest}, in
+	 * key order
+	 */
+	protected List<RangeGroup> getRangeGroupsForPrefix(WaybackRequest wbRequest)
+		throws BadQueryException, ResourceIndexNotAvailableException {
+
+		RangeGroup[] curGroups = getGroups();
+		String keyUrl = getKeyUrl(wbRequest);
+		int loc = findGroup(curGroups, keyUrl);
+		List<RangeGroup> prefixGroups = new ArrayList<RangeGroup>();
+		prefixGroups.add(curGroups[loc]);
+		for (int i = loc + 1; i < curGroups.length; i++) {
+			if (!curGroups[i].getStart().startsWith(keyUrl)) {
+				break;
+			}
+			prefixGroups.add(curGroups[i]);
+		}
+		return prefixGroups;
+	}
+
+	private RangeGroup[] getGroups() throws ResourceIndexNotAvailableException {
 		try {
 			checkMapFile();
 		} catch (IOException e) {
@@ -175,11 +235,15 @@ public class AlphaPartitionedIndex implements ResourceIndex {
 			throw new ResourceIndexNotAvailableException(e.getMessage());
 		}
 
-		if(groups == null || groups.length == 0) {
+		RangeGroup[] curGroups = groups;
+		if(curGroups == null || curGroups.length == 0) {
 			throw new ResourceIndexNotAvailableException("empty map file");			
 		}
+		return curGroups;
+	}
 
-	
+	private String getKeyUrl(WaybackRequest wbRequest)
+		throws BadQueryException {
 		String searchUrl = wbRequest.getRequestUrl();
 		if (searchUrl == null) {
 			throw new BadQueryException("No " + WaybackRequest.REQUEST_URL 
@@ -187,19 +251,20 @@ public class AlphaPartitionedIndex implements ResourceIndex {
 		}
 
 		try {
-			keyUrl = canonicalizer.urlStringToKey(searchUrl);
+			return canonicalizer.urlStringToKey(searchUrl);
 		} catch (URIException e) {
 			throw new BadQueryException("invalid "
 					+ WaybackRequest.REQUEST_URL + " " + searchUrl);
 		}
+	}
+
+	private static int findGroup(RangeGroup[] curGroups, String keyUrl) {
 		RangeGroup dummy = new RangeGroup("",keyUrl,"");
-		int loc = Arrays.binarySearch(groups,dummy,comparator);
+		int loc = Arrays.binarySearch(curGroups,dummy,comparator);
 		if(loc < 0) {
 			loc = (loc * -1) - 2;
 		}
-		LOGGER.info("Using group(" + groups[loc].getName() + ") for url (" +
-				keyUrl + ")");
-		return groups[loc];
+		return loc;
 	}
 	
 	/* (non-Javadoc)
@@ -209,10 +274,128 @@ public class AlphaPartitionedIndex implements ResourceIndex {
 		throws ResourceIndexNotAvailableException,
 		ResourceNotInArchiveException, BadQueryException,
 		AccessControlException {
-		
+
+		if (fanOutPrefixQueries && wbRequest.isUrlQueryRequest()) {
+			List<RangeGroup> prefixGroups = getRangeGroupsForPrefix(wbRequest);
+			if (prefixGroups.size() > 1) {
+				return queryGroups(wbRequest, prefixGroups);
+			}
+			return prefixGroups.get(0).query(wbRequest);
+		}
 		RangeGroup group = getRangeGroupForRequest(wbRequest);
 		return group.query(wbRequest);
 	}
+
+	/**
+	 * Query {@code prefixGroups} in parallel, and concatenate their results.
+	 * Groups without matches are skipped.
+	 */
+	protected SearchResults queryGroups(final WaybackRequest wbRequest,
+			List<RangeGroup> prefixGroups)
+			throws ResourceIndexNotAvailableException,
+			ResourceNotInArchiveException, BadQueryException,
+			AccessControlException {
+		LOGGER.info("Using " + prefixGroups.size() + " groups for prefix (" +
+				wbRequest.getRequestUrl() + ")");
+		ExecutorService exec = getExecutor();
+		List<Future<SearchResults>> futures =
+			new ArrayList<Future<SearchResults>>();
+		for (final RangeGroup group : prefixGroups) {
+			futures.add(exec.submit(new Callable<SearchResults>() {
+				@Override
+				public SearchResults call() throws Exception {
+					return group.query(wbRequest);
+				}
+			}));
+		}
+		List<SearchResults> parts = new ArrayList<SearchResults>();
+		ResourceNotInArchiveException notFound = null;
+		try {
+			for (Future<SearchResults> f : futures) {
+				try {
+					parts.add(f.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof ResourceNotInArchiveException) {
+						notFound = (ResourceNotInArchiveException)e.getCause();
+					} else {
+						RangeGroup.rethrow(e.getCause());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceIndexNotAvailableException("Interrupted");
+		} finally {
+			for (Future<SearchResults> f : futures) {
+				f.cancel(true);
+			}
+		}
+		if (parts.isEmpty()) {
+			throw notFound;
+		}
+		return mergeResults(parts);
+	}
+
+	/**
+	 * Concatenate {@code parts}, up to the number of results requested.
+	 * Filters are taken from the first part, with matching counts summed.
+	 */
+	protected static SearchResults mergeResults(List<SearchResults> parts) {
+		SearchResults first = parts.get(0);
+		long limit = first.getNumRequested();
+		long matching = 0;
+		long returned = 0;
+		SearchResults merged;
+		if (first instanceof UrlSearchResults) {
+			UrlSearchResults urlResults = new UrlSearchResults();
+			for (SearchResults part : parts) {
+				for (UrlSearchResult result : (UrlSearchResults)part) {
+					if (limit > 0 && returned >= limit) break;
+					urlResults.addSearchResult(result, true);
+					returned++;
+				}
+				matching += Math.max(part.getMatchingCount(), 0);
+			}
+			merged = urlResults;
+		} else {
+			CaptureSearchResults captureResults = new CaptureSearchResults();
+			for (SearchResults part : parts) {
+				for (CaptureSearchResult result : (CaptureSearchResults)part) {
+					if (limit > 0 && returned >= limit) break;
+					captureResults.addSearchResult(result, true);
+					returned++;
+				}
+				matching += Math.max(part.getMatchingCount(), 0);
+			}
+			merged = captureResults;
+		}
+		for (Map.Entry<String, String> e : first.getFilters().entrySet()) {
+			merged.putFilter(e.getKey(), e.getValue());
+		}
+		merged.setMatchingCount(matching);
+		merged.setReturnedCount(returned);
+		return merged;
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(0, maxThreads, 60,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "AlphaPartitionedIndex-" +
+								count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return executor;
+	}
+
 	/**
 	 * @param url
 	 * @return canonicalized key version of url argument
@@ -258,9 +441,57 @@ public class AlphaPartitionedIndex implements ResourceIndex {
 		this.canonicalizer = canonicalizer;
 	}
 
+	public long getHedgeDelayMS() {
+		return hedgeDelayMS;
+	}
+
+	/**
+	 * @param hedgeDelayMS milliseconds to wait for an instance of a
+	 * partition before also querying another one. {@code 0} (default)
+	 * disables hedging. Takes effect when the map file is (re)loaded.
+	 */
+	public void setHedgeDelayMS(long hedgeDelayMS) {
+		this.hedgeDelayMS = hedgeDelayMS;
+	}
+
+	public boolean isFanOutPrefixQueries() {
+		return fanOutPrefixQueries;
+	}
+
+	/**
+	 * @param fanOutPrefixQueries if {@code true}, send URL prefix queries
+	 * to all partitions the prefix spans, instead of only the first one.
+	 * (default {@code false})
+	 */
+	public void setFanOutPrefixQueries(boolean fanOutPrefixQueries) {
+		this.fanOutPrefixQueries = fanOutPrefixQueries;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * @param maxThreads maximum number of concurrent hedged and fanned-out
+	 * queries. Beyond that, queries run in the requesting thread.
+	 * (default 32)
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
 	public void shutdown() throws IOException {
-		for(RangeGroup group : groups) {
-			group.shutdown();
+		RangeGroup[] curGroups = groups;
+		if (curGroups != null) {
+			for(RangeGroup group : curGroups) {
+				group.shutdown();
+			}
+		}
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
 		}
 	}
 }
@@ -20,9 +20,19 @@
 package org.archive.wayback.resourceindex.distributed;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.core.SearchResults;
@@ -31,9 +41,20 @@ import org.archive.wayback.exception.AccessControlException;
 import org.archive.wayback.exception.BadQueryException;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.exception.ResourceNotInArchiveException;
+import org.archive.wayback.exception.WaybackException;
 
 /**
- *
+ * Set of {@link RangeMember}s serving the same key range.
+ * <p>
+ * Each query goes to the member with the fewest outstanding requests, ties
+ * broken by lower average latency. Selection takes no lock. If a member fails,
+ * the next best member is tried.
+ * </p>
+ * <p>
+ * With an executor and {@code hedgeDelayMS} set, a query not answered within
+ * {@code hedgeDelayMS} is also sent to the next best member, and the first
+ * answer is used.
+ * </p>
  *
  * @author brad
  * @version $Date$, $Revision$
@@ -41,9 +62,12 @@ import org.archive.wayback.exception.ResourceNotInArchiveException;
 public class RangeGroup implements ResourceIndex {
 
 	HashMap<String,RangeMember> members = null;
+	private volatile RangeMember[] memberList = new RangeMember[0];
 	private String name;
 	private String start;
 	private String end;
+	private volatile ExecutorService executor = null;
+	private volatile long hedgeDelayMS = 0;
 
 	/**
 	 * Constructor
@@ -71,66 +95,202 @@ public class RangeGroup implements ResourceIndex {
 			if(members.containsKey(urls[i])) {
 				newMembers.put(urls[i],members.get(urls[i]));
 			} else {
-				RangeMember newMember = new RangeMember();
-				newMember.setUrlBase(urls[i]);
-				newMembers.put(urls[i],newMember);
+				newMembers.put(urls[i],createMember(urls[i]));
 			}
 		}
 		members = newMembers;
+		memberList = newMembers.values().toArray(
+			new RangeMember[newMembers.size()]);
+	}
+
+	protected RangeMember createMember(String url) {
+		RangeMember newMember = new RangeMember();
+		newMember.setUrlBase(url);
+		return newMember;
 	}
 
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.ResourceIndex#query(org.archive.wayback.core.WaybackRequest)
 	 */
 	public SearchResults query(WaybackRequest wbRequest) throws ResourceIndexNotAvailableException, ResourceNotInArchiveException, BadQueryException, AccessControlException {
+		if (executor != null && hedgeDelayMS > 0) {
+			return queryHedged(wbRequest);
+		}
 		while(true) {
 			RangeMember best = findBestMember();
 			if(best == null) {
 				throw new ResourceIndexNotAvailableException("Unable to find active range for request.");
 			}
-			best.noteConnectionStart();
-			SearchResults results;
 			try {
-
-				results = best.query(wbRequest);
-				best.noteConnectionSuccess();
-				return results;
-
+				return queryMember(best, wbRequest);
 			} catch (ResourceIndexNotAvailableException e) {
+				// try next member
+			}
+		}
+	}
 
-				best.noteConnectionFailure();
-				
-			} catch (ResourceNotInArchiveException e1) {
-				
-				// need to catch and rethrow so we do accounting on 
-				// activeConnections. ResourceNotInArchive is still a 
-				// "connection success".
+	protected SearchResults queryHedged(final WaybackRequest wbRequest)
+			throws ResourceIndexNotAvailableException,
+			ResourceNotInArchiveException, BadQueryException,
+			AccessControlException {
+		CompletionService<SearchResults> queries =
+			new ExecutorCompletionService<SearchResults>(executor);
+		List<Future<SearchResults>> inFlight =
+			new ArrayList<Future<SearchResults>>();
+		Set<RangeMember> tried = new HashSet<RangeMember>();
+		ResourceIndexNotAvailableException lastFailure = null;
+		try {
+			while (true) {
+				final RangeMember next = findBestMember(tried);
+				if (next != null) {
+					tried.add(next);
+					inFlight.add(queries.submit(new Callable<SearchResults>() {
+						@Override
+						public SearchResults call() throws Exception {
+							return queryMember(next, wbRequest);
+						}
+					}));
+				} else if (inFlight.isEmpty()) {
+					if (lastFailure != null) {
+						throw lastFailure;
+					}
+					throw new ResourceIndexNotAvailableException("Unable to find active range for request.");
+				}
+				Future<SearchResults> done;
+				if (next != null) {
+					done = queries.poll(hedgeDelayMS, TimeUnit.MILLISECONDS);
+					if (done == null) {
+						// slow: hedge with next member
+						continue;
+					}
+				} else {
+					done = queries.take();
+				}
+				inFlight.remove(done);
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof ResourceIndexNotAvailableException) {
+						lastFailure = (ResourceIndexNotAvailableException)cause;
+					} else {
+						rethrow(cause);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceIndexNotAvailableException("Interrupted");
+		} finally {
+			for (Future<SearchResults> f : inFlight) {
+				f.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Rethrow {@code cause} of an ExecutionException from
+	 * {@link ResourceIndex#query}.
+	 */
+	static void rethrow(Throwable cause)
+			throws ResourceIndexNotAvailableException,
+			ResourceNotInArchiveException, BadQueryException,
+			AccessControlException {
+		if (cause instanceof ResourceIndexNotAvailableException) {
+			throw (ResourceIndexNotAvailableException)cause;
+		} else if (cause instanceof ResourceNotInArchiveException) {
+			throw (ResourceNotInArchiveException)cause;
+		} else if (cause instanceof BadQueryException) {
+			throw (BadQueryException)cause;
+		} else if (cause instanceof AccessControlException) {
+			throw (AccessControlException)cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException)cause;
+		} else if (cause instanceof Error) {
+			throw (Error)cause;
+		}
+		throw new ResourceIndexNotAvailableException(cause.toString());
+	}
 
-				best.noteConnectionSuccess();
-				throw e1;
+	private SearchResults queryMember(RangeMember member,
+			WaybackRequest wbRequest) throws ResourceIndexNotAvailableException,
+			ResourceNotInArchiveException, BadQueryException,
+			AccessControlException {
+		long start = System.currentTimeMillis();
+		member.noteConnectionStart();
+		boolean failed = true;
+		try {
+			SearchResults results = member.query(wbRequest);
+			failed = false;
+			return results;
+		} catch (ResourceIndexNotAvailableException e) {
+			throw e;
+		} catch (WaybackException e) {
+			// ResourceNotInArchive etc. are still a "connection success".
+			failed = false;
+			throw e;
+		} finally {
+			if (failed) {
+				member.noteConnectionFailure();
+			} else {
+				member.noteConnectionSuccess(System.currentTimeMillis() - start);
 			}
 		}
 	}
-	protected synchronized RangeMember findBestMember() {
+
+	protected RangeMember findBestMember() {
+		return findBestMember(null);
+	}
+
+	/**
+	 * @param exclude members not to consider, may be {@code null}
+	 * @return usable member with the fewest outstanding requests and, among
+	 * those, the lowest latency, or {@code null} if there is none
+	 */
+	protected RangeMember findBestMember(Set<RangeMember> exclude) {
 		RangeMember best = null;
 		int lowestWeight = RangeMember.UNUSABLE_WEIGHT;
-		Iterator<RangeMember> itr = members.values().iterator();
-		while(itr.hasNext()) {
-			RangeMember cur = itr.next();
+		double bestLatency = 0;
+		for (RangeMember cur : memberList) {
+			if (exclude != null && exclude.contains(cur)) {
+				continue;
+			}
 			int curWeight = cur.getWeight();
 			if(curWeight != RangeMember.UNUSABLE_WEIGHT) {
-				
+				double curLatency = cur.getLatency();
 				if( (lowestWeight == RangeMember.UNUSABLE_WEIGHT)
-						|| (curWeight < lowestWeight) ) {
+						|| (curWeight < lowestWeight)
+						|| (curWeight == lowestWeight && curLatency < bestLatency) ) {
 
 					best = cur;
 					lowestWeight = curWeight;
+					bestLatency = curLatency;
 				}
 			}
 		}
 		return best;
 	}
 
+	/**
+	 * @param executor executor for hedged queries, {@code null} to disable
+	 * hedging
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public long getHedgeDelayMS() {
+		return hedgeDelayMS;
+	}
+
+	/**
+	 * @param hedgeDelayMS milliseconds to wait for a member before also
+	 * querying the next one. {@code 0} disables hedging.
+	 */
+	public void setHedgeDelayMS(long hedgeDelayMS) {
+		this.hedgeDelayMS = hedgeDelayMS;
+	}
+
 	/**
 	 * @return Returns the end.
 	 */
@@ -167,7 +327,7 @@ public class RangeGroup implements ResourceIndex {
 	}
 
 	public void shutdown() throws IOException {
-		for(RangeMember member : members.values()) {
+		for(RangeMember member : memberList) {
 			member.shutdown();
 		}
 	}
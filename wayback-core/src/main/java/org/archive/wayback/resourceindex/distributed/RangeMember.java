@@ -20,6 +20,8 @@
 package org.archive.wayback.resourceindex.distributed;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.core.SearchResults;
@@ -40,31 +42,65 @@ public class RangeMember implements ResourceIndex {
 
 	private static long MS_RETRY_INTERVAL = 10 * 1000;
 	protected static int UNUSABLE_WEIGHT = -1;
+	/**
+	 * weight of the latest sample in latency moving average
+	 */
+	private static double LATENCY_EWMA_ALPHA = 0.2;
 	
 	private RemoteResourceIndex index = new RemoteResourceIndex();
-	private long lastGoodResponse = System.currentTimeMillis();
-	private long lastFailedResponse = 0;
-	private int activeConnections = 0;
+	private volatile long lastGoodResponse = System.currentTimeMillis();
+	private volatile long lastFailedResponse = 0;
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	// Double bits of latency moving average in ms, 0 if no samples yet
+	private final AtomicLong latencyBits = new AtomicLong(
+		Double.doubleToLongBits(0));
 
-	protected synchronized int getWeight() {
-		int weight = activeConnections;
-		if(lastFailedResponse >= lastGoodResponse) {
-			long elapsed = System.currentTimeMillis() - lastFailedResponse;
+	/**
+	 * @return number of outstanding requests, or {@link #UNUSABLE_WEIGHT}
+	 * if the member failed recently
+	 */
+	protected int getWeight() {
+		int weight = activeConnections.get();
+		long lastFailed = lastFailedResponse;
+		if(lastFailed >= lastGoodResponse) {
+			long elapsed = System.currentTimeMillis() - lastFailed;
 			if(elapsed < MS_RETRY_INTERVAL) {
 				weight = UNUSABLE_WEIGHT;
 			}
 		}
 		return weight;
 	}
-	protected synchronized void noteConnectionStart() {
-		activeConnections++;
+	/**
+	 * @return exponentially weighted moving average of successful response
+	 * times, in milliseconds. {@code 0} if there were none yet.
+	 */
+	protected double getLatency() {
+		return Double.longBitsToDouble(latencyBits.get());
+	}
+	protected void noteConnectionStart() {
+		activeConnections.incrementAndGet();
 	}
-	protected synchronized void noteConnectionSuccess() {
-		activeConnections--;
+	protected void noteConnectionSuccess() {
+		activeConnections.decrementAndGet();
 		lastGoodResponse = System.currentTimeMillis();
 	}
-	protected synchronized void noteConnectionFailure() {
-		activeConnections--;
+	/**
+	 * @param elapsedMS response time
+	 */
+	protected void noteConnectionSuccess(long elapsedMS) {
+		noteConnectionSuccess();
+		while (true) {
+			long bits = latencyBits.get();
+			double cur = Double.longBitsToDouble(bits);
+			double next = (cur == 0) ? elapsedMS : cur +
+					LATENCY_EWMA_ALPHA * (elapsedMS - cur);
+			if (latencyBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+				break;
+			}
+		}
+	}
+	protected void noteConnectionFailure() {
+		activeConnections.decrementAndGet();
 		lastFailedResponse = System.currentTimeMillis();
 	}
 	
@@ -92,6 +128,6 @@ public class RangeMember implements ResourceIndex {
     
     @Override
     public String toString() {
-        return "RangeMember{urlBase=" + getUrlBase() + ", activeConnections=" + activeConnections + ", weight=" + getWeight() + '}';
+        return "RangeMember{urlBase=" + getUrlBase() + ", activeConnections=" + activeConnections + ", weight=" + getWeight() + ", latency=" + getLatency() + '}';
     }
 }
@@ -0,0 +1,113 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals for blocks fetched and inflated by the read-ahead threads
+ * of a {@link ZiplinesSearchResultSource}.
+ * <p>
+ * {@code loadMillis} is time spent fetching and inflating on the read-ahead
+ * threads; {@code waitMillis} is time query threads spent blocked waiting
+ * for a block which had not finished loading. A wait time much smaller than
+ * the load time means the read-ahead is hiding the I/O.
+ * </p>
+ */
+public class BlockLoadStats {
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong blocksLoaded = new AtomicLong();
+	private final AtomicLong blocksCancelled = new AtomicLong();
+	private final AtomicLong loadFailures = new AtomicLong();
+	private final AtomicLong loadMillis = new AtomicLong();
+	private final AtomicLong waitMillis = new AtomicLong();
+
+	void noteQuery() {
+		queries.incrementAndGet();
+	}
+
+	void noteLoad(long elapsed, boolean success) {
+		if (success) {
+			blocksLoaded.incrementAndGet();
+		} else {
+			loadFailures.incrementAndGet();
+		}
+		loadMillis.addAndGet(elapsed);
+	}
+
+	void noteWait(long elapsed) {
+		waitMillis.addAndGet(elapsed);
+	}
+
+	void noteCancelled(int count) {
+		blocksCancelled.addAndGet(count);
+	}
+
+	/**
+	 * @return number of queries which used read-ahead
+	 */
+	public long getQueries() {
+		return queries.get();
+	}
+
+	/**
+	 * @return number of blocks loaded by read-ahead threads
+	 */
+	public long getBlocksLoaded() {
+		return blocksLoaded.get();
+	}
+
+	/**
+	 * @return number of blocks queued for read-ahead, but dropped because
+	 * the iterator was closed before they were used
+	 */
+	public long getBlocksCancelled() {
+		return blocksCancelled.get();
+	}
+
+	/**
+	 * @return number of read-ahead loads which failed
+	 */
+	public long getLoadFailures() {
+		return loadFailures.get();
+	}
+
+	/**
+	 * @return total milliseconds spent loading blocks on read-ahead threads
+	 */
+	public long getLoadMillis() {
+		return loadMillis.get();
+	}
+
+	/**
+	 * @return total milliseconds query threads spent waiting for blocks
+	 */
+	public long getWaitMillis() {
+		return waitMillis.get();
+	}
+
+	@Override
+	public String toString() {
+		return "queries=" + getQueries() + " loaded=" + getBlocksLoaded()
+				+ " cancelled=" + getBlocksCancelled() + " failed="
+				+ getLoadFailures() + " loadMS=" + getLoadMillis()
+				+ " waitMS=" + getWaitMillis();
+	}
+}
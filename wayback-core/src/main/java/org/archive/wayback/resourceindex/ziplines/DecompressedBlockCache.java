@@ -0,0 +1,269 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of decompressed ZipNum blocks, bounded by the total number of
+ * decompressed bytes held rather than by entry count.
+ * <p>
+ * Blocks are keyed by the location of their part file and their offset and
+ * length within it. A single instance can be shared by several
+ * {@link ZiplinesSearchResultSource}s, by configuring the same bean as each
+ * one's {@code blockCache}.
+ * </p>
+ * <p>
+ * To limit lock contention the cache is split into segments by key hash,
+ * each with an equal share of the byte budget and its own lock.
+ * </p>
+ */
+public class DecompressedBlockCache {
+	private final static int DEFAULT_SEGMENTS = 16;
+	private final static long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private int numSegments = DEFAULT_SEGMENTS;
+	private volatile Segment[] segments = null;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private static class Key {
+		final String part;
+		final long offset;
+		final int length;
+		final int hash;
+
+		Key(String part, long offset, int length) {
+			this.part = part;
+			this.offset = offset;
+			this.length = length;
+			int h = part.hashCode();
+			h = 31 * h + (int) (offset ^ (offset >>> 32));
+			h = 31 * h + length;
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return (offset == other.offset) && (length == other.length)
+					&& part.equals(other.part);
+		}
+	}
+
+	private class Segment {
+		final long maxBytes;
+		long bytes = 0;
+		final LinkedHashMap<Key, byte[]> map =
+				new LinkedHashMap<Key, byte[]>(64, 0.75f, true);
+
+		Segment(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized byte[] get(Key key) {
+			return map.get(key);
+		}
+
+		synchronized void put(Key key, byte[] data) {
+			byte[] old = map.put(key, data);
+			if (old != null) {
+				bytes -= old.length;
+			}
+			bytes += data.length;
+			Iterator<Map.Entry<Key, byte[]>> itr = map.entrySet().iterator();
+			while ((bytes > maxBytes) && itr.hasNext()) {
+				Map.Entry<Key, byte[]> eldest = itr.next();
+				bytes -= eldest.getValue().length;
+				itr.remove();
+				evictions.incrementAndGet();
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			bytes = 0;
+		}
+
+		synchronized long getBytes() {
+			return bytes;
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+	}
+
+	private Segment[] getSegments() {
+		if (segments == null) {
+			synchronized (this) {
+				if (segments == null) {
+					Segment[] created = new Segment[numSegments];
+					for (int i = 0; i < numSegments; i++) {
+						created[i] = new Segment(maxBytes / numSegments);
+					}
+					segments = created;
+				}
+			}
+		}
+		return segments;
+	}
+
+	private Segment segmentFor(Key key) {
+		Segment[] s = getSegments();
+		int h = key.hash ^ (key.hash >>> 16);
+		return s[(h & 0x7fffffff) % s.length];
+	}
+
+	/**
+	 * @param part location of the part file holding the block
+	 * @param offset of the compressed block within part
+	 * @param length of the compressed block
+	 * @return the decompressed block, or null if it is not cached
+	 */
+	public byte[] get(String part, long offset, int length) {
+		Key key = new Key(part, offset, length);
+		byte[] data = segmentFor(key).get(key);
+		if (data == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return data;
+	}
+
+	/**
+	 * Add a decompressed block, evicting least recently used blocks as
+	 * needed to stay under maxBytes. The array must not be modified after it
+	 * has been added.
+	 * @param part location of the part file holding the block
+	 * @param offset of the compressed block within part
+	 * @param length of the compressed block
+	 * @param data decompressed block
+	 */
+	public void put(String part, long offset, int length, byte[] data) {
+		Key key = new Key(part, offset, length);
+		segmentFor(key).put(key, data);
+	}
+
+	/**
+	 * Remove all cached blocks. Counters are not reset.
+	 */
+	public void clear() {
+		for (Segment segment : getSegments()) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * @return maximum number of decompressed bytes to hold
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes maximum number of decompressed bytes to hold. Must be
+	 * set before the cache is first used.
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return number of independently locked segments
+	 */
+	public int getNumSegments() {
+		return numSegments;
+	}
+
+	/**
+	 * @param numSegments number of independently locked segments, each of
+	 * which holds maxBytes/numSegments. Must be set before the cache is first
+	 * used.
+	 */
+	public void setNumSegments(int numSegments) {
+		this.numSegments = Math.max(1, numSegments);
+	}
+
+	/**
+	 * @return number of decompressed bytes currently held
+	 */
+	public long getBytes() {
+		long total = 0;
+		for (Segment segment : getSegments()) {
+			total += segment.getBytes();
+		}
+		return total;
+	}
+
+	/**
+	 * @return number of blocks currently held
+	 */
+	public int size() {
+		int total = 0;
+		for (Segment segment : getSegments()) {
+			total += segment.size();
+		}
+		return total;
+	}
+
+	/**
+	 * @return number of lookups which found the block cached
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups which did not find the block cached
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of blocks evicted to stay under maxBytes
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "blocks=" + size() + " bytes=" + getBytes() + " hits="
+				+ getHits() + " misses=" + getMisses() + " evictions="
+				+ getEvictions();
+	}
+}
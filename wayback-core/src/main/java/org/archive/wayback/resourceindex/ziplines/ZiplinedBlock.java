@@ -21,7 +21,11 @@ package org.archive.wayback.resourceindex.ziplines;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
@@ -40,6 +44,7 @@ public class ZiplinedBlock {
 			ZiplinedBlock.class.getName());
 
 	BlockLoader loader = null;
+	DecompressedBlockCache cache = null;
 	String urlOrPaths[] = null;
 	long offset = -1;
 	public final static int BLOCK_SIZE = 128 * 1024;
@@ -74,6 +79,15 @@ public class ZiplinedBlock {
 		this.loader = loader;
 	}
         
+	/**
+	 * @param cache the DecompressedBlockCache to consult before fetching this
+	 * block, and to populate after fetching it. Only used when a loader is
+	 * set.
+	 */
+	public void setCache(DecompressedBlockCache cache) {
+		this.cache = cache;
+	}
+
 	/**
 	 * @return a BufferedReader of the underlying compressed data in this block
 	 * @throws IOException for usual reasons
@@ -85,6 +99,29 @@ public class ZiplinedBlock {
 		return readBlockInefficiently();
 	}
         
+	/**
+	 * Fetch and completely inflate this block, so the returned reader can be
+	 * consumed without further I/O. Used when blocks are read ahead on
+	 * another thread.
+	 * @return a BufferedReader of the decompressed data in this block, held
+	 * in memory
+	 * @throws IOException for usual reasons
+	 */
+	public BufferedReader readBlockFully() throws IOException {
+		BufferedReader br = readBlock();
+		CharArrayWriter decompressed = new CharArrayWriter(BLOCK_SIZE);
+		try {
+			char buffer[] = new char[8192];
+			for (int r = -1; (r = br.read(buffer)) != -1;) {
+				decompressed.write(buffer, 0, r);
+			}
+		} finally {
+			br.close();
+		}
+		return new BufferedReader(
+				new CharArrayReader(decompressed.toCharArray()));
+	}
+
 	protected byte[] attemptBlockLoad(BlockLoader remote) {
 		for(String urlOrPath : urlOrPaths) {
 			try {
@@ -97,19 +134,57 @@ public class ZiplinedBlock {
 		return null;
 	}
 	
+	/**
+	 * @param bytes the compressed block, as fetched by the BlockLoader
+	 * @return InputStream of the decompressed block
+	 * @throws IOException for usual reasons
+	 */
+	protected InputStream decompress(byte bytes[]) throws IOException {
+		return new OpenJDK7GZIPInputStream(new ByteArrayInputStream(bytes));
+	}
+
 	protected BufferedReader readBlockEfficiently(BlockLoader remote)
 	throws IOException {
+		if(cache != null) {
+			return readCachedBlock(remote);
+		}
 		byte bytes[] = attemptBlockLoad(remote);
 		if(bytes == null) {
 			throw new IOException("Unable to load block!");
 		}
-		return new BufferedReader(new InputStreamReader(
-				new OpenJDK7GZIPInputStream(new ByteArrayInputStream(bytes)),
+		return new BufferedReader(new InputStreamReader(decompress(bytes),
 				ByteOp.UTF8));
 //		return new BufferedReader(new InputStreamReader(
 //				new GZIPInputStream(new ByteArrayInputStream(bytes)),
 //				ByteOp.UTF8));
 	}
+
+	protected BufferedReader readCachedBlock(BlockLoader remote)
+	throws IOException {
+		String part = urlOrPaths[0];
+		byte decompressed[] = cache.get(part, offset, count);
+		if(decompressed == null) {
+			byte bytes[] = attemptBlockLoad(remote);
+			if(bytes == null) {
+				throw new IOException("Unable to load block!");
+			}
+			InputStream is = decompress(bytes);
+			ByteArrayOutputStream baos =
+				new ByteArrayOutputStream(bytes.length * 8);
+			try {
+				byte buffer[] = new byte[8192];
+				for(int r = -1; (r = is.read(buffer)) != -1;) {
+					baos.write(buffer, 0, r);
+				}
+			} finally {
+				is.close();
+			}
+			decompressed = baos.toByteArray();
+			cache.put(part, offset, count, decompressed);
+		}
+		return new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(decompressed), ByteOp.UTF8));
+	}
         
 	protected BufferedReader readBlockInefficiently() throws IOException {
 		StringBuilder sb = new StringBuilder(16);
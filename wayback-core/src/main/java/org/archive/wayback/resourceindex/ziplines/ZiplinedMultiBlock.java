@@ -47,12 +47,20 @@ public class ZiplinedMultiBlock extends ZiplinedBlock {
 	@Override
 	public BufferedReader readBlock()
 	throws IOException {
+		if(super.cache != null) {
+			return readCachedBlock(super.loader);
+		}
 		byte bytes[] = attemptBlockLoad(super.loader);
 		
 		if(bytes == null) {
 			throw new IOException("Unable to load block(s)!");
 		}
 		
+		return new BufferedReader(new InputStreamReader(decompress(bytes)));
+	}
+
+	@Override
+	protected InputStream decompress(byte bytes[]) throws IOException {
 		int count = 0;
 		InputStream currChain = null;
 		
@@ -69,6 +77,6 @@ public class ZiplinedMultiBlock extends ZiplinedBlock {
 			count += blockSize;
 		}
 		
-		return new BufferedReader(new InputStreamReader(currChain));
+		return currChain;
 	}
 }
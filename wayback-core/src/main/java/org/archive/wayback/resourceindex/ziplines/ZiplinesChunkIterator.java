@@ -26,7 +26,14 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 import org.archive.util.io.RuntimeIOException;
@@ -46,6 +53,13 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 	private Iterator<ZiplinedBlock> blockItr = null;
 	private String cachedNext = null;
 	private boolean truncated = false;
+
+	private ExecutorService executor = null;
+	private int readAhead = 0;
+	private LinkedList<Future<BufferedReader>> pending = null;
+	private BlockLoadStats stats = null;
+	private volatile boolean closed = false;
+
 	/**
 	 * @param blocks which should be fetched and unzipped, one after another
 	 */
@@ -53,6 +67,106 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 		LOGGER.info("initialized with " + blocks.size() + " blocks");
 		blockItr = blocks.iterator();
 	}
+
+	/**
+	 * @param blocks which should be fetched and unzipped, in order
+	 * @param executor ExecutorService used to fetch and unzip blocks ahead of
+	 * the one currently being iterated
+	 * @param readAhead maximum number of blocks to fetch ahead of the current
+	 * block, for this iterator
+	 * @param stats BlockLoadStats to update, or null
+	 */
+	public ZiplinesChunkIterator(List<ZiplinedBlock> blocks,
+			ExecutorService executor, int readAhead, BlockLoadStats stats) {
+		this(blocks);
+		if ((executor != null) && (readAhead > 0) && (blocks.size() > 1)) {
+			this.executor = executor;
+			this.readAhead = readAhead;
+			this.stats = stats;
+			pending = new LinkedList<Future<BufferedReader>>();
+			if (stats != null) {
+				stats.noteQuery();
+			}
+			fillReadAhead();
+		}
+	}
+
+	private void fillReadAhead() {
+		while ((pending.size() < readAhead) && blockItr.hasNext()) {
+			final ZiplinedBlock block = blockItr.next();
+			Callable<BufferedReader> load = new Callable<BufferedReader>() {
+				public BufferedReader call() throws IOException {
+					if (closed) {
+						return null;
+					}
+					long start = System.currentTimeMillis();
+					boolean success = false;
+					try {
+						BufferedReader loaded = block.readBlockFully();
+						success = true;
+						return loaded;
+					} finally {
+						if (stats != null) {
+							stats.noteLoad(System.currentTimeMillis() - start,
+									success);
+						}
+					}
+				}
+			};
+			Future<BufferedReader> future;
+			try {
+				future = executor.submit(load);
+			} catch (RejectedExecutionException e) {
+				// executor shut down or saturated: load on this thread
+				// when needed
+				future = new InlineLoad(load);
+			}
+			pending.add(future);
+		}
+	}
+
+	/**
+	 * A load which could not be handed to the executor, and is run on the
+	 * iterating thread when its turn comes.
+	 */
+	private static class InlineLoad extends FutureTask<BufferedReader> {
+		InlineLoad(Callable<BufferedReader> load) {
+			super(load);
+		}
+	}
+
+	private boolean hasMoreBlocks() {
+		return blockItr.hasNext() || ((pending != null) && !pending.isEmpty());
+	}
+
+	private BufferedReader nextBlockReader() throws IOException {
+		if (pending == null) {
+			return blockItr.next().readBlock();
+		}
+		Future<BufferedReader> future = pending.removeFirst();
+		// keep the pipeline full while the caller consumes this block:
+		fillReadAhead();
+		if (future instanceof InlineLoad) {
+			((InlineLoad) future).run();
+		}
+		long start = System.currentTimeMillis();
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for block", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			if (stats != null) {
+				stats.noteWait(System.currentTimeMillis() - start);
+			}
+		}
+	}
 	/* (non-Javadoc)
 	 * @see java.util.Iterator#hasNext()
 	 */
@@ -77,9 +191,9 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 				}
 			} else {
 				// do we have more blocks to use?
-				if(blockItr.hasNext()) {
+				if(hasMoreBlocks()) {
 					try {
-						br = blockItr.next().readBlock();
+						br = nextBlockReader();
 					} catch (IOException e) {
 						throw new RuntimeIOException();
 					}
@@ -112,9 +226,42 @@ public class ZiplinesChunkIterator implements CloseableIterator<String> {
 	 * @see java.io.Closeable#close()
 	 */
 	public void close() throws IOException {
+		closed = true;
 		if(br != null) {
 			br.close();
 		}
+		if((pending != null) && !pending.isEmpty()) {
+			// loads not yet started return null; wait for those under way,
+			// so no block is still being read once this returns
+			int cancelled = 0;
+			boolean interrupted = false;
+			for(Future<BufferedReader> future : pending) {
+				if(future instanceof InlineLoad) {
+					cancelled++;
+					continue;
+				}
+				try {
+					BufferedReader loaded = future.get();
+					if(loaded == null) {
+						cancelled++;
+					} else {
+						loaded.close();
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+					break;
+				} catch (ExecutionException e) {
+					// already counted as a failed load
+				}
+			}
+			pending.clear();
+			if(stats != null) {
+				stats.noteCancelled(cancelled);
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 	public static void main(String[] args) {
 		if(args.length != 1) {
@@ -25,6 +25,12 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,6 +93,19 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	private CDXFormat format = null;
 	private int maxBlocks = 1000;
 	private BlockLoader blockLoader = null;
+	private DecompressedBlockCache blockCache = null;
+
+	/**
+	 * Number of blocks to fetch and inflate ahead of the one being iterated,
+	 * per query. 0 disables read-ahead.
+	 */
+	private int readAheadBlocks = 0;
+	/**
+	 * Size of the thread pool shared by all queries for read-ahead.
+	 */
+	private int readAheadThreads = 8;
+	private ExecutorService readAheadExecutor = null;
+	private BlockLoadStats readAheadStats = new BlockLoadStats();
 	
 	protected int timestampDedupLength = 0;
 	
@@ -125,6 +144,23 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 		}
 		lines.close();
 		chunkIndex = new FlatFile(chunkIndexPath);
+		if ((readAheadBlocks > 0) && (readAheadExecutor == null)) {
+			// no queue: when all threads are busy, the load is rejected and
+			// done by the iterating thread when the block is reached
+			readAheadExecutor = new ThreadPoolExecutor(0, readAheadThreads,
+					60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					new ReadAheadThreadFactory());
+		}
+	}
+
+	private static class ReadAheadThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "ziplines-read-ahead-"
+					+ count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
 	}
 	protected CloseableIterator<CaptureSearchResult> adaptIterator(Iterator<String> itr) 
 	throws IOException {
@@ -256,6 +292,7 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 					block = new ZiplinedBlock(bl.getLocations(), offset, length);
 				}
 				block.setLoader(blockLoader);
+				block.setCache(blockCache);
 				blocks.add(block);
 			}
 		} finally {
@@ -269,7 +306,8 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	public Iterator<String> getZiplinesChunkIterator(String prefix, String urlkey) throws ResourceIndexNotAvailableException, IOException
 	{
 		ArrayList<ZiplinedBlock> blocks = getBlockListForPrefix(prefix, urlkey);
-		ZiplinesChunkIterator zci = new ZiplinesChunkIterator(blocks);
+		ZiplinesChunkIterator zci = new ZiplinesChunkIterator(blocks,
+				readAheadExecutor, readAheadBlocks, readAheadStats);
 		zci.setTruncated(false);
 		return zci;
 	}
@@ -313,7 +351,10 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	 */
         @Override
 	public void shutdown() throws IOException {
-		// no-op..
+		if (readAheadExecutor != null) {
+			readAheadExecutor.shutdownNow();
+			readAheadExecutor = null;
+		}
 	}
 	/**
 	 * @return the format
@@ -378,6 +419,63 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 		this.blockLoader = blockLoader;
 	}
 
+	/**
+	 * @return the DecompressedBlockCache shared by queries, or null
+	 */
+	public DecompressedBlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	/**
+	 * @param blockCache cache of decompressed blocks, consulted before
+	 * fetching a block through the blockLoader. The same cache may be given
+	 * to several ZiplinesSearchResultSources. Requires a blockLoader.
+	 */
+	public void setBlockCache(DecompressedBlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+
+	/**
+	 * @return number of blocks each query fetches ahead of the block it is
+	 * currently reading
+	 */
+	public int getReadAheadBlocks() {
+		return readAheadBlocks;
+	}
+
+	/**
+	 * @param readAheadBlocks if positive, each query fetches and inflates up
+	 * to this many blocks concurrently, ahead of the block being iterated.
+	 * Lines are still returned in block order. Must be set before init().
+	 */
+	public void setReadAheadBlocks(int readAheadBlocks) {
+		this.readAheadBlocks = readAheadBlocks;
+	}
+
+	/**
+	 * @return size of the read-ahead thread pool
+	 */
+	public int getReadAheadThreads() {
+		return readAheadThreads;
+	}
+
+	/**
+	 * @param readAheadThreads size of the thread pool shared by all queries
+	 * for read-ahead, which caps concurrent block loads across the JVM.
+	 * Blocks which cannot be given a thread are not queued, but loaded by
+	 * the query's own thread when it reaches them. Must be set before init().
+	 */
+	public void setReadAheadThreads(int readAheadThreads) {
+		this.readAheadThreads = readAheadThreads;
+	}
+
+	/**
+	 * @return counters for read-ahead block loads
+	 */
+	public BlockLoadStats getReadAheadStats() {
+		return readAheadStats;
+	}
+
 	private static void USAGE() {
 		System.err.println("USAGE:");
 		System.err.println("");
@@ -4,7 +4,23 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +44,8 @@ import org.archive.wayback.resourcestore.resourcefile.WarcResource;
 public class FlexResourceStore implements ResourceStore {
 	
 	final static String[] EMPTY_STRINGS = new String[0];
+
+	private final static Object GAVE_UP = new Object();
 	
 	private final static Logger LOGGER = Logger.getLogger(FlexResourceStore.class.getName());
 	
@@ -38,6 +56,19 @@ public class FlexResourceStore implements ResourceStore {
 	protected List<SourceResolver> sources;
 	
 	protected boolean failOnFirstUnavailable = false;
+
+	protected long hedgeDelayMS = 0;
+
+	protected double hedgePercentile = 0.95;
+
+	protected int hedgeMinSamples = 20;
+
+	protected int maxHedgeThreads = 32;
+
+	private ThreadPoolExecutor hedgeExecutor = null;
+
+	private final ConcurrentHashMap<String, LatencyHistogram> latencies =
+			new ConcurrentHashMap<String, LatencyHistogram>();
 	
 	public ZipNumBlockLoader getBlockLoader() {
 		return blockLoader;
@@ -71,6 +102,61 @@ public class FlexResourceStore implements ResourceStore {
 		this.failOnFirstUnavailable = failOnFirstUnavailable;
 	}
 
+	public long getHedgeDelayMS() {
+		return hedgeDelayMS;
+	}
+
+	/**
+	 * Enable hedged loading: if the load from a path has not completed
+	 * after this many milliseconds, start loading the next path
+	 * concurrently, and use whichever succeeds first.
+	 * Once a source has {@code hedgeMinSamples} latency samples, its
+	 * {@code hedgePercentile} latency is used instead, if shorter.
+	 * Paths are also ordered by their source's latency.
+	 * @param hedgeDelayMS maximum hedge delay, {@code 0} to load paths
+	 * one by one (default)
+	 */
+	public void setHedgeDelayMS(long hedgeDelayMS) {
+		this.hedgeDelayMS = hedgeDelayMS;
+	}
+
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * @param hedgePercentile latency percentile of a source after which
+	 * the next path is tried (default {@code 0.95})
+	 */
+	public void setHedgePercentile(double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	public int getHedgeMinSamples() {
+		return hedgeMinSamples;
+	}
+
+	/**
+	 * @param hedgeMinSamples number of samples needed before a source's
+	 * latency histogram is used (default {@code 20})
+	 */
+	public void setHedgeMinSamples(int hedgeMinSamples) {
+		this.hedgeMinSamples = hedgeMinSamples;
+	}
+
+	public int getMaxHedgeThreads() {
+		return maxHedgeThreads;
+	}
+
+	/**
+	 * @param maxHedgeThreads maximum number of concurrent loads for
+	 * hedging. Loads over this limit run in the requesting thread.
+	 * (default {@code 32})
+	 */
+	public void setMaxHedgeThreads(int maxHedgeThreads) {
+		this.maxHedgeThreads = maxHedgeThreads;
+	}
+
 	public interface SourceResolver
 	{
 		String[] lookupPath(String filename) throws IOException;
@@ -201,6 +287,10 @@ public class FlexResourceStore implements ResourceStore {
 		if (filename == null || filename.isEmpty()) {
 			throw new ResourceNotAvailableException("No ARC/WARC name in search result...", filename);
 		}
+
+		if (hedgeDelayMS > 0) {
+			return retrieveHedged(filename, result);
+		}
 		
 		Resource resource = null;
 		boolean breakOnErr = false;
@@ -227,7 +317,7 @@ public class FlexResourceStore implements ResourceStore {
 				}
 			}
 			
-			if (paths.length == 0) {
+			if (paths == null || paths.length == 0) {
 				continue;
 			}
 			
@@ -267,6 +357,294 @@ public class FlexResourceStore implements ResourceStore {
 		throw rnae;
 	}
 	
+	protected Resource retrieveHedged(String filename,
+			final CaptureSearchResult result)
+			throws ResourceNotAvailableException {
+
+		StringBuilder excMsg = new StringBuilder();
+		Exception lastExc = null;
+		boolean breakOnErr = false;
+
+		List<String> paths = new ArrayList<String>();
+
+		for (SourceResolver resolver : sources) {
+			try {
+				String[] resolved = resolver.lookupPath(filename);
+				if (resolved != null) {
+					paths.addAll(Arrays.asList(resolved));
+				}
+			} catch (IOException io) {
+				if (excMsg.length() > 0) {
+					excMsg.append(" ");
+				}
+				excMsg.append(io.getMessage());
+				lastExc = io;
+
+				// as in sequential loading, paths of earlier sources
+				// are still tried
+				if (failOnFirstUnavailable) {
+					break;
+				}
+			}
+		}
+
+		orderBySourceLatency(paths);
+
+		final AtomicReference<Object> winner = new AtomicReference<Object>();
+		Resource found = null;
+		CompletionService<Resource> loads = new ExecutorCompletionService<Resource>(
+			getHedgeExecutor());
+		List<Future<Resource>> inFlight = new ArrayList<Future<Resource>>();
+		int next = 0;
+
+		try {
+			while (true) {
+				boolean more = !breakOnErr && next < paths.size();
+				Future<Resource> done;
+				if (more) {
+					final String path = paths.get(next++);
+					inFlight.add(loads.submit(new Callable<Resource>() {
+						@Override
+						public Resource call() throws Exception {
+							return loadForHedge(path, result, winner);
+						}
+					}));
+					done = loads.poll(getHedgeDelay(path),
+						TimeUnit.MILLISECONDS);
+					if (done == null) {
+						continue;
+					}
+				} else if (!inFlight.isEmpty()) {
+					done = loads.take();
+				} else {
+					break;
+				}
+				inFlight.remove(done);
+				try {
+					found = done.get();
+					if (found != null) {
+						return found;
+					}
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof ResourceNotAvailableException) {
+						throw (ResourceNotAvailableException)cause;
+					}
+					if (excMsg.length() > 0) {
+						excMsg.append(" ");
+					}
+					excMsg.append(cause.getMessage());
+					lastExc = (cause instanceof Exception) ? (Exception)cause
+							: e;
+
+					if (failOnFirstUnavailable) {
+						breakOnErr = true;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			lastExc = e;
+			excMsg.append("Interrupted loading " + filename);
+		} finally {
+			for (Future<Resource> f : inFlight) {
+				f.cancel(true);
+			}
+			// make late loads lose, or close a winner not taken
+			if (!winner.compareAndSet(null, GAVE_UP)) {
+				Object w = winner.get();
+				if (w != found && w instanceof Resource) {
+					try {
+						((Resource)w).close();
+					} catch (IOException e) {
+						LOGGER.warning(e.toString());
+					}
+				}
+			}
+		}
+
+		if (lastExc == null) {
+			lastExc = new FileNotFoundException(filename);
+			excMsg.append("File not Found: " + filename);
+		}
+
+		throw new ResourceNotAvailableException(excMsg.toString(), filename,
+			lastExc);
+	}
+
+	/**
+	 * Load from {@code path}, recording latency of its source. Only the
+	 * first successful load for a request is returned; later ones are
+	 * closed.
+	 */
+	private Resource loadForHedge(String path, CaptureSearchResult result,
+			AtomicReference<Object> winner) throws IOException,
+			ResourceNotAvailableException {
+		LatencyHistogram histogram = getLatencyHistogram(getSourceKey(path));
+		long start = System.currentTimeMillis();
+		Resource resource = null;
+		try {
+			resource = getResource(path, result);
+		} catch (IOException e) {
+			histogram.recordFailure();
+			throw e;
+		}
+		histogram.record(System.currentTimeMillis() - start);
+		if (resource != null && !winner.compareAndSet(null, resource)) {
+			resource.close();
+			return null;
+		}
+		return resource;
+	}
+
+	private synchronized ThreadPoolExecutor getHedgeExecutor() {
+		if (hedgeExecutor == null) {
+			// threads are not kept around: ZipNumBlockLoader may hold
+			// thread-local readers that are only closed with the Resource.
+			hedgeExecutor = new ThreadPoolExecutor(0, maxHedgeThreads, 0,
+				TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "FlexResourceStore-hedge-" +
+								count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return hedgeExecutor;
+	}
+
+	/**
+	 * @return milliseconds to wait for a load from {@code path} before
+	 * starting the next one
+	 */
+	protected long getHedgeDelay(String path) {
+		LatencyHistogram histogram = latencies.get(getSourceKey(path));
+		if (histogram == null || histogram.getCount() < hedgeMinSamples) {
+			return hedgeDelayMS;
+		}
+		return Math.max(1,
+			Math.min(hedgeDelayMS, histogram.getPercentile(hedgePercentile)));
+	}
+
+	/**
+	 * Stable-sort {@code paths} so that paths from sources with lower
+	 * percentile latency come first. Sources without enough samples
+	 * keep their configured order, ahead of known slow ones.
+	 */
+	protected void orderBySourceLatency(List<String> paths) {
+		if (paths.size() < 2) {
+			return;
+		}
+		Collections.sort(paths, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				long l1 = getExpectedLatency(o1);
+				long l2 = getExpectedLatency(o2);
+				return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+			}
+		});
+	}
+
+	private long getExpectedLatency(String path) {
+		LatencyHistogram histogram = latencies.get(getSourceKey(path));
+		if (histogram == null || histogram.getCount() < hedgeMinSamples) {
+			return 0;
+		}
+		return histogram.getPercentile(hedgePercentile);
+	}
+
+	/**
+	 * Latencies are tracked per source: scheme and host for URLs,
+	 * directory for local paths.
+	 */
+	protected static String getSourceKey(String path) {
+		int schemeEnd = path.indexOf("://");
+		if (schemeEnd >= 0) {
+			int hostEnd = path.indexOf('/', schemeEnd + 3);
+			return hostEnd < 0 ? path : path.substring(0, hostEnd);
+		}
+		int dirEnd = path.lastIndexOf('/');
+		return dirEnd < 0 ? "" : path.substring(0, dirEnd);
+	}
+
+	protected LatencyHistogram getLatencyHistogram(String source) {
+		LatencyHistogram histogram = latencies.get(source);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = latencies.putIfAbsent(source, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Lock-free latency histogram with power-of-two millisecond buckets.
+	 * Failures count in the last bucket, so that failing sources sort
+	 * last. Counts are halved periodically, so that old samples fade out.
+	 */
+	public static class LatencyHistogram {
+		final static int BUCKETS = 32;
+		final static int DECAY_COUNT = 10000;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+		public void record(long latencyMS) {
+			int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, latencyMS));
+			add(Math.min(bucket, BUCKETS - 2));
+		}
+
+		public void recordFailure() {
+			add(BUCKETS - 1);
+		}
+
+		private void add(int bucket) {
+			counts.incrementAndGet(bucket);
+			if (getCount() > DECAY_COUNT) {
+				for (int i = 0; i < BUCKETS; i++) {
+					counts.set(i, counts.get(i) / 2);
+				}
+			}
+		}
+
+		public long getCount() {
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				count += counts.get(i);
+			}
+			return count;
+		}
+
+		/**
+		 * @param p percentile, between {@code 0} and {@code 1}
+		 * @return upper bound of the bucket the percentile falls in, in
+		 * milliseconds ({@code Long.MAX_VALUE} for failures)
+		 */
+		public long getPercentile(double p) {
+			long[] snapshot = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				snapshot[i] = counts.get(i);
+				count += snapshot[i];
+			}
+			long rank = (long)Math.ceil(p * count);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS - 1; i++) {
+				seen += snapshot[i];
+				if (seen >= rank) {
+					return 1L << i;
+				}
+			}
+			return Long.MAX_VALUE;
+		}
+	}
+
 	public Resource getResource(String path, CaptureSearchResult result) throws IOException, ResourceNotAvailableException
 	{		
 		Resource r = null;
@@ -321,6 +699,12 @@ public class FlexResourceStore implements ResourceStore {
 
 	@Override
 	public void shutdown() throws IOException {
+		synchronized (this) {
+			if (hedgeExecutor != null) {
+				hedgeExecutor.shutdownNow();
+				hedgeExecutor = null;
+			}
+		}
 		blockLoader.close();
 	}
 }
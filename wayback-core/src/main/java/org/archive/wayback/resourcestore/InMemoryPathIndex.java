@@ -0,0 +1,327 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.wayback.resourcestore.FlexResourceStore.SourceResolver;
+
+/**
+ * {@link SourceResolver} holding the whole path index in memory, as a
+ * drop-in replacement for {@link FlexResourceStore.PathIndex}.
+ * <p>
+ * Path index file has lines of {@code filename<TAB>path}. All lines are
+ * packed into a single byte array, and located through an open-addressing
+ * hash table of {@code String.hashCode()} of filenames, so lookups do not
+ * allocate anything other than returned paths.
+ * </p>
+ * <p>
+ * The file is checked for modification at most every
+ * {@code checkIntervalMS}; when modified, a new index is built in a
+ * background thread and swapped in atomically. Lookups keep using the old
+ * index meanwhile.
+ * </p>
+ */
+public class InMemoryPathIndex implements SourceResolver {
+	private static final Logger LOGGER = Logger.getLogger(
+		InMemoryPathIndex.class.getName());
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	private final static byte DELIMITER = '\t';
+
+	protected String path;
+	protected String prefixPath;
+	protected long checkIntervalMS = 60 * 1000;
+
+	private volatile Index index;
+	private volatile long nextCheck = 0;
+	private final AtomicBoolean reloading = new AtomicBoolean(false);
+
+	/**
+	 * Immutable index: {@code data} holds lines as
+	 * {@code filename<TAB>path[<TAB>path...]}, entry {@code i} spanning
+	 * {@code [offsets[i], offsets[i + 1])}. {@code table} holds
+	 * {@code i + 1} of entries, or {@code 0} for empty slots.
+	 */
+	static class Index {
+		final byte[] data;
+		final int[] offsets;
+		final int[] hashes;
+		final int[] table;
+		final long lastModified;
+
+		Index(byte[] data, int[] offsets, int[] hashes, int count,
+				long lastModified) {
+			this.data = data;
+			this.offsets = offsets;
+			this.hashes = hashes;
+			this.lastModified = lastModified;
+			int size = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+			table = new int[size];
+			int mask = size - 1;
+			for (int i = 0; i < count; i++) {
+				int slot = spread(hashes[i]) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = i + 1;
+			}
+		}
+
+		int size() {
+			return offsets.length - 1;
+		}
+
+		/**
+		 * @return entry index, or {@code -1} if not found
+		 */
+		int find(String filename) {
+			int hash = filename.hashCode();
+			int mask = table.length - 1;
+			int slot = spread(hash) & mask;
+			int entry;
+			while ((entry = table[slot]) != 0) {
+				entry--;
+				if (hashes[entry] == hash && keyEquals(entry, filename)) {
+					return entry;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private boolean keyEquals(int entry, String filename) {
+			int start = offsets[entry];
+			int end = keyEnd(entry);
+			int len = filename.length();
+			if (end - start < len) {
+				return false;
+			}
+			for (int i = 0; i < len; i++) {
+				char c = filename.charAt(i);
+				if (c >= 0x80) {
+					// rare: compare encoded bytes
+					byte[] key = filename.getBytes(UTF8);
+					return key.length == end - start &&
+							Arrays.equals(key,
+								Arrays.copyOfRange(data, start, end));
+				}
+				if (data[start + i] != c) {
+					return false;
+				}
+			}
+			return end - start == len;
+		}
+
+		int keyEnd(int entry) {
+			int end = offsets[entry + 1];
+			for (int i = offsets[entry]; i < end; i++) {
+				if (data[i] == DELIMITER) {
+					return i;
+				}
+			}
+			return end;
+		}
+
+		String[] getPaths(int entry, String prefixPath) {
+			int start = keyEnd(entry) + 1;
+			int end = offsets[entry + 1];
+			int count = 1;
+			for (int i = start; i < end; i++) {
+				if (data[i] == DELIMITER) {
+					count++;
+				}
+			}
+			String[] paths = new String[count];
+			int n = 0;
+			for (int i = start; i <= end; i++) {
+				if (i == end || data[i] == DELIMITER) {
+					String path = new String(data, start, i - start, UTF8);
+					paths[n++] = (prefixPath != null ? prefixPath + path : path);
+					start = i + 1;
+				}
+			}
+			return paths;
+		}
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Set path index file, and load it.
+	 * @param path path index file name
+	 * @throws IOException if loading fails
+	 */
+	public void setPathIndex(String path) throws IOException {
+		this.path = path;
+		this.index = load(new File(path));
+		this.nextCheck = System.currentTimeMillis() + checkIntervalMS;
+	}
+
+	public String getPathIndex() {
+		return path;
+	}
+
+	public String getPrefixPath() {
+		return prefixPath;
+	}
+
+	public void setPrefixPath(String prefixPath) {
+		this.prefixPath = prefixPath;
+	}
+
+	public long getCheckIntervalMS() {
+		return checkIntervalMS;
+	}
+
+	/**
+	 * @param checkIntervalMS interval of checking path index file for
+	 * modification, in milliseconds. {@code 0} or negative disables reloading.
+	 * (default 1 minute)
+	 */
+	public void setCheckIntervalMS(long checkIntervalMS) {
+		this.checkIntervalMS = checkIntervalMS;
+	}
+
+	/**
+	 * @return number of filenames in the index
+	 */
+	public int size() {
+		Index current = index;
+		return current != null ? current.size() : 0;
+	}
+
+	@Override
+	public String[] lookupPath(String filename) throws IOException {
+		Index current = index;
+		if (current == null) {
+			throw new IOException("Path index not loaded");
+		}
+		if (checkIntervalMS > 0 && System.currentTimeMillis() > nextCheck) {
+			checkForUpdate(current);
+		}
+		int entry = current.find(filename);
+		if (entry < 0) {
+			return FlexResourceStore.EMPTY_STRINGS;
+		}
+		return current.getPaths(entry, prefixPath);
+	}
+
+	private void checkForUpdate(final Index current) {
+		if (!reloading.compareAndSet(false, true)) {
+			return;
+		}
+		nextCheck = System.currentTimeMillis() + checkIntervalMS;
+		final File file = new File(path);
+		if (file.lastModified() == current.lastModified) {
+			reloading.set(false);
+			return;
+		}
+		Thread loader = new Thread("InMemoryPathIndex-reload") {
+			@Override
+			public void run() {
+				try {
+					index = load(file);
+					LOGGER.info("Reloaded path index " + path);
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to reload path index " +
+							path, e);
+				} finally {
+					reloading.set(false);
+				}
+			}
+		};
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * Load sorted path index file. Lines for the same filename must be
+	 * adjacent.
+	 * @param file path index file
+	 * @return new Index
+	 * @throws IOException
+	 */
+	static Index load(File file) throws IOException {
+		long lastModified = file.lastModified();
+		byte[] data = new byte[(int)Math.min(Math.max(file.length(), 16),
+			Integer.MAX_VALUE - 8)];
+		int length = 0;
+		int[] offsets = new int[1024];
+		int[] hashes = new int[1024];
+		int count = 0;
+		String prevKey = null;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+			new FileInputStream(file), UTF8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf(DELIMITER);
+				if (tab <= 0) {
+					continue;
+				}
+				String key = line.substring(0, tab);
+				byte[] bytes;
+				if (key.equals(prevKey)) {
+					// another path for the same filename
+					bytes = line.substring(tab).getBytes(UTF8);
+				} else {
+					bytes = line.getBytes(UTF8);
+					if (count + 1 >= offsets.length) {
+						offsets = Arrays.copyOf(offsets, offsets.length * 2);
+						hashes = Arrays.copyOf(hashes, hashes.length * 2);
+					}
+					offsets[count] = length;
+					hashes[count] = key.hashCode();
+					count++;
+					prevKey = key;
+				}
+				if (length + bytes.length > data.length) {
+					long grown = Math.max((long)data.length * 3 / 2,
+						(long)length + bytes.length);
+					if (grown > Integer.MAX_VALUE - 8) {
+						throw new IOException("Path index too large for memory: " +
+								file);
+					}
+					data = Arrays.copyOf(data, (int)grown);
+				}
+				System.arraycopy(bytes, 0, data, length, bytes.length);
+				length += bytes.length;
+			}
+		} finally {
+			reader.close();
+		}
+		offsets[count] = length;
+		return new Index(data, Arrays.copyOf(offsets, count + 1),
+			Arrays.copyOf(hashes, count), count, lastModified);
+	}
+}
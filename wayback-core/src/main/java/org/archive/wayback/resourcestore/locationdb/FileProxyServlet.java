@@ -24,10 +24,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,10 +35,12 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.httpclient.ChunkedInputStream;
-import org.archive.util.anvl.ANVLRecord;
-import org.archive.wayback.util.http.HttpRequestMessage;
-import org.archive.wayback.util.http.HttpResponse;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
 import org.archive.wayback.util.webapp.AbstractRequestHandler;
 
 /**
@@ -47,6 +48,20 @@ import org.archive.wayback.util.webapp.AbstractRequestHandler;
  * reverse proxy an incoming HTTP request for a file by name to it's actual 
  * back-end location. This will also forward HTTP byte range requests to the
  * final location.
+ * <p>
+ * Local files are sent with {@link FileChannel#transferTo}, and remote
+ * locations are fetched through a pool of keep-alive HTTP connections and
+ * streamed through. A single byte range ({@code bytes=start-} or
+ * {@code bytes=start-end}) in the {@code Range} header is answered with
+ * {@code 206 Partial Content}, or {@code 416 Requested Range Not
+ * Satisfiable} if it starts at or past the end of the file.
+ * </p>
+ * <p>
+ * If no pooled connection becomes free within
+ * {@code connectionManagerTimeoutMs}, the next location is tried, and the
+ * request fails with {@code 503 Service Unavailable} if no location
+ * could be served.
+ * </p>
  *
  * @author brad
  * @version $Date$, $Revision$
@@ -57,9 +72,13 @@ public class FileProxyServlet extends AbstractRequestHandler {
 
 	private static final int BUF_SIZE = 4096;
 	private static final String RANGE_HTTP_HEADER = "Range";
+	private static final String CONTENT_RANGE_HTTP_HEADER = "Content-Range";
+	private static final String CONTENT_LENGTH_HTTP_HEADER = "Content-Length";
+	private static final String CONTENT_TYPE_HTTP_HEADER = "Content-Type";
 	private static final String DEFAULT_CONTENT_TYPE = "application/x-gzip";
 	private static final String HEADER_BYTES_PREFIX = "bytes=";
 	private static final String HEADER_BYTES_SUFFIX= "-";
+	private static final String CONTENT_RANGE_BYTES_PREFIX = "bytes ";
 
 	private static final String FILE_REGEX = "/([^/]*)$";
 	private static final String FILE_OFFSET_REGEX = "/([^/]*)/(\\d*)$";
@@ -71,12 +90,28 @@ public class FileProxyServlet extends AbstractRequestHandler {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final int DEFAULT_MAX_HOST_CONNECTIONS = 50;
+	private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 200;
+	private static final long DEFAULT_CONNECTION_MANAGER_TIMEOUT = 2000;
+
 	private ResourceFileLocationDB locationDB = null;
 
-	private int socketTimeoutMs = 5000;
+	private MultiThreadedHttpConnectionManager connectionManager = null;
+	private HttpClient http = null;
+
+	public FileProxyServlet() {
+		connectionManager = new MultiThreadedHttpConnectionManager();
+		connectionManager.getParams().setSoTimeout(5000);
+		connectionManager.getParams().setConnectionTimeout(1000);
+		connectionManager.getParams().setDefaultMaxConnectionsPerHost(
+				DEFAULT_MAX_HOST_CONNECTIONS);
+		connectionManager.getParams().setMaxTotalConnections(
+				DEFAULT_MAX_TOTAL_CONNECTIONS);
+		http = new HttpClient(connectionManager);
+		http.getParams().setConnectionManagerTimeout(
+				DEFAULT_CONNECTION_MANAGER_TIMEOUT);
+	}
 
-	private int connectTimeoutMs = 1000;
-	
 	public boolean handleRequest(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse) throws IOException,
 			ServletException {
@@ -97,99 +132,149 @@ public class FileProxyServlet extends AbstractRequestHandler {
 			} else {
 				
 				DataSource ds = null;
+				RangeNotSatisfiableException unsatisfiable = null;
+				boolean poolExhausted = false;
 				for(String urlString : urls) {
 					try {
-						ds = locationToDataSource(urlString, 
-								location.getOffset());
+						ds = locationToDataSource(urlString, location);
 						if(ds != null) {
 							break;
 						}
+					} catch(RangeNotSatisfiableException e) {
+						unsatisfiable = e;
+						break;
+					} catch(ConnectionPoolTimeoutException e) {
+						LOGGER.warning("no free connection for " + urlString);
+						poolExhausted = true;
 					} catch(IOException e) {
 						LOGGER.warning("failed proxy of " + urlString + " " +
 								e.getLocalizedMessage());
 					}
 				}
-				if(ds == null) {
+				if(unsatisfiable != null) {
+					if(unsatisfiable.getContentRange() != null) {
+						httpResponse.setHeader(CONTENT_RANGE_HTTP_HEADER,
+								unsatisfiable.getContentRange());
+					}
+					httpResponse.sendError(
+							HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+							"range not satisfiable for (" +
+									location.getName() + ")");
+				} else if(ds == null && poolExhausted) {
+					httpResponse.sendError(
+							HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+							"too many concurrent proxies of (" +
+									location.getName() + ")");
+				} else if(ds == null) {
 					LOGGER.warning("No successful locations for " +
 							location.getName());
 					httpResponse.sendError(HttpServletResponse.SC_BAD_GATEWAY,
 							"failed proxy of ("+ location.getName() +")");
 					
 				} else {
-					httpResponse.setStatus(HttpServletResponse.SC_OK);
-					// BUGBUG: this will be broken for non compressed data...
-					httpResponse.setContentType(ds.getContentType());
-					httpResponse.setBufferSize(BUF_SIZE);
-					ds.copyTo(httpResponse.getOutputStream());
+					try {
+						String contentRange = ds.getContentRange();
+						if(contentRange != null) {
+							httpResponse.setStatus(
+									HttpServletResponse.SC_PARTIAL_CONTENT);
+							httpResponse.setHeader(CONTENT_RANGE_HTTP_HEADER,
+									contentRange);
+						} else {
+							httpResponse.setStatus(HttpServletResponse.SC_OK);
+						}
+						// BUGBUG: this will be broken for non compressed data...
+						httpResponse.setContentType(ds.getContentType());
+						long length = ds.getLength();
+						if(length >= 0) {
+							if(length <= Integer.MAX_VALUE) {
+								httpResponse.setContentLength((int) length);
+							} else {
+								httpResponse.setHeader(CONTENT_LENGTH_HTTP_HEADER,
+										String.valueOf(length));
+							}
+						}
+						httpResponse.setBufferSize(BUF_SIZE);
+						ds.copyTo(httpResponse.getOutputStream());
+					} finally {
+						ds.close();
+					}
 				}
 			}
 		}
 		return true;
 	}
 
-	private DataSource locationToDataSource(String location, long offset)
-		throws IOException {
+	private DataSource locationToDataSource(String location,
+			ResourceLocation resourceLocation) throws IOException {
+		long offset = resourceLocation.getOffset();
+		long end = resourceLocation.getEnd();
 		DataSource ds = null;
 		if(location.startsWith("http://")) {
-			URL url = new URL(location);
-			String hostname = url.getHost();
-			int port = url.getPort();
-			if(port == -1) {
-				port = 80;
-			}
-			byte GET[] = "GET".getBytes();
-			byte HTTP11[] = "HTTP/1.1".getBytes();
-			InetAddress addr = InetAddress.getByName(hostname);
-			HttpRequestMessage requestMessage = new HttpRequestMessage(
-					GET,url.getFile().getBytes(),HTTP11);
-			ANVLRecord headers = new ANVLRecord();
-			headers.addLabelValue("Host", hostname);
-			
-			
-			if(offset != 0) {
-				headers.addLabelValue(RANGE_HTTP_HEADER, 
-						HEADER_BYTES_PREFIX + String.valueOf(offset) + 
-							HEADER_BYTES_SUFFIX);
+			HttpMethod method = null;
+			try {
+				method = new GetMethod(location);
+			} catch(IllegalArgumentException e) {
+				throw new IOException("Url:" + location +
+						" does not look like an URL?");
 			}
-			InetSocketAddress sockAddr = new InetSocketAddress(addr,port);
-			Socket socket = new Socket();
-			socket.setSoTimeout(socketTimeoutMs);
-			socket.setReceiveBufferSize(BUF_SIZE);
-
-			socket.connect(sockAddr, connectTimeoutMs);
-			OutputStream socketOut = socket.getOutputStream();
-			InputStream socketIn = socket.getInputStream();
-			socketOut.write(requestMessage.getBytes(true));
-			socketOut.write(headers.getUTF8Bytes());
-			socketOut.flush();
-			HttpResponse response = HttpResponse.load(socketIn);
-			String contentType = response.getHeaders().asMap().get("Content-Type");
-			if(contentType == null) {
-				contentType = "application/unknown";
+			if(offset != 0 || end != -1) {
+				StringBuilder sb = new StringBuilder(32);
+				sb.append(HEADER_BYTES_PREFIX).append(offset);
+				sb.append(HEADER_BYTES_SUFFIX);
+				if(end != -1) {
+					sb.append(end);
+				}
+				method.addRequestHeader(RANGE_HTTP_HEADER, sb.toString());
 			}
-			String xferEncoding = response.getHeaders().asMap().get("Transfer-Encoding");
-			
-			if(xferEncoding != null) {
-				if(xferEncoding.equals("chunked")) {
-					socketIn = new ChunkedInputStream(socketIn);
+			boolean ok = false;
+			try {
+				int status = http.executeMethod(method);
+				if(status == HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+					Header contentRange = method.getResponseHeader(
+							CONTENT_RANGE_HTTP_HEADER);
+					throw new RangeNotSatisfiableException(
+							contentRange == null ? null : contentRange.getValue());
+				}
+				if(status != HttpServletResponse.SC_OK &&
+						status != HttpServletResponse.SC_PARTIAL_CONTENT) {
+					throw new IOException("Bad status " + status + " for " +
+							location);
+				}
+				ds = new URLDataSource(method, resourceLocation.isRange() &&
+						status == HttpServletResponse.SC_PARTIAL_CONTENT);
+				ok = true;
+			} finally {
+				if(!ok) {
+					method.releaseConnection();
 				}
 			}
 
-			ds = new URLDataSource(socketIn,contentType);
-
 		} else {
 			// assume a local file path:
 			File f = new File(location);
 			if(f.isFile() && f.canRead()) {
 				long size = f.length();
+				if(resourceLocation.isRange() && offset >= size) {
+					throw new RangeNotSatisfiableException(
+							CONTENT_RANGE_BYTES_PREFIX + "*/" + size);
+				}
 				if(size < offset) {
 					throw new IOException("short file " + location + " cannot" +
 							" seek to offset " + offset);
 				}
+				long last = size - 1;
+				if(end != -1 && end < last) {
+					last = end;
+				}
+				String contentRange = null;
+				if(resourceLocation.isRange()) {
+					contentRange = CONTENT_RANGE_BYTES_PREFIX +
+							offset + HEADER_BYTES_SUFFIX + last + "/" + size;
+				}
 				RandomAccessFile raf = new RandomAccessFile(f,"r");
-				raf.seek(offset);
 				// BUGBUG: is it compressed?
-				ds = new FileDataSource(raf,DEFAULT_CONTENT_TYPE);
+				ds = new FileDataSource(raf, offset, last - offset + 1,
+						DEFAULT_CONTENT_TYPE, contentRange);
 				
 			} else {
 				throw new IOException("No readable file at " + location);
@@ -216,14 +301,31 @@ public class FileProxyServlet extends AbstractRequestHandler {
 					if(rangeHeader.startsWith(HEADER_BYTES_PREFIX)) {
 						rangeHeader = rangeHeader.substring(
 								HEADER_BYTES_PREFIX.length());
-						if(rangeHeader.endsWith(HEADER_BYTES_SUFFIX)) {
-							rangeHeader = rangeHeader.substring(0,
-									rangeHeader.length() - 
-									HEADER_BYTES_SUFFIX.length());
+					}
+					// only a single "start-" or "start-end" range is supported
+					int dash = rangeHeader.indexOf(HEADER_BYTES_SUFFIX);
+					long start;
+					long end = -1;
+					try {
+						if(dash == -1) {
+							start = Long.parseLong(rangeHeader);
+						} else {
+							start = Long.parseLong(
+									rangeHeader.substring(0, dash));
+							String endString = rangeHeader.substring(
+									dash + HEADER_BYTES_SUFFIX.length());
+							if(endString.length() > 0) {
+								end = Long.parseLong(endString);
+							}
 						}
+					} catch(NumberFormatException e) {
+						return null;
+					}
+					if(start < 0 || (end != -1 && end < start)) {
+						return null;
 					}
-					location = new ResourceLocation(fo.group(1),
-							Long.parseLong(rangeHeader));
+					location = new ResourceLocation(fo.group(1), start, end,
+							true);
 				} else {
 					location = new ResourceLocation(fo.group(1));
 				}
@@ -250,36 +352,93 @@ public class FileProxyServlet extends AbstractRequestHandler {
 	 * @return the socketTimeoutMs
 	 */
 	public int getSocketTimeoutMs() {
-		return socketTimeoutMs;
+		return connectionManager.getParams().getSoTimeout();
 	}
 
 	/**
 	 * @param socketTimeoutMs the socketTimeoutMs to set
 	 */
 	public void setSocketTimeoutMs(int socketTimeoutMs) {
-		this.socketTimeoutMs = socketTimeoutMs;
+		connectionManager.getParams().setSoTimeout(socketTimeoutMs);
 	}
 
 	/**
 	 * @return the connectTimeoutMs
 	 */
 	public int getConnectTimeoutMs() {
-		return connectTimeoutMs;
+		return connectionManager.getParams().getConnectionTimeout();
 	}
 
 	/**
 	 * @param connectTimeoutMs the connectTimeoutMs to set
 	 */
 	public void setConnectTimeoutMs(int connectTimeoutMs) {
-		this.connectTimeoutMs = connectTimeoutMs;
+		connectionManager.getParams().setConnectionTimeout(connectTimeoutMs);
+	}
+
+	/**
+	 * @return milliseconds to wait for a free pooled connection
+	 */
+	public long getConnectionManagerTimeoutMs() {
+		return http.getParams().getConnectionManagerTimeout();
+	}
+
+	/**
+	 * @param connectionManagerTimeoutMs milliseconds to wait for a free
+	 * pooled connection before trying the next location (default 2000,
+	 * {@code 0} waits indefinitely)
+	 */
+	public void setConnectionManagerTimeoutMs(long connectionManagerTimeoutMs) {
+		http.getParams().setConnectionManagerTimeout(
+				connectionManagerTimeoutMs);
+	}
+
+	/**
+	 * @return the maximum number of pooled connections to remote locations
+	 */
+	public int getMaxTotalConnections() {
+		return connectionManager.getParams().getMaxTotalConnections();
+	}
+
+	/**
+	 * @param maxTotalConnections the maximum number of pooled connections
+	 * to remote locations (default 200)
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		connectionManager.getParams().setMaxTotalConnections(
+				maxTotalConnections);
+	}
+
+	/**
+	 * @return the maximum number of pooled connections to each remote host
+	 */
+	public int getMaxHostConnections() {
+		return connectionManager.getParams().getDefaultMaxConnectionsPerHost();
+	}
+
+	/**
+	 * @param maxHostConnections the maximum number of pooled connections to
+	 * each remote host (default 50)
+	 */
+	public void setMaxHostConnections(int maxHostConnections) {
+		connectionManager.getParams().setDefaultMaxConnectionsPerHost(
+				maxHostConnections);
 	}
 
 	private class ResourceLocation {
 		private String name = null;
 		private long offset = 0;
-		public ResourceLocation(String name, long offset) {
+		private long end = -1;
+		private boolean range = false;
+		public ResourceLocation(String name, long offset, long end,
+				boolean range) {
 			this.name = name;
 			this.offset = offset;
+			this.end = end;
+			this.range = range;
+		}
+		public ResourceLocation(String name, long offset) {
+			this(name,offset,-1,false);
 		}
 		public ResourceLocation(String name) {
 			this(name,0);
@@ -290,54 +449,145 @@ public class FileProxyServlet extends AbstractRequestHandler {
 		public long getOffset() {
 			return offset;
 		}
+		/**
+		 * @return last byte requested, inclusive, or -1 for end of file
+		 */
+		public long getEnd() {
+			return end;
+		}
+		/**
+		 * @return true if requested with a Range header
+		 */
+		public boolean isRange() {
+			return range;
+		}
 	}
 	
+	/**
+	 * Requested range starts at or past the end of the file.
+	 */
+	private static class RangeNotSatisfiableException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private String contentRange;
+		public RangeNotSatisfiableException(String contentRange) {
+			super("range not satisfiable: " + contentRange);
+			this.contentRange = contentRange;
+		}
+		/**
+		 * @return Content-Range header value to send, or null if unknown
+		 */
+		public String getContentRange() {
+			return contentRange;
+		}
+	}
+
 	private interface DataSource {
 		public void copyTo(OutputStream os) throws IOException;
 		public String getContentType();
+		/**
+		 * @return number of bytes copyTo() will write, or -1 if unknown
+		 */
+		public long getLength();
+		/**
+		 * @return Content-Range header value, or null if not partial content
+		 */
+		public String getContentRange();
+		public void close();
 	}
 	private class FileDataSource implements DataSource {
 		private RandomAccessFile raf = null;
+		private long offset;
+		private long length;
 		private String contentType = null;
-		public FileDataSource(RandomAccessFile raf, String contentType) {
+		private String contentRange = null;
+		public FileDataSource(RandomAccessFile raf, long offset, long length,
+				String contentType, String contentRange) {
 			this.raf = raf;
+			this.offset = offset;
+			this.length = length;
 			this.contentType = contentType;
+			this.contentRange = contentRange;
 		}
 		public String getContentType() {
 			return contentType;
 		}
+		public long getLength() {
+			return length;
+		}
+		public String getContentRange() {
+			return contentRange;
+		}
 		public void copyTo(OutputStream os) throws IOException {
-			byte[] buffer = new byte[BUF_SIZE];
-			try {
-				int r = -1;
-				while((r = raf.read(buffer, 0, BUF_SIZE)) != -1) {
-					os.write(buffer, 0, r);
+			FileChannel channel = raf.getChannel();
+			WritableByteChannel out = Channels.newChannel(os);
+			long position = offset;
+			long remaining = length;
+			while(remaining > 0) {
+				long count = channel.transferTo(position, remaining, out);
+				if(count <= 0) {
+					throw new IOException("short read at " + position);
 				}
-			} finally {
+				position += count;
+				remaining -= count;
+			}
+		}
+		public void close() {
+			try {
 				raf.close();
+			} catch (IOException e) {
+				LOGGER.warning(e.getLocalizedMessage());
 			}
 		}
 	}
 	private class URLDataSource implements DataSource {
-		private InputStream is = null;
-		private String contentType = null;
-		public URLDataSource(InputStream is,String contentType) {
-			this.is = is;
-			this.contentType = contentType;
+		private HttpMethod method = null;
+		private boolean partial;
+		private boolean complete = false;
+		public URLDataSource(HttpMethod method, boolean partial) {
+			this.method = method;
+			this.partial = partial;
+		}
+		private String getHeader(String name) {
+			Header header = method.getResponseHeader(name);
+			return header == null ? null : header.getValue();
 		}
 		public String getContentType() {
-			return contentType;
+			String contentType = getHeader(CONTENT_TYPE_HTTP_HEADER);
+			return contentType == null ? "application/unknown" : contentType;
+		}
+		public long getLength() {
+			String length = getHeader(CONTENT_LENGTH_HTTP_HEADER);
+			if(length != null) {
+				try {
+					return Long.parseLong(length.trim());
+				} catch(NumberFormatException e) {
+					// unknown
+				}
+			}
+			return -1;
+		}
+		public String getContentRange() {
+			return partial ? getHeader(CONTENT_RANGE_HTTP_HEADER) : null;
 		}
 		public void copyTo(OutputStream os) throws IOException {
-			byte[] buffer = new byte[BUF_SIZE];
-			try {
+			InputStream is = method.getResponseBodyAsStream();
+			if(is != null) {
+				byte[] buffer = new byte[BUF_SIZE];
 				int r = -1;
 				while((r = is.read(buffer, 0, BUF_SIZE)) != -1) {
 					os.write(buffer, 0, r);
 				}
-			} finally {
-				is.close();
 			}
+			complete = true;
+		}
+		public void close() {
+			if(!complete) {
+				// releaseConnection() would read the rest of the body to
+				// reuse the connection: close it instead.
+				method.abort();
+			}
+			// returns the connection to the pool
+			method.releaseConnection();
 		}
 	}
 }
@@ -0,0 +1,254 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.surt;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Immutable set of SURT prefixes, stored as a compact radix trie, for finding
+ * which of them are prefixes of a given String.
+ * <p>
+ * All keys are packed into a single {@code char} array, and each trie node
+ * refers to its edge label as a range in it. Nodes are numbered in
+ * breadth-first order, so children of a node are contiguous and found by
+ * binary search on their first character. Lookups do not allocate.
+ * </p>
+ */
+public class SURTPrefixSet {
+
+	private final char[] chars;
+	private final int[] edgeStart;
+	private final int[] edgeEnd;
+	/**
+	 * children of node {@code n} are {@code [firstChild[n], firstChild[n + 1])}
+	 */
+	private final int[] firstChild;
+	private final BitSet terminal;
+	private final int size;
+
+	private SURTPrefixSet(char[] chars, int[] edgeStart, int[] edgeEnd,
+			int[] firstChild, BitSet terminal, int size) {
+		this.chars = chars;
+		this.edgeStart = edgeStart;
+		this.edgeEnd = edgeEnd;
+		this.firstChild = firstChild;
+		this.terminal = terminal;
+		this.size = size;
+	}
+
+	/**
+	 * Build a set of {@code keys}.
+	 * @param keys keys, duplicates are ignored
+	 * @return new SURTPrefixSet
+	 */
+	public static SURTPrefixSet build(Collection<String> keys) {
+		String[] sorted = keys.toArray(new String[keys.size()]);
+		Arrays.sort(sorted);
+		int n = 0;
+		int totalChars = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (n == 0 || !sorted[i].equals(sorted[n - 1])) {
+				sorted[n++] = sorted[i];
+				totalChars += sorted[i].length();
+			}
+		}
+		char[] chars = new char[totalChars];
+		int[] keyOffset = new int[n];
+		int offset = 0;
+		for (int i = 0; i < n; i++) {
+			keyOffset[i] = offset;
+			sorted[i].getChars(0, sorted[i].length(), chars, offset);
+			offset += sorted[i].length();
+		}
+
+		// a radix trie has at most 2 nodes per key, plus root.
+		int maxNodes = 2 * n + 1;
+		int[] edgeStart = new int[maxNodes];
+		int[] edgeEnd = new int[maxNodes];
+		int[] firstChild = new int[maxNodes + 1];
+		// keys [lo, hi) under each node, and their common prefix length
+		int[] lo = new int[maxNodes];
+		int[] hi = new int[maxNodes];
+		int[] depth = new int[maxNodes];
+		BitSet terminal = new BitSet();
+
+		hi[0] = n;
+		int nodes = 1;
+		for (int node = 0; node < nodes; node++) {
+			int i = lo[node];
+			int end = hi[node];
+			int d = depth[node];
+			if (i < end && sorted[i].length() == d) {
+				// keys are sorted and unique: only the first can end here
+				terminal.set(node);
+				i++;
+			}
+			firstChild[node] = nodes;
+			while (i < end) {
+				char c = sorted[i].charAt(d);
+				int j = i + 1;
+				while (j < end && sorted[j].charAt(d) == c) {
+					j++;
+				}
+				int common = commonPrefix(sorted[i], sorted[j - 1], d + 1);
+				edgeStart[nodes] = keyOffset[i] + d;
+				edgeEnd[nodes] = keyOffset[i] + common;
+				lo[nodes] = i;
+				hi[nodes] = j;
+				depth[nodes] = common;
+				nodes++;
+				i = j;
+			}
+		}
+		firstChild[nodes] = nodes;
+		return new SURTPrefixSet(chars, Arrays.copyOf(edgeStart, nodes),
+			Arrays.copyOf(edgeEnd, nodes), Arrays.copyOf(firstChild, nodes + 1),
+			terminal, n);
+	}
+
+	private static int commonPrefix(String a, String b, int from) {
+		int max = Math.min(a.length(), b.length());
+		int i = from;
+		while (i < max && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	private int findChild(int node, char c) {
+		int low = firstChild[node];
+		int high = firstChild[node + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char midChar = chars[edgeStart[mid]];
+			if (midChar < c) {
+				low = mid + 1;
+			} else if (midChar > c) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the shortest key of at least {@code minLength} chars that is a
+	 * prefix of {@code s}.
+	 * @param s String to check
+	 * @param minLength minimum key length
+	 * @return key length, or {@code -1} if there is none
+	 */
+	public int nextPrefixOf(CharSequence s, int minLength) {
+		int node = 0;
+		int pos = 0;
+		int len = s.length();
+		while (true) {
+			if (pos >= minLength && terminal.get(node)) {
+				return pos;
+			}
+			if (pos == len) {
+				return -1;
+			}
+			node = findChild(node, s.charAt(pos));
+			if (node < 0) {
+				return -1;
+			}
+			for (int i = edgeStart[node]; i < edgeEnd[node]; i++, pos++) {
+				if (pos == len || chars[i] != s.charAt(pos)) {
+					return -1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param s String to check
+	 * @return length of the longest key that is a prefix of {@code s}, or
+	 * {@code -1} if there is none
+	 */
+	public int longestPrefixOf(CharSequence s) {
+		int node = 0;
+		int pos = 0;
+		int len = s.length();
+		int longest = -1;
+		while (true) {
+			if (terminal.get(node)) {
+				longest = pos;
+			}
+			if (pos == len) {
+				return longest;
+			}
+			node = findChild(node, s.charAt(pos));
+			if (node < 0) {
+				return longest;
+			}
+			for (int i = edgeStart[node]; i < edgeEnd[node]; i++, pos++) {
+				if (pos == len || chars[i] != s.charAt(pos)) {
+					return longest;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param s String to check
+	 * @param suffix character following {@code s}
+	 * @return {@code true} if {@code s + suffix} is a key
+	 */
+	public boolean contains(CharSequence s, char suffix) {
+		int node = 0;
+		int pos = 0;
+		int len = s.length();
+		while (true) {
+			char c = pos < len ? s.charAt(pos) : suffix;
+			node = findChild(node, c);
+			if (node < 0) {
+				return false;
+			}
+			for (int i = edgeStart[node]; i < edgeEnd[node]; i++, pos++) {
+				c = pos < len ? s.charAt(pos) : suffix;
+				if (pos > len || chars[i] != c) {
+					return false;
+				}
+			}
+			if (pos == len + 1) {
+				return terminal.get(node);
+			}
+		}
+	}
+
+	/**
+	 * @param s String to check
+	 * @return {@code true} if {@code s} is a key
+	 */
+	public boolean contains(CharSequence s) {
+		return longestPrefixOf(s) == s.length();
+	}
+}
@@ -147,6 +147,78 @@ public class SURTTokenizer {
 		return remainder;
 	}
 	
+	/**
+	 * Test if the first {@code length} chars of {@code surt} is one of
+	 * the search strings {@link #nextSearch()} returns for {@code surt},
+	 * without allocating. The exact search (with TAB appended) is not
+	 * considered.
+	 * @param surt SURT form URL
+	 * @param length length of prefix to test
+	 * @return {@code true} if prefix is one of the search strings
+	 */
+	public static boolean isSearchPrefix(String surt, int length) {
+		int r = surt.length();
+		if (length == r) {
+			return true;
+		}
+		boolean choppedPath = surt.endsWith(")/");
+		int argStart = surt.indexOf('?');
+		if (argStart != -1) {
+			r = argStart;
+			if (length == r) {
+				return true;
+			}
+		}
+		// see nextSearch() for path chopping examples
+		while (!choppedPath) {
+			int lastSlash = surt.lastIndexOf('/', r - 1);
+			if (lastSlash == -1) {
+				break;
+			}
+			if (lastSlash == r - 1) {
+				if (r > 1 && surt.charAt(r - 2) == ')') {
+					if (length == r) {
+						return true;
+					}
+					r = lastSlash - 1;
+					choppedPath = true;
+				} else {
+					r = lastSlash;
+					if (length == r) {
+						return true;
+					}
+				}
+			} else if (lastSlash > 0 && surt.charAt(lastSlash - 1) == ')') {
+				if (length == lastSlash + 1) {
+					return true;
+				}
+				r = lastSlash - 1;
+			} else {
+				r = lastSlash;
+				if (length == r) {
+					return true;
+				}
+			}
+		}
+		int lastAt = surt.lastIndexOf('@', r - 1);
+		if (lastAt != -1) {
+			if (length == r) {
+				return true;
+			}
+			r = lastAt;
+		}
+		if (length == r && surt.lastIndexOf(':', r - 1) != -1) {
+			return true;
+		}
+		while (r > length) {
+			r = surt.lastIndexOf(',', r - 1);
+			if (r == length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * @param url
 	 * @return String SURT which will match exactly argument url
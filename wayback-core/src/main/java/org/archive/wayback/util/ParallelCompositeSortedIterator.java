@@ -0,0 +1,281 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Composite of multiple sorted Iterators, like {@link CompositeSortedIterator},
+ * which advances each component on an {@link ExecutorService} instead of the
+ * calling thread.
+ * <p>
+ * Each component is read in batches of up to batchSize elements. While one
+ * batch is being merged, the next is fetched in the background, so slow
+ * components (eg. CDX files on separate disks) are read concurrently.
+ * Components are merged with a heap; elements which compare equal are
+ * returned in the order their components were added, so output order is
+ * identical to {@link CompositeSortedIterator}.
+ * </p>
+ * <p>
+ * A component iterator is only ever used by one thread at a time. Batches
+ * the executor rejects are fetched on the calling thread.
+ * </p>
+ * @param <E>
+ */
+public class ParallelCompositeSortedIterator<E> implements CloseableIterator<E> {
+
+	private final static Logger LOGGER =
+			Logger.getLogger(ParallelCompositeSortedIterator.class.getName());
+
+	private final Comparator<E> comparator;
+	private final ExecutorService executor;
+	private final int batchSize;
+	private final List<Component> components = new ArrayList<Component>();
+	private PriorityQueue<Component> heap = null;
+
+	private static class Batch<E> {
+		final List<E> elements;
+		final boolean last;
+		Batch(List<E> elements, boolean last) {
+			this.elements = elements;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * A batch which could not be handed to the executor, and is fetched on
+	 * the iterating thread when it is needed.
+	 */
+	private static class InlineFetch<E> extends FutureTask<Batch<E>> {
+		InlineFetch(Callable<Batch<E>> fetch) {
+			super(fetch);
+		}
+	}
+
+	private class Component implements Callable<Batch<E>> {
+		final int index;
+		final Iterator<E> itr;
+		Future<Batch<E>> pending = null;
+		List<E> current = null;
+		int position = 0;
+		// guarded by this Component, which call() holds while using itr:
+		boolean closed = false;
+
+		Component(int index, Iterator<E> itr) {
+			this.index = index;
+			this.itr = itr;
+		}
+
+		/**
+		 * Runs on an executor thread: read the next batch.
+		 */
+		public synchronized Batch<E> call() {
+			List<E> elements = new ArrayList<E>(batchSize);
+			if (closed) {
+				return new Batch<E>(elements, true);
+			}
+			while ((elements.size() < batchSize) && itr.hasNext()) {
+				E e = itr.next();
+				if (e != null) {
+					elements.add(e);
+				}
+			}
+			return new Batch<E>(elements, !itr.hasNext());
+		}
+
+		void fetch() {
+			try {
+				pending = executor.submit(this);
+			} catch (RejectedExecutionException e) {
+				pending = new InlineFetch<E>(this);
+			}
+		}
+
+		/**
+		 * Make the next element available as {@link #peek()}, waiting for
+		 * the background fetch if necessary.
+		 * @return false if this component has no more elements
+		 */
+		boolean advance() {
+			while ((current == null) || (position >= current.size())) {
+				if (pending == null) {
+					return false;
+				}
+				Batch<E> batch = await(pending);
+				pending = null;
+				current = batch.elements;
+				position = 0;
+				if (!batch.last) {
+					// fetch the next batch while this one is merged:
+					fetch();
+				}
+			}
+			return true;
+		}
+
+		E peek() {
+			return current.get(position);
+		}
+
+		E take() {
+			E e = current.get(position);
+			current.set(position++, null);
+			return e;
+		}
+
+		@SuppressWarnings("unchecked")
+		void close() throws IOException {
+			if (pending != null) {
+				pending.cancel(false);
+				pending = null;
+			}
+			// the iterator must not be closed while a fetch is using it:
+			// this waits for a call() under way, and makes any later one
+			// return without touching the iterator
+			synchronized (this) {
+				closed = true;
+			}
+			if (itr instanceof CloseableIterator) {
+				((CloseableIterator<E>) itr).close();
+			}
+		}
+	}
+
+	private Batch<E> await(Future<Batch<E>> future) {
+		if (future instanceof InlineFetch) {
+			((InlineFetch<E>) future).run();
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for batch", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * @param comparator Comparator to use for sorting order
+	 * @param executor runs component reads
+	 * @param batchSize maximum number of elements read from a component by
+	 * each background fetch
+	 */
+	public ParallelCompositeSortedIterator(Comparator<E> comparator,
+			ExecutorService executor, int batchSize) {
+		this.comparator = comparator;
+		this.executor = executor;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * @param itr Iterator which is a component of this composite. Must be
+	 * called before the first call to hasNext().
+	 */
+	public void addComponent(Iterator<E> itr) {
+		if (heap != null) {
+			throw new IllegalStateException("Iteration has started");
+		}
+		components.add(new Component(components.size(), itr));
+	}
+
+	private void start() {
+		heap = new PriorityQueue<Component>(Math.max(1, components.size()),
+				new Comparator<Component>() {
+			public int compare(Component c1, Component c2) {
+				int cmp = comparator.compare(c1.peek(), c2.peek());
+				return (cmp != 0) ? cmp : (c1.index - c2.index);
+			}
+		});
+		for (Component c : components) {
+			c.fetch();
+		}
+		for (Component c : components) {
+			if (c.advance()) {
+				heap.add(c);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		if (heap == null) {
+			start();
+		}
+		return !heap.isEmpty();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	public E next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Component c = heap.poll();
+		E e = c.take();
+		if (c.advance()) {
+			heap.add(c);
+		}
+		return e;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		for (Component c : components) {
+			// Catch exception so that we can still close others
+			try {
+				c.close();
+			} catch (IOException io) {
+				LOGGER.warning(io.toString());
+			}
+		}
+	}
+}
@@ -29,6 +29,8 @@ import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.resourceindex.cdx.CDXIndex;
@@ -44,10 +46,27 @@ import org.archive.wayback.util.CompositeSortedIterator;
  * @version $Date$, $Revision$
  */
 public class FlatFile {
+    private static final Logger LOGGER =
+        Logger.getLogger(FlatFile.class.getName());
 
     private static final long serialVersionUID = 6174187801001601557L;
     private long lastMatchOffset;
     protected File file = null;
+    private boolean mapped = false;
+    private int sampleInterval = 0;
+    private String sampleIndexPath = null;
+    private volatile SampledKeyIndex sampleIndex = null;
+    private boolean sampleIndexLoading = false;
+    // modification time of the file when loading samples last failed:
+    private long sampleIndexFailedModified = -1;
+    private final Object sampleIndexLock = new Object();
+
+    // largest range between samples that will be read in one go:
+    private final static int MAX_SAMPLED_READ = 1024 * 1024;
+
+    // per-thread buffer for ranges between samples, shared by all files:
+    private final static ThreadLocal<byte[]> SAMPLED_READ_BUFFER =
+        new ThreadLocal<byte[]>();
 
     /**
 	 * 
@@ -89,6 +108,179 @@ public class FlatFile {
         return file.getAbsolutePath();
     }
 
+    /**
+     * @return true if lookups are done against a shared memory-mapping of
+     *         the file, rather than through a new RandomAccessFile
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * @param mapped
+     *            if true, binary search and iterate over a shared,
+     *            read-only memory-mapping of the file (see
+     *            {@link MappedFile}) instead of opening a RandomAccessFile
+     *            for each lookup. Requires the file to fit in the virtual
+     *            address space, which is rarely a concern on 64-bit JVMs.
+     */
+    public void setMapped(boolean mapped) {
+        this.mapped = mapped;
+    }
+
+    /**
+     * @return the shared MappedFile for the current contents of this file
+     * @throws IOException
+     */
+    protected MappedFile getMappedFile() throws IOException {
+        return MappedFile.getInstance(file);
+    }
+
+    /**
+     * @return number of lines between entries in the in-memory sample index,
+     *         or 0 if no sample index is used
+     */
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * @param sampleInterval
+     *            if positive, keep the key and offset of every
+     *            sampleInterval'th line in memory, so a lookup needs only an
+     *            in-memory binary search and a single bounded read of the
+     *            range between two samples. The samples are built by scanning
+     *            the file in a background thread started at the first lookup
+     *            (or by {@link #loadSampleIndex()}), and again whenever the
+     *            file changes. Lookups use the plain binary search until
+     *            they are ready.
+     */
+    public void setSampleInterval(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * @return path where the sample index is persisted, or null
+     */
+    public String getSampleIndexPath() {
+        return sampleIndexPath;
+    }
+
+    /**
+     * @param sampleIndexPath
+     *            path of a sidecar file where the sample index is saved, so
+     *            it need not be rebuilt by scanning the whole file at
+     *            startup. The sidecar is ignored and rewritten if it does not
+     *            match the current length and modification time of the file.
+     */
+    public void setSampleIndexPath(String sampleIndexPath) {
+        this.sampleIndexPath = sampleIndexPath;
+    }
+
+    /**
+     * Load (or build) the sample index for the current contents of the file
+     * in the calling thread, e.g. to have it ready before the first lookup.
+     * Does nothing if sampleInterval is not set.
+     *
+     * @throws IOException
+     */
+    public void loadSampleIndex() throws IOException {
+        if (sampleInterval <= 0) {
+            return;
+        }
+        // lookups do not take this lock, only concurrent loads wait:
+        synchronized (sampleIndexLock) {
+            SampledKeyIndex samples = sampleIndex;
+            if ((samples != null) && !samples.isStale()) {
+                return;
+            }
+            File sidecar = null;
+            if (sampleIndexPath != null) {
+                sidecar = new File(sampleIndexPath);
+            }
+            sampleIndex = SampledKeyIndex.load(file, sampleInterval, sidecar);
+        }
+    }
+
+    /**
+     * Start loading the sample index in a background thread, unless that is
+     * already under way, or failed for the current contents of the file.
+     */
+    private void startLoadingSampleIndex() {
+        final long modified = file.lastModified();
+        synchronized (this) {
+            if (sampleIndexLoading || (modified == sampleIndexFailedModified)) {
+                return;
+            }
+            sampleIndexLoading = true;
+        }
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    loadSampleIndex();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to sample "
+                            + getPath() + ", not retrying until it changes",
+                            e);
+                    synchronized (FlatFile.this) {
+                        sampleIndexFailedModified = modified;
+                    }
+                } finally {
+                    synchronized (FlatFile.this) {
+                        sampleIndexLoading = false;
+                    }
+                }
+            }
+        }, "flatfile-samples-" + file.getName());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * @return the current SampledKeyIndex for this file, or null if
+     *         sampleInterval is not set or the index for the current contents
+     *         of the file is not loaded yet (in which case loading is
+     *         started)
+     */
+    protected SampledKeyIndex getSampleIndex() {
+        if (sampleInterval <= 0) {
+            return null;
+        }
+        SampledKeyIndex samples = sampleIndex;
+        if ((samples == null) || samples.isStale()) {
+            startLoadingSampleIndex();
+            return null;
+        }
+        return samples;
+    }
+
+    /**
+     * Locate key using the sample index, reading only the range of the file
+     * between the two samples bracketing key. As a side effect, the
+     * RandomAccessFile's position is set to the returned offset.
+     * 
+     * @return offset found, or -1 if the range is too large to read at once
+     */
+    private long findSampledKeyOffset(RandomAccessFile fh, String key,
+            SampledKeyIndex samples, boolean lessThan) throws IOException {
+        long[] range = samples.getRange(key);
+        long size = range[1] - range[0];
+        if (size > MAX_SAMPLED_READ) {
+            return -1;
+        }
+        byte[] buffer = SAMPLED_READ_BUFFER.get();
+        if ((buffer == null) || (buffer.length < size)) {
+            buffer = new byte[(int) Math.max(size, 64 * 1024)];
+            SAMPLED_READ_BUFFER.set(buffer);
+        }
+        fh.seek(range[0]);
+        fh.readFully(buffer, 0, (int) size);
+        long offset = range[0] + SampledKeyIndex.findInBuffer(buffer,
+                (int) size, key.getBytes(ByteOp.UTF8), lessThan);
+        fh.seek(offset);
+        return offset;
+    }
+
     /**
      * Binary search thru RandomAccessFile argument to locate the first line
      * prefixed by key argument. As a side effect, the RandomAccessFile's
@@ -101,6 +293,13 @@ public class FlatFile {
      */
     public long findKeyOffset(RandomAccessFile fh, String key)
             throws IOException {
+        SampledKeyIndex samples = getSampleIndex();
+        if (samples != null) {
+            long offset = findSampledKeyOffset(fh, key, samples, false);
+            if (offset >= 0) {
+                return offset;
+            }
+        }
         int blockSize = 8192;
         long fileSize = fh.length();
         long min = 0;
@@ -138,6 +337,13 @@ public class FlatFile {
 
     public long findKeyOffsetLT(RandomAccessFile fh, String key)
             throws IOException {
+        SampledKeyIndex samples = getSampleIndex();
+        if (samples != null) {
+            long offset = findSampledKeyOffset(fh, key, samples, true);
+            if (offset >= 0) {
+                return offset;
+            }
+        }
         int blockSize = 8192;
         long fileSize = fh.length();
         long min = 0;
@@ -175,6 +381,22 @@ public class FlatFile {
         return last;
     }
 
+    private long findMappedKeyOffset(MappedFile mf, String key,
+            boolean lessThan) throws IOException {
+        long start = 0;
+        long end = mf.length();
+        SampledKeyIndex samples = getSampleIndex();
+        if ((samples != null) && (samples.getLength() == end)) {
+            long[] range = samples.getRange(key);
+            start = range[0];
+            end = range[1];
+        }
+        if (lessThan) {
+            return mf.findKeyOffsetLT(key, start, end);
+        }
+        return mf.findKeyOffset(key, start, end);
+    }
+
     /**
      * @return Returns the lastMatchOffset.
      */
@@ -187,6 +409,9 @@ public class FlatFile {
      * @throws IOException
      */
     public CloseableIterator<String> getSequentialIterator() throws IOException {
+        if (mapped) {
+            return new MappedRecordIterator(getMappedFile(), 0, false);
+        }
         BufferedReader br = new BufferedReader(new FileReader(file));
         return new RecordIterator(br);
     }
@@ -198,6 +423,11 @@ public class FlatFile {
      */
     public CloseableIterator<String> getRecordIterator(final String prefix)
             throws IOException {
+        if (mapped) {
+            MappedFile mf = getMappedFile();
+            lastMatchOffset = findMappedKeyOffset(mf, prefix, false);
+            return new MappedRecordIterator(mf, lastMatchOffset, false);
+        }
         RecordIterator itr = null;
         RandomAccessFile raf = new RandomAccessFile(file, "r");
         long offset = findKeyOffset(raf, prefix);
@@ -211,6 +441,11 @@ public class FlatFile {
 
     public CloseableIterator<String> getRecordIteratorLT(final String prefix)
             throws IOException {
+        if (mapped) {
+            MappedFile mf = getMappedFile();
+            lastMatchOffset = findMappedKeyOffset(mf, prefix, true);
+            return new MappedRecordIterator(mf, lastMatchOffset, false);
+        }
         RecordIterator itr = null;
         RandomAccessFile raf = new RandomAccessFile(file, "r");
         long offset = findKeyOffsetLT(raf, prefix);
@@ -221,7 +456,27 @@ public class FlatFile {
     }
 
     /**
-     * 
+     * Same as {@link #getReverseRecordIterator(String)}, but reads from the
+     * shared MappedFile if mapped is set.
+     *
+     * @param prefix
+     * @return Iterator positioned to return the first line BEFORE prefix at
+     *         the first call to next().
+     * @throws IOException
+     */
+    public CloseableIterator<String> getReverseIterator(final String prefix)
+            throws IOException {
+        if (mapped) {
+            MappedFile mf = getMappedFile();
+            long offset = findMappedKeyOffset(mf, prefix, false);
+            lastMatchOffset = offset - 1;
+            return new MappedRecordIterator(mf, offset, true);
+        }
+        return getReverseRecordIterator(prefix);
+    }
+
+    /**
+     *
      * @param prefix
      * @return ReverseRecordIterator positioned to return the first line BEFORE
      *         prefix at the first call to readPrevLine().
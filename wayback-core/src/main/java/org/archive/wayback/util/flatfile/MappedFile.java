@@ -0,0 +1,345 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Read-only, memory-mapped view of a sorted line-oriented file.
+ * <p>
+ * The file is mapped as a series of {@link MappedByteBuffer} segments, so
+ * files larger than 2GB are supported. All access is done with absolute
+ * gets, which do not touch buffer position, so a single instance can be
+ * shared by any number of threads. Use {@link #getInstance(File)} to obtain
+ * the shared mapping for a file: it is re-mapped when the file's length or
+ * modification time changes (as when a {@link org.archive.wayback.util.CachedFile}
+ * is refreshed).
+ * </p>
+ * <p>
+ * Key comparison is done directly against the mapped bytes, comparing the
+ * UTF-8 encoding of the key with the raw line bytes as unsigned values. For
+ * ASCII keys (SURT keys, WARC filenames) this is the same ordering as
+ * {@link String#compareTo(String)}.
+ * </p>
+ */
+public class MappedFile {
+
+	private final static int SEGMENT_SHIFT = 30;
+	private final static long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	private final static long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private final static byte NEWLINE = '\n';
+	private final static byte CR = '\r';
+
+	private static ConcurrentHashMap<String, MappedFile> mappings =
+			new ConcurrentHashMap<String, MappedFile>();
+
+	private final File file;
+	private final long length;
+	private final long lastModified;
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Map the whole of file, read-only.
+	 * @param file to map
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public MappedFile(File file) throws IOException {
+		this.file = file;
+		this.lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			length = channel.size();
+			int count = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+			segments = new MappedByteBuffer[count];
+			for (int i = 0; i < count; i++) {
+				long start = i * SEGMENT_SIZE;
+				long size = Math.min(SEGMENT_SIZE, length - start);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						start, size);
+			}
+		} finally {
+			// mappings remain valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Get the shared mapping for file, re-mapping it if the file has changed
+	 * since it was last mapped.
+	 * @param file to map
+	 * @return MappedFile for the current contents of file
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public static MappedFile getInstance(File file) throws IOException {
+		String key = file.getAbsolutePath();
+		MappedFile current = mappings.get(key);
+		if ((current != null) && !current.isStale()) {
+			return current;
+		}
+		MappedFile fresh = new MappedFile(file);
+		if (current == null) {
+			MappedFile raced = mappings.putIfAbsent(key, fresh);
+			if ((raced != null) && !raced.isStale()) {
+				return raced;
+			}
+		}
+		mappings.put(key, fresh);
+		return fresh;
+	}
+
+	/**
+	 * Drop the shared mapping for file, if any. The mapping is released once
+	 * no iterators reference it any longer.
+	 * @param file to forget
+	 */
+	public static void release(File file) {
+		mappings.remove(file.getAbsolutePath());
+	}
+
+	/**
+	 * @return true if the underlying file has been modified or replaced since
+	 *         it was mapped
+	 */
+	public boolean isStale() {
+		return (file.length() != length)
+				|| (file.lastModified() != lastModified);
+	}
+
+	/**
+	 * @return the File mapped by this instance
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return number of bytes mapped
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @param offset absolute offset in the file
+	 * @return the byte at offset
+	 */
+	public byte byteAt(long offset) {
+		return segments[(int) (offset >>> SEGMENT_SHIFT)]
+				.get((int) (offset & SEGMENT_MASK));
+	}
+
+	/**
+	 * @param offset absolute offset in the file
+	 * @return offset of the first line starting at or after offset
+	 */
+	public long lineStartAtOrAfter(long offset) {
+		if (offset <= 0) {
+			return 0;
+		}
+		return lineEnd(offset - 1);
+	}
+
+	/**
+	 * @param lineStart offset of the start of a line
+	 * @return offset of the start of the following line, which is the file
+	 *         length if the line is the last one
+	 */
+	public long lineEnd(long lineStart) {
+		long i = lineStart;
+		while (i < length) {
+			if (byteAt(i++) == NEWLINE) {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @param offset the start of a line, or the file length
+	 * @return offset of the start of the line before the one starting at
+	 *         offset, or -1 if offset is the first line
+	 */
+	public long prevLineStart(long offset) {
+		if (offset <= 0) {
+			return -1;
+		}
+		long i = offset - 1;
+		// skip the newline terminating the previous line:
+		if (byteAt(i) == NEWLINE) {
+			i--;
+		}
+		while (i >= 0) {
+			if (byteAt(i) == NEWLINE) {
+				return i + 1;
+			}
+			i--;
+		}
+		return 0;
+	}
+
+	/**
+	 * Compare the line starting at lineStart with key, byte by byte, without
+	 * copying the line out of the mapping.
+	 * @param lineStart offset of the start of a line
+	 * @param key UTF-8 bytes of the key
+	 * @return negative, zero or positive as the line sorts before, equal to
+	 *         or after key
+	 */
+	public int compareLine(long lineStart, byte[] key) {
+		long i = lineStart;
+		for (int k = 0; k < key.length; k++, i++) {
+			if (i >= length) {
+				return -1;
+			}
+			int b = byteAt(i) & 0xff;
+			if (b == NEWLINE) {
+				return -1;
+			}
+			int c = key[k] & 0xff;
+			if (b != c) {
+				return b - c;
+			}
+		}
+		if ((i >= length) || (byteAt(i) == NEWLINE)) {
+			return 0;
+		}
+		if ((byteAt(i) == CR)
+				&& ((i + 1 >= length) || (byteAt(i + 1) == NEWLINE))) {
+			return 0;
+		}
+		return 1;
+	}
+
+	/**
+	 * Binary search the mapped file for the first line which sorts at or
+	 * after key.
+	 * @param key to search for
+	 * @return offset of the first line sorting at or after key, or the file
+	 *         length if all lines sort before key
+	 */
+	public long findKeyOffset(String key) {
+		return findKeyOffset(key, 0, length);
+	}
+
+	/**
+	 * Binary search a range of the mapped file for the first line which
+	 * sorts at or after key.
+	 * @param key to search for
+	 * @param start offset of a line known to sort at or before the first
+	 * line at or after key
+	 * @param end offset of a line known to sort at or after key, or the file
+	 * length
+	 * @return offset of the first line sorting at or after key, or end if
+	 *         all lines in the range sort before key
+	 */
+	public long findKeyOffset(String key, long start, long end) {
+		byte[] keyBytes = key.getBytes(ByteOp.UTF8);
+		// invariant: answer is in [lo,hi], lo is a line start, and hi is
+		// either the file length or the start of a line >= key
+		long lo = start;
+		long hi = end;
+		while (lo < hi) {
+			long mid = lo + ((hi - lo) >>> 1);
+			long lineStart = lineStartAtOrAfter(mid);
+			if (lineStart >= hi) {
+				// no line starts in [mid,hi): scan forward from lo.
+				while (lo < hi) {
+					if (compareLine(lo, keyBytes) >= 0) {
+						return lo;
+					}
+					lo = lineEnd(lo);
+				}
+				return hi;
+			}
+			if (compareLine(lineStart, keyBytes) < 0) {
+				lo = lineEnd(lineStart);
+			} else {
+				hi = lineStart;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @param key to search for
+	 * @return offset of the last line which sorts strictly before key, or 0
+	 *         if no line sorts before key
+	 */
+	public long findKeyOffsetLT(String key) {
+		return findKeyOffsetLT(key, 0, length);
+	}
+
+	/**
+	 * @param key to search for
+	 * @param start offset of a line known to sort before key, or 0
+	 * @param end offset of a line known to sort at or after key, or the file
+	 * length
+	 * @return offset of the last line in the range which sorts strictly
+	 *         before key, or 0 if no line sorts before key
+	 */
+	public long findKeyOffsetLT(String key, long start, long end) {
+		long offset = findKeyOffset(key, start, end);
+		long prev = prevLineStart(offset);
+		return prev < 0 ? 0 : prev;
+	}
+
+	/**
+	 * Decode the line starting at lineStart and ending (exclusive of the
+	 * newline) before lineEnd.
+	 * @param lineStart offset of the first byte of the line
+	 * @param lineEnd offset of the start of the next line
+	 * @return String line, without trailing newline or carriage return
+	 */
+	public String readLine(long lineStart, long lineEnd) {
+		long end = lineEnd;
+		if ((end > lineStart) && (byteAt(end - 1) == NEWLINE)) {
+			end--;
+		}
+		if ((end > lineStart) && (byteAt(end - 1) == CR)) {
+			end--;
+		}
+		byte[] bytes = new byte[(int) (end - lineStart)];
+		copyBytes(lineStart, bytes);
+		return new String(bytes, ByteOp.UTF8);
+	}
+
+	private void copyBytes(long offset, byte[] dest) {
+		int copied = 0;
+		while (copied < dest.length) {
+			long pos = offset + copied;
+			ByteBuffer segment =
+					segments[(int) (pos >>> SEGMENT_SHIFT)].duplicate();
+			segment.position((int) (pos & SEGMENT_MASK));
+			int amt = Math.min(segment.remaining(), dest.length - copied);
+			segment.get(dest, copied, amt);
+			copied += amt;
+		}
+	}
+}
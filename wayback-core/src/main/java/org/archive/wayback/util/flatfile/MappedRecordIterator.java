@@ -0,0 +1,111 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Iterator that returns lines from a {@link MappedFile}, either forwards or
+ * backwards from a starting offset. Holds no file handle: closing only
+ * stops the iteration.
+ *
+ * @see RecordIterator
+ * @see ReverseRecordIterator
+ */
+public class MappedRecordIterator implements CloseableIterator<String> {
+	private MappedFile mapped;
+	private long offset;
+	private boolean reverse;
+
+	protected String next = null;
+
+	protected boolean done = false;
+
+	/**
+	 * @param mapped MappedFile to read
+	 * @param offset start of the first line to return, for forward
+	 * iteration, or the start of the line following the first line to
+	 * return, for reverse iteration
+	 * @param reverse if true, return lines in reverse order
+	 */
+	public MappedRecordIterator(MappedFile mapped, long offset,
+			boolean reverse) {
+		this.mapped = mapped;
+		this.offset = offset;
+		this.reverse = reverse;
+		if (mapped == null) {
+			done = true;
+		}
+	}
+
+	public boolean hasNext() {
+		if (next != null)
+			return true;
+		if (done) {
+			return false;
+		}
+		if (reverse) {
+			long start = mapped.prevLineStart(offset);
+			if (start < 0) {
+				done = true;
+			} else {
+				next = mapped.readLine(start, offset);
+				offset = start;
+			}
+		} else {
+			if (offset >= mapped.length()) {
+				done = true;
+			} else {
+				long end = mapped.lineEnd(offset);
+				next = mapped.readLine(offset, end);
+				offset = end;
+			}
+		}
+		return (next != null);
+	}
+
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		// 'next' is guaranteed non-null by a hasNext() which returned true
+		String returnString = this.next;
+		this.next = null;
+		return returnString;
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		done = true;
+		next = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new RuntimeException("unsupported remove");
+	}
+}
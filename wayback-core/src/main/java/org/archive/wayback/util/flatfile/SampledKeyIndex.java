@@ -0,0 +1,365 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Sparse, in-memory sample of a sorted file: the full text and byte offset
+ * of every Nth line.
+ * <p>
+ * A lookup against the samples narrows the binary search for a key down to
+ * the byte range between two adjacent samples, which can then be satisfied
+ * with one bounded read instead of log2(filesize/blocksize) seeks.
+ * </p>
+ * <p>
+ * The samples can be persisted to a sidecar file, which records the length
+ * and modification time of the file it was built from, and is rebuilt when
+ * those no longer match.
+ * </p>
+ */
+public class SampledKeyIndex {
+	private final static Logger LOGGER =
+		Logger.getLogger(SampledKeyIndex.class.getName());
+
+	private final static String HEADER_PREFIX = "#SAMPLES ";
+	private final static byte NEWLINE = '\n';
+
+	private final File file;
+	private final long length;
+	private final long lastModified;
+	private final int interval;
+	// UTF-8 bytes, so they compare in the same order as the file is sorted
+	private final byte[][] keys;
+	private final long[] offsets;
+
+	private SampledKeyIndex(File file, long length, long lastModified,
+			int interval, byte[][] keys, long[] offsets) {
+		this.file = file;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.interval = interval;
+		this.keys = keys;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Load the samples for file from sidecar, if sidecar is present and
+	 * current, otherwise build them by scanning file, and write them to
+	 * sidecar.
+	 * @param file sorted file to sample
+	 * @param interval number of lines between samples
+	 * @param sidecar File where samples are persisted, or null to keep them
+	 * only in memory
+	 * @return SampledKeyIndex for the current contents of file
+	 * @throws IOException if file cannot be read
+	 */
+	public static SampledKeyIndex load(File file, int interval, File sidecar)
+			throws IOException {
+		if ((sidecar != null) && sidecar.exists()) {
+			try {
+				SampledKeyIndex index = read(file, interval, sidecar);
+				if (index != null) {
+					return index;
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Bad sample file "
+						+ sidecar.getAbsolutePath() + ", rebuilding", e);
+			}
+		}
+		SampledKeyIndex index = build(file, interval);
+		if (sidecar != null) {
+			try {
+				index.write(sidecar);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Unable to write sample file "
+						+ sidecar.getAbsolutePath(), e);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Scan file, recording every interval'th line.
+	 * @param file sorted file to sample
+	 * @param interval number of lines between samples
+	 * @return new SampledKeyIndex
+	 * @throws IOException if file cannot be read
+	 */
+	public static SampledKeyIndex build(File file, int interval)
+			throws IOException {
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		long lastModified = file.lastModified();
+		ArrayList<byte[]> keys = new ArrayList<byte[]>();
+		ArrayList<Long> offsets = new ArrayList<Long>();
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		long offset = 0;
+		long lineStart = 0;
+		long lineNumber = 0;
+		try {
+			int b;
+			while ((b = is.read()) != -1) {
+				offset++;
+				boolean sampled = (lineNumber % interval) == 0;
+				if (b == NEWLINE) {
+					if (sampled) {
+						keys.add(decode(line));
+						offsets.add(lineStart);
+						line.reset();
+					}
+					lineNumber++;
+					lineStart = offset;
+				} else if (sampled) {
+					line.write(b);
+				}
+			}
+			if ((lineStart < offset) && ((lineNumber % interval) == 0)) {
+				keys.add(decode(line));
+				offsets.add(lineStart);
+			}
+		} finally {
+			is.close();
+		}
+		long[] offsetArray = new long[offsets.size()];
+		for (int i = 0; i < offsetArray.length; i++) {
+			offsetArray[i] = offsets.get(i);
+		}
+		return new SampledKeyIndex(file, offset, lastModified, interval,
+				keys.toArray(new byte[keys.size()][]), offsetArray);
+	}
+
+	private static byte[] decode(ByteArrayOutputStream line) {
+		byte[] b = line.toByteArray();
+		if ((b.length > 0) && (b[b.length - 1] == '\r')) {
+			return Arrays.copyOf(b, b.length - 1);
+		}
+		return b;
+	}
+
+	private static SampledKeyIndex read(File file, int interval, File sidecar)
+			throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new FileInputStream(sidecar), ByteOp.UTF8));
+		try {
+			String header = br.readLine();
+			if ((header == null) || !header.startsWith(HEADER_PREFIX)) {
+				throw new IOException("Missing header");
+			}
+			String[] parts = header.substring(HEADER_PREFIX.length())
+					.split(" ");
+			if (parts.length != 3) {
+				throw new IOException("Bad header " + header);
+			}
+			long length = Long.parseLong(parts[0]);
+			long lastModified = Long.parseLong(parts[1]);
+			int savedInterval = Integer.parseInt(parts[2]);
+			if ((length != file.length())
+					|| (lastModified != file.lastModified())
+					|| (savedInterval != interval)) {
+				// stale:
+				return null;
+			}
+			ArrayList<byte[]> keys = new ArrayList<byte[]>();
+			ArrayList<Long> offsets = new ArrayList<Long>();
+			String line;
+			while ((line = br.readLine()) != null) {
+				int idx = line.indexOf(' ');
+				if (idx == -1) {
+					throw new IOException("Bad sample line " + line);
+				}
+				offsets.add(Long.parseLong(line.substring(0, idx)));
+				keys.add(line.substring(idx + 1).getBytes(ByteOp.UTF8));
+			}
+			long[] offsetArray = new long[offsets.size()];
+			for (int i = 0; i < offsetArray.length; i++) {
+				offsetArray[i] = offsets.get(i);
+			}
+			return new SampledKeyIndex(file, length, lastModified, interval,
+					keys.toArray(new byte[keys.size()][]), offsetArray);
+		} catch (NumberFormatException e) {
+			throw new IOException(e);
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Persist the samples to sidecar, via a temporary file which is renamed
+	 * into place.
+	 * @param sidecar File to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(File sidecar) throws IOException {
+		File tmp = new File(sidecar.getAbsolutePath() + ".TMP");
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(tmp), ByteOp.UTF8));
+		pw.print(HEADER_PREFIX + length + " " + lastModified + " "
+				+ interval + "\n");
+		for (int i = 0; i < keys.length; i++) {
+			pw.print(offsets[i] + " " + new String(keys[i], ByteOp.UTF8)
+					+ "\n");
+		}
+		pw.close();
+		if (pw.checkError()) {
+			tmp.delete();
+			throw new IOException("Failed writing " + tmp.getAbsolutePath());
+		}
+		if (!tmp.renameTo(sidecar)) {
+			sidecar.delete();
+			if (!tmp.renameTo(sidecar)) {
+				throw new IOException("Unable to rename " + tmp + " to "
+						+ sidecar);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the sampled file has been modified or replaced since
+	 *         the samples were taken
+	 */
+	public boolean isStale() {
+		return (file.length() != length)
+				|| (file.lastModified() != lastModified);
+	}
+
+	/**
+	 * @return length of the file when it was sampled
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return number of lines between samples
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return number of samples held
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Find the byte range which must contain the first line sorting at or
+	 * after key, and the last line sorting before it. Keys are compared as
+	 * unsigned UTF-8 bytes, which is how the file is sorted, rather than as
+	 * UTF-16 Strings.
+	 * @param key to search for
+	 * @return two element array: the offset of the last sampled line which
+	 *         sorts before key (or 0), and the offset of the first sampled
+	 *         line which sorts at or after key (or the file length).
+	 */
+	public long[] getRange(String key) {
+		byte[] keyBytes = key.getBytes(ByteOp.UTF8);
+		// first sample >= key:
+		int upper = 0;
+		int high = keys.length;
+		while (upper < high) {
+			int mid = (upper + high) >>> 1;
+			if (compareBytes(keys[mid], keyBytes) < 0) {
+				upper = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		long start = upper == 0 ? 0 : offsets[upper - 1];
+		long end = upper == keys.length ? length : offsets[upper];
+		return new long[] {start, end};
+	}
+
+	/**
+	 * Locate key within a buffer holding whole lines read from a sorted file.
+	 * @param buffer bytes holding whole lines
+	 * @param len number of valid bytes in buffer
+	 * @param key UTF-8 bytes of the key
+	 * @param lessThan if true, find the last line sorting before key, rather
+	 * than the first line sorting at or after it
+	 * @return offset within buffer of the first line at or after key (which
+	 *         is len if no line qualifies) or, if lessThan, of the last line
+	 *         before key (which is 0 if no line qualifies)
+	 */
+	public static int findInBuffer(byte[] buffer, int len, byte[] key,
+			boolean lessThan) {
+		int lineStart = 0;
+		int last = 0;
+		while (lineStart < len) {
+			if (compareLine(buffer, lineStart, len, key) >= 0) {
+				return lessThan ? last : lineStart;
+			}
+			last = lineStart;
+			while ((lineStart < len) && (buffer[lineStart] != NEWLINE)) {
+				lineStart++;
+			}
+			lineStart++;
+		}
+		return lessThan ? last : len;
+	}
+
+	static int compareBytes(byte[] a, byte[] b) {
+		int len = Math.min(a.length, b.length);
+		for (int i = 0; i < len; i++) {
+			int x = a[i] & 0xff;
+			int y = b[i] & 0xff;
+			if (x != y) {
+				return x - y;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	private static int compareLine(byte[] buffer, int start, int len,
+			byte[] key) {
+		int i = start;
+		for (int k = 0; k < key.length; k++, i++) {
+			if ((i >= len) || (buffer[i] == NEWLINE)) {
+				return -1;
+			}
+			int b = buffer[i] & 0xff;
+			int c = key[k] & 0xff;
+			if (b != c) {
+				return b - c;
+			}
+		}
+		return ((i >= len) || (buffer[i] == NEWLINE)) ? 0 : 1;
+	}
+}
@@ -28,6 +28,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -140,6 +142,7 @@ public class AccessPoint extends AbstractRequestHandler implements
 		IndexQueryTotal,
 		WArcResource,
 		Total,
+		ReplayAdmission,
 	}
 
 	private String errorMsgHeader = RUNTIME_ERROR_HEADER;
@@ -195,6 +198,10 @@ public class AccessPoint extends AbstractRequestHandler implements
 
 	private boolean fixedEmbeds = false;
 
+	private int maxConcurrentReplays = 0;
+	private long replayAdmissionTimeoutMS = 0;
+	private Semaphore replayPermits = null;
+
 	public void init() {
 		checkAccessPointAware(collection,exception,query,parser,replay,
 			uriConverter,exclusionFactory, authentication, filterFactory);
@@ -311,7 +318,12 @@ public class AccessPoint extends AbstractRequestHandler implements
 						httpResponse.sendRedirect(replayUrl);
 						return true;
 					}
-					handleReplay(wbRequest, httpRequest, httpResponse);
+					acquireReplayPermit();
+					try {
+						handleReplay(wbRequest, httpRequest, httpResponse);
+					} finally {
+						releaseReplayPermit();
+					}
 				} else {
 					if (bounceToQueryPrefix) {
 						// we don't accept replay requests on this AccessPoint
@@ -368,6 +380,38 @@ public class AccessPoint extends AbstractRequestHandler implements
 		return handled;
 	}
 
+	/**
+	 * Wait for a replay slot if {@code maxConcurrentReplays} is set.
+	 * @throws ResourceNotAvailableException with status 503 if no slot
+	 * becomes available within {@code replayAdmissionTimeoutMS}
+	 */
+	protected void acquireReplayPermit() throws ResourceNotAvailableException {
+		Semaphore permits = replayPermits;
+		if (permits == null) return;
+		boolean acquired = false;
+		PerfStats.timeStart(PerfStat.ReplayAdmission);
+		try {
+			acquired = permits.tryAcquire(replayAdmissionTimeoutMS,
+				TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			PerfStats.timeEnd(PerfStat.ReplayAdmission, false);
+		}
+		if (!acquired) {
+			throw new ResourceNotAvailableException(
+				"Too many concurrent replay requests",
+				HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+
+	protected void releaseReplayPermit() {
+		Semaphore permits = replayPermits;
+		if (permits != null) {
+			permits.release();
+		}
+	}
+
 	/**
 	 * Return new instance of {@link ExclusionFilter} instance for this AccessPoint.
 	 * @throws AccessControlException If it cannot instantiate ExclusionFilter when
@@ -1815,6 +1859,39 @@ public class AccessPoint extends AbstractRequestHandler implements
 		this.maxRedirectAttempts = maxRedirectAttempts;
 	}
 
+	public int getMaxConcurrentReplays() {
+		return maxConcurrentReplays;
+	}
+
+	/**
+	 * Limit the number of replay requests processed concurrently by this
+	 * AccessPoint, so that replays stuck on slow index or storage cannot
+	 * occupy all of the container's request threads. Requests over the
+	 * limit wait up to {@code replayAdmissionTimeoutMS}, then fail with
+	 * status 503. Query and static requests are not limited.
+	 * Must be set before the AccessPoint starts serving requests.
+	 * @param maxConcurrentReplays maximum number of concurrent replays,
+	 * {@code 0} for no limit (default)
+	 */
+	public void setMaxConcurrentReplays(int maxConcurrentReplays) {
+		this.maxConcurrentReplays = maxConcurrentReplays;
+		this.replayPermits = maxConcurrentReplays > 0 ? new Semaphore(
+			maxConcurrentReplays, true) : null;
+	}
+
+	public long getReplayAdmissionTimeoutMS() {
+		return replayAdmissionTimeoutMS;
+	}
+
+	/**
+	 * @param replayAdmissionTimeoutMS milliseconds a replay request waits
+	 * for a slot when {@code maxConcurrentReplays} are in progress
+	 * (default 0, fail immediately)
+	 */
+	public void setReplayAdmissionTimeoutMS(long replayAdmissionTimeoutMS) {
+		this.replayAdmissionTimeoutMS = replayAdmissionTimeoutMS;
+	}
+
 	public boolean isFixedEmbeds() {
 		return fixedEmbeds;
 	}
@@ -186,6 +186,18 @@ public class PerfStats
 		return elapsed;
 	}
 	
+	/**
+	 * Count one occurrence of an event, for stats that are counts
+	 * rather than times.
+	 * @param stat stat to increment
+	 */
+	public static void increment(Enum<?> stat)
+	{
+		PerfStatEntry entry = get(stat.toString());
+		entry.count++;
+		entry.total++;
+	}
+
 	public static String getAllStats() {
 		return getAllStats(OutputFormat.BRACKET);
 	}
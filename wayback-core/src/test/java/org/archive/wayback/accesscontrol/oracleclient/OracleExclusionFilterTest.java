@@ -0,0 +1,204 @@
+package org.archive.wayback.accesscontrol.oracleclient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.accesscontrol.AccessControlClient;
+import org.archive.accesscontrol.RobotsUnavailableException;
+import org.archive.accesscontrol.RuleOracleUnavailableException;
+import org.archive.accesscontrol.model.Rule;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.FastCaptureSearchResult;
+import org.archive.wayback.util.Timestamp;
+
+/**
+ * Test of {@link OracleExclusionFilter} with {@link OraclePolicyCache}.
+ */
+public class OracleExclusionFilterTest extends TestCase {
+
+	/**
+	 * Stub Oracle serving a fixed list of rules, counting lookups. Of the
+	 * rules applying to a capture, the one with the narrowest range wins.
+	 */
+	class TestAccessControlClient extends AccessControlClient implements
+			OracleRuleLister {
+		List<Rule> rules = new ArrayList<Rule>();
+		int policyLookups = 0;
+		int ruleListings = 0;
+
+		public TestAccessControlClient() {
+			super("");
+		}
+
+		void addRule(String start, String end, String policy) {
+			Rule rule = new Rule();
+			if (start != null)
+				rule.setCaptureStart(Timestamp.parseBefore(start).getDate());
+			if (end != null)
+				rule.setCaptureEnd(Timestamp.parseAfter(end).getDate());
+			rule.setPolicy(policy);
+			rules.add(rule);
+		}
+
+		private long width(Rule rule) {
+			long start = rule.getCaptureStart() == null ? Long.MIN_VALUE / 2
+					: rule.getCaptureStart().getTime();
+			long end = rule.getCaptureEnd() == null ? Long.MAX_VALUE / 2
+					: rule.getCaptureEnd().getTime();
+			return end - start;
+		}
+
+		private Rule findRule(Date captureDate) {
+			Rule found = null;
+			for (Rule rule : rules) {
+				if ((rule.getCaptureStart() == null ||
+						!captureDate.before(rule.getCaptureStart())) &&
+						(rule.getCaptureEnd() == null ||
+						!captureDate.after(rule.getCaptureEnd()))) {
+					if (found == null || width(rule) < width(found)) {
+						found = rule;
+					}
+				}
+			}
+			return found;
+		}
+
+		public Collection<Rule> getRules(String url, String accessGroup) {
+			ruleListings++;
+			return rules;
+		}
+
+		@Override
+		public String getPolicy(String url, Date captureDate,
+				Date retrievalDate, String who)
+				throws RobotsUnavailableException,
+				RuleOracleUnavailableException {
+			policyLookups++;
+			Rule rule = findRule(captureDate);
+			return rule != null ? rule.getPolicy() : null;
+		}
+	}
+
+	TestAccessControlClient client;
+	OracleExclusionFilter cut;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		client = new TestAccessControlClient();
+		cut = new OracleExclusionFilter(client, "group");
+		cut.setPolicyCache(new OraclePolicyCache());
+		cut.setRuleLister(client);
+	}
+
+	private int filter(String timestamp) {
+		CaptureSearchResult capture = new FastCaptureSearchResult();
+		capture.setOriginalUrl("http://www.example.com/");
+		capture.setCaptureTimestamp(timestamp);
+		return cut.filterObject(capture);
+	}
+
+	public void testTimelineDecidedByRange() {
+		client.addRule(null, "2005", "allow");
+		client.addRule("2006", null, "block");
+
+		for (int year = 2000; year <= 2005; year++) {
+			assertEquals(OracleExclusionFilter.FILTER_INCLUDE,
+				filter(year + "0601000000"));
+		}
+		for (int year = 2006; year <= 2010; year++) {
+			assertEquals(OracleExclusionFilter.FILTER_EXCLUDE,
+				filter(year + "0601000000"));
+		}
+		// one lookup per rule range
+		assertEquals(2, client.policyLookups);
+		assertEquals(2, client.ruleListings);
+		assertEquals(9, cut.getPolicyCache().getHits());
+	}
+
+	/**
+	 * Block nested in an allow rule is honoured for captures in its range
+	 * after a capture outside it was decided by the allow rule.
+	 */
+	public void testNestedRule() {
+		client.addRule(null, null, "allow");
+		client.addRule("2005", "2006", "block");
+
+		for (int year = 2000; year <= 2010; year++) {
+			boolean blocked = year == 2005 || year == 2006;
+			assertEquals(String.valueOf(year), blocked
+					? OracleExclusionFilter.FILTER_EXCLUDE
+					: OracleExclusionFilter.FILTER_INCLUDE,
+				filter(year + "0601000000"));
+		}
+		// before, within and after the block
+		assertEquals(3, client.policyLookups);
+		assertEquals(8, cut.getPolicyCache().getHits());
+	}
+
+	public void testWithoutRuleLister() {
+		client.addRule(null, null, "allow");
+		cut.setRuleLister(null);
+
+		filter("20040601000000");
+		filter("20050601000000");
+		assertEquals(2, client.policyLookups);
+		assertEquals(0, client.ruleListings);
+	}
+
+	public void testNoRuleNotCached() {
+		client.addRule("2006", null, "allow");
+
+		assertEquals(OracleExclusionFilter.FILTER_EXCLUDE,
+			filter("20040601000000"));
+		assertEquals(OracleExclusionFilter.FILTER_EXCLUDE,
+			filter("20050601000000"));
+		assertEquals(2, client.policyLookups);
+		assertEquals(0, client.ruleListings);
+	}
+
+	public void testWithoutCache() {
+		client.addRule(null, null, "allow");
+		cut.setPolicyCache(null);
+
+		filter("20040601000000");
+		filter("20050601000000");
+		assertEquals(2, client.policyLookups);
+		assertEquals(0, client.ruleListings);
+	}
+
+	public void testCacheConflict() {
+		OraclePolicyCache cache = new OraclePolicyCache();
+		cache.put("http://a/", "g", 0, 100, "allow");
+		assertEquals("allow", cache.get("http://a/", "g", 50).getPolicy());
+		assertNull(cache.get("http://a/", null, 50));
+		assertNull(cache.get("http://a/", "g", 101));
+
+		cache.put("http://a/", "g", 101, 200, "block");
+		assertEquals("block", cache.get("http://a/", "g", 150).getPolicy());
+
+		// overlapping with different policy: drop all
+		cache.put("http://a/", "g", 90, 110, "robots");
+		assertNull(cache.get("http://a/", "g", 50));
+		assertEquals(0, cache.size());
+	}
+
+	public void testCacheExpiry() throws Exception {
+		OraclePolicyCache cache = new OraclePolicyCache();
+		cache.setTtlMS(-1);
+		cache.put("http://a/", "g", 0, 100, "allow");
+		assertNull(cache.get("http://a/", "g", 50));
+
+		cache = new OraclePolicyCache();
+		cache.setMaxUrls(2);
+		cache.put("http://a/", "g", 0, 100, "allow");
+		cache.put("http://b/", "g", 0, 100, "allow");
+		cache.put("http://c/", "g", 0, 100, "allow");
+		assertEquals(2, cache.size());
+		assertNull(cache.get("http://a/", "g", 50));
+	}
+}
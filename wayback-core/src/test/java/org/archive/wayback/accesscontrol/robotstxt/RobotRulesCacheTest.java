@@ -0,0 +1,112 @@
+package org.archive.wayback.accesscontrol.robotstxt;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link RobotRulesCache}.
+ */
+public class RobotRulesCacheTest extends TestCase {
+
+	private static class CountingLoader implements Callable<RobotRules> {
+		final AtomicInteger calls = new AtomicInteger();
+		public RobotRules call() throws Exception {
+			calls.incrementAndGet();
+			return new RobotRules();
+		}
+	}
+
+	public void testHit() throws Exception {
+		RobotRulesCache cache = new RobotRulesCache();
+		CountingLoader loader = new CountingLoader();
+		RobotRules rules = cache.get("http://example.com/robots.txt", loader);
+		assertSame(rules, cache.get("http://example.com/robots.txt", loader));
+		assertEquals(1, loader.calls.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	public void testExpiry() throws Exception {
+		RobotRulesCache cache = new RobotRulesCache();
+		cache.setMaxAgeMS(-1);
+		CountingLoader loader = new CountingLoader();
+		cache.get("http://example.com/robots.txt", loader);
+		cache.get("http://example.com/robots.txt", loader);
+		assertEquals(2, loader.calls.get());
+	}
+
+	public void testFailureNotCached() throws Exception {
+		RobotRulesCache cache = new RobotRulesCache();
+		try {
+			cache.get("http://example.com/robots.txt", new Callable<RobotRules>() {
+				public RobotRules call() throws Exception {
+					throw new IOException("failed");
+				}
+			});
+			fail("expected IOException");
+		} catch (IOException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertEquals(0, cache.size());
+		CountingLoader loader = new CountingLoader();
+		assertNotNull(cache.get("http://example.com/robots.txt", loader));
+		assertEquals(1, loader.calls.get());
+	}
+
+	public void testConcurrentMissesCoalesced() throws Exception {
+		final RobotRulesCache cache = new RobotRulesCache();
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		final Callable<RobotRules> loader = new Callable<RobotRules>() {
+			public RobotRules call() throws Exception {
+				calls.incrementAndGet();
+				loading.countDown();
+				release.await();
+				return new RobotRules();
+			}
+		};
+		Callable<RobotRules> lookup = new Callable<RobotRules>() {
+			public RobotRules call() throws Exception {
+				return cache.get("http://example.com/robots.txt", loader);
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<RobotRules> first = executor.submit(lookup);
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			Future<RobotRules> second = executor.submit(lookup);
+			Future<RobotRules> third = executor.submit(lookup);
+			// give the others time to start waiting
+			while (cache.getWaitCount() < 2) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			RobotRules rules = first.get(5, TimeUnit.SECONDS);
+			assertSame(rules, second.get(5, TimeUnit.SECONDS));
+			assertSame(rules, third.get(5, TimeUnit.SECONDS));
+			assertEquals(1, calls.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testMaxSize() throws Exception {
+		RobotRulesCache cache = new RobotRulesCache();
+		cache.setMaxSize(10);
+		CountingLoader loader = new CountingLoader();
+		for (int i = 0; i < 100; i++) {
+			cache.get("http://example" + i + ".com/robots.txt", loader);
+		}
+		assertTrue(cache.size() <= 10);
+		assertTrue(cache.getEvictionCount() >= 90);
+	}
+}
@@ -21,6 +21,9 @@ package org.archive.wayback.accesscontrol.robotstxt;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -362,4 +365,59 @@ public class RobotRulesTest extends TestCase {
 		assertFalse(rr.blocksPathForUA("/exactly/", WB_UA));
 		assertFalse(rr.blocksPathForUA("/exactly/it.html", WB_UA));
 	}
+
+	/**
+	 * Reference implementation of path matching: checks each rule in turn.
+	 */
+	private static boolean blocksPathLinear(String path, List<String> rules) {
+		for (String rule : rules) {
+			if (rule.equals("/") || path.startsWith(rule)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compiled rules give the same answer as checking rules one by one,
+	 * for a large robots.txt with overlapping rules.
+	 */
+	public void testCompiledRulesMatchLinear() throws Exception {
+		Random random = new Random(12);
+		String[] segments = { "a", "ab", "b", "cgi-bin", "%7E", "*", "x.php" };
+		List<String> globalRules = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder("User-agent: *\n");
+		for (int i = 0; i < 3000; i++) {
+			StringBuilder rule = new StringBuilder();
+			int depth = 1 + random.nextInt(3);
+			for (int j = 0; j < depth; j++) {
+				rule.append('/').append(segments[random.nextInt(segments.length)]);
+			}
+			if (random.nextBoolean()) {
+				rule.append('/');
+			}
+			globalRules.add(rule.toString());
+			sb.append("Disallow: ").append(rule).append('\n');
+		}
+		List<String> wbRules = new ArrayList<String>();
+		wbRules.add("/private");
+		sb.append("User-agent: " + WB_UA + "\nDisallow: /private\n");
+		load(sb.toString());
+
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder path = new StringBuilder();
+			int depth = random.nextInt(5);
+			for (int j = 0; j < depth; j++) {
+				path.append('/').append(segments[random.nextInt(segments.length)]);
+			}
+			if (random.nextBoolean()) {
+				path.append("/index.html");
+			}
+			String p = path.toString();
+			assertEquals(p, blocksPathLinear(p, globalRules),
+				rr.blocksPathForUA(p, "other"));
+			assertEquals(p, blocksPathLinear(p, wbRules),
+				rr.blocksPathForUA(p, WB_UA));
+		}
+	}
 }
@@ -0,0 +1,172 @@
+package org.archive.wayback.accesscontrol.robotstxt.redis;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.accesscontrol.robotstxt.redis.RedisRobotsLogic.RedisValue;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.exception.LiveDocumentNotAvailableException;
+import org.archive.wayback.exception.LiveWebCacheUnavailableException;
+import org.archive.wayback.liveweb.LiveWebCache;
+
+/**
+ * Test for {@link SimpleRedisRobotsCache} near-cache and pipelined lookups.
+ */
+public class SimpleRedisRobotsCacheTest extends TestCase {
+
+	/**
+	 * In-memory stand-in for Redis, counting round trips.
+	 */
+	static class FakeRedisRobotsLogic extends RedisRobotsLogic {
+		Map<String, RedisValue> store = new HashMap<String, RedisValue>();
+		List<String> queue = new ArrayList<String>();
+		int roundTrips = 0;
+
+		FakeRedisRobotsLogic() {
+			super(null);
+		}
+
+		@Override
+		public RedisValue getValue(String key)
+				throws LiveWebCacheUnavailableException {
+			roundTrips++;
+			return store.get(key);
+		}
+
+		@Override
+		public List<RedisValue> getValue(String[] keys)
+				throws LiveWebCacheUnavailableException {
+			roundTrips++;
+			List<RedisValue> values = new ArrayList<RedisValue>();
+			for (String key : keys) {
+				values.add(store.get(key));
+			}
+			return values;
+		}
+
+		@Override
+		public void pushKey(String list, String key, int maxSize) {
+			roundTrips++;
+			queue.add(key);
+		}
+
+		@Override
+		public void pushKeys(String list, List<String> keys, int maxSize) {
+			roundTrips++;
+			queue.addAll(keys);
+		}
+
+		@Override
+		public void updateValue(String url, RedisValue value, boolean gzip) {
+			roundTrips++;
+			store.put(url, value);
+		}
+	}
+
+	private static final String URL1 = "http://www.example.com/robots.txt";
+	private static final String URL2 = "http://example.com/robots.txt";
+
+	FakeRedisRobotsLogic redis;
+	SimpleRedisRobotsCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		redis = new FakeRedisRobotsLogic();
+		cache = new SimpleRedisRobotsCache();
+		cache.redisCmds = redis;
+		cache.setNearCacheMS(10 * 1000);
+	}
+
+	private String read(String url) throws Exception {
+		Resource resource = cache.getCachedResource(new URL(url), 0, true);
+		try {
+			return ((RobotsTxtResource)resource).getContents();
+		} finally {
+			resource.close();
+		}
+	}
+
+	public void testPrefetchOneRoundTrip() throws Exception {
+		redis.store.put(URL1, new RedisValue("User-agent: *", SimpleRedisRobotsCache.ONE_DAY * 10));
+		redis.store.put(URL2, new RedisValue("Disallow: /", SimpleRedisRobotsCache.ONE_DAY * 10));
+
+		cache.prefetch(Arrays.asList(URL1, URL2));
+		assertEquals(1, redis.roundTrips);
+
+		assertEquals("User-agent: *", read(URL1));
+		assertEquals("Disallow: /", read(URL2));
+		assertEquals(1, redis.roundTrips);
+	}
+
+	public void testExpiredQueuedOnce() throws Exception {
+		// refreshTTL (one day) has passed since last update
+		redis.store.put(URL1, new RedisValue("User-agent: *", SimpleRedisRobotsCache.ONE_DAY * 8));
+		redis.store.put(URL2, new RedisValue("User-agent: *", SimpleRedisRobotsCache.ONE_DAY * 8));
+
+		cache.prefetch(Arrays.asList(URL1, URL2));
+		// one lookup and one push for both
+		assertEquals(2, redis.roundTrips);
+		assertEquals(Arrays.asList(URL1, URL2), redis.queue);
+
+		read(URL1);
+		read(URL1);
+		assertEquals(2, redis.queue.size());
+	}
+
+	public void testNearCacheDisabled() throws Exception {
+		cache.setNearCacheMS(0);
+		redis.store.put(URL1, new RedisValue("User-agent: *", SimpleRedisRobotsCache.ONE_DAY * 10));
+		cache.prefetch(Arrays.asList(URL1, URL2));
+		assertEquals(0, redis.roundTrips);
+		read(URL1);
+		read(URL1);
+		assertEquals(2, redis.roundTrips);
+	}
+
+	public void testNearCacheEvictsLeastRecentlyUsed() throws Exception {
+		cache.setNearCacheSize(1);
+		redis.store.put(URL1, new RedisValue("User-agent: *", SimpleRedisRobotsCache.ONE_DAY * 10));
+		redis.store.put(URL2, new RedisValue("Disallow: /", SimpleRedisRobotsCache.ONE_DAY * 10));
+		read(URL1);
+		read(URL2);
+		assertEquals(2, redis.roundTrips);
+		// URL1 was evicted, URL2 is still held
+		read(URL2);
+		assertEquals(2, redis.roundTrips);
+		read(URL1);
+		assertEquals(3, redis.roundTrips);
+	}
+
+	public void testUpdateInvalidatesNearCache() throws Exception {
+		redis.store.put(URL1, new RedisValue("old", SimpleRedisRobotsCache.ONE_DAY * 10));
+		assertEquals("old", read(URL1));
+		cache.updateCache("new", URL1, "old", SimpleRedisRobotsCache.STATUS_OK, true);
+		assertEquals("new", read(URL1));
+	}
+
+	public void testMissingGoesLive() throws Exception {
+		cache.setLiveweb(new LiveWebCache() {
+			public Resource getCachedResource(URL url, long maxCacheMS,
+					boolean bUseOlder) throws LiveDocumentNotAvailableException {
+				throw new LiveDocumentNotAvailableException(url.toString());
+			}
+			public void shutdown() {
+			}
+		});
+		cache.prefetch(Arrays.asList(URL1));
+		try {
+			read(URL1);
+			fail("expected LiveDocumentNotAvailableException");
+		} catch (LiveDocumentNotAvailableException e) {
+			// expected
+		}
+		// prefetch, then storing the live result: no second lookup
+		assertEquals(2, redis.roundTrips);
+	}
+}
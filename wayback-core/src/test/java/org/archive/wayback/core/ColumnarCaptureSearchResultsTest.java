@@ -0,0 +1,213 @@
+package org.archive.wayback.core;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link ColumnarCaptureSearchResults}.
+ */
+public class ColumnarCaptureSearchResultsTest extends TestCase {
+
+	private FastCaptureSearchResult capture(int i) {
+		FastCaptureSearchResult result = new FastCaptureSearchResult();
+		result.setUrlKey("com,example)/");
+		result.setOriginalUrl("http://example.com/");
+		result.setCaptureTimestamp(String.format("2010%010d", i));
+		result.setMimeType((i % 2 == 0) ? "text/html" : "warc/revisit");
+		result.setHttpCode((i % 3 == 0) ? "-" : "200");
+		result.setDigest("DIGEST" + (i % 5));
+		result.setRedirectUrl("-");
+		result.setFile("file-" + (i / 10) + ".warc.gz");
+		result.setOffset(i * 1000L);
+		result.setCompressedLength(100 + i);
+		return result;
+	}
+
+	public void testRoundTripAndOrder() {
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		// prepend 0..39 in reverse, then append 40..99, growing both ways
+		for (int i = 39; i >= 0; i--) {
+			results.addSearchResult(capture(i), false);
+		}
+		for (int i = 40; i < 100; i++) {
+			results.addSearchResult(capture(i), true);
+		}
+		assertEquals(100, results.size());
+		int i = 0;
+		for (CaptureSearchResult result : results) {
+			FastCaptureSearchResult expected = capture(i);
+			assertEquals(expected.getCaptureTimestamp(), result.getCaptureTimestamp());
+			assertEquals(expected.getMimeType(), result.getMimeType());
+			assertEquals(expected.getHttpCode(), result.getHttpCode());
+			assertEquals(expected.getDigest(), result.getDigest());
+			assertEquals(expected.getFile(), result.getFile());
+			assertEquals(expected.getOffset(), result.getOffset());
+			assertEquals(expected.getCompressedLength(), result.getCompressedLength());
+			assertNull(result.getRobotFlags());
+			i++;
+		}
+		assertEquals("20100000000000", results.getFirstResultTimestamp());
+		assertEquals("20100000000099", results.getLastResultTimestamp());
+		assertEquals(20100000000050L, results.getTimestampValue(50));
+		assertEquals(200, results.getHttpCodeValue(1));
+		// url key, url, mimetypes, digests, redirect and files:
+		assertEquals(1 + 1 + 2 + 5 + 1 + 10, results.getDictionarySize());
+	}
+
+	public void testMapBasedCapture() {
+		CaptureSearchResult mapBased = new CaptureSearchResult();
+		mapBased.setUrlKey("com,example)/");
+		mapBased.setCaptureTimestamp("20100101000000");
+		mapBased.setOriginalUrl("http://example.com/");
+		mapBased.setFile("a.warc.gz");
+		mapBased.setOffset(1234);
+		mapBased.setClosest(true);
+		mapBased.putCustom("x-test", "yes");
+
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		CaptureSearchResult view = results.addCapture(mapBased, true);
+		// only the field without a column is kept in the map
+		Map<String, String> extras = results.extrasFor(0, false);
+		assertEquals(1, extras.size());
+		assertEquals("yes", view.getCustom("x-test"));
+		assertTrue(view.isClosest());
+
+		Map<String, String> canonical = view.toCanonicalStringMap();
+		assertEquals(mapBased.toCanonicalStringMap(), canonical);
+
+		canonical.put(CaptureSearchResult.CAPTURE_FILE, "b.warc.gz");
+		view.fromCanonicalStringMap(canonical);
+		assertEquals("b.warc.gz", view.getFile());
+		assertEquals(1234, view.getOffset());
+		assertEquals(1, results.extrasFor(0, false).size());
+	}
+
+	public void testViewsAreStable() {
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		CaptureSearchResult first = results.addCapture(capture(0), true);
+		for (int i = 1; i < 50; i++) {
+			results.addCapture(capture(i), true);
+		}
+		assertSame(first, results.getFirstResult());
+		assertSame(results.get(10), results.getResults().get(10));
+		assertSame(results.get(10), results.get(9).getNextResult());
+		assertEquals("20100000000049", results.getLastResult().getCaptureTimestamp());
+
+		// writes go to the columns:
+		results.get(3).setFile("other.warc.gz");
+		results.get(3).setHttpCode("xyz");
+		results.get(3).setRobotFlag('X');
+		assertEquals("other.warc.gz", results.get(3).getFile());
+		assertEquals("xyz", results.get(3).getHttpCode());
+		assertTrue(results.get(3).isRobotFlagSet(CaptureSearchResult.CAPTURE_ROBOT_BLOCKED));
+	}
+
+	public void testRemoveFromList() {
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		for (int i = 0; i < 5; i++) {
+			results.addCapture(capture(i), true);
+		}
+		CaptureSearchResult middle = results.get(2);
+		middle.removeFromList();
+		assertNull(middle.getPrevResult());
+		assertNull(middle.getNextResult());
+		assertSame(results.get(3), results.get(1).getNextResult());
+		assertSame(results.get(1), results.get(3).getPrevResult());
+		// the results themselves are unchanged
+		assertEquals(5, results.size());
+	}
+
+	public void testRevisitPayload() {
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		CaptureSearchResult original = results.addCapture(capture(0), true);
+		FastCaptureSearchResult revisit = capture(5);
+		revisit.flagDuplicateDigest(original);
+		CaptureSearchResult added = results.addCapture(revisit, true);
+		assertTrue(added.isRevisitDigest());
+		assertSame(original, added.getDuplicatePayload());
+		assertEquals(original.getFile(), added.getDuplicatePayloadFile());
+		assertEquals(original.getCaptureTimestamp(),
+				added.getDuplicateDigestStoredTimestamp());
+
+		// external payload
+		FastCaptureSearchResult other = capture(7);
+		added.flagDuplicateDigest(other);
+		assertSame(other, added.getDuplicatePayload());
+		assertFalse(results.get(0).isRevisitDigest());
+	}
+
+	public void testRemoveFirstResult() {
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		CaptureSearchResult original = results.addCapture(capture(0), true);
+		FastCaptureSearchResult revisit = capture(1);
+		revisit.flagDuplicateDigest(original);
+		results.addCapture(revisit, true);
+		// slide a window of 3 over 100 captures
+		for (int i = 2; i < 100; i++) {
+			results.addCapture(capture(i), true);
+			if (results.size() > 3) {
+				CaptureSearchResult removed = results.removeFirstResult();
+				assertEquals(capture(i - 3).getCaptureTimestamp(),
+						removed.getCaptureTimestamp());
+				assertNull(removed.getNextResult());
+			}
+			assertEquals(3, results.size());
+			assertEquals(capture(i - 2).getCaptureTimestamp(),
+					results.getFirstResultTimestamp());
+			assertEquals(capture(i).getCaptureTimestamp(),
+					results.getLastResultTimestamp());
+			assertNull(results.getFirstResult().getPrevResult());
+		}
+		// compacting into the room of removed captures keeps them in order
+		assertEquals(3, results.getResults().size());
+		assertEquals(capture(99).getCaptureTimestamp(),
+				results.get(2).getCaptureTimestamp());
+
+		while (results.removeFirstResult() != null) {
+		}
+		assertTrue(results.isEmpty());
+		assertNull(results.getFirstResultTimestamp());
+	}
+
+	public void testRemoveThenPrepend() {
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		CaptureSearchResult original = results.addCapture(capture(0), true);
+		FastCaptureSearchResult revisit = capture(1);
+		revisit.flagDuplicateDigest(original);
+		CaptureSearchResult added = results.addCapture(revisit, true);
+		results.removeFirstResult();
+
+		// reuses the removed slot: payload still reads the removed capture
+		results.addCapture(capture(50), false);
+		assertEquals(capture(50).getCaptureTimestamp(),
+				results.get(0).getCaptureTimestamp());
+		assertEquals(capture(0).getCaptureTimestamp(),
+				added.getDuplicatePayload().getCaptureTimestamp());
+		assertEquals(capture(0).getFile(), added.getDuplicatePayloadFile());
+		// out of order: bounds are rescanned on removal
+		assertEquals(capture(1).getCaptureTimestamp(),
+				results.getFirstResultTimestamp());
+		results.removeFirstResult();
+		assertEquals(capture(1).getCaptureTimestamp(),
+				results.getLastResultTimestamp());
+	}
+
+	public void testFlyweightIterator() {
+		ColumnarCaptureSearchResults results = new ColumnarCaptureSearchResults();
+		for (int i = 0; i < 20; i++) {
+			results.addCapture(capture(i), true);
+		}
+		Iterator<CaptureSearchResult> itr = results.flyweightIterator();
+		CaptureSearchResult view = itr.next();
+		int count = 1;
+		while (itr.hasNext()) {
+			assertSame(view, itr.next());
+			assertEquals(capture(count).getCaptureTimestamp(),
+					view.getCaptureTimestamp());
+			count++;
+		}
+		assertEquals(20, count);
+	}
+}
@@ -0,0 +1,107 @@
+package org.archive.wayback.replay;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.replay.TransparentReplayRendererTest.TestServletOutputStream;
+import org.easymock.EasyMock;
+
+/**
+ * Test for {@link BoundedReplayOutputStream}.
+ */
+public class BoundedReplayOutputStreamTest extends TestCase {
+
+	HttpServletResponse response;
+	TestServletOutputStream servletOutput;
+	Map<String, String> headers;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		response = EasyMock.createMock(HttpServletResponse.class);
+		servletOutput = new TestServletOutputStream();
+		headers = new LinkedHashMap<String, String>();
+		headers.put("Content-Type", "text/html");
+		// original length, must not be sent
+		headers.put("Content-Length", "5");
+	}
+
+	private static byte[] content(int length) {
+		byte[] b = new byte[length];
+		for (int i = 0; i < length; i++) {
+			b[i] = (byte)('a' + i % 26);
+		}
+		return b;
+	}
+
+	public void testFitsInBuffer() throws Exception {
+		byte[] content = content(100);
+		response.setHeader("Content-Type", "text/html");
+		response.setHeader("Content-Length", "100");
+		response.setCharacterEncoding("utf-8");
+		EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+		EasyMock.replay(response);
+
+		BoundedReplayOutputStream out = new BoundedReplayOutputStream(
+			headers, response, "utf-8", 1024, false);
+		out.write(content, 0, 60);
+		out.write(content, 60, 40);
+		assertFalse(out.isCommitted());
+		out.finish();
+		out.close();
+
+		EasyMock.verify(response);
+		assertTrue(out.isCommitted());
+		assertEquals(100, out.getLength());
+		assertEquals(new String(content, "utf-8"), servletOutput.getString());
+	}
+
+	public void testChunkedOnOverflow() throws Exception {
+		byte[] content = content(3000);
+		response.setHeader("Content-Type", "text/html");
+		response.setCharacterEncoding("utf-8");
+		EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+		EasyMock.replay(response);
+
+		BoundedReplayOutputStream out = new BoundedReplayOutputStream(
+			headers, response, "utf-8", 1024, false);
+		out.write(content, 0, 1000);
+		out.write(content, 1000, 1000);
+		// content is sent before the whole page is written
+		assertTrue(out.isCommitted());
+		assertEquals(2000, servletOutput.getBytes().length);
+		for (int i = 2000; i < 3000; i++) {
+			out.write(content[i]);
+		}
+		out.finish();
+		out.close();
+
+		EasyMock.verify(response);
+		assertEquals(new String(content, "utf-8"), servletOutput.getString());
+	}
+
+	public void testSpillToDisk() throws Exception {
+		byte[] content = content(5000);
+		response.setHeader("Content-Type", "text/html");
+		response.setHeader("Content-Length", "5000");
+		response.setCharacterEncoding("utf-8");
+		EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+		EasyMock.replay(response);
+
+		BoundedReplayOutputStream out = new BoundedReplayOutputStream(
+			headers, response, "utf-8", 1024, true);
+		for (int i = 0; i < content.length; i += 500) {
+			out.write(content, i, 500);
+		}
+		assertFalse(out.isCommitted());
+		out.finish();
+		out.close();
+
+		EasyMock.verify(response);
+		assertEquals(new String(content, "utf-8"), servletOutput.getString());
+	}
+}
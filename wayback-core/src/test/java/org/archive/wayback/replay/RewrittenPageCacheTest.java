@@ -0,0 +1,87 @@
+package org.archive.wayback.replay;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.archivalurl.ArchivalUrlResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.WaybackRequest;
+
+/**
+ * Test for {@link RewrittenPageCache}.
+ */
+public class RewrittenPageCacheTest extends TestCase {
+
+	private static RewrittenPageCache.Page page(int length) {
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Length", String.valueOf(length));
+		return new RewrittenPageCache.Page(headers, new byte[length], "utf-8");
+	}
+
+	public void testGetPut() {
+		RewrittenPageCache cache = new RewrittenPageCache();
+		assertNull(cache.get("a"));
+		RewrittenPageCache.Page page = page(100);
+		cache.put("a", page);
+		assertSame(page, cache.get("a"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		cache.clear();
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getBytes());
+	}
+
+	public void testEvictLeastRecentlyUsed() {
+		RewrittenPageCache cache = new RewrittenPageCache();
+		cache.setMaxBytes(3500);
+		cache.put("a", page(1000));
+		cache.put("b", page(1000));
+		cache.put("c", page(1000));
+		// touch "a", so that "b" is the eldest
+		assertNotNull(cache.get("a"));
+		cache.put("d", page(1000));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertNotNull(cache.get("d"));
+		assertTrue(cache.getBytes() <= 3500);
+	}
+
+	public void testLargePageNotCached() {
+		RewrittenPageCache cache = new RewrittenPageCache();
+		cache.setMaxPageBytes(1000);
+		cache.put("a", page(1001));
+		assertEquals(0, cache.size());
+	}
+
+	public void testMakeKey() {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setFile("a.warc.gz");
+		result.setOffset(1234);
+		ArchivalUrlResultURIConverter uriConverter = new ArchivalUrlResultURIConverter();
+		uriConverter.setReplayURIPrefix("http://web.archive.org/web/");
+		WaybackRequest wbRequest = new WaybackRequest();
+		wbRequest.setReplayTimestamp("20100101000000");
+
+		String key = RewrittenPageCache.makeKey(result, uriConverter,
+			wbRequest, "v");
+		assertEquals(key,
+			RewrittenPageCache.makeKey(result, uriConverter, wbRequest, "v"));
+		assertFalse(key.equals(RewrittenPageCache.makeKey(result,
+			uriConverter, wbRequest, "w")));
+
+		wbRequest.setFrameWrapperContext(true);
+		String frameKey = RewrittenPageCache.makeKey(result, uriConverter,
+			wbRequest, "v");
+		assertFalse(key.equals(frameKey));
+
+		uriConverter.setReplayURIPrefix("http://localhost/wayback/");
+		assertFalse(frameKey.equals(RewrittenPageCache.makeKey(result,
+			uriConverter, wbRequest, "v")));
+
+		assertNull(RewrittenPageCache.makeKey(new CaptureSearchResult(),
+			uriConverter, wbRequest, "v"));
+	}
+}
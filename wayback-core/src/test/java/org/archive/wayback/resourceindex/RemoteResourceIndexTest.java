@@ -19,10 +19,14 @@
  */
 package org.archive.wayback.resourceindex;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -30,6 +34,9 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.SearchResults;
+import org.archive.wayback.exception.BadQueryException;
+import org.archive.wayback.exception.ResourceNotInArchiveException;
+import org.archive.wayback.query.SearchResultLineFormat;
 import org.archive.wayback.util.ObjectFilter;
 import org.archive.wayback.util.ObjectFilterChain;
 import org.w3c.dom.Document;
@@ -99,4 +106,77 @@ public class RemoteResourceIndexTest extends TestCase {
 		}
 	}
 
+	public void testLinesToSearchResults() throws Exception {
+		RemoteResourceIndex r = new RemoteResourceIndex();
+
+		Map<String, String> request = new LinkedHashMap<String, String>();
+		request.put("url", "dixienet.org/");
+		request.put("numresults", "2");
+		request.put(SearchResults.RESULTS_TYPE, SearchResults.RESULTS_TYPE_CAPTURE);
+		Map<String, String> result1 = new LinkedHashMap<String, String>();
+		result1.put("url", "http://dixienet.org/?a=1&b=2");
+		result1.put("capturedate", "20090204213443");
+		result1.put("redirecturl", "http://dixienet.org/New%20Site/index.shtml");
+		Map<String, String> result2 = new LinkedHashMap<String, String>();
+		result2.put("url", "http://dixienet.org/");
+		result2.put("capturedate", "20100204213443");
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("Q ");
+		SearchResultLineFormat.encode(request, sb);
+		sb.append("\nR ");
+		SearchResultLineFormat.encode(result1, sb);
+		sb.append("\nR ");
+		SearchResultLineFormat.encode(result2, sb);
+		sb.append("\n");
+
+		CaptureSearchResults sr = (CaptureSearchResults)r.linesToSearchResults(
+			new BufferedReader(new StringReader(sb.toString())), null);
+		assertEquals("2", sr.getFilter("numresults"));
+		assertEquals(2, sr.getResults().size());
+		assertEquals("http://dixienet.org/?a=1&b=2", sr.getResults().get(0).getOriginalUrl());
+		assertEquals("http://dixienet.org/New%20Site/index.shtml", sr.getResults().get(0).getRedirectUrl());
+		assertEquals("20100204213443", sr.getResults().get(1).getCaptureTimestamp());
+
+		// filter
+		ObjectFilter<CaptureSearchResult> filter = new ObjectFilter<CaptureSearchResult>() {
+			public int filterObject(CaptureSearchResult o) {
+				return o.getCaptureTimestamp().startsWith("2009") ?
+						FILTER_EXCLUDE : FILTER_INCLUDE;
+			}
+		};
+		sr = (CaptureSearchResults)r.linesToSearchResults(new BufferedReader(
+			new StringReader(sb.toString())), filter);
+		assertEquals(1, sr.getResults().size());
+
+		filter = new ObjectFilter<CaptureSearchResult>() {
+			public int filterObject(CaptureSearchResult o) {
+				return FILTER_EXCLUDE;
+			}
+		};
+		try {
+			r.linesToSearchResults(new BufferedReader(new StringReader(
+				sb.toString())), filter);
+			fail("expected ResourceNotInArchiveException");
+		} catch (ResourceNotInArchiveException ex) {
+			// expected
+		}
+	}
+
+	public void testLinesError() throws Exception {
+		RemoteResourceIndex r = new RemoteResourceIndex();
+		Map<String, String> error = new LinkedHashMap<String, String>();
+		error.put(SearchResultLineFormat.ERROR_TYPE, SearchResultLineFormat.ERROR_BAD_QUERY);
+		error.put(SearchResultLineFormat.ERROR_MESSAGE, "bad date");
+		StringBuilder sb = new StringBuilder("E ");
+		SearchResultLineFormat.encode(error, sb);
+		try {
+			r.linesToSearchResults(new BufferedReader(new StringReader(
+				sb.toString())), null);
+			fail("expected BadQueryException");
+		} catch (BadQueryException ex) {
+			assertEquals("bad date", ex.getMessage());
+		}
+	}
+
 }
@@ -349,6 +349,90 @@ public class EmbeddedCDXServerIndexTest extends TestCase {
 		assertEquals("X", captureX.getRobotFlags());
 	}
 
+	/**
+	 * {@link CDXToCaptureSearchResultsWriter} with {@code replayWindow} keeps
+	 * only the neighbourhood of the closest capture, and aborts once it has
+	 * been collected. Revisits in the window are still resolved to originals
+	 * outside the window.
+	 * @throws Exception
+	 */
+	public void testReplayWindow() throws Exception {
+		WaybackRequest wbr = WaybackRequest.createReplayRequest(
+			"http://example.com/", "20101110000000", null, null);
+		CDXQuery query = new CDXQuery(wbr.getRequestUrl());
+		CDXToCaptureSearchResultsWriter cdxw = new CDXToCaptureSearchResultsWriter(query, true, false, null);
+		cdxw.setTargetTimestamp(wbr.getReplayTimestamp());
+		cdxw.setReplayWindow(2);
+
+		final FieldSplitFormat fmt = CDXFieldConstants.CDX_ALL_NAMES;
+		cdxw.begin();
+		int written = 0;
+		for (int day = 1; day <= 28 && !cdxw.isAborted(); day++) {
+			String mime = day == 1 ? "text/html" : "warc/revisit";
+			CDXLine line = new CDXLine(String.format(
+				"com,example)/ 201011%02d000000 http://example.com/ %s 200" +
+						" XXXX - - 2000 0 /a/%d.warc.gz", day, mime, day), fmt);
+			cdxw.trackLine(line);
+			cdxw.writeLine(line);
+			written++;
+		}
+		cdxw.end();
+
+		// stopped right after two captures past closest
+		assertEquals(12, written);
+
+		CaptureSearchResults results = cdxw.getSearchResults();
+		assertEquals(5, results.getReturnedCount());
+		assertEquals("20101108000000", results.getFirstResultTimestamp());
+		assertEquals("20101112000000", results.getLastResultTimestamp());
+
+		CaptureSearchResult closest = results.getClosest();
+		assertEquals("20101110000000", closest.getCaptureTimestamp());
+		assertEquals("20101109000000", closest.getPrevResult().getCaptureTimestamp());
+		assertNull(results.getFirstResult().getPrevResult());
+		assertEquals("20101101000000", closest.getDuplicatePayload().getCaptureTimestamp());
+	}
+
+	/**
+	 * Replay window keeps {@code replayWindow} captures before closest
+	 * when closest turns out to be the capture before the line that
+	 * resolves it.
+	 * @throws Exception
+	 */
+	public void testReplayWindowClosestBeforeLast() throws Exception {
+		WaybackRequest wbr = WaybackRequest.createReplayRequest(
+			"http://example.com/", "20101110010000", null, null);
+		CDXQuery query = new CDXQuery(wbr.getRequestUrl());
+		CDXToCaptureSearchResultsWriter cdxw = new CDXToCaptureSearchResultsWriter(query, true, false, null);
+		cdxw.setTargetTimestamp(wbr.getReplayTimestamp());
+		cdxw.setReplayWindow(2);
+
+		final FieldSplitFormat fmt = CDXFieldConstants.CDX_ALL_NAMES;
+		cdxw.begin();
+		int written = 0;
+		for (int day = 1; day <= 28 && !cdxw.isAborted(); day++) {
+			CDXLine line = new CDXLine(String.format(
+				"com,example)/ 201011%02d000000 http://example.com/ text/html 200" +
+						" XXXX%d - - 2000 0 /a/%d.warc.gz", day, day, day), fmt);
+			cdxw.trackLine(line);
+			cdxw.writeLine(line);
+			written++;
+		}
+		cdxw.end();
+
+		assertEquals(12, written);
+
+		CaptureSearchResults results = cdxw.getSearchResults();
+		assertEquals(5, results.getReturnedCount());
+		assertEquals("20101108000000", results.getFirstResultTimestamp());
+		assertEquals("20101112000000", results.getLastResultTimestamp());
+
+		CaptureSearchResult closest = results.getClosest();
+		assertEquals("20101110000000", closest.getCaptureTimestamp());
+		assertEquals("20101108000000", closest.getPrevResult().getPrevResult().getCaptureTimestamp());
+		assertNull(results.getFirstResult().getPrevResult());
+	}
+
 	/**
 	 * Test of soft-block feature (URL-agnostic revisit payload lookup).
 	 * In revisit payload lookup mode, capture with "X" is returned.
@@ -23,12 +23,23 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.httpclient.URIException;
+import org.archive.wayback.core.SearchResults;
+import org.archive.wayback.core.UrlSearchResult;
+import org.archive.wayback.core.UrlSearchResults;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.BadQueryException;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+import org.archive.wayback.exception.ResourceNotInArchiveException;
+import org.archive.wayback.util.url.IdentityUrlCanonicalizer;
 
 import junit.framework.TestCase;
 
@@ -178,6 +189,155 @@ public class AlphaPartitionedIndexTest extends TestCase {
         assertEquals(6, b2.getWeight());
 	}
 
+	/**
+	 * RangeMember answering after a delay, or failing if delay is negative.
+	 */
+	static class TestRangeMember extends RangeMember {
+		final long delay;
+		TestRangeMember(String url, long delay) {
+			this.delay = delay;
+			setUrlBase(url);
+		}
+		@Override
+		public SearchResults query(WaybackRequest wbRequest)
+				throws ResourceIndexNotAvailableException,
+				ResourceNotInArchiveException {
+			if (delay < 0) {
+				throw new ResourceIndexNotAvailableException("down");
+			}
+			Uninterruptibles.sleepUninterruptibly(delay, TimeUnit.MILLISECONDS);
+			UrlSearchResults results = new UrlSearchResults();
+			UrlSearchResult result = new UrlSearchResult();
+			result.setUrlKey(getUrlBase());
+			results.addSearchResult(result, true);
+			return results;
+		}
+	}
+
+	static class TestRangeGroup extends RangeGroup {
+		final Map<String, Long> delays = new HashMap<String, Long>();
+		TestRangeGroup() {
+			super("t", "a", "z");
+		}
+		@Override
+		protected RangeMember createMember(String url) {
+			return new TestRangeMember(url, delays.get(url));
+		}
+	}
+
+	public void testHedgedQuery() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			TestRangeGroup g = new TestRangeGroup();
+			g.delays.put("slow", 2000L);
+			g.delays.put("fast", 10L);
+			g.setMembers(new String[] {"slow", "fast"});
+			// "slow" gets queried first
+			g.members.get("fast").noteConnectionStart();
+			g.members.get("fast").noteConnectionSuccess(100);
+			g.members.get("fast").noteConnectionStart();
+			g.setExecutor(executor);
+			g.setHedgeDelayMS(50);
+
+			long start = System.currentTimeMillis();
+			UrlSearchResults results = (UrlSearchResults)g.query(new WaybackRequest());
+			assertEquals("fast", results.iterator().next().getUrlKey());
+			assertTrue(System.currentTimeMillis() - start < 1000);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testHedgedQueryFailover() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			TestRangeGroup g = new TestRangeGroup();
+			g.delays.put("down", -1L);
+			g.delays.put("up", 10L);
+			g.setMembers(new String[] {"down", "up"});
+			// "down" gets queried first
+			g.members.get("up").noteConnectionStart();
+			g.setExecutor(executor);
+			g.setHedgeDelayMS(5000);
+
+			long start = System.currentTimeMillis();
+			UrlSearchResults results = (UrlSearchResults)g.query(new WaybackRequest());
+			assertEquals("up", results.iterator().next().getUrlKey());
+			assertTrue(System.currentTimeMillis() - start < 1000);
+			assertEquals(RangeMember.UNUSABLE_WEIGHT,
+				g.members.get("down").getWeight());
+			assertEquals(1, g.members.get("up").getWeight());
+
+			try {
+				g.query(new WaybackRequest());
+				// "up" is still usable
+			} catch (ResourceIndexNotAvailableException e) {
+				fail("unexpected " + e);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testLatencyTieBreak() throws Exception {
+		TestRangeGroup g = new TestRangeGroup();
+		g.delays.put("x", 0L);
+		g.delays.put("y", 0L);
+		g.setMembers(new String[] {"x", "y"});
+		RangeMember x = g.members.get("x");
+		RangeMember y = g.members.get("y");
+		x.noteConnectionStart();
+		x.noteConnectionSuccess(200);
+		y.noteConnectionStart();
+		y.noteConnectionSuccess(20);
+		assertEquals(y, g.findBestMember());
+		y.noteConnectionStart();
+		assertEquals(x, g.findBestMember());
+	}
+
+	public void testPrefixGroups() throws Exception {
+		index.setCanonicalizer(new IdentityUrlCanonicalizer());
+		WaybackRequest r = new WaybackRequest();
+		r.setRequestUrl("ba");
+		List<RangeGroup> groups = index.getRangeGroupsForPrefix(r);
+		assertEquals(2, groups.size());
+		assertEquals("b", groups.get(0).getName());
+		assertEquals("c", groups.get(1).getName());
+
+		r.setRequestUrl("cool.com/");
+		groups = index.getRangeGroupsForPrefix(r);
+		assertEquals(1, groups.size());
+		assertEquals("c", groups.get(0).getName());
+	}
+
+	public void testMergeResults() throws Exception {
+		UrlSearchResults part1 = new UrlSearchResults();
+		part1.putFilter(SearchResults.RESULTS_REQUESTED, "3");
+		part1.setMatchingCount(2);
+		UrlSearchResults part2 = new UrlSearchResults();
+		part2.setMatchingCount(2);
+		for (String key : new String[] {"b1", "b2"}) {
+			UrlSearchResult result = new UrlSearchResult();
+			result.setUrlKey(key);
+			part1.addSearchResult(result, true);
+		}
+		for (String key : new String[] {"c1", "c2"}) {
+			UrlSearchResult result = new UrlSearchResult();
+			result.setUrlKey(key);
+			part2.addSearchResult(result, true);
+		}
+		UrlSearchResults merged = (UrlSearchResults)AlphaPartitionedIndex
+			.mergeResults(Arrays.<SearchResults>asList(part1, part2));
+		assertEquals(3, merged.size());
+		assertEquals(4, merged.getMatchingCount());
+		assertEquals(3, merged.getReturnedCount());
+		StringBuilder keys = new StringBuilder();
+		for (UrlSearchResult result : merged) {
+			keys.append(result.getUrlKey()).append(' ');
+		}
+		assertEquals("b1 b2 c1 ", keys.toString());
+	}
+
 	private void testFindRange(final AlphaPartitionedIndex apIndex,
 			final String url, final String wantGroup) throws URIException,
 			BadQueryException, ResourceIndexNotAvailableException {
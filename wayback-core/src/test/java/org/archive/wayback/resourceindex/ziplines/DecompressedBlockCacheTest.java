@@ -0,0 +1,70 @@
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link DecompressedBlockCache}.
+ */
+public class DecompressedBlockCacheTest extends TestCase {
+
+	public void testEvictsByBytes() {
+		DecompressedBlockCache cache = new DecompressedBlockCache();
+		cache.setNumSegments(1);
+		cache.setMaxBytes(1000);
+		cache.put("part-a", 0, 10, new byte[400]);
+		cache.put("part-a", 10, 10, new byte[400]);
+		assertNotNull(cache.get("part-a", 0, 10));
+		// part-a:10 is now least recently used:
+		cache.put("part-b", 0, 10, new byte[400]);
+		assertEquals(2, cache.size());
+		assertEquals(800, cache.getBytes());
+		assertNull(cache.get("part-a", 10, 10));
+		assertNotNull(cache.get("part-a", 0, 10));
+		assertNotNull(cache.get("part-b", 0, 10));
+		assertEquals(1, cache.getEvictions());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	public void testKeyIncludesLength() {
+		DecompressedBlockCache cache = new DecompressedBlockCache();
+		cache.put("part-a", 0, 10, new byte[1]);
+		assertNull(cache.get("part-a", 0, 20));
+		assertNull(cache.get("part-b", 0, 10));
+	}
+
+	public void testBlockReadsThroughCache() throws IOException {
+		final AtomicInteger loads = new AtomicInteger();
+		BlockLoader loader = new BlockLoader() {
+			public byte[] getBlock(String url, long offset, int length)
+					throws IOException {
+				loads.incrementAndGet();
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				GZIPOutputStream gz = new GZIPOutputStream(bytes);
+				gz.write("a line\nanother line\n".getBytes("UTF-8"));
+				gz.close();
+				return bytes.toByteArray();
+			}
+		};
+		DecompressedBlockCache cache = new DecompressedBlockCache();
+		for (int i = 0; i < 3; i++) {
+			ZiplinedBlock block = new ZiplinedBlock(new String[] { "part-a" },
+					0);
+			block.setLoader(loader);
+			block.setCache(cache);
+			BufferedReader br = block.readBlock();
+			assertEquals("a line", br.readLine());
+			assertEquals("another line", br.readLine());
+			assertNull(br.readLine());
+		}
+		assertEquals(1, loads.get());
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+}
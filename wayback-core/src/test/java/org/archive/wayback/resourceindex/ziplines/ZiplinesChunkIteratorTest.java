@@ -0,0 +1,141 @@
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for read-ahead in {@link ZiplinesChunkIterator}.
+ */
+public class ZiplinesChunkIteratorTest extends TestCase {
+
+	/**
+	 * Serves gzipped blocks of lines, identified by offset, taking longer for
+	 * earlier blocks, so read-ahead loads finish out of order.
+	 */
+	private static class SlowBlockLoader implements BlockLoader {
+		int numBlocks;
+		SlowBlockLoader(int numBlocks) {
+			this.numBlocks = numBlocks;
+		}
+		public byte[] getBlock(String url, long offset, int length)
+				throws IOException {
+			try {
+				Thread.sleep((numBlocks - offset) * 5);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			GZIPOutputStream gz = new GZIPOutputStream(bytes);
+			for (int i = 0; i < 3; i++) {
+				gz.write(String.format("line %d.%d\n", offset, i).getBytes());
+			}
+			gz.close();
+			return bytes.toByteArray();
+		}
+	}
+
+	private List<ZiplinedBlock> makeBlocks(int numBlocks) {
+		BlockLoader loader = new SlowBlockLoader(numBlocks);
+		List<ZiplinedBlock> blocks = new ArrayList<ZiplinedBlock>();
+		for (int i = 0; i < numBlocks; i++) {
+			ZiplinedBlock block = new ZiplinedBlock(new String[] { "part-a" },
+					i);
+			block.setLoader(loader);
+			blocks.add(block);
+		}
+		return blocks;
+	}
+
+	public void testReadAheadKeepsOrder() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			BlockLoadStats stats = new BlockLoadStats();
+			ZiplinesChunkIterator itr = new ZiplinesChunkIterator(
+					makeBlocks(10), executor, 3, stats);
+			for (int b = 0; b < 10; b++) {
+				for (int i = 0; i < 3; i++) {
+					assertTrue(itr.hasNext());
+					assertEquals("line " + b + "." + i, itr.next());
+				}
+			}
+			assertFalse(itr.hasNext());
+			itr.close();
+			assertEquals(1, stats.getQueries());
+			assertEquals(10, stats.getBlocksLoaded());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testCloseCancelsPending() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			BlockLoadStats stats = new BlockLoadStats();
+			ZiplinesChunkIterator itr = new ZiplinesChunkIterator(
+					makeBlocks(10), executor, 4, stats);
+			assertTrue(itr.hasNext());
+			assertEquals("line 0.0", itr.next());
+			itr.close();
+			assertTrue(stats.getBlocksCancelled() > 0);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testCloseWaitsForRunningLoads() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean finished = new AtomicBoolean();
+		BlockLoader loader = new BlockLoader() {
+			public byte[] getBlock(String url, long offset, int length)
+					throws IOException {
+				if (offset == 1) {
+					started.countDown();
+					try {
+						Thread.sleep(200);
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					finished.set(true);
+				}
+				return new SlowBlockLoader(0).getBlock(url, offset, length);
+			}
+		};
+		List<ZiplinedBlock> blocks = makeBlocks(2);
+		for (ZiplinedBlock block : blocks) {
+			block.setLoader(loader);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ZiplinesChunkIterator itr = new ZiplinesChunkIterator(blocks,
+					executor, 2, null);
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			itr.close();
+			assertTrue(finished.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testRejectedLoadsRunInline() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		ZiplinesChunkIterator itr = new ZiplinesChunkIterator(makeBlocks(3),
+				executor, 2, null);
+		int count = 0;
+		while (itr.hasNext()) {
+			itr.next();
+			count++;
+		}
+		assertEquals(9, count);
+	}
+}
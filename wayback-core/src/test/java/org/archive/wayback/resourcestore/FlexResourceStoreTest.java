@@ -0,0 +1,200 @@
+package org.archive.wayback.resourcestore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.exception.ResourceNotAvailableException;
+
+/**
+ * Test for hedged loading in {@link FlexResourceStore}.
+ */
+public class FlexResourceStoreTest extends TestCase {
+
+	static class TestResource extends Resource {
+		final String path;
+		volatile boolean closed = false;
+		TestResource(String path) {
+			this.path = path;
+		}
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+		@Override
+		public int getStatusCode() {
+			return 200;
+		}
+		@Override
+		public long getRecordLength() {
+			return 0;
+		}
+		@Override
+		public Map<String, String> getHttpHeaders() {
+			return new HashMap<String, String>();
+		}
+		@Override
+		public int read() throws IOException {
+			return -1;
+		}
+	}
+
+	/**
+	 * Serves every path after a configured delay; paths without delay
+	 * fail with IOException.
+	 */
+	static class TestFlexResourceStore extends FlexResourceStore {
+		final Map<String, Long> delays = new HashMap<String, Long>();
+		final List<TestResource> loaded = new ArrayList<TestResource>();
+		@Override
+		public Resource getResource(String path, CaptureSearchResult result)
+				throws IOException, ResourceNotAvailableException {
+			Long delay = delays.get(path);
+			if (delay == null) {
+				throw new IOException("failed: " + path);
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted: " + path);
+			}
+			TestResource r = new TestResource(path);
+			synchronized (loaded) {
+				loaded.add(r);
+			}
+			return r;
+		}
+	}
+
+	TestFlexResourceStore cut;
+	CaptureSearchResult result;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cut = new TestFlexResourceStore();
+		FlexResourceStore.PrefixLookup slow = new FlexResourceStore.PrefixLookup();
+		slow.setPrefix("http://slow.example.com/");
+		FlexResourceStore.PrefixLookup fast = new FlexResourceStore.PrefixLookup();
+		fast.setPrefix("http://fast.example.com/");
+		cut.setSources(Arrays.<FlexResourceStore.SourceResolver>asList(slow,
+			fast));
+		result = new CaptureSearchResult();
+		result.setFile("a.warc.gz");
+	}
+
+	public void testHedgedFasterWins() throws Exception {
+		cut.delays.put("http://slow.example.com/a.warc.gz", 2000L);
+		cut.delays.put("http://fast.example.com/a.warc.gz", 10L);
+		cut.setHedgeDelayMS(50);
+
+		long start = System.currentTimeMillis();
+		TestResource r = (TestResource)cut.retrieveResource(result);
+		assertEquals("http://fast.example.com/a.warc.gz", r.path);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertFalse(r.closed);
+	}
+
+	public void testHedgedFailureTriesNext() throws Exception {
+		cut.delays.put("http://fast.example.com/a.warc.gz", 10L);
+		cut.setHedgeDelayMS(5000);
+
+		long start = System.currentTimeMillis();
+		TestResource r = (TestResource)cut.retrieveResource(result);
+		assertEquals("http://fast.example.com/a.warc.gz", r.path);
+		// failure of the first path does not wait for hedge delay
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+
+	public void testHedgedAllFail() throws Exception {
+		cut.setHedgeDelayMS(10);
+		try {
+			cut.retrieveResource(result);
+			fail("expected ResourceNotAvailableException");
+		} catch (ResourceNotAvailableException ex) {
+			assertTrue(ex.getMessage().contains("failed: http://slow"));
+			assertTrue(ex.getMessage().contains("failed: http://fast"));
+		}
+	}
+
+	/**
+	 * With {@code failOnFirstUnavailable}, a failing lookup in a later
+	 * source does not keep paths of earlier sources from being tried.
+	 */
+	public void testHedgedLaterLookupFails() throws Exception {
+		FlexResourceStore.PrefixLookup slow = new FlexResourceStore.PrefixLookup();
+		slow.setPrefix("http://slow.example.com/");
+		FlexResourceStore.SourceResolver failing = new FlexResourceStore.SourceResolver() {
+			@Override
+			public String[] lookupPath(String filename) throws IOException {
+				throw new IOException("lookup failed");
+			}
+		};
+		cut.setSources(Arrays.<FlexResourceStore.SourceResolver>asList(slow,
+			failing));
+		cut.setFailOnFirstUnavailable(true);
+		cut.delays.put("http://slow.example.com/a.warc.gz", 10L);
+		cut.setHedgeDelayMS(50);
+
+		TestResource r = (TestResource)cut.retrieveResource(result);
+		assertEquals("http://slow.example.com/a.warc.gz", r.path);
+
+		// nothing to try: lookup failure is reported
+		cut.delays.clear();
+		try {
+			cut.retrieveResource(result);
+			fail("expected ResourceNotAvailableException");
+		} catch (ResourceNotAvailableException ex) {
+			assertTrue(ex.getMessage().contains("lookup failed"));
+		}
+	}
+
+	public void testOrderBySourceLatency() throws Exception {
+		cut.setHedgeMinSamples(2);
+		for (int i = 0; i < 5; i++) {
+			cut.getLatencyHistogram("http://slow.example.com").record(500);
+			cut.getLatencyHistogram("http://fast.example.com").record(5);
+		}
+		List<String> paths = new ArrayList<String>(Arrays.asList(
+			"http://slow.example.com/a.warc.gz",
+			"http://unknown.example.com/a.warc.gz",
+			"http://fast.example.com/a.warc.gz"));
+		cut.orderBySourceLatency(paths);
+		assertEquals(Arrays.asList("http://unknown.example.com/a.warc.gz",
+			"http://fast.example.com/a.warc.gz",
+			"http://slow.example.com/a.warc.gz"), paths);
+
+		cut.setHedgeDelayMS(100);
+		assertEquals(8, cut.getHedgeDelay("http://fast.example.com/a.warc.gz"));
+		assertEquals(100, cut.getHedgeDelay("http://slow.example.com/a.warc.gz"));
+		assertEquals(100, cut.getHedgeDelay("http://unknown.example.com/a.warc.gz"));
+	}
+
+	public void testLatencyHistogram() {
+		FlexResourceStore.LatencyHistogram h = new FlexResourceStore.LatencyHistogram();
+		for (int i = 0; i < 90; i++) {
+			h.record(3);
+		}
+		for (int i = 0; i < 10; i++) {
+			h.recordFailure();
+		}
+		assertEquals(100, h.getCount());
+		assertEquals(4, h.getPercentile(0.5));
+		assertEquals(4, h.getPercentile(0.9));
+		assertEquals(Long.MAX_VALUE, h.getPercentile(0.95));
+	}
+
+	public void testSourceKey() {
+		assertEquals("http://example.com",
+			FlexResourceStore.getSourceKey("http://example.com/path/a.warc.gz"));
+		assertEquals("/mnt/disk1",
+			FlexResourceStore.getSourceKey("/mnt/disk1/a.warc.gz"));
+	}
+}
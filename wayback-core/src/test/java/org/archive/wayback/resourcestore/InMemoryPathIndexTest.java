@@ -0,0 +1,107 @@
+package org.archive.wayback.resourcestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link InMemoryPathIndex}.
+ */
+public class InMemoryPathIndexTest extends TestCase {
+
+	File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("path-index", ".txt");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	private void write(String... lines) throws IOException {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			for (String line : lines) {
+				w.write(line);
+				w.write("\n");
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	public void testLookup() throws Exception {
+		write("a.warc.gz\t/mnt/1/a.warc.gz",
+			"b.warc.gz\t/mnt/1/b.warc.gz",
+			"b.warc.gz\thttp://mirror.example.com/b.warc.gz",
+			"c\u00e9.warc.gz\t/mnt/2/c\u00e9.warc.gz");
+		InMemoryPathIndex cut = new InMemoryPathIndex();
+		cut.setPathIndex(file.getAbsolutePath());
+
+		assertEquals(3, cut.size());
+		assertEquals(Arrays.asList("/mnt/1/a.warc.gz"),
+			Arrays.asList(cut.lookupPath("a.warc.gz")));
+		assertEquals(Arrays.asList("/mnt/1/b.warc.gz",
+			"http://mirror.example.com/b.warc.gz"),
+			Arrays.asList(cut.lookupPath("b.warc.gz")));
+		assertEquals(Arrays.asList("/mnt/2/c\u00e9.warc.gz"),
+			Arrays.asList(cut.lookupPath("c\u00e9.warc.gz")));
+		assertEquals(0, cut.lookupPath("a.warc").length);
+		assertEquals(0, cut.lookupPath("a.warc.gz.open").length);
+		assertEquals(0, cut.lookupPath("d.warc.gz").length);
+
+		cut.setPrefixPath("/prefix");
+		assertEquals(Arrays.asList("/prefix/mnt/1/a.warc.gz"),
+			Arrays.asList(cut.lookupPath("a.warc.gz")));
+	}
+
+	public void testMatchesPathIndex() throws Exception {
+		String[] lines = new String[1000];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = String.format("f%05d.warc.gz\t/data/%d/f%05d.warc.gz",
+				i, i % 7, i);
+		}
+		write(lines);
+		InMemoryPathIndex cut = new InMemoryPathIndex();
+		cut.setPathIndex(file.getAbsolutePath());
+		FlexResourceStore.PathIndex pathIndex = new FlexResourceStore.PathIndex();
+		pathIndex.setPathIndex(file.getAbsolutePath());
+		for (int i = 0; i < lines.length; i += 37) {
+			String filename = String.format("f%05d.warc.gz", i);
+			assertEquals(Arrays.asList(pathIndex.lookupPath(filename)),
+				Arrays.asList(cut.lookupPath(filename)));
+		}
+	}
+
+	public void testReload() throws Exception {
+		write("a.warc.gz\t/mnt/1/a.warc.gz");
+		InMemoryPathIndex cut = new InMemoryPathIndex();
+		cut.setCheckIntervalMS(1);
+		cut.setPathIndex(file.getAbsolutePath());
+		assertEquals(0, cut.lookupPath("b.warc.gz").length);
+
+		write("a.warc.gz\t/mnt/1/a.warc.gz", "b.warc.gz\t/mnt/2/b.warc.gz");
+		file.setLastModified(file.lastModified() + 2000);
+		Thread.sleep(5);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (cut.lookupPath("b.warc.gz").length == 0) {
+			assertTrue("index not reloaded",
+				System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		assertEquals(Arrays.asList("/mnt/2/b.warc.gz"),
+			Arrays.asList(cut.lookupPath("b.warc.gz")));
+		assertEquals(2, cut.size());
+	}
+}
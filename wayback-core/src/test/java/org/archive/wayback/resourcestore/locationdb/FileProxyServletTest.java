@@ -0,0 +1,146 @@
+package org.archive.wayback.resourcestore.locationdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.replay.TransparentReplayRendererTest.TestServletOutputStream;
+import org.easymock.EasyMock;
+
+/**
+ * Test for {@link FileProxyServlet} serving local files.
+ */
+public class FileProxyServletTest extends TestCase {
+
+	private static final int FILE_SIZE = 100;
+
+	File file;
+	byte[] content;
+	FileProxyServlet cut;
+	HttpServletRequest request;
+	HttpServletResponse response;
+	TestServletOutputStream servletOutput;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		content = new byte[FILE_SIZE];
+		for (int i = 0; i < FILE_SIZE; i++) {
+			content[i] = (byte)i;
+		}
+		file = File.createTempFile("fileproxy", ".warc.gz");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content);
+		out.close();
+
+		ResourceFileLocationDB locationDB = EasyMock
+			.createMock(ResourceFileLocationDB.class);
+		EasyMock.expect(locationDB.nameToUrls("a.warc.gz")).andReturn(
+			new String[] { file.getAbsolutePath() });
+		EasyMock.replay(locationDB);
+		cut = new FileProxyServlet();
+		cut.setLocationDB(locationDB);
+
+		request = EasyMock.createMock(HttpServletRequest.class);
+		response = EasyMock.createMock(HttpServletResponse.class);
+		servletOutput = new TestServletOutputStream();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	private void expectRequest(String range) {
+		EasyMock.expect(request.getRequestURI()).andReturn(
+			"/fileproxy/a.warc.gz");
+		EasyMock.expect(request.getHeader("Range")).andReturn(range);
+		EasyMock.replay(request);
+	}
+
+	private void expectContent(int status, String contentRange, int length)
+			throws Exception {
+		response.setStatus(status);
+		if (contentRange != null) {
+			response.setHeader("Content-Range", contentRange);
+		}
+		response.setContentType("application/x-gzip");
+		response.setContentLength(length);
+		response.setBufferSize(EasyMock.anyInt());
+		EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+		EasyMock.replay(response);
+	}
+
+	private void assertContent(int start, int end) {
+		assertTrue(Arrays.equals(Arrays.copyOfRange(content, start, end + 1),
+			servletOutput.getBytes()));
+	}
+
+	public void testWholeFile() throws Exception {
+		expectRequest(null);
+		expectContent(200, null, FILE_SIZE);
+
+		cut.handleRequest(request, response);
+
+		EasyMock.verify(response);
+		assertContent(0, FILE_SIZE - 1);
+	}
+
+	public void testRange() throws Exception {
+		expectRequest("bytes=10-19");
+		expectContent(206, "bytes 10-19/100", 10);
+
+		cut.handleRequest(request, response);
+
+		EasyMock.verify(response);
+		assertContent(10, 19);
+	}
+
+	public void testOpenRange() throws Exception {
+		expectRequest("bytes=90-");
+		expectContent(206, "bytes 90-99/100", 10);
+
+		cut.handleRequest(request, response);
+
+		EasyMock.verify(response);
+		assertContent(90, 99);
+	}
+
+	public void testRangePastEnd() throws Exception {
+		expectRequest("bytes=95-200");
+		expectContent(206, "bytes 95-99/100", 5);
+
+		cut.handleRequest(request, response);
+
+		EasyMock.verify(response);
+		assertContent(95, 99);
+	}
+
+	public void testRangeStartAtEnd() throws Exception {
+		expectRequest("bytes=100-");
+		response.setHeader("Content-Range", "bytes */100");
+		response.sendError(EasyMock.eq(416), (String)EasyMock.anyObject());
+		EasyMock.replay(response);
+
+		cut.handleRequest(request, response);
+
+		EasyMock.verify(response);
+	}
+
+	public void testRangeStartPastEnd() throws Exception {
+		expectRequest("bytes=150-160");
+		response.setHeader("Content-Range", "bytes */100");
+		response.sendError(EasyMock.eq(416), (String)EasyMock.anyObject());
+		EasyMock.replay(response);
+
+		cut.handleRequest(request, response);
+
+		EasyMock.verify(response);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.surt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of {@link SURTPrefixSet}.
+ */
+public class SURTPrefixSetTest extends TestCase {
+
+	SURTPrefixSet set = SURTPrefixSet.build(Arrays.asList(
+		"(org,archive,",
+		"(org,archive,www,)/foo",
+		"(org,archive,www,)/foo/bar",
+		"(org,archive,www,)/foo/bar",
+		"(com,example,)/a\t",
+		"(org,archive,",
+		"(org,archive,www,)/foobar"));
+
+	public void testSize() {
+		assertEquals(5, set.size());
+		assertEquals(0, SURTPrefixSet.build(Collections.<String>emptyList()).size());
+		assertEquals(-1, SURTPrefixSet.build(Collections.<String>emptyList()).longestPrefixOf("(org"));
+	}
+
+	public void testNextPrefixOf() {
+		String s = "(org,archive,www,)/foo/bar/baz";
+		assertEquals(13, set.nextPrefixOf(s, 0));
+		assertEquals(22, set.nextPrefixOf(s, 14));
+		assertEquals(26, set.nextPrefixOf(s, 23));
+		assertEquals(-1, set.nextPrefixOf(s, 27));
+		assertEquals(-1, set.nextPrefixOf("(org,arch", 0));
+		assertEquals(-1, set.nextPrefixOf("(com,example,)/a", 0));
+	}
+
+	public void testLongestPrefixOf() {
+		assertEquals(26, set.longestPrefixOf("(org,archive,www,)/foo/bar/baz"));
+		assertEquals(25, set.longestPrefixOf("(org,archive,www,)/foobar"));
+		assertEquals(13, set.longestPrefixOf("(org,archive,www,)/fo"));
+		assertEquals(-1, set.longestPrefixOf("(org,arc"));
+		assertEquals(-1, set.longestPrefixOf(""));
+	}
+
+	public void testContains() {
+		assertTrue(set.contains("(org,archive,"));
+		assertFalse(set.contains("(org,archive"));
+		assertFalse(set.contains("(org,archive,www,)/foo/"));
+		assertTrue(set.contains("(com,example,)/a", '\t'));
+		assertFalse(set.contains("(com,example,)/", 'a'));
+		assertFalse(set.contains("(com,example,)/a\t", '\t'));
+		assertTrue(set.contains("(org,archive", ','));
+		assertFalse(set.contains("(org,archive,www,)/foo", '\t'));
+	}
+
+	/**
+	 * compare with naive implementation on random keys
+	 */
+	public void testRandom() {
+		Random random = new Random(0);
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			keys.add(randomString(random));
+		}
+		SURTPrefixSet rset = SURTPrefixSet.build(keys);
+		for (int i = 0; i < 2000; i++) {
+			String s = randomString(random);
+			int longest = -1;
+			int shortest = -1;
+			for (String key : keys) {
+				if (s.startsWith(key)) {
+					longest = Math.max(longest, key.length());
+					if (shortest == -1 || key.length() < shortest) {
+						shortest = key.length();
+					}
+				}
+			}
+			assertEquals(s, longest, rset.longestPrefixOf(s));
+			assertEquals(s, shortest, rset.nextPrefixOf(s, 0));
+			assertEquals(s, keys.contains(s), rset.contains(s));
+		}
+	}
+
+	private static String randomString(Random random) {
+		int length = random.nextInt(8);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char)('a' + random.nextInt(3)));
+		}
+		return sb.toString();
+	}
+}
@@ -19,6 +19,9 @@
  */
 package org.archive.wayback.surt;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import junit.framework.TestCase;
 
 import org.apache.commons.httpclient.URIException;
@@ -207,8 +210,38 @@ public class SURTTokenizerTest extends TestCase {
 		assertEquals("(org",tok.nextSearch());
 		assertNull(tok.nextSearch());
 	}
-	
-	
+
+	/**
+	 * {@link SURTTokenizer#isSearchPrefix(String, int)} must agree with
+	 * {@link SURTTokenizer#nextSearch()}.
+	 */
+	public void testIsSearchPrefix() throws URIException {
+		String[] surts = {
+			"(org,archive,www,)/foo",
+			"(org,archive,www,)/foo/",
+			"(org,archive,www,)/foo/bar/",
+			"(org,archive,www,)/",
+			"(org,archive,www,:8080@brad:pass)/cgi?foobar",
+			"(org,archive,www,)/cgi/a?b=/c/d",
+			"(org,archive,www,:8080)/a/b",
+			"(org,archive,",
+			"(org",
+		};
+		for (String surt : surts) {
+			Set<Integer> expected = new HashSet<Integer>();
+			SURTTokenizer st = new SURTTokenizer(surt, true);
+			st.nextSearch(); // exact
+			String search;
+			while ((search = st.nextSearch()) != null) {
+				expected.add(search.length());
+			}
+			for (int i = 0; i <= surt.length(); i++) {
+				assertEquals(surt + " " + i, expected.contains(i),
+					SURTTokenizer.isSearchPrefix(surt, i));
+			}
+		}
+	}
+
 	private SURTTokenizer toSurtT(final String u) {
 		SURTTokenizer tok = null;
 		try {
@@ -0,0 +1,182 @@
+package org.archive.wayback.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Test for {@link ParallelCompositeSortedIterator}.
+ */
+public class ParallelCompositeSortedIteratorTest extends TestCase {
+
+	/**
+	 * Orders "key/component" strings by key only, so that elements of
+	 * different components can compare equal.
+	 */
+	private static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.substring(0, o1.indexOf('/')).compareTo(
+					o2.substring(0, o2.indexOf('/')));
+		}
+	};
+
+	private static class ListIterator implements CloseableIterator<String> {
+		final Iterator<String> itr;
+		volatile boolean closed = false;
+		ListIterator(List<String> list) {
+			itr = list.iterator();
+		}
+		public boolean hasNext() {
+			return itr.hasNext();
+		}
+		public String next() {
+			return itr.next();
+		}
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	private List<List<String>> makeComponents(Random random, int count) {
+		List<List<String>> components = new ArrayList<List<String>>();
+		for (int c = 0; c < count; c++) {
+			List<String> lines = new ArrayList<String>();
+			int key = 0;
+			int size = random.nextInt(50);
+			for (int i = 0; i < size; i++) {
+				key += random.nextInt(3);
+				lines.add(String.format("%05d/%d.%d", key, c, i));
+			}
+			components.add(lines);
+		}
+		return components;
+	}
+
+	public void testSameOrderAsSerial() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Random random = new Random(7);
+			for (int round = 0; round < 20; round++) {
+				List<List<String>> components = makeComponents(random, 6);
+				CompositeSortedIterator<String> serial =
+						new CompositeSortedIterator<String>(KEY_ORDER);
+				ParallelCompositeSortedIterator<String> parallel =
+						new ParallelCompositeSortedIterator<String>(KEY_ORDER,
+								executor, 1 + round);
+				for (List<String> lines : components) {
+					serial.addComponent(lines.iterator());
+					parallel.addComponent(lines.iterator());
+				}
+				while (serial.hasNext()) {
+					assertTrue(parallel.hasNext());
+					assertEquals(serial.next(), parallel.next());
+				}
+				assertFalse(parallel.hasNext());
+				parallel.close();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testCloseClosesComponents() throws IOException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			List<List<String>> components = makeComponents(new Random(1), 3);
+			ParallelCompositeSortedIterator<String> parallel =
+					new ParallelCompositeSortedIterator<String>(KEY_ORDER,
+							executor, 2);
+			List<ListIterator> itrs = new ArrayList<ListIterator>();
+			for (List<String> lines : components) {
+				ListIterator itr = new ListIterator(lines);
+				itrs.add(itr);
+				parallel.addComponent(itr);
+			}
+			parallel.hasNext();
+			parallel.close();
+			for (ListIterator itr : itrs) {
+				assertTrue(itr.closed);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testCloseWaitsForRunningFetch() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// the first batch of 3 calls hasNext() 4 times:
+			final CountDownLatch fetching = new CountDownLatch(5);
+			final AtomicBoolean usedAfterClose = new AtomicBoolean();
+			final ListIterator slow = new ListIterator(
+					makeComponents(new Random(5), 1).get(0)) {
+				@Override
+				public boolean hasNext() {
+					fetching.countDown();
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					if (closed) {
+						usedAfterClose.set(true);
+					}
+					return true;
+				}
+				@Override
+				public String next() {
+					return "00000/0.0";
+				}
+			};
+			ParallelCompositeSortedIterator<String> parallel =
+					new ParallelCompositeSortedIterator<String>(KEY_ORDER,
+							executor, 3);
+			parallel.addComponent(slow);
+			parallel.hasNext();
+			// wait until the second batch is being fetched in the background
+			assertTrue(fetching.await(5, TimeUnit.SECONDS));
+			parallel.close();
+			assertTrue(slow.closed);
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+			assertFalse(usedAfterClose.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testRejectedFetchesRunInline() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		List<List<String>> components = makeComponents(new Random(3), 4);
+		int total = 0;
+		ParallelCompositeSortedIterator<String> parallel =
+				new ParallelCompositeSortedIterator<String>(KEY_ORDER,
+						executor, 5);
+		for (List<String> lines : components) {
+			total += lines.size();
+			parallel.addComponent(lines.iterator());
+		}
+		int count = 0;
+		while (parallel.hasNext()) {
+			parallel.next();
+			count++;
+		}
+		assertEquals(total, count);
+	}
+}
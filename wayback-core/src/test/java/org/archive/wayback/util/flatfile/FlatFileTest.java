@@ -0,0 +1,175 @@
+package org.archive.wayback.util.flatfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the memory-mapped lookups in {@link FlatFile} return the same
+ * lines as the RandomAccessFile based ones.
+ */
+public class FlatFileTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("flatfile", ".cdx");
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			// lines of varying length, so the block boundaries of the
+			// RandomAccessFile search fall mid-line
+			sb.append(String.format("com,example)/%05d", i * 2));
+			for (int j = 0; j < i % 7; j++) {
+				sb.append(" padding");
+			}
+			sb.append('\n');
+		}
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(sb.toString().getBytes("UTF-8"));
+		fos.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		MappedFile.release(file);
+		file.delete();
+		super.tearDown();
+	}
+
+	private List<String> take(Iterator<String> itr, int max) {
+		List<String> lines = new ArrayList<String>();
+		while (itr.hasNext() && lines.size() < max) {
+			lines.add(itr.next());
+		}
+		return lines;
+	}
+
+	private void assertSameResults(String prefix) throws IOException {
+		FlatFile plain = new FlatFile(file.getAbsolutePath());
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+
+		assertEquals(take(plain.getRecordIterator(prefix), 3),
+				take(mapped.getRecordIterator(prefix), 3));
+		assertEquals(plain.getLastMatchOffset(), mapped.getLastMatchOffset());
+
+		assertEquals(take(plain.getRecordIteratorLT(prefix), 3),
+				take(mapped.getRecordIteratorLT(prefix), 3));
+		assertEquals(plain.getLastMatchOffset(), mapped.getLastMatchOffset());
+	}
+
+	public void testMappedMatchesRandomAccess() throws IOException {
+		assertSameResults("com,example)/00000");
+		assertSameResults("com,example)/00001");
+		assertSameResults("com,example)/04242");
+		assertSameResults("com,example)/04243");
+		assertSameResults("com,example)/09998");
+		assertSameResults("com,example)/");
+		assertSameResults("a");
+	}
+
+	public void testSampledMatchesPlain() throws IOException {
+		File sidecar = new File(file.getAbsolutePath() + ".samples");
+		FlatFile plain = new FlatFile(file.getAbsolutePath());
+		FlatFile sampled = new FlatFile(file.getAbsolutePath());
+		sampled.setSampleInterval(100);
+		sampled.setSampleIndexPath(sidecar.getAbsolutePath());
+		FlatFile both = new FlatFile(file.getAbsolutePath());
+		both.setSampleInterval(100);
+		both.setMapped(true);
+		// before the samples are loaded, lookups fall back to plain search:
+		assertEquals(take(plain.getRecordIterator("com,example)/04243"), 3),
+				take(sampled.getRecordIterator("com,example)/04243"), 3));
+		sampled.loadSampleIndex();
+		both.loadSampleIndex();
+		try {
+			String[] prefixes = { "a", "com,example)/", "com,example)/00000",
+					"com,example)/00001", "com,example)/00200",
+					"com,example)/00201", "com,example)/04243",
+					"com,example)/09998", "zzz" };
+			for (String prefix : prefixes) {
+				List<String> expected = take(plain.getRecordIterator(prefix), 3);
+				long expectedOffset = plain.getLastMatchOffset();
+				assertEquals(expected,
+						take(sampled.getRecordIterator(prefix), 3));
+				assertEquals(expectedOffset, sampled.getLastMatchOffset());
+				assertEquals(expected, take(both.getRecordIterator(prefix), 3));
+				assertEquals(expectedOffset, both.getLastMatchOffset());
+
+				expected = take(plain.getRecordIteratorLT(prefix), 3);
+				assertEquals(expected,
+						take(sampled.getRecordIteratorLT(prefix), 3));
+				assertEquals(expected,
+						take(both.getRecordIteratorLT(prefix), 3));
+			}
+			assertTrue(sidecar.exists());
+			SampledKeyIndex reloaded = SampledKeyIndex.load(file, 100, sidecar);
+			assertEquals(50, reloaded.size());
+		} finally {
+			sidecar.delete();
+		}
+	}
+
+	public void testSamplesInByteOrder() throws IOException {
+		// U+FF61 sorts before U+1F600 as UTF-8 bytes (as the file is
+		// sorted), but after it as UTF-16 chars
+		String[] keys = { "k\u00e9", "k\uff61", "k\ud83d\ude00", "l" };
+		File utf8 = File.createTempFile("flatfile", ".cdx");
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (String key : keys) {
+				sb.append(key).append('\n');
+			}
+			FileOutputStream fos = new FileOutputStream(utf8);
+			fos.write(sb.toString().getBytes("UTF-8"));
+			fos.close();
+			SampledKeyIndex samples = SampledKeyIndex.build(utf8, 1);
+			long offset = 0;
+			for (String key : keys) {
+				assertEquals(offset, samples.getRange(key)[1]);
+				offset += (key + "\n").getBytes("UTF-8").length;
+			}
+		} finally {
+			utf8.delete();
+		}
+	}
+
+	public void testPastEnd() throws IOException {
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+		assertFalse(mapped.getRecordIterator("zzz").hasNext());
+		assertEquals(file.length(), mapped.getLastMatchOffset());
+	}
+
+	public void testReverse() throws IOException {
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+		List<String> lines = take(
+				mapped.getReverseIterator("com,example)/00005"), 5);
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0).startsWith("com,example)/00004"));
+		assertTrue(lines.get(1).startsWith("com,example)/00002"));
+		assertEquals("com,example)/00000", lines.get(2));
+
+		assertFalse(mapped.getReverseIterator("a").hasNext());
+	}
+
+	public void testSequential() throws IOException {
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+		Iterator<String> itr = mapped.getSequentialIterator();
+		int count = 0;
+		while (itr.hasNext()) {
+			itr.next();
+			count++;
+		}
+		assertEquals(5000, count);
+	}
+}
@@ -918,6 +918,30 @@ public class AccessPointTest extends TestCase {
 		EasyMock.verify(resourceIndex, resourceStore, replay);
 	}
 
+	/**
+	 * With {@code maxConcurrentReplays}, replay requests over the limit fail
+	 * with 503 instead of waiting for a slot indefinitely.
+	 * @throws Exception
+	 */
+	public void testReplayPermits() throws Exception {
+		// no limit by default
+		cut.acquireReplayPermit();
+		cut.acquireReplayPermit();
+
+		cut.setMaxConcurrentReplays(1);
+		cut.setReplayAdmissionTimeoutMS(10);
+		cut.acquireReplayPermit();
+		try {
+			cut.acquireReplayPermit();
+			fail("acquireReplayPermit did not throw ResourceNotAvailableException");
+		} catch (ResourceNotAvailableException ex) {
+			assertEquals(503, ex.getStatus());
+		}
+		cut.releaseReplayPermit();
+		cut.acquireReplayPermit();
+		cut.releaseReplayPermit();
+	}
+
 	/**
 	 * old-style WARC revisit (no HTTP status line and header, Content-Length in
 	 * WARC header is zero). it shall replay HTTP status line, headers and